@@ -13,6 +13,9 @@ public class CrdtNode {
     public CrdtNode left;
     public CrdtNode right;
 
+    // Position index block holding this node
+    CrdtTree.Block block;
+
     public CrdtNode(String id, String value, String parentId, long timestamp, String userId) {
         this.id = id;
         this.value = value;
@@ -1,6 +1,5 @@
 package com.collab.backend.crdt;
 
-import java.util.List;
 import com.collab.backend.websocket.ClientEditRequest;
 
 public class CrdtOperation {
@@ -38,40 +37,17 @@ public class CrdtOperation {
         return op;
     }
 
-    public static CrdtOperation fromClientInsert(ClientEditRequest req, List<String> visibleIds) {
-        int pos = req.position;
-        String parentId;
-
-        if (pos <= 0 || visibleIds.isEmpty()) {
-            parentId = "root";
-        } else if (pos > visibleIds.size()) {
-            parentId = visibleIds.get(visibleIds.size() - 1);
-        } else {
-            parentId = visibleIds.get(pos - 1);
-        }
-
-        String id = req.userId + "-" + req.timestamp;
-
+    public static CrdtOperation fromClientInsert(ClientEditRequest req, String parentId, long timestamp) {
         return insert(
                 req.documentId,
-                id,
+                req.userId + "-" + timestamp,
                 req.value,
                 parentId,
-                req.timestamp,
+                timestamp,
                 req.userId);
     }
 
-    public static CrdtOperation fromClientDelete(ClientEditRequest req, List<String> visibleIds) {   
-        String targetId = "";
-        
-        System.err.println("Delete request at position: " + req.position + 
-                            ", visibleIds size: " + visibleIds.size());
-        
-        if (req.position >= 0 && req.position < visibleIds.size()) {
-            targetId = visibleIds.get(req.position);
-            System.err.println("Target ID for deletion: " + targetId);
-        }
-
+    public static CrdtOperation fromClientDelete(ClientEditRequest req, String targetId) {
         return delete(
             targetId,
             req.timestamp,
@@ -79,4 +55,4 @@ public class CrdtOperation {
             req.documentId
         );
     }
-}
\ No newline at end of file
+}
@@ -1,90 +1,147 @@
 package com.collab.backend.crdt;
 
 import java.util.*;
+import java.util.function.Consumer;
 import com.collab.backend.websocket.ClientEditRequest;
 
+/**
+ * RGA sequence: every character is a node inserted after a parent node, kept in a doubly
+ * linked list with tombstones for deleted characters. Concurrent inserts after the same parent
+ * are ordered by descending (timestamp, userId); timestamps are hybrid clocks that exceed every
+ * timestamp the inserting replica had seen, so descendants of a node always sort after it.
+ *
+ * Positions are resolved through an index that splits the list into blocks of nodes with a
+ * visible count each, so mapping between node ids and text offsets costs O(blocks + block size)
+ * instead of a pass over the whole document.
+ */
 public class CrdtTree {
+    static final int BLOCK_SIZE = 512;
+    // Deletes of purged tombstones never find their target, so only the latest ones are kept
+    static final int MAX_DELETES_AWAITING_TARGET = 4096;
+
     private final Map<String, CrdtNode> nodeMap = new HashMap<>();
-    private List<String> visibleCharacterIdsInOrder = new ArrayList<>();
-    private boolean visibleIdsNeedRefresh = true;
+    private final List<Block> blocks = new ArrayList<>();
+    private int visibleLength = 0;
+    private long maxTimestamp = 0;
+
+    private final Map<String, List<CrdtOperation>> insertsAwaitingParent = new HashMap<>();
+    private final Set<String> deletesAwaitingTarget = new LinkedHashSet<>();
 
     // Linked-list entry point
     private CrdtNode firstNode = null;
 
+    // Consecutive run of the linked list; a node knows its block so its offset can be summed up
+    static final class Block {
+        final ArrayList<CrdtNode> nodes = new ArrayList<>();
+        int visible = 0;
+    }
+
     public CrdtTree() {
     }
 
-    public void apply(ClientEditRequest req) {
+    public CrdtOperation apply(ClientEditRequest req) {
         if (req.type == ClientEditRequest.Type.INSERT) {
-            CrdtOperation op = CrdtOperation.fromClientInsert(req, getVisibleIds());
+            int position = Math.min(req.position, visibleLength);
+            String parentId = position <= 0 ? "root" : idAt(position - 1);
+            CrdtOperation op = CrdtOperation.fromClientInsert(req, parentId, nextTimestamp(req.timestamp));
             applyInsertOperation(op);
+            return op;
         } else if (req.type == ClientEditRequest.Type.DELETE) {
-            if (req.position < 0 || req.position >= getVisibleIds().size()) {
-                return;
+            if (req.position < 0 || req.position >= visibleLength) {
+                return null;
             }
-            String idToDelete = getVisibleIds().get(req.position);
-            applyDeleteOperation(idToDelete);
+            CrdtOperation op = CrdtOperation.fromClientDelete(req, idAt(req.position));
+            applyDeleteOperation(op.targetId);
+            return op;
         }
-
+        return null;
     }
 
-    public void applyInsertOperation(CrdtOperation op) {
-        if (nodeMap.containsKey(op.id))
-            return;
-
-        CrdtNode item = new CrdtNode(op.id, op.value, op.parentId, op.timestamp, op.userId);
-        nodeMap.put(item.id, item);
-
-        if (firstNode == null) {
-            firstNode = item;
-            return;
+    // Applies an operation produced by another replica
+    public void applyOperation(CrdtOperation op) {
+        if (op.type == CrdtOperation.Type.INSERT) {
+            applyInsertOperation(op);
+        } else if (op.type == CrdtOperation.Type.DELETE) {
+            applyDeleteOperation(op.targetId);
         }
+    }
 
-        if (op.parentId.equals("root")) {
-            if (compare(item, firstNode) < 0) {
-                item.right = firstNode;
-                firstNode.left = item;
-                firstNode = item;
-                return;
-            }
+    // Inserts whose parent has not arrived yet are parked until it does, so replicas that
+    // receive operations out of causal order still converge. Returns the nodes integrated.
+    public List<CrdtNode> applyInsertOperation(CrdtOperation op) {
+        List<CrdtNode> integrated = new ArrayList<>();
+        Deque<CrdtOperation> ready = new ArrayDeque<>();
+        ready.add(op);
+        while (!ready.isEmpty()) {
+            CrdtOperation next = ready.poll();
+            if (nodeMap.containsKey(next.id))
+                continue;
 
-            CrdtNode current = firstNode;
-            while (current.right != null && compare(current.right, item) < 0) {
-                current = current.right;
+            if (!next.parentId.equals("root") && !nodeMap.containsKey(next.parentId)) {
+                insertsAwaitingParent.computeIfAbsent(next.parentId, _ -> new ArrayList<>()).add(next);
+                continue;
             }
 
-            item.right = current.right;
-            if (current.right != null)
-                current.right.left = item;
-            current.right = item;
-            item.left = current;
-        } else {
-            CrdtNode left = nodeMap.get(op.parentId);
-            if (left == null) {
-                left = firstNode;
+            integrated.add(integrate(next));
+            List<CrdtOperation> children = insertsAwaitingParent.remove(next.id);
+            if (children != null) {
+                ready.addAll(children);
             }
+        }
+        return integrated;
+    }
 
-            item.left = left;
-            item.right = left != null ? left.right : null;
-            if (left != null)
-                left.right = item;
-            if (item.right != null)
-                item.right.left = item;
+    private CrdtNode integrate(CrdtOperation op) {
+        CrdtNode item = new CrdtNode(op.id, op.value, op.parentId, op.timestamp, op.userId);
+        nodeMap.put(item.id, item);
+        item.isDeleted = deletesAwaitingTarget.remove(item.id);
+        maxTimestamp = Math.max(maxTimestamp, item.timestamp);
+
+        // Skip the concurrent siblings (and their descendants) that sort before the new node
+        CrdtNode left = op.parentId.equals("root") ? null : nodeMap.get(op.parentId);
+        CrdtNode right = left == null ? firstNode : left.right;
+        while (right != null && compare(right, item) > 0) {
+            left = right;
+            right = right.right;
         }
 
-        visibleIdsNeedRefresh = true;
+        item.left = left;
+        item.right = right;
+        if (left == null) {
+            firstNode = item;
+        } else {
+            left.right = item;
+        }
+        if (right != null) {
+            right.left = item;
+        }
+        indexInsertAfter(left, item);
+        return item;
     }
 
-    public void applyDeleteOperation(String targetId) {
+    // Returns true if the target was visible and is now deleted
+    public boolean applyDeleteOperation(String targetId) {
         CrdtNode target = nodeMap.get(targetId);
-        if (target != null && !target.isDeleted) {
-            target.isDeleted = true;
-            visibleIdsNeedRefresh = true;
+        if (target == null) {
+            if (targetId != null && !targetId.isEmpty() && deletesAwaitingTarget.add(targetId)
+                    && deletesAwaitingTarget.size() > MAX_DELETES_AWAITING_TARGET) {
+                Iterator<String> oldest = deletesAwaitingTarget.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            return false;
         }
+        if (target.isDeleted) {
+            return false;
+        }
+        target.isDeleted = true;
+        target.block.visible--;
+        visibleLength--;
+        return true;
     }
 
     public String getText() {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(visibleLength);
         CrdtNode current = firstNode;
         while (current != null) {
             if (!current.isDeleted) {
@@ -95,16 +152,217 @@ public class CrdtTree {
         return sb.toString();
     }
 
-    public List<String> getVisibleIds() {
-        if (visibleIdsNeedRefresh) {
-            computeVisibleIdsInOrder();
-            visibleIdsNeedRefresh = false;
+    public TextReader textReader() {
+        return new TextReader();
+    }
+
+    /**
+     * Reads the visible text in chunks, each under the tree lock, so a long export never holds
+     * the lock for the whole document. A chunk continues after the last character read; if that
+     * node was deleted and purged in between, reading resumes at the same offset instead.
+     */
+    public class TextReader {
+        private CrdtNode last;
+        private int offset = 0;
+
+        private TextReader() {
+        }
+
+        // Appends up to max characters; false once the end of the text was reached
+        public boolean read(StringBuilder out, int max) {
+            CrdtNode current;
+            if (last == null) {
+                current = firstNode;
+            } else if (nodeMap.get(last.id) == last) {
+                current = last.right;
+            } else {
+                String id = idAt(offset);
+                current = id != null ? nodeMap.get(id) : null;
+            }
+            int read = 0;
+            while (current != null && read < max) {
+                if (!current.isDeleted) {
+                    out.append(current.value);
+                    last = current;
+                    read++;
+                }
+                current = current.right;
+            }
+            offset += read;
+            return current != null;
         }
-        return new ArrayList<>(visibleCharacterIdsInOrder);
     }
 
-    private void computeVisibleIdsInOrder() {
-        List<String> result = new ArrayList<>();
+    // Visits every node, tombstones included, in sequence order
+    public void forEachNode(Consumer<CrdtNode> visitor) {
+        CrdtNode current = firstNode;
+        while (current != null) {
+            visitor.accept(current);
+            current = current.right;
+        }
+    }
+
+    // Node after the given one in sequence order, jumping over index blocks that hold only
+    // tombstones; walks that only look at visible nodes see the same sequence, minus long deleted runs
+    public CrdtNode nextSkippingTombstoneBlocks(CrdtNode node) {
+        CrdtNode next = node.right;
+        while (next != null && next.isDeleted && next.block.visible == 0) {
+            next = next.block.nodes.getLast().right;
+        }
+        return next;
+    }
+
+    public CrdtNode previousSkippingTombstoneBlocks(CrdtNode node) {
+        CrdtNode previous = node.left;
+        while (previous != null && previous.isDeleted && previous.block.visible == 0) {
+            previous = previous.block.nodes.getFirst().left;
+        }
+        return previous;
+    }
+
+    // First node of the node's index block when that block holds only tombstones, which the
+    // walks above jump over as a whole; otherwise the node itself
+    public CrdtNode startOfTombstoneBlock(CrdtNode node) {
+        return node.isDeleted && node.block.visible == 0 ? node.block.nodes.getFirst() : node;
+    }
+
+    public CrdtNode getNode(String id) {
+        return nodeMap.get(id);
+    }
+
+    public int getVisibleLength() {
+        return visibleLength;
+    }
+
+    // Id of the visible node at the given text offset, or null if out of range
+    public String idAt(int position) {
+        if (position < 0 || position >= visibleLength) {
+            return null;
+        }
+        int remaining = position;
+        for (Block block : blocks) {
+            if (remaining >= block.visible) {
+                remaining -= block.visible;
+                continue;
+            }
+            for (CrdtNode node : block.nodes) {
+                if (!node.isDeleted && remaining-- == 0) {
+                    return node.id;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Offset of the node in the visible text; for a tombstone, the offset it would have
+    public int positionOf(CrdtNode node) {
+        int position = 0;
+        for (Block block : blocks) {
+            if (block == node.block) {
+                break;
+            }
+            position += block.visible;
+        }
+        for (CrdtNode other : node.block.nodes) {
+            if (other == node) {
+                break;
+            }
+            if (!other.isDeleted) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    // Offsets of many nodes at once (as positionOf), in sequence order: one pass over the block
+    // counts, scanning only the blocks that hold one of the nodes
+    public LinkedHashMap<CrdtNode, Integer> positionsOf(Collection<CrdtNode> nodes) {
+        Set<CrdtNode> wanted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Block> holding = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CrdtNode node : nodes) {
+            wanted.add(node);
+            holding.add(node.block);
+        }
+        LinkedHashMap<CrdtNode, Integer> positions = new LinkedHashMap<>();
+        int position = 0;
+        for (Block block : blocks) {
+            if (!holding.contains(block)) {
+                position += block.visible;
+                continue;
+            }
+            for (CrdtNode node : block.nodes) {
+                if (wanted.contains(node)) {
+                    positions.put(node, position);
+                }
+                if (!node.isDeleted) {
+                    position++;
+                }
+            }
+        }
+        return positions;
+    }
+
+    // Index of the node in sequence order counting tombstones. Unlike positionOf it never ties,
+    // and since nodes are never reordered, the order of two ranks never changes
+    public int rankOf(CrdtNode node) {
+        int rank = 0;
+        for (Block block : blocks) {
+            if (block == node.block) {
+                break;
+            }
+            rank += block.nodes.size();
+        }
+        return rank + indexInBlock(node.block, node);
+    }
+
+    // Nodes in the sequence, tombstones included
+    public int getNodeCount() {
+        return nodeMap.size();
+    }
+
+    public int getTombstoneCount() {
+        return nodeMap.size() - visibleLength;
+    }
+
+    /**
+     * Drops tombstones other than the given ids and rebuilds the index; the remaining nodes keep
+     * their order. Only safe while no replica can still send operations that name a dropped node,
+     * i.e. when every client will resync from a snapshot. Returns the number of nodes dropped.
+     */
+    public int purgeTombstones(Set<String> keep) {
+        List<CrdtNode> survivors = new ArrayList<>(visibleLength);
+        for (CrdtNode node = firstNode; node != null; node = node.right) {
+            if (!node.isDeleted || keep.contains(node.id)) {
+                survivors.add(node);
+            }
+        }
+        int purged = nodeMap.size() - survivors.size();
+        if (purged == 0) {
+            return 0;
+        }
+
+        firstNode = null;
+        nodeMap.clear();
+        blocks.clear();
+        visibleLength = 0;
+        CrdtNode tail = null;
+        for (CrdtNode node : survivors) {
+            node.left = tail;
+            node.right = null;
+            if (tail == null) {
+                firstNode = node;
+            } else {
+                tail.right = node;
+            }
+            nodeMap.put(node.id, node);
+            indexInsertAfter(tail, node);
+            tail = node;
+        }
+        return purged;
+    }
+
+    public List<String> getVisibleIds() {
+        List<String> result = new ArrayList<>(visibleLength);
         CrdtNode current = firstNode;
         while (current != null) {
             if (!current.isDeleted) {
@@ -112,7 +370,12 @@ public class CrdtTree {
             }
             current = current.right;
         }
-        visibleCharacterIdsInOrder = result;
+        return result;
+    }
+
+    // Hybrid clock: never behind wall time, always ahead of every timestamp this replica has seen
+    public long nextTimestamp(long proposed) {
+        return Math.max(proposed, maxTimestamp + 1);
     }
 
     public void insert(String value, int position, String userId, long timestamp) {
@@ -126,7 +389,7 @@ public class CrdtTree {
     }
 
     public void delete(int position, String userId) {
-        if (position < 0 || position >= getVisibleIds().size()) {
+        if (position < 0 || position >= visibleLength) {
             return;
         }
 
@@ -138,6 +401,118 @@ public class CrdtTree {
         apply(req);
     }
 
+    public BulkAppender bulkAppender(String userId, long baseTimestamp) {
+        return new BulkAppender(userId, baseTimestamp);
+    }
+
+    /**
+     * Appends characters to the end of the sequence in O(1) each, chaining every node to the
+     * previous one. Used for imports and initial content, where going through positional
+     * inserts would resolve a position per character.
+     */
+    public class BulkAppender {
+        private final String userId;
+        private final long baseTimestamp;
+        private CrdtNode tail;
+        private long count = 0;
+
+        private BulkAppender(String userId, long baseTimestamp) {
+            this.userId = userId;
+            this.baseTimestamp = nextTimestamp(baseTimestamp);
+            this.tail = firstNode;
+            while (tail != null && tail.right != null) {
+                tail = tail.right;
+            }
+        }
+
+        public void append(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                append(String.valueOf(chars[i]));
+            }
+        }
+
+        public void append(String value) {
+            long timestamp = baseTimestamp + count;
+            appendNode(userId + "-" + timestamp, value, tail != null ? tail.id : "root", timestamp, userId, false);
+        }
+
+        // Appends a node exactly as it appeared in another replica; used to restore snapshots in order
+        public void appendNode(String id, String value, String parentId, long timestamp, String nodeUserId, boolean deleted) {
+            count++;
+            if (nodeMap.containsKey(id)) {
+                return;
+            }
+
+            CrdtNode item = new CrdtNode(id, value, parentId, timestamp, nodeUserId);
+            item.isDeleted = deleted;
+            nodeMap.put(id, item);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            if (tail == null) {
+                firstNode = item;
+            } else {
+                tail.right = item;
+                item.left = tail;
+            }
+            indexInsertAfter(tail, item);
+            tail = item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private void indexInsertAfter(CrdtNode left, CrdtNode item) {
+        Block block;
+        int index;
+        if (left == null) {
+            if (blocks.isEmpty()) {
+                blocks.add(new Block());
+            }
+            block = blocks.get(0);
+            index = 0;
+        } else {
+            block = left.block;
+            int last = block.nodes.size() - 1;
+            // Appends hit the end of a block; only mid-block inserts need the scan
+            index = block.nodes.get(last) == left ? last + 1 : indexInBlock(block, left) + 1;
+        }
+
+        block.nodes.add(index, item);
+        item.block = block;
+        if (!item.isDeleted) {
+            block.visible++;
+            visibleLength++;
+        }
+        if (block.nodes.size() > 2 * BLOCK_SIZE) {
+            split(block);
+        }
+    }
+
+    private void split(Block block) {
+        Block upper = new Block();
+        List<CrdtNode> moved = block.nodes.subList(BLOCK_SIZE, block.nodes.size());
+        for (CrdtNode node : moved) {
+            node.block = upper;
+            if (!node.isDeleted) {
+                upper.visible++;
+            }
+        }
+        upper.nodes.addAll(moved);
+        moved.clear();
+        block.visible -= upper.visible;
+        blocks.add(blocks.indexOf(block) + 1, upper);
+    }
+
+    private static int indexInBlock(Block block, CrdtNode node) {
+        for (int i = 0; i < block.nodes.size(); i++) {
+            if (block.nodes.get(i) == node) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Node " + node.id + " missing from its index block");
+    }
+
     private int compare(CrdtNode a, CrdtNode b) {
         int tsCompare = Long.compare(a.timestamp, b.timestamp);
         return tsCompare != 0 ? tsCompare : a.userId.compareTo(b.userId);
@@ -146,7 +521,9 @@ public class CrdtTree {
     public void clear() {
         firstNode = null;
         nodeMap.clear();
-        visibleCharacterIdsInOrder.clear();
-        visibleIdsNeedRefresh = true;
+        blocks.clear();
+        visibleLength = 0;
+        insertsAwaitingParent.clear();
+        deletesAwaitingTarget.clear();
     }
 }
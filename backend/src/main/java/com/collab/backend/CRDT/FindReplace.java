@@ -0,0 +1,138 @@
+package com.collab.backend.crdt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Plans a replace-all over the visible text of a tree as one batch of operations. The text is
+ * scanned once and every match planned before anything changes, so a pattern that fails or runs
+ * out of time leaves the document untouched. Each match becomes deletes of its characters and a
+ * chain of inserts after the visible character before it, the way clients splice text.
+ *
+ * Call under the tree's lock and apply the operations before releasing it.
+ */
+public final class FindReplace {
+
+    public record Plan(int matches, List<CrdtOperation> operations) {}
+
+    // Checking the clock on every character read would cost more than the matching
+    private static final int DEADLINE_CHECK_MASK = (1 << 12) - 1;
+
+    private FindReplace() {
+    }
+
+    /**
+     * Matches of find in the visible text, replaced by replacement. As a regex, the replacement
+     * may refer to groups with {@code $1}; empty matches are skipped.
+     *
+     * @throws IllegalArgumentException if the pattern is invalid, matches more than maxMatches
+     *         times or takes longer than timeoutMs
+     */
+    public static Plan plan(CrdtTree tree, String find, String replacement, boolean regex,
+                            String documentId, String userId, int maxMatches, long timeoutMs) {
+        Pattern pattern;
+        try {
+            pattern = regex ? Pattern.compile(find) : Pattern.compile(find, Pattern.LITERAL);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid pattern: " + e.getDescription());
+        }
+
+        List<CrdtNode> visible = new ArrayList<>(tree.getVisibleLength());
+        StringBuilder text = new StringBuilder(tree.getVisibleLength());
+        tree.forEachNode(node -> {
+            if (!node.isDeleted) {
+                visible.add(node);
+                text.append(node.value);
+            }
+        });
+        // Nodes hold one character each, as clients insert them; offsets are node indexes
+        if (text.length() != visible.size()) {
+            throw new IllegalArgumentException("Document holds multi-character nodes");
+        }
+
+        Matcher matcher = pattern.matcher(new DeadlineText(text, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)));
+        List<int[]> ranges = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        StringBuilder expanded = new StringBuilder();
+        int appended = 0;
+        while (matcher.find()) {
+            String value = replacement;
+            if (regex) {
+                // appendReplacement adds the text since the last match before the expansion
+                expanded.setLength(0);
+                try {
+                    matcher.appendReplacement(expanded, replacement);
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IllegalArgumentException("Invalid replacement: " + e.getMessage());
+                }
+                value = expanded.substring(matcher.start() - appended);
+                appended = matcher.end();
+            }
+            if (matcher.end() == matcher.start()) continue;
+            if (ranges.size() == maxMatches) {
+                throw new IllegalArgumentException("More than " + maxMatches + " matches");
+            }
+            ranges.add(new int[] { matcher.start(), matcher.end() });
+            values.add(value);
+        }
+
+        List<CrdtOperation> operations = new ArrayList<>();
+        long timestamp = tree.nextTimestamp(System.currentTimeMillis());
+        for (int i = 0; i < ranges.size(); i++) {
+            int start = ranges.get(i)[0];
+            int end = ranges.get(i)[1];
+            for (int j = start; j < end; j++) {
+                operations.add(CrdtOperation.delete(visible.get(j).id, timestamp, userId, documentId));
+            }
+            // Newer than every node, so each run lands right after its parent and stays contiguous
+            String parentId = start == 0 ? "root" : visible.get(start - 1).id;
+            String value = values.get(i);
+            for (int j = 0; j < value.length(); j++, timestamp++) {
+                CrdtOperation insert = CrdtOperation.insert(documentId, userId + "-" + timestamp,
+                        String.valueOf(value.charAt(j)), parentId, timestamp, userId);
+                operations.add(insert);
+                parentId = insert.id;
+            }
+        }
+        return new Plan(ranges.size(), operations);
+    }
+
+    // Text that gives up once its deadline passes, so a backtracking pattern cannot hold the tree lock
+    private static final class DeadlineText implements CharSequence {
+        private final CharSequence text;
+        private final long deadline;
+        private int reads;
+
+        DeadlineText(CharSequence text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() - deadline > 0) {
+                throw new IllegalArgumentException("Pattern took too long");
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
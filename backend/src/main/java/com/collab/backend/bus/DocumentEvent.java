@@ -0,0 +1,14 @@
+package com.collab.backend.bus;
+
+import com.collab.backend.crdt.CrdtOperation;
+
+import java.util.List;
+
+/**
+ * A batch of operations applied on {@code originNode}. {@code sequence} increases by one per
+ * batch for each (document, origin) pair, which lets receivers drop duplicates and restore order.
+ * {@code incarnation} changes when the origin loads or creates the document again, after which
+ * the sequence may start over.
+ */
+public record DocumentEvent(String documentId, String originNode, long incarnation, long sequence,
+                            List<CrdtOperation> operations) {}
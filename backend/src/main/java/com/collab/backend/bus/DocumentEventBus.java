@@ -0,0 +1,20 @@
+package com.collab.backend.bus;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Relays applied operations between backend nodes hosting the same document. Implementations
+ * must deliver events of one (document, origin) pair in sequence order and at most once.
+ */
+public interface DocumentEventBus {
+
+    // Only the given nodes receive the event; any other copy catches up from the owner when it needs to
+    void publish(DocumentEvent event, Set<String> nodes);
+
+    void subscribe(Consumer<DocumentEvent> listener);
+
+    // The document left this node (handed over, dropped as a replica or evicted); forget its streams
+    default void forgetDocument(String documentId) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.collab.backend.bus;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * In-process bus for single-node deployments and tests. A single dispatcher thread delivers
+ * events to every subscriber, including the publisher's own node, in publish order.
+ */
+public class LoopbackDocumentEventBus implements DocumentEventBus {
+
+    private final List<Consumer<DocumentEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "document-event-loopback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // A single node is the only target there is
+    @Override
+    public void publish(DocumentEvent event, Set<String> nodes) {
+        dispatcher.execute(() -> {
+            for (Consumer<DocumentEvent> listener : listeners) {
+                listener.accept(event);
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Consumer<DocumentEvent> listener) {
+        listeners.add(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+}
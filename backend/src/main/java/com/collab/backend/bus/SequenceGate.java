@@ -0,0 +1,44 @@
+package com.collab.backend.bus;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Delivers one (document, origin) stream in sequence order: duplicates are dropped and
+ * events that arrive early wait for the gap to fill. If the gap never fills the backlog is
+ * released in order once it holds more than {@code maxPending} events. A new incarnation of
+ * the document on the origin starts the stream over from its first event.
+ */
+class SequenceGate {
+    private final int maxPending;
+    private final Consumer<DocumentEvent> sink;
+    private final TreeMap<Long, DocumentEvent> pending = new TreeMap<>();
+    private long incarnation;
+    private long lastDelivered = -1;
+
+    SequenceGate(int maxPending, Consumer<DocumentEvent> sink) {
+        this.maxPending = maxPending;
+        this.sink = sink;
+    }
+
+    synchronized void offer(DocumentEvent event) {
+        if (lastDelivered < 0 || event.incarnation() != incarnation) {
+            // first event seen, or the origin loaded the document again
+            incarnation = event.incarnation();
+            lastDelivered = event.sequence() - 1;
+            pending.clear();
+        }
+        if (event.sequence() <= lastDelivered) {
+            return;
+        }
+        pending.put(event.sequence(), event);
+
+        while (!pending.isEmpty()
+                && (pending.firstKey() == lastDelivered + 1 || pending.size() > maxPending)) {
+            Map.Entry<Long, DocumentEvent> next = pending.pollFirstEntry();
+            lastDelivered = next.getKey();
+            sink.accept(next.getValue());
+        }
+    }
+}
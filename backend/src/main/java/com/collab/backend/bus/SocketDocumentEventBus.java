@@ -0,0 +1,255 @@
+package com.collab.backend.bus;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Bus between backend processes on the same host, over Unix domain sockets. Each node listens
+ * on {@code <socketDir>/collab-bus-<port>.sock} and keeps one outbound connection per peer.
+ *
+ * Events are queued only for the peers the publisher names, the nodes that hold the document.
+ * Events queued for a peer are drained into batches and written as length-prefixed JSON
+ * frames by a single sender, so per-document order is preserved. A batch is only dropped
+ * from the queue once it was written; after a reconnect it is sent again and the receiver
+ * discards the duplicates by sequence number. Each peer's queue holds at most
+ * {@code maxQueuedEvents}; past that, and while the peer is out of the ring, events for it are
+ * dropped and its replicas fetch what they missed from the owner's log.
+ */
+public class SocketDocumentEventBus implements DocumentEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(SocketDocumentEventBus.class);
+
+    private static final TypeReference<List<DocumentEvent>> BATCH_TYPE = new TypeReference<>() {};
+    private static final long RECONNECT_DELAY_MS = 500;
+    private static final int MAX_PENDING_PER_STREAM = 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path socketDir;
+    private final String self;
+    private final List<String> peers;
+    private final int maxBatchSize;
+    private final int maxQueuedEvents;
+
+    private final List<Consumer<DocumentEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, PeerLink> links = new ConcurrentHashMap<>();
+    // By document, then by origin node
+    private final Map<String, Map<String, SequenceGate>> gates = new ConcurrentHashMap<>();
+
+    private ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    public SocketDocumentEventBus(Path socketDir, String self, List<String> peers, int maxBatchSize, int maxQueuedEvents) {
+        this.socketDir = socketDir;
+        this.self = self;
+        this.peers = peers;
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueuedEvents = maxQueuedEvents;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Path socketPath = socketPathFor(self);
+        Files.deleteIfExists(socketPath);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Thread.ofVirtual().name("document-bus-accept").start(this::acceptLoop);
+
+        for (String peer : peers) {
+            PeerLink link = new PeerLink(peer);
+            links.put(peer, link);
+            Thread.ofVirtual().name("document-bus-send-" + peer).start(link::sendLoop);
+        }
+        logger.info("Document bus listening on {} with peers {}", socketPath, peers);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        if (server != null) {
+            server.close();
+        }
+        links.values().forEach(PeerLink::close);
+        Files.deleteIfExists(socketPathFor(self));
+    }
+
+    @Override
+    public void publish(DocumentEvent event, Set<String> nodes) {
+        for (String node : nodes) {
+            PeerLink link = links.get(node);
+            if (link != null) {
+                link.offer(event);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<DocumentEvent> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void forgetDocument(String documentId) {
+        gates.remove(documentId);
+    }
+
+    // Peers outside the live set stop queueing, and lose what they had queued, until they are back
+    public void updateLivePeers(Set<String> liveNodes) {
+        links.forEach((peer, link) -> link.setDown(!liveNodes.contains(peer)));
+    }
+
+    public int getQueuedEventCount() {
+        return links.values().stream().mapToInt(link -> link.queue.size()).sum();
+    }
+
+    private Path socketPathFor(String node) {
+        return socketDir.resolve("collab-bus-" + URI.create(node).getPort() + ".sock");
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                Thread.ofVirtual().name("document-bus-receive").start(() -> receiveLoop(channel));
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Document bus accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void receiveLoop(SocketChannel channel) {
+        try (channel; DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            while (running) {
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                for (DocumentEvent event : objectMapper.readValue(frame, BATCH_TYPE)) {
+                    gates.computeIfAbsent(event.documentId(), _ -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(event.originNode(), _ -> new SequenceGate(MAX_PENDING_PER_STREAM, this::deliver))
+                            .offer(event);
+                }
+            }
+        } catch (EOFException e) {
+            // peer closed the connection
+        } catch (IOException e) {
+            if (running) {
+                logger.warn("Document bus receive failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void deliver(DocumentEvent event) {
+        for (Consumer<DocumentEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                logger.error("Document event listener failed for {}", event.documentId(), e);
+            }
+        }
+    }
+
+    private class PeerLink {
+        private final String peer;
+        private final BlockingQueue<DocumentEvent> queue = new LinkedBlockingQueue<>(maxQueuedEvents);
+        private volatile boolean down;
+        private volatile boolean overflowing;
+        private SocketChannel channel;
+        private DataOutputStream out;
+
+        PeerLink(String peer) {
+            this.peer = peer;
+        }
+
+        void offer(DocumentEvent event) {
+            if (down) return;
+            if (queue.offer(event)) {
+                overflowing = false;
+            } else if (!overflowing) {
+                overflowing = true;
+                logger.warn("Document bus queue for {} is full, dropping events", peer);
+            }
+        }
+
+        void setDown(boolean down) {
+            if (down && !this.down) {
+                logger.info("Document bus dropping {} events queued for {}", queue.size(), peer);
+            }
+            this.down = down;
+            if (down) {
+                queue.clear();
+            }
+        }
+
+        void sendLoop() {
+            List<DocumentEvent> batch = new ArrayList<>();
+            while (running) {
+                try {
+                    if (batch.isEmpty()) {
+                        batch.add(queue.take());
+                        queue.drainTo(batch, maxBatchSize - 1);
+                    }
+                    if (down) {
+                        // A batch taken before the peer left, or being retried
+                        batch.clear();
+                        continue;
+                    }
+                    ensureConnected();
+                    byte[] frame = objectMapper.writeValueAsBytes(batch);
+                    out.writeInt(frame.length);
+                    out.write(frame);
+                    out.flush();
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    close();
+                    sleepQuietly(RECONNECT_DELAY_MS);
+                }
+            }
+        }
+
+        private void ensureConnected() throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPathFor(peer)));
+                out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                logger.info("Document bus connected to {}", peer);
+            }
+        }
+
+        void close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ignored) {
+                // already closed
+            }
+            channel = null;
+        }
+
+        private void sleepQuietly(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
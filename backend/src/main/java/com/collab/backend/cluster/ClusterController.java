@@ -0,0 +1,132 @@
+package com.collab.backend.cluster;
+
+import com.collab.backend.jfr.DocumentLifecycleEvent;
+import com.collab.backend.models.DocumentSnapshot;
+import com.collab.backend.models.OperationLog;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.models.DocumentModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class ClusterController {
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private ReplicaManager replicaManager;
+
+    @Autowired
+    private DocumentSubscribers documentSubscribers;
+
+    @Value("${viewer.serve-from-replica:false}")
+    private boolean serveViewersFromReplica;
+
+    @GetMapping("/cluster/ping")
+    public String ping() {
+        return "ok";
+    }
+
+    @GetMapping("/cluster/nodes")
+    public String nodes() {
+        return "self: " + clusterMembership.getSelf() +
+                ", live: " + String.join(" ", clusterMembership.getRing().getNodes());
+    }
+
+    // Picks a shard key for a new document; the client then creates it on the returned node
+    @GetMapping("/route/allocate")
+    public String allocate() {
+        String shardKey = DocumentService.randomShardKey();
+        return "shardKey: " + shardKey + ", node: " + clusterMembership.ownerOf(shardKey);
+    }
+
+    // Accepts a document id, view code or edit code
+    @GetMapping("/route/{key}")
+    public String route(@PathVariable String key) {
+        return "node: " + clusterMembership.ownerOf(DocumentService.shardKeyOf(key));
+    }
+
+    // Viewers may be sent to the owner's successor, which serves them from a replica
+    @GetMapping("/route/viewer/{key}")
+    public String routeViewer(@PathVariable String key) {
+        String shardKey = DocumentService.shardKeyOf(key);
+        String node = serveViewersFromReplica ? clusterMembership.successorOf(shardKey) : clusterMembership.ownerOf(shardKey);
+        return "node: " + node;
+    }
+
+    // A node loading a replica names itself as subscriber, so events published after the snapshot reach it
+    @GetMapping("/cluster/documents/{documentId}")
+    public ResponseEntity<DocumentSnapshot> snapshot(@PathVariable String documentId,
+                                                     @RequestParam(required = false) String subscriber) {
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (subscriber != null) {
+            documentSubscribers.subscribe(documentId, subscriber);
+        }
+        synchronized (doc.getCrdtTree()) {
+            return ResponseEntity.ok(DocumentSnapshot.of(doc));
+        }
+    }
+
+    // Batches after the given sequence; 410 once the log has evicted some of them
+    @GetMapping("/cluster/documents/{documentId}/operations")
+    public ResponseEntity<List<OperationLog.Entry>> operations(@PathVariable String documentId, @RequestParam long after) {
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<OperationLog.Entry> entries = doc.getOperationLog().since(after);
+        if (entries == null) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        return ResponseEntity.ok(entries);
+    }
+
+    // A replica holder moving its subscription to this node, the document's new owner
+    @PutMapping("/cluster/documents/{documentId}/subscribers")
+    public String subscribe(@PathVariable String documentId, @RequestParam String node) {
+        documentSubscribers.subscribe(documentId, node);
+        return "subscribed: " + node;
+    }
+
+    @DeleteMapping("/cluster/documents/{documentId}/subscribers")
+    public String unsubscribe(@PathVariable String documentId, @RequestParam String node) {
+        documentSubscribers.unsubscribe(documentId, node);
+        return "unsubscribed: " + node;
+    }
+
+    @GetMapping("/cluster/replicas")
+    public Map<String, Long> replicas() {
+        return replicaManager.replicaSequences();
+    }
+
+    // Receives a snapshot from the owner of a document this node follows
+    @PostMapping("/cluster/replicas")
+    public String installReplica(@RequestBody DocumentSnapshot snapshot) {
+        DocumentModel replica = replicaManager.installReplica(snapshot);
+        return "replica: " + replica.getId() + ", sequence: " + replica.getSequence();
+    }
+
+    // Receives a document handed over by a node that no longer owns it
+    @PostMapping("/cluster/documents")
+    public String installDocument(@RequestBody DocumentSnapshot snapshot) {
+        DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+        event.begin();
+        DocumentModel doc = snapshot.toDocument();
+        documentService.installDocument(doc);
+        event.record(doc, "TRANSFER");
+        return "installed: " + snapshot.id();
+    }
+}
@@ -0,0 +1,165 @@
+package com.collab.backend.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.collab.backend.config.SchedulingConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Tracks which configured backend nodes are alive and keeps the hash ring built from them.
+ * Peers start out absent and join the ring after their first successful ping, so a node that
+ * starts alone owns every document until its peers are reachable.
+ */
+@Component
+public class ClusterMembership {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final String self;
+    private final List<String> peers;
+    private final int virtualNodes;
+    private final int failureThreshold;
+    private final Duration pingTimeout;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    private final Map<String, Integer> consecutiveFailures = new ConcurrentHashMap<>();
+    private final Set<String> liveNodes = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<ConsistentHashRing>> ringListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    @Qualifier(SchedulingConfig.CLUSTER_SCHEDULER)
+    private ThreadPoolTaskScheduler clusterScheduler;
+
+    private volatile ConsistentHashRing ring;
+
+    public ClusterMembership(
+            @Value("${cluster.self:http://localhost:${server.port:8081}}") String self,
+            @Value("${cluster.nodes:}") List<String> nodes,
+            @Value("${cluster.virtual-nodes:64}") int virtualNodes,
+            @Value("${cluster.failure-threshold:2}") int failureThreshold,
+            @Value("${cluster.ping-timeout-ms:500}") long pingTimeoutMs) {
+        this.self = normalize(self);
+        this.peers = nodes.stream()
+                .map(ClusterMembership::normalize)
+                .filter(node -> !node.isEmpty() && !node.equals(this.self))
+                .distinct()
+                .toList();
+        this.virtualNodes = virtualNodes;
+        this.failureThreshold = failureThreshold;
+        this.pingTimeout = Duration.ofMillis(pingTimeoutMs);
+
+        liveNodes.add(this.self);
+        rebuildRing();
+        logger.info("Cluster node {} with peers {}", this.self, peers);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public String ownerOf(String shardKey) {
+        return ring.ownerOf(shardKey);
+    }
+
+    // The next node after the owner, or the owner itself on a single-node ring
+    public String successorOf(String shardKey) {
+        List<String> preference = ring.preferenceList(shardKey, 2);
+        return preference.isEmpty() ? null : preference.get(preference.size() - 1);
+    }
+
+    public boolean isOwner(String shardKey) {
+        return self.equals(ownerOf(shardKey));
+    }
+
+    public Set<String> getLiveNodes() {
+        return Collections.unmodifiableSet(liveNodes);
+    }
+
+    public void addRingListener(Consumer<ConsistentHashRing> listener) {
+        ringListeners.add(listener);
+    }
+
+    // On the cluster scheduler, so follower sync and handovers never delay failure detection
+    @Scheduled(fixedDelayString = "${cluster.ping-interval-ms:1000}", scheduler = SchedulingConfig.CLUSTER_SCHEDULER)
+    public void checkPeers() {
+        boolean changed = false;
+        for (String peer : peers) {
+            if (ping(peer)) {
+                consecutiveFailures.remove(peer);
+                if (liveNodes.add(peer)) {
+                    logger.info("Node {} joined the ring", peer);
+                    changed = true;
+                }
+            } else {
+                int failures = consecutiveFailures.merge(peer, 1, Integer::sum);
+                if (failures >= failureThreshold && liveNodes.remove(peer)) {
+                    logger.warn("Node {} left the ring after {} failed pings", peer, failures);
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            rebuildRing();
+            ConsistentHashRing current = ring;
+            // Listeners hand documents over; the next ping round does not wait for them
+            for (Consumer<ConsistentHashRing> listener : ringListeners) {
+                clusterScheduler.execute(() -> {
+                    try {
+                        listener.accept(current);
+                    } catch (RuntimeException e) {
+                        logger.error("Ring listener failed", e);
+                    }
+                });
+            }
+        }
+    }
+
+    private boolean ping(String node) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(node + "/cluster/ping"))
+                    .timeout(pingTimeout)
+                    .GET()
+                    .build();
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void rebuildRing() {
+        List<String> nodes = new ArrayList<>(liveNodes);
+        Collections.sort(nodes);
+        ring = new ConsistentHashRing(nodes, virtualNodes);
+    }
+
+    private static String normalize(String node) {
+        String trimmed = node.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,69 @@
+package com.collab.backend.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable hash ring. Every node is placed {@code virtualNodes} times so keys spread evenly,
+ * and removing a node only moves the keys it owned to its successors.
+ */
+public class ConsistentHashRing {
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = List.copyOf(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public String ownerOf(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // Owner first, then the next distinct nodes clockwise
+    public List<String> preferenceList(String key, int count) {
+        List<String> result = new ArrayList<>();
+        long h = hash(key);
+        for (String node : ring.tailMap(h, true).values()) {
+            if (result.size() == count) return result;
+            if (!result.contains(node)) result.add(node);
+        }
+        for (String node : ring.headMap(h, false).values()) {
+            if (result.size() == count) return result;
+            if (!result.contains(node)) result.add(node);
+        }
+        return result;
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.collab.backend.cluster;
+
+import com.collab.backend.config.SchedulingConfig;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.DocumentSnapshot;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.websocket.CrdtWebSocketHandler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands documents to their new owner when the ring changes. Sessions are closed first, and new
+ * ones refused until the handover is over, so clients re-route and reconnect to the new owner
+ * instead of editing a copy about to be dropped. Operations relayed from other nodes can still
+ * land while a snapshot is in flight, so the document is only removed once the last snapshot
+ * sent holds every applied batch. Transfers that fail are retried by the periodic sweep.
+ */
+@Component
+public class DocumentRebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRebalancer.class);
+
+    // Snapshots sent before giving up until the next sweep when relayed edits keep arriving
+    private static final int MAX_TRANSFER_ATTEMPTS = 3;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private CrdtWebSocketHandler crdtWebSocketHandler;
+
+    @Value("${cluster.transfer-timeout-ms:10000}")
+    private long transferTimeoutMs;
+
+    @PostConstruct
+    public void registerRingListener() {
+        clusterMembership.addRingListener(_ -> rebalance());
+    }
+
+    @Scheduled(fixedDelayString = "${cluster.rebalance-interval-ms:5000}", scheduler = SchedulingConfig.CLUSTER_SCHEDULER)
+    public synchronized void rebalance() {
+        List<DocumentModel> misplaced = new ArrayList<>();
+        for (DocumentModel doc : documentService.getDocuments()) {
+            if (!doc.isReplica() && !clusterMembership.isOwner(DocumentService.shardKeyOf(doc.getId()))) {
+                misplaced.add(doc);
+            }
+        }
+
+        for (DocumentModel doc : misplaced) {
+            String owner = clusterMembership.ownerOf(DocumentService.shardKeyOf(doc.getId()));
+            crdtWebSocketHandler.beginHandover(doc.getId());
+            try {
+                crdtWebSocketHandler.closeDocumentSessions(doc.getId(), CrdtWebSocketHandler.DOCUMENT_MOVED);
+                if (handOver(doc, owner)) {
+                    logger.info("Moved {} to {}", doc.getId(), owner);
+                }
+            } finally {
+                crdtWebSocketHandler.endHandover(doc.getId());
+            }
+        }
+    }
+
+    // Removes the document once the owner holds a snapshot as recent as this node's copy
+    private boolean handOver(DocumentModel doc, String owner) {
+        for (int attempt = 0; attempt < MAX_TRANSFER_ATTEMPTS; attempt++) {
+            long sequence;
+            String body;
+            try {
+                synchronized (doc.getCrdtTree()) {
+                    sequence = doc.getSequence();
+                    body = objectMapper.writeValueAsString(DocumentSnapshot.of(doc));
+                }
+            } catch (Exception e) {
+                logger.warn("Could not snapshot {}: {}", doc.getId(), e.getMessage());
+                return false;
+            }
+            if (!transfer(doc, owner, body)) {
+                return false;
+            }
+            synchronized (doc.getCrdtTree()) {
+                if (doc.getSequence() == sequence) {
+                    documentService.removeDocument(doc);
+                    return true;
+                }
+            }
+        }
+        logger.warn("Transfer of {} to {} kept falling behind; retrying on the next sweep", doc.getId(), owner);
+        return false;
+    }
+
+    private boolean transfer(DocumentModel doc, String owner, String body) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(owner + "/cluster/documents"))
+                    .timeout(Duration.ofMillis(transferTimeoutMs))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 == 2) {
+                return true;
+            }
+            logger.warn("Transfer of {} to {} failed: {} {}", doc.getId(), owner, response.statusCode(), response.body());
+        } catch (Exception e) {
+            logger.warn("Transfer of {} to {} failed: {}", doc.getId(), owner, e.getMessage());
+        }
+        return false;
+    }
+}
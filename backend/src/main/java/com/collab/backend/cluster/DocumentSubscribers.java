@@ -0,0 +1,62 @@
+package com.collab.backend.cluster;
+
+import com.collab.backend.service.DocumentService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Nodes the events of a document are published to: its owner and the owner's successor, which
+ * always hold it, plus the nodes that loaded a replica for their own viewers. Those subscribe
+ * with the owner when they fetch the snapshot, again when the owner changes, and unsubscribe
+ * when they drop the replica. Subscriptions of nodes that left the ring, and of documents this
+ * node no longer owns, are forgotten on every ring change.
+ */
+@Component
+public class DocumentSubscribers {
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    private final Map<String, Set<String>> subscribers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerRingListener() {
+        clusterMembership.addRingListener(_ -> onRingChanged());
+    }
+
+    public void subscribe(String documentId, String node) {
+        subscribers.computeIfAbsent(documentId, _ -> ConcurrentHashMap.newKeySet()).add(node);
+    }
+
+    public void unsubscribe(String documentId, String node) {
+        subscribers.computeIfPresent(documentId, (_, nodes) -> {
+            nodes.remove(node);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    // Every node but this one that should receive the document's events
+    public Set<String> targetsOf(String documentId) {
+        Set<String> targets = new HashSet<>(clusterMembership.getRing().preferenceList(DocumentService.shardKeyOf(documentId), 2));
+        targets.addAll(subscribers.getOrDefault(documentId, Set.of()));
+        targets.remove(clusterMembership.getSelf());
+        return targets;
+    }
+
+    private void onRingChanged() {
+        Set<String> live = clusterMembership.getLiveNodes();
+        subscribers.keySet().removeIf(documentId -> !clusterMembership.isOwner(DocumentService.shardKeyOf(documentId)));
+        for (String documentId : subscribers.keySet()) {
+            subscribers.computeIfPresent(documentId, (_, nodes) -> {
+                nodes.retainAll(live);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.collab.backend.cluster;
+
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.jfr.CrdtApplyEvent;
+import com.collab.backend.jfr.DocumentLifecycleEvent;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.DocumentSnapshot;
+import com.collab.backend.models.OperationLog;
+import com.collab.backend.models.UserModel;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.websocket.ViewerFanout;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only replicas of documents owned by other nodes. A replica starts from the owner's
+ * snapshot (which carries the owner's sequence number) and is then kept current by the event
+ * bus; when the bus skips a sequence number the missing batches are fetched from the owner's
+ * operation log, or the whole snapshot is loaded again if the log no longer has them.
+ *
+ * The owner's ring successor always holds a replica (pushed by {@link ReplicationManager}).
+ * When the owner leaves the ring the successor becomes the owner of its keys, and the replica
+ * is promoted in place. Other nodes holding a replica for their viewers subscribe with the owner,
+ * see {@link DocumentSubscribers}.
+ */
+@Component
+public class ReplicaManager {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaManager.class);
+
+    private static final TypeReference<List<OperationLog.Entry>> ENTRIES_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private ViewerFanout viewerFanout;
+
+    @PostConstruct
+    public void registerRingListener() {
+        clusterMembership.addRingListener(_ -> onRingChanged());
+    }
+
+    public synchronized DocumentModel loadReplica(String documentId) {
+        DocumentModel existing = documentService.getDocumentById(documentId);
+        if (existing != null && !existing.isReplica()) {
+            return existing;
+        }
+
+        String owner = clusterMembership.ownerOf(DocumentService.shardKeyOf(documentId));
+        if (owner == null || owner.equals(clusterMembership.getSelf())) {
+            return existing;
+        }
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(
+                            owner + "/cluster/documents/" + documentId + "?subscriber=" + selfParam()))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                logger.warn("Could not load replica of {} from {}: {}", documentId, owner, response.statusCode());
+                return existing;
+            }
+            return installReplica(objectMapper.readValue(response.body(), DocumentSnapshot.class));
+        } catch (Exception e) {
+            logger.warn("Could not load replica of {} from {}: {}", documentId, owner, e.getMessage());
+            return existing;
+        }
+    }
+
+    // Snapshot pushed by the owner, or fetched by loadReplica; never replaces a newer copy
+    public synchronized DocumentModel installReplica(DocumentSnapshot snapshot) {
+        DocumentModel existing = documentService.getDocumentById(snapshot.id());
+        if (existing != null && !existing.isReplica()) {
+            return existing;
+        }
+        if (existing != null && existing.getSequence() >= snapshot.sequence()) {
+            // Content is already current; only take over the members
+            snapshot.userRoles().forEach((userId, role) -> existing.getUsers().putIfAbsent(userId, new UserModel(userId, role)));
+            existing.getUsers().keySet().retainAll(snapshot.userRoles().keySet());
+            return existing;
+        }
+
+        DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+        event.begin();
+        DocumentModel replica = snapshot.toDocument();
+        replica.setReplica(true);
+        if (existing != null) {
+            documentService.removeDocument(existing);
+        }
+        documentService.installDocument(replica);
+        event.record(replica, "REPLICA");
+        logger.info("Installed replica of {} at sequence {}", snapshot.id(), replica.getSequence());
+        return replica;
+    }
+
+    // The bus skipped a sequence number: fetch the missing batches from the owner's log
+    public synchronized void catchUp(String documentId) {
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null || !doc.isReplica()) return;
+
+        String owner = clusterMembership.ownerOf(DocumentService.shardKeyOf(documentId));
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(
+                            owner + "/cluster/documents/" + documentId + "/operations?after=" + doc.getSequence()))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                loadReplica(documentId);
+                return;
+            }
+
+            CrdtTree tree = doc.getCrdtTree();
+            synchronized (tree) {
+                for (OperationLog.Entry entry : objectMapper.readValue(response.body(), ENTRIES_TYPE)) {
+                    if (entry.sequence() != doc.getSequence() + 1) continue;
+                    CrdtApplyEvent applyEvent = new CrdtApplyEvent();
+                    applyEvent.begin();
+                    entry.operations().forEach(tree::applyOperation);
+                    doc.getWords().update(entry.operations());
+                    applyEvent.record(documentId, "CATCH_UP", entry.operations(), tree.getNodeCount());
+                    doc.recordReplicated(entry.sequence(), entry.operations());
+                }
+            }
+            viewerFanout.markChanged(documentId);
+        } catch (Exception e) {
+            logger.warn("Could not catch up replica of {} from {}: {}", documentId, owner, e.getMessage());
+        }
+    }
+
+    // Sequence number of every replica this node holds, reported to the owners for lag tracking
+    public Map<String, Long> replicaSequences() {
+        Map<String, Long> sequences = new LinkedHashMap<>();
+        for (DocumentModel doc : documentService.getDocuments()) {
+            if (doc.isReplica()) {
+                sequences.put(doc.getId(), doc.getSequence());
+            }
+        }
+        return sequences;
+    }
+
+    // Drops a replica nobody needs: not read by viewers and not held as the owner's follower
+    public synchronized void releaseReplica(DocumentModel doc) {
+        String shardKey = DocumentService.shardKeyOf(doc.getId());
+        if (doc.isReplica() && !viewerFanout.hasViewers(doc.getId())
+                && !clusterMembership.getSelf().equals(clusterMembership.successorOf(shardKey))) {
+            documentService.removeDocument(doc);
+            updateSubscription(doc.getId(), "DELETE");
+        }
+    }
+
+    private synchronized void onRingChanged() {
+        List<DocumentModel> replicas = new ArrayList<>();
+        for (DocumentModel doc : documentService.getDocuments()) {
+            if (doc.isReplica()) {
+                replicas.add(doc);
+            }
+        }
+
+        for (DocumentModel doc : replicas) {
+            if (clusterMembership.isOwner(DocumentService.shardKeyOf(doc.getId()))) {
+                synchronized (doc.getCrdtTree()) {
+                    doc.setReplica(false);
+                }
+                logger.info("Promoted replica of {} at sequence {}", doc.getId(), doc.getSequence());
+            } else {
+                releaseReplica(doc);
+                if (documentService.getDocumentById(doc.getId()) == doc) {
+                    // The owner may have changed, and the new one does not know this node reads the document
+                    updateSubscription(doc.getId(), "PUT");
+                }
+            }
+        }
+    }
+
+    // Best effort: a replica that misses events only notices on the next one it does get
+    private void updateSubscription(String documentId, String method) {
+        String owner = clusterMembership.ownerOf(DocumentService.shardKeyOf(documentId));
+        if (owner == null || owner.equals(clusterMembership.getSelf())) return;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(
+                            owner + "/cluster/documents/" + documentId + "/subscribers?node=" + selfParam()))
+                    .method(method, HttpRequest.BodyPublishers.noBody())
+                    .build();
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (Exception e) {
+            logger.warn("Could not update subscription to {} at {}: {}", documentId, owner, e.getMessage());
+        }
+    }
+
+    private String selfParam() {
+        return URLEncoder.encode(clusterMembership.getSelf(), StandardCharsets.UTF_8);
+    }
+}
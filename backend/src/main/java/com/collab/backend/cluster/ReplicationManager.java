@@ -0,0 +1,170 @@
+package com.collab.backend.cluster;
+
+import com.collab.backend.config.SchedulingConfig;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.DocumentSnapshot;
+import com.collab.backend.service.DocumentService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owner side of primary–follower replication. Each owned document is followed by the owner's
+ * ring successor. Operations reach the follower asynchronously over the document event bus;
+ * this sweep asks every follower which sequence it holds, pushes a snapshot for documents it
+ * is missing or whose members changed (joins do not travel over the bus), and publishes how
+ * far the slowest follower is behind as {@code collab.replication.lag}. The sequences followers
+ * report also tell compaction when tombstones can go, see {@link #isReplicatedThrough}.
+ */
+@Component
+public class ReplicationManager {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationManager.class);
+
+    private static final TypeReference<Map<String, Long>> SEQUENCES_TYPE = new TypeReference<>() {};
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(2);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private DocumentService documentService;
+
+    // Hash of the member ids and comment version last pushed per document; neither moves the sequence
+    private final Map<String, Integer> replicatedMembers = new ConcurrentHashMap<>();
+
+    private record Acknowledged(String follower, long sequence) {}
+
+    // Sequence each owned document's follower reported in the last sweep that reached it
+    private final Map<String, Acknowledged> acknowledged = new ConcurrentHashMap<>();
+
+    private volatile long maxLag;
+    private volatile long unreplicatedDocuments;
+
+    public ReplicationManager(MeterRegistry meterRegistry) {
+        Gauge.builder("collab.replication.lag", this, m -> m.maxLag)
+                .description("Operations the slowest follower is behind its owner, over all owned documents")
+                .baseUnit("operations")
+                .register(meterRegistry);
+        Gauge.builder("collab.replication.unreplicated", this, m -> m.unreplicatedDocuments)
+                .description("Owned documents whose follower holds no replica yet")
+                .baseUnit("documents")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${replication.sync-interval-ms:500}", scheduler = SchedulingConfig.CLUSTER_SCHEDULER)
+    public void syncFollowers() {
+        Map<String, List<DocumentModel>> byFollower = new HashMap<>();
+        for (DocumentModel doc : documentService.getDocuments()) {
+            if (doc.isReplica()) continue;
+            String follower = clusterMembership.successorOf(DocumentService.shardKeyOf(doc.getId()));
+            if (follower != null && !follower.equals(clusterMembership.getSelf())) {
+                byFollower.computeIfAbsent(follower, _ -> new ArrayList<>()).add(doc);
+            }
+        }
+
+        List<String> followed = byFollower.values().stream().flatMap(List::stream).map(DocumentModel::getId).toList();
+        replicatedMembers.keySet().retainAll(followed);
+        acknowledged.keySet().retainAll(followed);
+
+        long lag = 0;
+        long unreplicated = 0;
+        for (Map.Entry<String, List<DocumentModel>> entry : byFollower.entrySet()) {
+            String follower = entry.getKey();
+            Map<String, Long> followerSequences = fetchSequences(follower);
+            if (followerSequences == null) continue;
+
+            for (DocumentModel doc : entry.getValue()) {
+                Long followerSequence = followerSequences.get(doc.getId());
+                int members = Objects.hash(doc.getUsers().keySet(), doc.getComments().getVersion());
+                if (followerSequence == null) {
+                    unreplicated++;
+                    lag = Math.max(lag, doc.getSequence());
+                } else {
+                    lag = Math.max(lag, doc.getSequence() - followerSequence);
+                    acknowledged.put(doc.getId(), new Acknowledged(follower, followerSequence));
+                }
+                if (followerSequence == null || !Integer.valueOf(members).equals(replicatedMembers.get(doc.getId()))) {
+                    if (pushSnapshot(doc, follower)) {
+                        replicatedMembers.put(doc.getId(), members);
+                    }
+                }
+            }
+        }
+        maxLag = lag;
+        unreplicatedDocuments = unreplicated;
+    }
+
+    /**
+     * True if the document's current follower has reported holding every batch up to sequence,
+     * or if it has no follower. Until then its replica may still receive operations naming nodes
+     * the owner holds only as tombstones.
+     */
+    public boolean isReplicatedThrough(DocumentModel doc, long sequence) {
+        String follower = clusterMembership.successorOf(DocumentService.shardKeyOf(doc.getId()));
+        if (follower == null || follower.equals(clusterMembership.getSelf())) return true;
+        Acknowledged ack = acknowledged.get(doc.getId());
+        return ack != null && ack.follower().equals(follower) && ack.sequence() >= sequence;
+    }
+
+    private Map<String, Long> fetchSequences(String follower) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(follower + "/cluster/replicas"))
+                    .timeout(REQUEST_TIMEOUT)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return objectMapper.readValue(response.body(), SEQUENCES_TYPE);
+            }
+            logger.warn("Follower {} answered {} for its replicas", follower, response.statusCode());
+        } catch (Exception e) {
+            logger.warn("Could not reach follower {}: {}", follower, e.getMessage());
+        }
+        return null;
+    }
+
+    private boolean pushSnapshot(DocumentModel doc, String follower) {
+        try {
+            String body;
+            synchronized (doc.getCrdtTree()) {
+                body = objectMapper.writeValueAsString(DocumentSnapshot.of(doc));
+            }
+            HttpRequest request = HttpRequest.newBuilder(URI.create(follower + "/cluster/replicas"))
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 == 2) {
+                return true;
+            }
+            logger.warn("Replication of {} to {} failed: {} {}", doc.getId(), follower, response.statusCode(), response.body());
+        } catch (Exception e) {
+            logger.warn("Replication of {} to {} failed: {}", doc.getId(), follower, e.getMessage());
+        }
+        return false;
+    }
+}
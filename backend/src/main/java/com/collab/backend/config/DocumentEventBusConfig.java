@@ -0,0 +1,34 @@
+package com.collab.backend.config;
+
+import com.collab.backend.bus.DocumentEventBus;
+import com.collab.backend.bus.LoopbackDocumentEventBus;
+import com.collab.backend.bus.SocketDocumentEventBus;
+import com.collab.backend.cluster.ClusterMembership;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class DocumentEventBusConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "bus.type", havingValue = "loopback", matchIfMissing = true)
+    public DocumentEventBus loopbackDocumentEventBus() {
+        return new LoopbackDocumentEventBus();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "bus.type", havingValue = "socket")
+    public DocumentEventBus socketDocumentEventBus(ClusterMembership clusterMembership,
+                                                   @Value("${bus.socket-dir:${java.io.tmpdir}}") String socketDir,
+                                                   @Value("${bus.max-batch-size:256}") int maxBatchSize,
+                                                   @Value("${bus.max-queued-events:65536}") int maxQueuedEvents) {
+        SocketDocumentEventBus bus = new SocketDocumentEventBus(Path.of(socketDir), clusterMembership.getSelf(),
+                clusterMembership.getPeers(), maxBatchSize, maxQueuedEvents);
+        clusterMembership.addRingListener(_ -> bus.updateLivePeers(clusterMembership.getLiveNodes()));
+        return bus;
+    }
+}
@@ -0,0 +1,33 @@
+package com.collab.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Two schedulers: the default one for short in-process tasks (viewer batches, held messages,
+ * presence, quotas), sized by {@code spring.task.scheduling.pool.size}, and one for calls to
+ * other nodes (pings, follower sync, handovers), which block for up to their timeouts and
+ * would otherwise hold up everything else.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String CLUSTER_SCHEDULER = "clusterScheduler";
+
+    // Boot's own taskScheduler backs off once another TaskScheduler bean exists; this keeps it,
+    // still configured from spring.task.scheduling.*
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    // One thread per periodic cluster task, and one for handovers started by ring changes
+    @Bean(CLUSTER_SCHEDULER)
+    public ThreadPoolTaskScheduler clusterScheduler(ThreadPoolTaskSchedulerBuilder builder,
+                                                    @Value("${cluster.io-threads:4}") int threads) {
+        return builder.poolSize(threads).threadNamePrefix("cluster-io-").build();
+    }
+}
@@ -1,6 +1,7 @@
 package com.collab.backend.config;
 
 import com.collab.backend.websocket.CrdtWebSocketHandler;
+import com.collab.backend.websocket.ViewerWebSocketHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,10 +30,12 @@ public class WebSocketConfig implements WebSocketConfigurer {
     private String contextPath;
 
     private final CrdtWebSocketHandler crdtWebSocketHandler;
+    private final ViewerWebSocketHandler viewerWebSocketHandler;
 
     @Autowired
-    public WebSocketConfig(CrdtWebSocketHandler crdtWebSocketHandler) {
+    public WebSocketConfig(CrdtWebSocketHandler crdtWebSocketHandler, ViewerWebSocketHandler viewerWebSocketHandler) {
         this.crdtWebSocketHandler = crdtWebSocketHandler;
+        this.viewerWebSocketHandler = viewerWebSocketHandler;
         logger.info("WebSocketConfig initialized with handler: {}", crdtWebSocketHandler.getClass().getName());
     }
 
@@ -46,6 +49,10 @@ public class WebSocketConfig implements WebSocketConfigurer {
                 .addInterceptors(documentHandshakeInterceptor())
                 .setAllowedOrigins("*");
 
+        registry.addHandler(viewerWebSocketHandler, "/view/{documentId}")
+                .addInterceptors(documentHandshakeInterceptor())
+                .setAllowedOrigins("*");
+
         logger.info("WebSocket handler registration complete");
     }
 
@@ -85,8 +92,8 @@ public class WebSocketConfig implements WebSocketConfigurer {
                     attributes.put("userId", userId);
                     logger.info("Extracted userId from query: {}", userId);
                 } else {
-                    attributes.put("userId", "anonymous-user");
-                    logger.warn("No userId found in query. Using 'anonymous-user'");
+                    // Shared connections attach their users with ATTACH messages
+                    logger.info("No userId in query; users attach over the connection");
                 }
     
                 return super.beforeHandshake(request, response, wsHandler, attributes);
@@ -0,0 +1,71 @@
+package com.collab.backend.controller;
+
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.MemoryFootprint;
+import com.collab.backend.ratelimit.RateLimiter;
+import com.collab.backend.service.AdmissionController;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.service.QuotaEnforcer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.List;
+
+// Operator views of this node; not meant to be exposed beyond the cluster network
+@RestController
+public class AdminController {
+
+    public record DocumentUsage(String documentId, long totalBytes, MemoryFootprint footprint,
+                                int length, int nodes, int connections, boolean replica, boolean overQuota) {
+        static DocumentUsage of(DocumentModel doc) {
+            MemoryFootprint footprint = doc.getFootprint();
+            return new DocumentUsage(doc.getId(), footprint.total(), footprint,
+                    doc.getCrdtTree().getVisibleLength(), doc.getCrdtTree().getNodeCount(),
+                    doc.getConnections(), doc.isReplica(), doc.isOverQuota());
+        }
+    }
+
+    public record MemoryReport(int documents, int evicted, long totalBytes, long quotaBytes, List<DocumentUsage> top) {}
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private QuotaEnforcer quotaEnforcer;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    // Documents in memory ranked by estimated footprint, largest first
+    @GetMapping("/admin/documents")
+    public MemoryReport documents(@RequestParam(defaultValue = "20") int top) {
+        List<DocumentUsage> usages = documentService.getDocuments().stream()
+                .map(DocumentUsage::of)
+                .toList();
+        long total = usages.stream().mapToLong(DocumentUsage::totalBytes).sum();
+        List<DocumentUsage> largest = usages.stream()
+                .sorted(Comparator.comparingLong(DocumentUsage::totalBytes).reversed())
+                .limit(Math.max(top, 0))
+                .toList();
+        return new MemoryReport(usages.size(), documentService.getEvictedCount(), total,
+                quotaEnforcer.getDocumentBytes(), largest);
+    }
+
+    // Current degradation level and the signals behind it
+    @GetMapping("/admin/admission")
+    public AdmissionController.Status admission() {
+        return admissionController.getStatus();
+    }
+
+    // Users and documents that hit the rate limits most
+    @GetMapping("/admin/throttled")
+    public List<RateLimiter.Throttled> throttled(@RequestParam(defaultValue = "20") int top) {
+        return rateLimiter.throttled(top);
+    }
+}
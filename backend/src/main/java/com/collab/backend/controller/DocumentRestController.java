@@ -1,33 +1,77 @@
 package com.collab.backend.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.jfr.TextMaterializeEvent;
+import com.collab.backend.models.DocumentDiff;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.search.SearchIndex;
 import com.collab.backend.service.DocumentService;
+import com.collab.backend.service.WrongShardException;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 public class DocumentRestController {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRestController.class);
+
+    private static final int EXPORT_BUFFER_CHARS = 8192;
+    // Characters copied per hold of the tree lock
+    private static final int EXPORT_CHUNK_CHARS = 16384;
 
     @Autowired
     private DocumentService documentService;
 
+    @Autowired
+    private SearchIndex searchIndex;
+
 
 
     @PostMapping("/create")
-    public String createNewDocument(@RequestBody(required = false) String initialContent) {
-        System.out.println("Creating new document with initial content: " + initialContent);
+    public String createNewDocument(@RequestBody(required = false) String initialContent,
+                                    @RequestParam(required = false) String shardKey) {
         if (initialContent == null) {
             initialContent = "";
         }
+        logger.debug("Creating new document with initial content of length: {}", initialContent.length());
 
         // Create a new document and get the view and edit codes
-        var codes = documentService.createDocument(initialContent);
-        
+        var codes = documentService.createDocument(initialContent, shardKey);
+
+        return joinAsCreator(codes);
+    }
+
+    // Streams the raw request body into the CRDT instead of binding it to a String
+    @PostMapping("/import")
+    public String importDocument(HttpServletRequest request,
+                                 @RequestParam(required = false) String shardKey) throws IOException {
+        var codes = documentService.importDocument(request.getInputStream(), shardKey);
+        return joinAsCreator(codes);
+    }
+
+    private String joinAsCreator(Map<String, String> codes) {
         // Join the document as an editor
         var response = documentService.joinDocument(codes.get("editCode"));
 
         return "userId: " + response.get("userId") +
-                ", role: " + response.get("role") + 
+                ", role: " + response.get("role") +
                 ", documentId: " + response.get("documentId") +
                 ", viewCode: " + codes.get("viewCode") +
                 ", editCode: " + codes.get("editCode");
@@ -41,4 +85,95 @@ public class DocumentRestController {
                 ", role: " + response.get("role") +
                 ", viewCode: " + response.get("viewCode");
     }
-}
\ No newline at end of file
+
+    // Chunked plain-text export: each chunk is copied under the tree lock and written after releasing
+    // it, so edits and compactions are never blocked by a slow download
+    @GetMapping("/export/{documentId}")
+    public ResponseEntity<StreamingResponseBody> exportDocument(@PathVariable String documentId,
+                                                                @RequestParam String userId) {
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isMember(doc, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            TextMaterializeEvent event = new TextMaterializeEvent();
+            event.begin();
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), EXPORT_BUFFER_CHARS);
+            CrdtTree tree = doc.getCrdtTree();
+            CrdtTree.TextReader reader = tree.textReader();
+            StringBuilder chunk = new StringBuilder(EXPORT_CHUNK_CHARS);
+            boolean more = true;
+            while (more) {
+                chunk.setLength(0);
+                synchronized (tree) {
+                    more = reader.read(chunk, EXPORT_CHUNK_CHARS);
+                }
+                writer.append(chunk);
+            }
+            writer.flush();
+            if (event.shouldCommit()) {
+                event.documentId = documentId;
+                event.operationType = "EXPORT";
+                event.nodes = doc.getCrdtTree().getNodeCount();
+                event.characters = doc.getCrdtTree().getVisibleLength();
+                event.commit();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"document.txt\"")
+                .body(body);
+    }
+
+    // Changes between two sequence numbers (to defaults to the latest), as spans of the current text;
+    // 410 once the operation log no longer reaches back to from, and the client needs the full text
+    @GetMapping("/diff/{documentId}")
+    public ResponseEntity<DocumentDiff> diff(@PathVariable String documentId,
+                                             @RequestParam String userId,
+                                             @RequestParam long from,
+                                             @RequestParam(required = false) Long to) {
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isMember(doc, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        DocumentDiff diff;
+        synchronized (doc.getCrdtTree()) {
+            long latest = doc.getSequence();
+            long until = to != null ? to : latest;
+            if (from < 0 || from > until || until > latest) {
+                return ResponseEntity.badRequest().build();
+            }
+            diff = DocumentDiff.between(doc, from, until);
+        }
+        return diff != null ? ResponseEntity.ok(diff) : ResponseEntity.status(HttpStatus.GONE).build();
+    }
+
+    // Documents of the user on this node containing every word of q; "quoted words" match as a
+    // phrase, word* as a prefix
+    @GetMapping("/search")
+    public List<SearchIndex.SearchHit> search(@RequestParam String q,
+                                              @RequestParam String userId,
+                                              @RequestParam(defaultValue = "20") int limit) {
+        return searchIndex.search(q, userId, limit);
+    }
+
+    // Content is only served to users who joined the document
+    private static boolean isMember(DocumentModel doc, String userId) {
+        return doc.getUsers().containsKey(userId);
+    }
+
+    // Raised when a create lands on a node that does not own the requested shard
+    @ExceptionHandler(WrongShardException.class)
+    public ResponseEntity<String> handleWrongShard(WrongShardException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+}
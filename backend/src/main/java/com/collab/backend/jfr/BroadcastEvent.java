@@ -0,0 +1,34 @@
+package com.collab.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.collab.Broadcast")
+@Label("Broadcast Send")
+@Description("Handing one message to one session during a fan-out")
+@Category({"Collab", "WebSocket"})
+@StackTrace(false)
+public class BroadcastEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    @Description("Type of the message sent")
+    public String operationType;
+
+    @Label("Session")
+    public String sessionId;
+
+    @Label("Endpoint")
+    @Description("edit or view")
+    public String endpoint;
+
+    @Label("Message Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,56 @@
+package com.collab.backend.jfr;
+
+import com.collab.backend.crdt.CrdtOperation;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.List;
+
+@Name("com.collab.CrdtApply")
+@Label("CRDT Apply")
+@Description("Integrating one batch of operations into a document, under its tree lock")
+@Category({"Collab", "CRDT"})
+@StackTrace(false)
+public class CrdtApplyEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    @Description("Request type for client batches, REMOTE for batches relayed from another node")
+    public String operationType;
+
+    @Label("Operations")
+    public int operations;
+
+    @Label("Inserts")
+    public int inserts;
+
+    @Label("Deletes")
+    public int deletes;
+
+    @Label("Document Nodes")
+    @Description("Nodes in the document after the batch, tombstones included")
+    public int nodes;
+
+    // Ends the event and, if it is recorded, fills it in from the batch; call under the tree lock
+    public void record(String documentId, String operationType, List<CrdtOperation> batch, int nodes) {
+        end();
+        if (!shouldCommit()) return;
+        this.documentId = documentId;
+        this.operationType = operationType;
+        this.operations = batch.size();
+        for (CrdtOperation op : batch) {
+            if (op.type == CrdtOperation.Type.INSERT) {
+                inserts++;
+            } else if (op.type == CrdtOperation.Type.DELETE) {
+                deletes++;
+            }
+        }
+        this.nodes = nodes;
+        commit();
+    }
+}
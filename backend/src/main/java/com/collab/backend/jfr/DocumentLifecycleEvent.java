@@ -0,0 +1,43 @@
+package com.collab.backend.jfr;
+
+import com.collab.backend.models.DocumentModel;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.collab.DocumentLifecycle")
+@Label("Document Load/Evict")
+@Description("Building a document in memory, or writing it out and dropping it")
+@Category({"Collab", "Documents"})
+@StackTrace(false)
+public class DocumentLifecycleEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    @Description("CREATE, IMPORT, RESTORE, REPLICA, TRANSFER or EVICT")
+    public String operationType;
+
+    @Label("Document Nodes")
+    public int nodes;
+
+    @Label("Estimated Size")
+    @Description("Estimated retained bytes of the document")
+    @DataAmount
+    public long bytes;
+
+    // Ends the event and, if it is recorded, fills it in from the document
+    public void record(DocumentModel doc, String operationType) {
+        end();
+        if (!shouldCommit()) return;
+        this.documentId = doc.getId();
+        this.operationType = operationType;
+        this.nodes = doc.getCrdtTree().getNodeCount();
+        this.bytes = doc.getFootprint().total();
+        commit();
+    }
+}
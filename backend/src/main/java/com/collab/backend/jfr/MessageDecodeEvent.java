@@ -0,0 +1,30 @@
+package com.collab.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.collab.MessageDecode")
+@Label("Message Decode")
+@Description("Parsing one WebSocket text message into a request")
+@Category({"Collab", "WebSocket"})
+@StackTrace(false)
+public class MessageDecodeEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    public String operationType;
+
+    @Label("Endpoint")
+    @Description("edit or view")
+    public String endpoint;
+
+    @Label("Message Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,35 @@
+package com.collab.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.collab.Presence")
+@Label("Presence Update")
+@Description("Encoding and fanning out a user list or cursor update")
+@Category({"Collab", "WebSocket"})
+@StackTrace(false)
+public class PresenceEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    @Description("USERS or CURSORS")
+    public String operationType;
+
+    @Label("Users")
+    @Description("Users named in the update")
+    public int users;
+
+    @Label("Recipients")
+    @Description("Editing sessions the update was sent to; viewers are counted by their own fan-out")
+    public int recipients;
+
+    @Label("Message Size")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,132 @@
+package com.collab.backend.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-stage latency breakdown of a flight recording taken with the {@code com.collab.*} events
+ * enabled (they are on by default). Run against the plain backend jar, which has no Spring
+ * dependencies on this path:
+ *
+ * <pre>
+ * java -cp backend/target/backend-0.0.1-SNAPSHOT.jar com.collab.backend.jfr.RecordingAnalyzer recording.jfr [--documents=10]
+ * </pre>
+ *
+ * Prints one row per stage and operation type with count, total time, percentiles and the
+ * summed size field, then the documents that spent the most time across all stages.
+ */
+public final class RecordingAnalyzer {
+
+    private static final String EVENT_PREFIX = "com.collab.";
+
+    private static final class Stage {
+        long[] nanos = new long[64];
+        int count;
+        long size;
+
+        void add(long duration, long amount) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = duration;
+            size += amount;
+        }
+
+        long total() {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += nanos[i];
+            }
+            return total;
+        }
+
+        // Call after sorting
+        long percentile(double p) {
+            return nanos[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+
+    private RecordingAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RecordingAnalyzer <recording.jfr> [--documents=N]");
+            System.exit(2);
+        }
+        int topDocuments = 10;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--documents=")) {
+                topDocuments = Integer.parseInt(args[i].substring("--documents=".length()));
+            }
+        }
+
+        Map<String, Stage> stages = new TreeMap<>();
+        Map<String, Long> documentNanos = new TreeMap<>();
+        try (RecordingFile recording = new RecordingFile(Path.of(args[0]))) {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(EVENT_PREFIX)) continue;
+
+                long duration = event.getDuration().toNanos();
+                String key = event.getEventType().getLabel() + "\t" + stringField(event, "operationType");
+                stages.computeIfAbsent(key, _ -> new Stage()).add(duration, sizeOf(event));
+                String documentId = stringField(event, "documentId");
+                if (!documentId.isEmpty()) {
+                    documentNanos.merge(documentId, duration, Long::sum);
+                }
+            }
+        }
+        if (stages.isEmpty()) {
+            System.out.println("No " + EVENT_PREFIX + "* events in " + args[0]);
+            return;
+        }
+
+        long grandTotal = stages.values().stream().mapToLong(Stage::total).sum();
+        System.out.printf("%-22s %-16s %9s %11s %6s %9s %9s %9s %9s %9s %12s%n",
+                "Stage", "Type", "Count", "Total ms", "Share", "Mean us", "p50 us", "p90 us", "p99 us", "Max us", "Size");
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            String[] key = entry.getKey().split("\t", 2);
+            Stage stage = entry.getValue();
+            Arrays.sort(stage.nanos, 0, stage.count);
+            long total = stage.total();
+            System.out.printf("%-22s %-16s %9d %11.2f %5.1f%% %9.1f %9.1f %9.1f %9.1f %9.1f %12d%n",
+                    key[0], key[1], stage.count, total / 1e6, grandTotal > 0 ? 100.0 * total / grandTotal : 0,
+                    total / 1e3 / stage.count, stage.percentile(0.50) / 1e3, stage.percentile(0.90) / 1e3,
+                    stage.percentile(0.99) / 1e3, stage.nanos[stage.count - 1] / 1e3, stage.size);
+        }
+
+        if (topDocuments > 0 && !documentNanos.isEmpty()) {
+            System.out.println();
+            System.out.printf("%-48s %11s%n", "Document", "Total ms");
+            List<Map.Entry<String, Long>> documents = new ArrayList<>(documentNanos.entrySet());
+            documents.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+            for (Map.Entry<String, Long> entry : documents.subList(0, Math.min(topDocuments, documents.size()))) {
+                System.out.printf("%-48s %11.2f%n", entry.getKey(), entry.getValue() / 1e6);
+            }
+        }
+    }
+
+    private static String stringField(RecordedEvent event, String field) {
+        if (!event.hasField(field)) return "";
+        String value = event.getString(field);
+        return value != null ? value : "";
+    }
+
+    // Bytes for messages and documents, characters for materialized text
+    private static long sizeOf(RecordedEvent event) {
+        if (event.hasField("bytes")) return event.getLong("bytes");
+        if (event.hasField("characters")) return event.getLong("characters");
+        return 0;
+    }
+}
@@ -0,0 +1,29 @@
+package com.collab.backend.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.collab.TextMaterialize")
+@Label("Text Materialization")
+@Description("Turning a document's nodes into a snapshot message or exported text")
+@Category({"Collab", "CRDT"})
+@StackTrace(false)
+public class TextMaterializeEvent extends jdk.jfr.Event {
+
+    @Label("Document")
+    public String documentId;
+
+    @Label("Operation Type")
+    @Description("SNAPSHOT or EXPORT")
+    public String operationType;
+
+    @Label("Document Nodes")
+    public int nodes;
+
+    @Label("Output Length")
+    @Description("Characters of JSON or text produced")
+    public long characters;
+}
@@ -0,0 +1,213 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtTree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comments of one document in an interval tree (AVL, each subtree tracking the comment that
+ * ends furthest right), ordered by start anchor. Anchors are compared by
+ * {@link CursorAnchor#orderKey}, which follows the same order as their resolved offsets but
+ * never changes as the text is edited, so the tree never has to be rebuilt. Lookups, inserts,
+ * deletes by id and "comments overlapping this range" queries all take O(log n) comparisons
+ * (plus the matches returned).
+ *
+ * Not thread-safe; callers hold the document's tree lock, which also keeps the keys stable.
+ */
+public class CommentIndex {
+
+    private static final class Node {
+        final CommentModel comment;
+        Node left;
+        Node right;
+        int height = 1;
+        // Comment in this subtree whose end anchor lies furthest right
+        CommentModel maxEnd;
+
+        Node(CommentModel comment) {
+            this.comment = comment;
+            this.maxEnd = comment;
+        }
+    }
+
+    private final CrdtTree tree;
+    private final Map<String, CommentModel> byId = new HashMap<>();
+    private Node root;
+    // Bumped on every change, so replication can tell when comments need to be pushed again
+    private long version;
+    // Characters of comment text held, for memory accounting
+    private long textLength;
+
+    public CommentIndex(CrdtTree tree) {
+        this.tree = tree;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTextLength() {
+        return textLength;
+    }
+
+    public CommentModel get(String commentId) {
+        return byId.get(commentId);
+    }
+
+    public boolean add(CommentModel comment) {
+        if (byId.putIfAbsent(comment.getCommentId(), comment) != null) {
+            return false;
+        }
+        root = insert(root, comment);
+        textLength += comment.getText().length();
+        version++;
+        return true;
+    }
+
+    public CommentModel remove(String commentId) {
+        CommentModel comment = byId.remove(commentId);
+        if (comment != null) {
+            root = delete(root, comment);
+            textLength -= comment.getText().length();
+            version++;
+        }
+        return comment;
+    }
+
+    // Every comment, ordered by where it starts
+    public List<CommentModel> all() {
+        List<CommentModel> result = new ArrayList<>(byId.size());
+        collect(root, Long.MIN_VALUE, Long.MAX_VALUE, null, Integer.MAX_VALUE, result);
+        return result;
+    }
+
+    /**
+     * Comments overlapping the visible range [from, to), ordered by start, at most {@code limit}
+     * of them. Paging continues after {@code after} (the last comment of the previous page).
+     */
+    public List<CommentModel> overlapping(int from, int to, CommentModel after, int limit) {
+        int length = tree.getVisibleLength();
+        long low = from <= 0 ? Long.MIN_VALUE
+                : from < length ? 2L * tree.rankOf(tree.getNode(tree.idAt(from))) : 2L * tree.getNodeCount();
+        long high = to >= length ? Long.MAX_VALUE : 2L * tree.rankOf(tree.getNode(tree.idAt(Math.max(to, 0))));
+        List<CommentModel> result = new ArrayList<>();
+        collect(root, low, high, after, limit, result);
+        return result;
+    }
+
+    // In-order walk: skips subtrees that end before the range, start after it, or precede the page
+    private void collect(Node node, long low, long high, CommentModel after, int limit, List<CommentModel> out) {
+        if (node == null || out.size() >= limit) return;
+        if (endKey(node.maxEnd) <= low) return;
+
+        boolean afterPage = after == null || compare(node.comment, after) > 0;
+        if (afterPage) {
+            collect(node.left, low, high, after, limit, out);
+        }
+        if (out.size() >= limit || startKey(node.comment) >= high) return;
+        if (afterPage && endKey(node.comment) > low) {
+            out.add(node.comment);
+        }
+        collect(node.right, low, high, after, limit, out);
+    }
+
+    private long startKey(CommentModel comment) {
+        return comment.getStart().orderKey(tree);
+    }
+
+    private long endKey(CommentModel comment) {
+        return comment.getEnd().orderKey(tree);
+    }
+
+    private int compare(CommentModel a, CommentModel b) {
+        int byStart = Long.compare(startKey(a), startKey(b));
+        return byStart != 0 ? byStart : a.getCommentId().compareTo(b.getCommentId());
+    }
+
+    private Node insert(Node node, CommentModel comment) {
+        if (node == null) return new Node(comment);
+        if (compare(comment, node.comment) < 0) {
+            node.left = insert(node.left, comment);
+        } else {
+            node.right = insert(node.right, comment);
+        }
+        return rebalance(node);
+    }
+
+    private Node delete(Node node, CommentModel comment) {
+        if (node == null) return null;
+        if (node.comment == comment) {
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            Node replacement = new Node(successor.comment);
+            replacement.right = delete(node.right, successor.comment);
+            replacement.left = node.left;
+            return rebalance(replacement);
+        }
+        if (compare(comment, node.comment) < 0) {
+            node.left = delete(node.left, comment);
+        } else {
+            node.right = delete(node.right, comment);
+        }
+        return rebalance(node);
+    }
+
+    private Node rebalance(Node node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        CommentModel maxEnd = node.comment;
+        if (node.left != null && endKey(node.left.maxEnd) > endKey(maxEnd)) maxEnd = node.left.maxEnd;
+        if (node.right != null && endKey(node.right.maxEnd) > endKey(maxEnd)) maxEnd = node.right.maxEnd;
+        node.maxEnd = maxEnd;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+}
@@ -1,28 +1,32 @@
 package com.collab.backend.models;
 
+/**
+ * A comment on a range of the document. The range is held as anchors on CRDT nodes, so it
+ * follows the text it was made on instead of drifting as others edit; offsets are resolved
+ * when needed. Comments do not change once made, so their JSON is produced once and cached.
+ */
 public class CommentModel {
-    private String commentId;
-    private String userId;
-    private String text;
-    private int startIndex;
-    private int endIndex;
+    private final String commentId;
+    private final String userId;
+    private final String text;
+    private final CursorAnchor start;
+    private final CursorAnchor end;
+    private volatile String cachedJson;
 
-    public CommentModel(String userId, String commentId, String text, int startIndex, int endIndex) {
+    public CommentModel(String userId, String commentId, String text, CursorAnchor start, CursorAnchor end) {
         this.userId = userId;
         this.commentId = commentId;
         this.text = text;
-        this.startIndex = startIndex;
-        this.endIndex = endIndex;
+        this.start = start;
+        this.end = end;
     }
 
-    // Getters and setters
     public String getCommentId() { return commentId; }
     public String getText() { return text; }
-    public int getStartIndex() { return startIndex; }
-    public int getEndIndex() { return endIndex; }
+    public CursorAnchor getStart() { return start; }
+    public CursorAnchor getEnd() { return end; }
     public String getUserId() { return userId; }
 
-    public void setText(String text) { this.text = text; }
-    public void setStartIndex(int startIndex) { this.startIndex = startIndex; }
-    public void setEndIndex(int endIndex) { this.endIndex = endIndex; }
+    public String getCachedJson() { return cachedJson; }
+    public void setCachedJson(String cachedJson) { this.cachedJson = cachedJson; }
 }
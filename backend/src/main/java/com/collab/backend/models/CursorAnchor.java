@@ -0,0 +1,52 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtNode;
+import com.collab.backend.crdt.CrdtTree;
+
+/**
+ * A caret pinned to a character rather than an offset: just before or just after the node with
+ * the given id. It keeps its place while others edit around it, even after the character is
+ * deleted (tombstones stay in the sequence). {@code "root"} with {@link Side#AFTER} is the start
+ * of the document.
+ */
+public record CursorAnchor(String nodeId, Side side) {
+    public enum Side { BEFORE, AFTER }
+
+    public static final CursorAnchor START = new CursorAnchor("root", Side.AFTER);
+
+    // Anchor for a range starting at the offset: before the first character in it
+    public static CursorAnchor startOf(CrdtTree tree, int offset) {
+        int length = tree.getVisibleLength();
+        if (offset < length) {
+            return new CursorAnchor(tree.idAt(Math.max(offset, 0)), Side.BEFORE);
+        }
+        return length == 0 ? START : new CursorAnchor(tree.idAt(length - 1), Side.AFTER);
+    }
+
+    // Anchor for a range ending at the (exclusive) offset: after the last character in it
+    public static CursorAnchor endOf(CrdtTree tree, int offset) {
+        int end = Math.min(offset, tree.getVisibleLength());
+        return end <= 0 ? START : new CursorAnchor(tree.idAt(end - 1), Side.AFTER);
+    }
+
+    public boolean existsIn(CrdtTree tree) {
+        return "root".equals(nodeId) || tree.getNode(nodeId) != null;
+    }
+
+    // Offset in the visible text
+    public int resolve(CrdtTree tree) {
+        if ("root".equals(nodeId)) return 0;
+        CrdtNode node = tree.getNode(nodeId);
+        if (node == null) return 0;
+        int position = tree.positionOf(node);
+        return side == Side.AFTER && !node.isDeleted ? position + 1 : position;
+    }
+
+    // Total order over anchors that edits never change: two slots per node, before and after it
+    public long orderKey(CrdtTree tree) {
+        if ("root".equals(nodeId)) return -1;
+        CrdtNode node = tree.getNode(nodeId);
+        if (node == null) return -1;
+        return 2L * tree.rankOf(node) + (side == Side.AFTER ? 1 : 0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtNode;
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What changed between two sequence numbers of a document, worked out from the node ids in its
+ * operation log rather than by comparing texts, so it costs in proportion to the operations in
+ * between. Spans are located in the current text: inserted runs that are still there, and
+ * deleted runs at the offset where they were. Characters both inserted and deleted in between
+ * are left out, and so are later deletes of inserted characters when {@code to} is not the
+ * latest sequence, since they can no longer be shown.
+ */
+public record DocumentDiff(long from, long to, List<Inserted> inserted, List<Deleted> deleted) {
+
+    public record Inserted(int position, int length) {}
+
+    public record Deleted(int position, String text) {}
+
+    /**
+     * Call under the tree lock. Returns null if the log no longer holds every batch after
+     * {@code from}, in which case the caller has to fall back to the full text.
+     */
+    public static DocumentDiff between(DocumentModel doc, long from, long to) {
+        List<OperationLog.Entry> entries = doc.getOperationLog().since(from);
+        if (entries == null) return null;
+
+        Set<String> insertedIds = new HashSet<>();
+        Set<String> deletedIds = new HashSet<>();
+        for (OperationLog.Entry entry : entries) {
+            if (entry.sequence() > to) break;
+            for (CrdtOperation op : entry.operations()) {
+                if (op.type == CrdtOperation.Type.INSERT) {
+                    insertedIds.add(op.id);
+                } else if (op.type == CrdtOperation.Type.DELETE && !insertedIds.remove(op.targetId)) {
+                    deletedIds.add(op.targetId);
+                }
+            }
+        }
+
+        CrdtTree tree = doc.getCrdtTree();
+        List<CrdtNode> changed = new ArrayList<>(insertedIds.size() + deletedIds.size());
+        for (String id : insertedIds) {
+            CrdtNode node = tree.getNode(id);
+            if (node != null && !node.isDeleted) {
+                changed.add(node);
+            }
+        }
+        for (String id : deletedIds) {
+            CrdtNode node = tree.getNode(id);
+            if (node != null && node.isDeleted) {
+                changed.add(node);
+            }
+        }
+
+        Spans spans = new Spans();
+        tree.positionsOf(changed).forEach(spans::add);
+        spans.flush();
+        return new DocumentDiff(from, to, spans.inserted, spans.deleted);
+    }
+
+    // Joins changed nodes, fed in sequence order, into runs with nothing unchanged and visible between them
+    private static final class Spans {
+        final List<Inserted> inserted = new ArrayList<>();
+        final List<Deleted> deleted = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private int start = -1;
+        private int length;
+        private boolean deletedRun;
+
+        void add(CrdtNode node, int position) {
+            // Deleted characters all sit at the offset of the run; inserted ones follow each other
+            boolean continues = start >= 0 && node.isDeleted == deletedRun
+                    && position == (deletedRun ? start : start + length);
+            if (!continues) {
+                flush();
+                start = position;
+                deletedRun = node.isDeleted;
+            }
+            length++;
+            if (deletedRun) {
+                text.append(node.value);
+            }
+        }
+
+        void flush() {
+            if (start < 0) return;
+            if (deletedRun) {
+                deleted.add(new Deleted(start, text.toString()));
+            } else {
+                inserted.add(new Inserted(start, length));
+            }
+            start = -1;
+            length = 0;
+            text.setLength(0);
+        }
+    }
+}
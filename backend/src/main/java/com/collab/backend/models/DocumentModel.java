@@ -2,14 +2,26 @@ package com.collab.backend.models;
 
 import com.collab.backend.crdt.*;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DocumentModel {
+    // Operation batches kept for followers and reconnecting clients to catch up from
+    private static final int OPERATION_LOG_CAPACITY = 4096;
+    // Enough for followers and clients within a sync interval of the owner
+    private static final int COMPACTED_LOG_ENTRIES = 64;
+    // Refused nodes remembered for refusing what the sender builds on them
+    private static final int MAX_REFUSED_NODES = 4096;
+
     private final String id;          
     private final String viewCode;
     private final String editCode;
@@ -21,12 +33,42 @@ public class DocumentModel {
 
     private final Map<String, UserModel> users = new HashMap<>();
 
-    private final Map<String, String> userCursors = new HashMap<>();
+    // Anchored to CRDT nodes; clients resolve them to offsets against their own replica
+    private final Map<String, UserCursor> userCursors = new ConcurrentHashMap<>();
 
     private final Set<String> activeUsers = new HashSet<>();
 
-    private final List<CommentModel> comments = new ArrayList<>();
+    // Guarded by the tree lock, like the tree its anchors point into
+    private final CommentIndex comments = new CommentIndex(crdtTree);
+
+    // Words for full-text search, kept current with every applied batch; also under the tree lock
+    private final WordIndex words = new WordIndex(crdtTree);
+
+    // Incremented once per applied batch that originated on this node
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Tells this copy of the document apart from an earlier one under the same id, whose sequence may have started over
+    private final long incarnation = ThreadLocalRandom.current().nextLong();
+
+    private final OperationLog operationLog = new OperationLog(OPERATION_LOG_CAPACITY);
+
+    // Read-only copy of a document owned by another node, kept current through the event bus
+    private volatile boolean replica = false;
+
+    // Open editing and viewer connections, counted for memory accounting and idleness
+    private final AtomicInteger connections = new AtomicInteger();
 
+    // Set by the quota enforcer while the document is over budget; new inserts are refused
+    private volatile boolean overQuota = false;
+
+    // Nodes whose inserts were refused; they exist only on the sender's replica, so inserts under
+    // them are refused too, in later batches as well. Oldest forgotten first; under the tree lock
+    private final Set<String> refusedNodes = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REFUSED_NODES;
+        }
+    });
 
     public DocumentModel(String id, String viewCode, String editCode) {
         this.id = id;
@@ -74,15 +116,53 @@ public class DocumentModel {
         return crdtTree;
     }
 
+    // Assigns the next sequence number to a batch applied on this node; call under the tree lock
+    public long recordOperations(List<CrdtOperation> operations) {
+        long next = sequence.incrementAndGet();
+        operationLog.append(next, operations);
+        return next;
+    }
+
+    // Records a batch the owner already numbered (replicas); call under the tree lock
+    public void recordReplicated(long value, List<CrdtOperation> operations) {
+        sequence.set(value);
+        operationLog.append(value, operations);
+    }
+
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    public long getIncarnation() {
+        return incarnation;
+    }
+
+    public void setSequence(long value) {
+        sequence.set(value);
+        operationLog.reset(value);
+    }
+
+    public OperationLog getOperationLog() {
+        return operationLog;
+    }
+
+    public boolean isReplica() {
+        return replica;
+    }
+
+    public void setReplica(boolean replica) {
+        this.replica = replica;
+    }
+
     public String getContent() {
         return crdtTree.getText();
     }
 
     public void setContent(String newContent) {
         crdtTree.clear();
-        for (int i = 0; i < newContent.length(); i++) {
-            crdtTree.insert(String.valueOf(newContent.charAt(i)), i, "initUser", System.currentTimeMillis() + i);
-        }
+        CrdtTree.BulkAppender appender = crdtTree.bulkAppender("initUser", System.currentTimeMillis());
+        char[] chars = newContent.toCharArray();
+        appender.append(chars, 0, chars.length);
     }
 
     public Set<String> getActiveUsers() {
@@ -97,24 +177,104 @@ public class DocumentModel {
         activeUsers.remove(userId);
     }
 
-    public Map<String, String> getUserCursors() {
+    public Map<String, UserCursor> getUserCursors() {
         return userCursors;
     }
 
-    public void updateUserCursor(String userId, String cursorPosition) {
-        userCursors.put(userId, cursorPosition);
+    public void updateUserCursor(String userId, UserCursor cursor) {
+        userCursors.put(userId, cursor);
+    }
+
+    public boolean removeUserCursor(String userId) {
+        return userCursors.remove(userId) != null;
     }
 
-    public List<CommentModel> getComments() {
+    public CommentIndex getComments() {
         return comments;
     }
-    
-    public void addComment(CommentModel comment) {
-        comments.add(comment);
+
+    public WordIndex getWords() {
+        return words;
+    }
+
+    public boolean addComment(CommentModel comment) {
+        return comments.add(comment);
+    }
+
+    public CommentModel removeCommentById(String commentId) {
+        return comments.remove(commentId);
+    }
+
+    public void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    public boolean isOverQuota() {
+        return overQuota;
     }
-    
-    public void removeCommentById(String commentId) {
-        comments.removeIf(c -> c.getCommentId().equals(commentId));
+
+    public void setOverQuota(boolean overQuota) {
+        this.overQuota = overQuota;
+    }
+
+    public void addRefusedNode(String nodeId) {
+        refusedNodes.add(nodeId);
+    }
+
+    public boolean isRefusedNode(String nodeId) {
+        return refusedNodes.contains(nodeId);
+    }
+
+    // Read without the tree lock: the counters may be a batch behind, which an estimate tolerates
+    public MemoryFootprint getFootprint() {
+        long nodes = crdtTree.getNodeCount();
+        long tombstones = Math.max(0, Math.min(nodes, crdtTree.getTombstoneCount()));
+        long comments = this.comments.size() * MemoryFootprint.COMMENT_BYTES + 2 * this.comments.getTextLength();
+        long sessions = (users.size() + userCursors.size()) * MemoryFootprint.USER_BYTES
+                + connections.get() * MemoryFootprint.CONNECTION_BYTES;
+        return new MemoryFootprint(
+                (nodes - tombstones) * MemoryFootprint.NODE_BYTES,
+                tombstones * MemoryFootprint.NODE_BYTES,
+                comments,
+                sessions,
+                operationLog.getOperationCount() * MemoryFootprint.OPERATION_BYTES);
+    }
+
+    /**
+     * Releases what can be rebuilt or fetched again: all but the newest operation log entries
+     * (clients and followers further behind get a snapshot instead) and cached comment JSON.
+     * With {@code purgeTombstones} also drops tombstones no comment or cursor points at; only
+     * do that while nobody is connected and the follower holds the current sequence, since a live
+     * replica could still name them. Call under the tree lock.
+     */
+    public int compact(boolean purgeTombstones) {
+        operationLog.trim(COMPACTED_LOG_ENTRIES);
+        Set<String> anchored = new HashSet<>();
+        for (CommentModel comment : comments.all()) {
+            comment.setCachedJson(null);
+            anchored.add(comment.getStart().nodeId());
+            anchored.add(comment.getEnd().nodeId());
+        }
+        if (!purgeTombstones) {
+            return 0;
+        }
+        for (UserCursor cursor : userCursors.values()) {
+            anchored.add(cursor.start().nodeId());
+            anchored.add(cursor.end().nodeId());
+        }
+        int purged = crdtTree.purgeTombstones(anchored);
+        if (purged > 0) {
+            // Replicas that reconnect must not catch up from the log: theirs still hold the tombstones
+            operationLog.reset(sequence.get());
+        }
+        return purged;
     }
-    
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtTree;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializable copy of a document, used to hand a document over to another backend node.
+ * CRDT nodes are listed in sequence order with tombstones, so the receiver rebuilds the
+ * exact same structure and later operations referencing any node id still apply. Words for
+ * search travel along, keyed by the node they start at, so the receiver does not tokenize the
+ * whole text again; snapshots without them are indexed on arrival.
+ */
+public record DocumentSnapshot(
+        String id,
+        String viewCode,
+        String editCode,
+        long sequence,
+        Map<String, String> userRoles,
+        List<NodeEntry> nodes,
+        List<CommentEntry> comments,
+        Map<String, List<String>> words) {
+
+    public record NodeEntry(String id, String value, String parentId, long timestamp, String userId, boolean deleted) {}
+
+    // Also the wire form of a comment sent to clients, which resolve the anchors themselves
+    public record CommentEntry(String commentId, String userId, String text, CursorAnchor start, CursorAnchor end) {
+        public static CommentEntry of(CommentModel comment) {
+            return new CommentEntry(comment.getCommentId(), comment.getUserId(), comment.getText(),
+                    comment.getStart(), comment.getEnd());
+        }
+    }
+
+    public static DocumentSnapshot of(DocumentModel doc) {
+        Map<String, String> userRoles = new LinkedHashMap<>();
+        doc.getUsers().forEach((userId, user) -> userRoles.put(userId, user.getRole()));
+
+        List<NodeEntry> nodes = nodesOf(doc.getCrdtTree());
+
+        List<CommentEntry> comments = doc.getComments().all().stream()
+                .map(CommentEntry::of)
+                .toList();
+
+        Map<String, List<String>> words = doc.getWords().isBuilt() ? doc.getWords().entries() : null;
+
+        return new DocumentSnapshot(doc.getId(), doc.getViewCode(), doc.getEditCode(), doc.getSequence(), userRoles, nodes, comments, words);
+    }
+
+    // Every node in sequence order, tombstones included
+    public static List<NodeEntry> nodesOf(CrdtTree tree) {
+        List<NodeEntry> nodes = new ArrayList<>();
+        tree.forEachNode(node -> nodes.add(
+                new NodeEntry(node.id, node.value, node.parentId, node.timestamp, node.userId, node.isDeleted)));
+        return nodes;
+    }
+
+    public DocumentModel toDocument() {
+        DocumentModel doc = new DocumentModel(id, viewCode, editCode);
+        doc.setSequence(sequence);
+        userRoles.forEach((userId, role) -> doc.addUser(userId, new UserModel(userId, role)));
+
+        CrdtTree.BulkAppender appender = doc.getCrdtTree().bulkAppender("snapshot", 0);
+        for (NodeEntry node : nodes) {
+            appender.appendNode(node.id(), node.value(), node.parentId(), node.timestamp(), node.userId(), node.deleted());
+        }
+
+        for (CommentEntry comment : comments) {
+            doc.addComment(new CommentModel(comment.userId(), comment.commentId(), comment.text(),
+                    comment.start(), comment.end()));
+        }
+        if (words != null) {
+            doc.getWords().load(words);
+        }
+        return doc;
+    }
+}
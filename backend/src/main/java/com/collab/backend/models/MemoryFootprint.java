@@ -0,0 +1,24 @@
+package com.collab.backend.models;
+
+/**
+ * Estimated bytes a document keeps on the heap, by what holds them. The estimates come from
+ * counters the document maintains anyway, so computing one is O(1) and needs no lock; they
+ * are meant for ranking documents and enforcing quotas, not as exact object sizes.
+ */
+public record MemoryFootprint(long nodes, long tombstones, long comments, long sessions, long history) {
+
+    // CrdtNode, its id and value strings, the nodeMap entry and the index block slot
+    static final long NODE_BYTES = 200;
+    // CommentModel, its anchors, the interval tree node and the id map entry, plus 2 bytes per char
+    static final long COMMENT_BYTES = 240;
+    // UserModel or UserCursor with its map entry
+    static final long USER_BYTES = 160;
+    // WebSocket session with its send buffer and per-session bookkeeping
+    static final long CONNECTION_BYTES = 16 * 1024;
+    // CrdtOperation held by the operation log, with its id strings
+    static final long OPERATION_BYTES = 160;
+
+    public long total() {
+        return nodes + tombstones + comments + sessions + history;
+    }
+}
@@ -0,0 +1,75 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtOperation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most recent operation batches of a document, keyed by the document's sequence number.
+ * Followers and reconnecting clients catch up from here; once the entries they need have
+ * been evicted they fall back to a full snapshot.
+ */
+public class OperationLog {
+
+    public record Entry(long sequence, List<CrdtOperation> operations) {}
+
+    private final int capacity;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long lastSequence;
+    // Operations across all entries, for memory accounting
+    private long operationCount;
+
+    public OperationLog(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void append(long sequence, List<CrdtOperation> operations) {
+        if (entries.size() == capacity) {
+            operationCount -= entries.removeFirst().operations().size();
+        }
+        entries.addLast(new Entry(sequence, operations));
+        operationCount += operations.size();
+        lastSequence = sequence;
+    }
+
+    // Drops the entries; the document continues from the given sequence (e.g. after a snapshot)
+    public synchronized void reset(long sequence) {
+        entries.clear();
+        operationCount = 0;
+        lastSequence = sequence;
+    }
+
+    // Keeps only the newest entries; callers further behind fall back to a snapshot
+    public synchronized void trim(int keep) {
+        while (entries.size() > keep) {
+            operationCount -= entries.removeFirst().operations().size();
+        }
+    }
+
+    public synchronized long getOperationCount() {
+        return operationCount;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // Entries after the given sequence, or null if some of them are no longer in the log
+    public synchronized List<Entry> since(long afterSequence) {
+        if (afterSequence >= lastSequence) {
+            return List.of();
+        }
+        if (entries.isEmpty() || entries.peekFirst().sequence() > afterSequence + 1) {
+            return null;
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.sequence() > afterSequence) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,5 @@
+package com.collab.backend.models;
+
+/** A user's selection as two anchors; a plain caret has {@code start} equal to {@code end}. */
+public record UserCursor(CursorAnchor start, CursorAnchor end) {
+}
@@ -0,0 +1,320 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtNode;
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Words of one document, each keyed by the CRDT node it starts at. Node ids never change, so
+ * occurrences stay valid while text is inserted around them and only the words touching an
+ * applied operation are tokenized again: the run of word characters and tombstones around the
+ * changed node, up to the nearest visible separators. Terms are lowercased runs of letters and
+ * digits, cut to {@link #MAX_TERM_LENGTH}.
+ *
+ * Not thread-safe; callers hold the document's tree lock, like for {@link CommentIndex}.
+ */
+public class WordIndex {
+    public static final int MAX_TERM_LENGTH = 64;
+
+    /** Called with the terms that appeared in or disappeared from the document. */
+    public interface Listener {
+        void termsChanged(Set<String> added, Set<String> removed);
+    }
+
+    /** A query word; prefix words match every term that starts with them. */
+    public record Word(String text, boolean prefix) {
+        public boolean matches(String term) {
+            return term != null && (prefix ? term.startsWith(text) : term.equals(text));
+        }
+    }
+
+    private final CrdtTree tree;
+    private final Map<String, String> termAt = new HashMap<>();
+    private final TreeMap<String, Set<String>> starts = new TreeMap<>();
+    private boolean built;
+    private Listener listener;
+
+    public WordIndex(CrdtTree tree) {
+        this.tree = tree;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public Set<String> terms() {
+        return Collections.unmodifiableSet(starts.keySet());
+    }
+
+    public int size() {
+        return termAt.size();
+    }
+
+    // Occurrences per term, for evicted documents that are matched without their text
+    public TreeMap<String, Integer> counts() {
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        starts.forEach((term, nodeIds) -> counts.put(term, nodeIds.size()));
+        return counts;
+    }
+
+    // Term to the node ids its occurrences start at, as stored in snapshots
+    public Map<String, List<String>> entries() {
+        Map<String, List<String>> entries = new LinkedHashMap<>();
+        starts.forEach((term, nodeIds) -> entries.put(term, List.copyOf(nodeIds)));
+        return entries;
+    }
+
+    // Takes the words of a snapshot instead of tokenizing the whole text again
+    public void load(Map<String, List<String>> entries) {
+        termAt.clear();
+        starts.clear();
+        entries.forEach((term, nodeIds) -> {
+            for (String nodeId : nodeIds) {
+                termAt.put(nodeId, term);
+                starts.computeIfAbsent(term, _ -> new HashSet<>()).add(nodeId);
+            }
+        });
+        built = true;
+    }
+
+    public void rebuild() {
+        Map<String, Boolean> touched = new HashMap<>();
+        starts.keySet().forEach(term -> touched.put(term, true));
+        termAt.clear();
+        starts.clear();
+        Tokenizer tokenizer = new Tokenizer(touched);
+        tree.forEachNode(tokenizer::accept);
+        tokenizer.finish();
+        built = true;
+        notify(touched);
+    }
+
+    // Call after the operations were applied to the tree
+    public void update(List<CrdtOperation> operations) {
+        if (!built) return;
+        Map<String, Boolean> touched = new HashMap<>();
+        Set<CrdtNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (CrdtOperation op : operations) {
+            String nodeId = op.type == CrdtOperation.Type.INSERT ? op.id
+                    : op.type == CrdtOperation.Type.DELETE ? op.targetId : null;
+            if (nodeId == null) continue;
+            CrdtNode node = tree.getNode(nodeId);
+            if (node == null || node.isDeleted) {
+                // Tombstones never start a word
+                removeOccurrence(nodeId, touched);
+            }
+            if (node == null) continue;
+            // Nodes in a block of tombstones are walked past, not through; the block's first one stands for all
+            CrdtNode from = tree.startOfTombstoneBlock(node);
+            if (!visited.contains(from)) {
+                reindexAround(from, visited, touched);
+            }
+        }
+        notify(touched);
+    }
+
+    // Start nodes of every visible occurrence of the phrase, in no particular order
+    public List<CrdtNode> find(List<Word> phrase) {
+        List<CrdtNode> found = new ArrayList<>();
+        if (phrase.isEmpty()) return found;
+        Word first = phrase.getFirst();
+        List<Set<String>> candidates = first.prefix()
+                ? new ArrayList<>(starts.subMap(first.text(), true, first.text() + Character.MAX_VALUE, true).values())
+                : List.of(starts.getOrDefault(first.text(), Set.of()));
+        for (Set<String> nodeIds : candidates) {
+            for (String nodeId : nodeIds) {
+                CrdtNode start = tree.getNode(nodeId);
+                if (start != null && !start.isDeleted && followedBy(start, phrase)) {
+                    found.add(start);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Up to context visible characters on either side of the node, line breaks flattened
+    public String snippet(CrdtNode node, int context) {
+        Deque<String> before = new ArrayDeque<>();
+        for (CrdtNode n = previousVisible(node); n != null && before.size() < context; n = previousVisible(n)) {
+            before.addFirst(n.value);
+        }
+        StringBuilder sb = new StringBuilder();
+        before.forEach(sb::append);
+        int after = 0;
+        for (CrdtNode n = node; n != null && after < context; n = nextVisible(n), after++) {
+            sb.append(n.value);
+        }
+        return sb.toString().replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /** Splits a query into words; a word directly followed by {@code *} matches as a prefix. */
+    public static List<Word> parse(String text) {
+        List<Word> words = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (isWordChar(c)) {
+                appendFolded(term, String.valueOf(c));
+            } else if (!term.isEmpty()) {
+                words.add(new Word(term.toString(), c == '*'));
+                term.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    // Queries are folded exactly like the text, one character (node) at a time, so they find it
+    private static void appendFolded(StringBuilder term, String value) {
+        if (term.length() < MAX_TERM_LENGTH) {
+            term.append(value.toLowerCase(Locale.ROOT));
+            term.setLength(Math.min(term.length(), MAX_TERM_LENGTH));
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || Character.isSurrogate(c);
+    }
+
+    private static boolean isWordChar(CrdtNode node) {
+        return !node.value.isEmpty() && isWordChar(node.value.charAt(0));
+    }
+
+    private boolean followedBy(CrdtNode start, List<Word> phrase) {
+        CrdtNode current = start;
+        for (int i = 1; i < phrase.size(); i++) {
+            current = nextWordStart(current);
+            if (current == null || !phrase.get(i).matches(termAt.get(current.id))) return false;
+        }
+        return true;
+    }
+
+    private CrdtNode nextWordStart(CrdtNode wordStart) {
+        CrdtNode node = nextVisible(wordStart);
+        while (node != null && isWordChar(node)) {
+            node = nextVisible(node);
+        }
+        while (node != null && !isWordChar(node)) {
+            node = nextVisible(node);
+        }
+        return node;
+    }
+
+    private CrdtNode nextVisible(CrdtNode node) {
+        CrdtNode next = tree.nextSkippingTombstoneBlocks(node);
+        while (next != null && next.isDeleted) {
+            next = tree.nextSkippingTombstoneBlocks(next);
+        }
+        return next;
+    }
+
+    private CrdtNode previousVisible(CrdtNode node) {
+        CrdtNode previous = tree.previousSkippingTombstoneBlocks(node);
+        while (previous != null && previous.isDeleted) {
+            previous = tree.previousSkippingTombstoneBlocks(previous);
+        }
+        return previous;
+    }
+
+    // Tokenizes again the words around the node: everything up to the visible separators on either side
+    private void reindexAround(CrdtNode node, Set<CrdtNode> visited, Map<String, Boolean> touched) {
+        Deque<CrdtNode> region = new ArrayDeque<>();
+        region.add(node);
+        for (CrdtNode n = tree.previousSkippingTombstoneBlocks(node); n != null && (n.isDeleted || isWordChar(n));
+             n = tree.previousSkippingTombstoneBlocks(n)) {
+            region.addFirst(n);
+        }
+        for (CrdtNode n = tree.nextSkippingTombstoneBlocks(node); n != null && (n.isDeleted || isWordChar(n));
+             n = tree.nextSkippingTombstoneBlocks(n)) {
+            region.addLast(n);
+        }
+
+        Tokenizer tokenizer = new Tokenizer(touched);
+        for (CrdtNode n : region) {
+            visited.add(n);
+            removeOccurrence(n.id, touched);
+        }
+        region.forEach(tokenizer::accept);
+        tokenizer.finish();
+    }
+
+    private void removeOccurrence(String nodeId, Map<String, Boolean> touched) {
+        String term = termAt.remove(nodeId);
+        if (term == null) return;
+        touched.putIfAbsent(term, true);
+        Set<String> nodeIds = starts.get(term);
+        nodeIds.remove(nodeId);
+        if (nodeIds.isEmpty()) {
+            starts.remove(term);
+        }
+    }
+
+    private void addOccurrence(String nodeId, String term, Map<String, Boolean> touched) {
+        touched.putIfAbsent(term, starts.containsKey(term));
+        termAt.put(nodeId, term);
+        starts.computeIfAbsent(term, _ -> new HashSet<>()).add(nodeId);
+    }
+
+    // Reports the terms whose presence changed; touched maps each term to whether it was there before
+    private void notify(Map<String, Boolean> touched) {
+        if (listener == null || touched.isEmpty()) return;
+        Set<String> added = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        touched.forEach((term, before) -> {
+            boolean now = starts.containsKey(term);
+            if (now && !before) added.add(term);
+            if (before && !now) removed.add(term);
+        });
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            listener.termsChanged(added, removed);
+        }
+    }
+
+    // Collects words from nodes fed in sequence order; tombstones are skipped
+    private final class Tokenizer {
+        private final Map<String, Boolean> touched;
+        private final StringBuilder term = new StringBuilder();
+        private CrdtNode start;
+
+        Tokenizer(Map<String, Boolean> touched) {
+            this.touched = touched;
+        }
+
+        void accept(CrdtNode node) {
+            if (node.isDeleted) return;
+            if (!isWordChar(node)) {
+                finish();
+                return;
+            }
+            if (start == null) {
+                start = node;
+            }
+            appendFolded(term, node.value);
+        }
+
+        void finish() {
+            if (start != null) {
+                addOccurrence(start.id, term.toString(), touched);
+                start = null;
+                term.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.collab.backend.ratelimit;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.websocket.ClientEditRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Flood protection for the editing endpoint: token buckets on messages and on bytes, one pair per
+ * editing user and one per document, so neither a single client nor a crowd on one document can
+ * take the node down. Editors on a Vaadin node share one connection, so the per-session limit is
+ * kept per user on it. The admitted path is a map lookup and a CAS per bucket. What happens to a
+ * message over the limit is {@code ratelimit.action}:
+ * <ul>
+ *   <li>{@code delay}: the sender's thread waits for tokens, up to {@code ratelimit.max-delay-ms};</li>
+ *   <li>{@code coalesce}: the message is held, and held messages are merged (operation batches
+ *       joined, cursor moves collapsed to the latest) and released as tokens come back;</li>
+ *   <li>{@code reject}: the sender gets a RATE_LIMITED frame; see the handler for batches;</li>
+ *   <li>{@code disconnect}: the connection is closed.</li>
+ * </ul>
+ * Delays past the cap and overflowing holds fall back to reject. Throttled users and documents
+ * are listed by {@link #throttled} and counted in {@code collab.ratelimit.throttled}.
+ */
+@Component
+public class RateLimiter {
+
+    public enum Action { DELAY, COALESCE, REJECT, DISCONNECT }
+
+    public enum Verdict { ADMIT, HELD, REJECT, DISCONNECT }
+
+    public interface Processor {
+        void process(WebSocketSession session, ClientEditRequest request);
+    }
+
+    /** Throttling so far for one user or document; {@code dropped} counts rejects and disconnects. */
+    public record Throttled(String scope, String id, long throttled, long dropped) {}
+
+    private record Held(WebSocketSession session, ClientEditRequest request, int bytes) {}
+
+    private static final class Limits {
+        final TokenBucket messages;
+        final TokenBucket bytes;
+        final LongAdder throttled = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        // Guarded by this; the count is read without the lock to keep the admitted path lock-free
+        final ArrayDeque<Held> held = new ArrayDeque<>();
+        final AtomicInteger heldCount = new AtomicInteger();
+        volatile long notifiedAt;
+
+        Limits(TokenBucket messages, TokenBucket bytes) {
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+
+        // 0 if both buckets admitted the message, otherwise the wait (and nothing is taken)
+        long tryAcquire(long size, long now) {
+            long wait = messages != null ? messages.tryAcquire(1, now) : 0;
+            if (wait > 0) return wait;
+            wait = bytes != null ? bytes.tryAcquire(size, now) : 0;
+            if (wait > 0 && messages != null) {
+                messages.refund(1);
+            }
+            return wait;
+        }
+
+        void refund(long size) {
+            if (messages != null) messages.refund(1);
+            if (bytes != null) bytes.refund(size);
+        }
+    }
+
+    private static final long NOTIFY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long sessionMessages;
+    private final long sessionBytes;
+    private final long documentMessages;
+    private final long documentBytes;
+    private final long burstSeconds;
+    private final Action action;
+    private final long maxDelayNanos;
+    private final int maxHeld;
+
+    private final Map<String, Limits> users = new ConcurrentHashMap<>();
+    private final Map<String, Limits> documents = new ConcurrentHashMap<>();
+    private final Map<Action, Counter> userCounters = new EnumMap<>(Action.class);
+    private final Map<Action, Counter> documentCounters = new EnumMap<>(Action.class);
+
+    public RateLimiter(@Value("${ratelimit.session.messages-per-second:0}") long sessionMessages,
+                       @Value("${ratelimit.session.bytes-per-second:0}") long sessionBytes,
+                       @Value("${ratelimit.document.messages-per-second:0}") long documentMessages,
+                       @Value("${ratelimit.document.bytes-per-second:0}") long documentBytes,
+                       @Value("${ratelimit.burst-seconds:2}") long burstSeconds,
+                       @Value("${ratelimit.action:coalesce}") String action,
+                       @Value("${ratelimit.max-delay-ms:250}") long maxDelayMs,
+                       @Value("${ratelimit.max-held-messages:256}") int maxHeld,
+                       MeterRegistry meterRegistry) {
+        this.sessionMessages = sessionMessages;
+        this.sessionBytes = sessionBytes;
+        this.documentMessages = documentMessages;
+        this.documentBytes = documentBytes;
+        this.burstSeconds = Math.max(1, burstSeconds);
+        this.action = Action.valueOf(action.trim().toUpperCase(Locale.ROOT));
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.maxHeld = maxHeld;
+        for (Action a : Action.values()) {
+            String name = a.name().toLowerCase(Locale.ROOT);
+            userCounters.put(a, Counter.builder("collab.ratelimit.throttled")
+                    .description("Messages over a rate limit, by limit scope and the action taken")
+                    .tag("scope", "session").tag("action", name)
+                    .register(meterRegistry));
+            documentCounters.put(a, Counter.builder("collab.ratelimit.throttled")
+                    .description("Messages over a rate limit, by limit scope and the action taken")
+                    .tag("scope", "document").tag("action", name)
+                    .register(meterRegistry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return sessionMessages > 0 || sessionBytes > 0 || documentMessages > 0 || documentBytes > 0;
+    }
+
+    /**
+     * Decides what to do with a message from an attached user. ADMIT means process it now (after
+     * waiting, with the delay action); HELD means it will be passed to {@link #releaseHeld} later.
+     */
+    public Verdict admit(WebSocketSession session, ClientEditRequest request, int bytes) {
+        return admit(session, request, bytes, System.nanoTime());
+    }
+
+    Verdict admit(WebSocketSession session, ClientEditRequest request, int bytes, long now) {
+        if (!isEnabled() || request.getUserId() == null || request.getDocumentId() == null) return Verdict.ADMIT;
+        Limits user = users.computeIfAbsent(request.getUserId(), _ -> limits(sessionMessages, sessionBytes, now));
+        Limits document = documents.computeIfAbsent(request.getDocumentId(), _ -> limits(documentMessages, documentBytes, now));
+
+        // Messages queue up behind held ones, so a user's edits never overtake each other
+        if (user.heldCount.get() == 0) {
+            long wait = acquire(user, document, bytes, now);
+            if (wait == 0) return Verdict.ADMIT;
+
+            Limits over = wait > 0 ? user : document;
+            over.throttled.increment();
+            switch (action) {
+                case DELAY -> {
+                    if (delay(user, document, bytes, Math.abs(wait))) {
+                        (over == user ? userCounters : documentCounters).get(Action.DELAY).increment();
+                        return Verdict.ADMIT;
+                    }
+                    return drop(user, over, Action.REJECT);
+                }
+                case REJECT, DISCONNECT -> {
+                    return drop(user, over, action);
+                }
+                case COALESCE -> (over == user ? userCounters : documentCounters).get(Action.COALESCE).increment();
+            }
+        } else {
+            user.throttled.increment();
+            userCounters.get(Action.COALESCE).increment();
+        }
+
+        synchronized (user) {
+            if (user.held.size() >= maxHeld) {
+                return drop(user, user, Action.REJECT);
+            }
+            user.held.addLast(new Held(session, request, bytes));
+            user.heldCount.incrementAndGet();
+        }
+        return Verdict.HELD;
+    }
+
+    // True at most once a second per user, so rejection notices do not become a flood of their own
+    public boolean shouldNotify(String userId) {
+        Limits user = users.get(userId);
+        if (user == null) return true;
+        long now = System.nanoTime();
+        long last = user.notifiedAt;
+        if (last != 0 && now - last < NOTIFY_INTERVAL_NANOS) return false;
+        user.notifiedAt = now;
+        return true;
+    }
+
+    /**
+     * Merges and hands over held messages whose tokens are available again, oldest first; a
+     * user's messages are only removed from the hold after they have been processed.
+     */
+    public void releaseHeld(Processor processor) {
+        releaseHeld(processor, System.nanoTime());
+    }
+
+    void releaseHeld(Processor processor, long now) {
+        for (Map.Entry<String, Limits> entry : users.entrySet()) {
+            Limits user = entry.getValue();
+            while (user.heldCount.get() > 0) {
+                Held first;
+                int merged;
+                ClientEditRequest request;
+                int bytes;
+                synchronized (user) {
+                    first = user.held.peekFirst();
+                    if (first == null) break;
+                    List<Held> run = mergeableRun(user.held);
+                    merged = run.size();
+                    request = merge(run);
+                    bytes = run.stream().mapToInt(Held::bytes).sum();
+                }
+                Limits document = documents.computeIfAbsent(request.getDocumentId(),
+                        _ -> limits(documentMessages, documentBytes, now));
+                if (acquire(user, document, bytes, now) != 0) break;
+
+                if (first.session().isOpen()) {
+                    processor.process(first.session(), request);
+                }
+                synchronized (user) {
+                    for (int i = 0; i < merged; i++) {
+                        user.held.pollFirst();
+                    }
+                    user.heldCount.addAndGet(-merged);
+                }
+            }
+        }
+    }
+
+    // Messages waiting for tokens across all users
+    public long getHeldCount() {
+        long held = 0;
+        for (Limits user : users.values()) {
+            held += user.heldCount.get();
+        }
+        return held;
+    }
+
+    // The user left: drop its buckets and anything still held
+    public void forgetUser(String userId) {
+        users.remove(userId);
+    }
+
+    public void forgetDocument(String documentId) {
+        documents.remove(documentId);
+    }
+
+    // Users and documents that have been throttled, most throttled first
+    public List<Throttled> throttled(int top) {
+        return Stream.concat(
+                        users.entrySet().stream().map(e -> throttledOf("session", e.getKey(), e.getValue())),
+                        documents.entrySet().stream().map(e -> throttledOf("document", e.getKey(), e.getValue())))
+                .filter(t -> t.throttled() > 0)
+                .sorted(Comparator.comparingLong(Throttled::throttled).reversed())
+                .limit(Math.max(top, 0))
+                .toList();
+    }
+
+    private static Throttled throttledOf(String scope, String id, Limits limits) {
+        return new Throttled(scope, id, limits.throttled.sum(), limits.dropped.sum());
+    }
+
+    private Limits limits(long messagesPerSecond, long bytesPerSecond, long now) {
+        return new Limits(
+                messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond, messagesPerSecond * burstSeconds, now) : null,
+                bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond * burstSeconds, now) : null);
+    }
+
+    // 0 if admitted; otherwise the wait, positive when the user is over its limit, negative for the document
+    private static long acquire(Limits user, Limits document, long bytes, long now) {
+        long wait = user.tryAcquire(bytes, now);
+        if (wait > 0) return wait;
+        wait = document.tryAcquire(bytes, now);
+        if (wait > 0) {
+            user.refund(bytes);
+            return -wait;
+        }
+        return 0;
+    }
+
+    private boolean delay(Limits user, Limits document, long bytes, long wait) {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (System.nanoTime() + wait <= deadline) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            wait = Math.abs(acquire(user, document, bytes, System.nanoTime()));
+            if (wait == 0) return true;
+        }
+        return false;
+    }
+
+    private Verdict drop(Limits user, Limits over, Action taken) {
+        over.dropped.increment();
+        (over == user ? userCounters : documentCounters).get(taken).increment();
+        return taken == Action.DISCONNECT ? Verdict.DISCONNECT : Verdict.REJECT;
+    }
+
+    // Leading held messages that can go out as one: batches from the same user to the same
+    // document are joined, consecutive cursor moves collapse to the last; anything else goes alone
+    private static List<Held> mergeableRun(ArrayDeque<Held> held) {
+        List<Held> run = new ArrayList<>();
+        for (Held next : held) {
+            if (!run.isEmpty() && !mergeable(run.getFirst().request(), next.request())) break;
+            run.add(next);
+        }
+        return run;
+    }
+
+    private static boolean mergeable(ClientEditRequest first, ClientEditRequest next) {
+        if (first.getType() != next.getType()) return false;
+        if (first.getType() != ClientEditRequest.Type.OPERATIONS && first.getType() != ClientEditRequest.Type.CURSOR) {
+            return false;
+        }
+        return first.getUserId().equals(next.getUserId()) && first.getDocumentId().equals(next.getDocumentId());
+    }
+
+    private static ClientEditRequest merge(List<Held> run) {
+        ClientEditRequest last = run.getLast().request();
+        if (run.size() == 1 || last.getType() != ClientEditRequest.Type.OPERATIONS) {
+            return last;
+        }
+        List<CrdtOperation> operations = new ArrayList<>();
+        for (Held held : run) {
+            if (held.request().getOperations() != null) {
+                operations.addAll(held.request().getOperations());
+            }
+        }
+        ClientEditRequest merged = new ClientEditRequest();
+        merged.type = ClientEditRequest.Type.OPERATIONS;
+        merged.userId = last.getUserId();
+        merged.documentId = last.getDocumentId();
+        merged.operations = operations;
+        // Acknowledging the last batch acknowledges the whole run
+        merged.batch = last.getBatch();
+        return merged;
+    }
+}
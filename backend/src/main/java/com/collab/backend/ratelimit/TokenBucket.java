@@ -0,0 +1,45 @@
+package com.collab.backend.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single "theoretical arrival time" (the GCRA form): the instant at which
+ * the bucket would be full again. Taking tokens pushes it forward by their refill time, and is
+ * allowed while it stays within one burst of now. That is one CAS, with no lock and no refill
+ * timer. A request larger than the whole burst is let through when the bucket is full and leaves
+ * it in debt, so oversized messages are slowed down rather than refused forever.
+ */
+public final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    // Full as of now, on the System.nanoTime() clock that tryAcquire is given
+    public TokenBucket(long tokensPerSecond, long burst, long now) {
+        this.nanosPerToken = Math.max(1, 1_000_000_000L / tokensPerSecond);
+        this.burstNanos = Math.max(1, burst) * nanosPerToken;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    // Takes the tokens and returns 0, or returns how many nanoseconds until they could be taken
+    public long tryAcquire(long tokens, long now) {
+        long cost = tokens * nanosPerToken;
+        while (true) {
+            long full = fullAt.get();
+            long start = full - now > 0 ? full : now;
+            long debt = start + cost - now;
+            if (debt > burstNanos && full - now > 0) {
+                return cost > burstNanos ? full - now : debt - burstNanos;
+            }
+            if (fullAt.compareAndSet(full, start + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    // Gives back tokens taken for a message that was not admitted after all
+    public void refund(long tokens) {
+        fullAt.addAndGet(-tokens * nanosPerToken);
+    }
+}
@@ -0,0 +1,47 @@
+package com.collab.backend.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Documents containing one term, as a sorted array of document ordinals: four bytes per
+ * document, binary-searched on update and merged into bit sets on query.
+ */
+final class PostingList {
+    private int[] ordinals = new int[2];
+    private int size;
+
+    boolean add(int ordinal) {
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (index >= 0) return false;
+        index = -index - 1;
+        if (size == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size + (size >> 1) + 1);
+        }
+        System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+        ordinals[index] = ordinal;
+        size++;
+        return true;
+    }
+
+    boolean remove(int ordinal) {
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (index < 0) return false;
+        System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+        size--;
+        if (size > 0 && size < ordinals.length >> 2) {
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void addTo(BitSet documents) {
+        for (int i = 0; i < size; i++) {
+            documents.set(ordinals[i]);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.collab.backend.search;
+
+import com.collab.backend.crdt.CrdtNode;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.WordIndex;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index over the documents held by this node. Each document keeps its own
+ * {@link WordIndex}, updated with every applied batch; this class only maps terms to the
+ * documents containing them, and hears about a term when it first appears in or last leaves a
+ * document. Evicted documents keep matching through the term counts they had, so they are found
+ * without being loaded, but phrases are only checked against documents in memory: an evicted
+ * document matches a phrase when it has all of its words.
+ *
+ * Lock order is document tree, then this index.
+ */
+@Component
+public class SearchIndex {
+
+    /** A matching document; position and snippet locate one match and are absent for evicted documents. */
+    public record SearchHit(String documentId, int matches, int position, String snippet, boolean evicted) {}
+
+    private record Evicted(TreeMap<String, Integer> counts, Set<String> users) {}
+
+    private static final int SNIPPET_CONTEXT = 40;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> documentIds = new ArrayList<>();
+    private final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    private final Map<String, DocumentModel> documents = new ConcurrentHashMap<>();
+    private final Map<String, Evicted> evicted = new ConcurrentHashMap<>();
+
+    // Indexes a document that was created, loaded or handed over; replaces an evicted copy
+    public void add(DocumentModel doc) {
+        DocumentModel replaced = documents.put(doc.getId(), doc);
+        if (replaced != null && replaced != doc) {
+            detach(replaced);
+        }
+        Evicted previous = evicted.remove(doc.getId());
+        if (previous != null) {
+            termsChanged(doc.getId(), Set.of(), previous.counts().keySet());
+        }
+        synchronized (doc.getCrdtTree()) {
+            WordIndex words = doc.getWords();
+            if (!words.isBuilt()) {
+                words.rebuild();
+            }
+            words.setListener((added, removed) -> termsChanged(doc.getId(), added, removed));
+            termsChanged(doc.getId(), words.terms(), Set.of());
+        }
+    }
+
+    public void remove(DocumentModel doc) {
+        if (!documents.remove(doc.getId(), doc)) return;
+        detach(doc);
+        if (!evicted.containsKey(doc.getId())) {
+            releaseOrdinal(doc.getId());
+        }
+    }
+
+    // The document went to disk; it stays searchable by the terms it had until it is loaded again
+    public void evict(DocumentModel doc) {
+        Evicted entry;
+        synchronized (doc.getCrdtTree()) {
+            entry = new Evicted(doc.getWords().counts(), Set.copyOf(doc.getUsers().keySet()));
+        }
+        evicted.put(doc.getId(), entry);
+        termsChanged(doc.getId(), entry.counts().keySet(), Set.of());
+    }
+
+    /**
+     * Documents matching every word of the query, most matches first. Quoted words form a
+     * phrase that must appear in that order with only separators between them; a word ending
+     * in {@code *} matches as a prefix. Only documents the user belongs to are searched.
+     */
+    public List<SearchHit> search(String query, String userId, int limit) {
+        List<List<WordIndex.Word>> phrases = parse(query);
+        if (phrases.isEmpty() || limit <= 0) return List.of();
+
+        List<SearchHit> hits = new ArrayList<>();
+        for (String documentId : candidates(phrases)) {
+            DocumentModel doc = documents.get(documentId);
+            SearchHit hit = doc != null ? match(doc, phrases, userId) : matchEvicted(documentId, phrases, userId);
+            if (hit != null) {
+                hits.add(hit);
+            }
+        }
+        hits.sort(Comparator.comparingInt(SearchHit::matches).reversed().thenComparing(SearchHit::documentId));
+        return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+    }
+
+    // Outside quotes every word stands alone; each quoted run is one phrase
+    static List<List<WordIndex.Word>> parse(String query) {
+        List<List<WordIndex.Word>> phrases = new ArrayList<>();
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            List<WordIndex.Word> words = WordIndex.parse(parts[i]);
+            if (i % 2 == 1 && !words.isEmpty()) {
+                phrases.add(words);
+            } else {
+                words.forEach(word -> phrases.add(List.of(word)));
+            }
+        }
+        return phrases;
+    }
+
+    private List<String> candidates(List<List<WordIndex.Word>> phrases) {
+        List<String> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            BitSet matching = null;
+            for (List<WordIndex.Word> phrase : phrases) {
+                for (WordIndex.Word word : phrase) {
+                    BitSet containing = new BitSet();
+                    if (word.prefix()) {
+                        postings.subMap(word.text(), true, word.text() + Character.MAX_VALUE, true)
+                                .values().forEach(list -> list.addTo(containing));
+                    } else {
+                        PostingList list = postings.get(word.text());
+                        if (list != null) {
+                            list.addTo(containing);
+                        }
+                    }
+                    if (matching == null) {
+                        matching = containing;
+                    } else {
+                        matching.and(containing);
+                    }
+                    if (matching.isEmpty()) return ids;
+                }
+            }
+            for (int ordinal = matching.nextSetBit(0); ordinal >= 0; ordinal = matching.nextSetBit(ordinal + 1)) {
+                ids.add(documentIds.get(ordinal));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    private SearchHit match(DocumentModel doc, List<List<WordIndex.Word>> phrases, String userId) {
+        synchronized (doc.getCrdtTree()) {
+            // The owner answers for replicas
+            if (doc.isReplica() || !doc.getUsers().containsKey(userId)) return null;
+            int matches = 0;
+            CrdtNode located = null;
+            for (List<WordIndex.Word> phrase : phrases) {
+                List<CrdtNode> found = doc.getWords().find(phrase);
+                if (found.isEmpty()) return null;
+                matches += found.size();
+                if (located == null) {
+                    located = found.getFirst();
+                }
+            }
+            return new SearchHit(doc.getId(), matches, doc.getCrdtTree().positionOf(located),
+                    doc.getWords().snippet(located, SNIPPET_CONTEXT), false);
+        }
+    }
+
+    private SearchHit matchEvicted(String documentId, List<List<WordIndex.Word>> phrases, String userId) {
+        Evicted entry = evicted.get(documentId);
+        if (entry == null || !entry.users().contains(userId)) return null;
+        int matches = 0;
+        for (List<WordIndex.Word> phrase : phrases) {
+            // A phrase cannot occur more often than its rarest word
+            int least = Integer.MAX_VALUE;
+            for (WordIndex.Word word : phrase) {
+                int count = word.prefix()
+                        ? entry.counts().subMap(word.text(), true, word.text() + Character.MAX_VALUE, true)
+                                .values().stream().mapToInt(Integer::intValue).sum()
+                        : entry.counts().getOrDefault(word.text(), 0);
+                least = Math.min(least, count);
+            }
+            if (least == 0) return null;
+            matches += least;
+        }
+        return new SearchHit(documentId, matches, -1, null, true);
+    }
+
+    private void detach(DocumentModel doc) {
+        synchronized (doc.getCrdtTree()) {
+            doc.getWords().setListener(null);
+            termsChanged(doc.getId(), Set.of(), doc.getWords().terms());
+        }
+    }
+
+    private void termsChanged(String documentId, Set<String> added, Set<String> removed) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinals.computeIfAbsent(documentId, this::allocateOrdinal);
+            for (String term : added) {
+                postings.computeIfAbsent(term, _ -> new PostingList()).add(ordinal);
+            }
+            for (String term : removed) {
+                PostingList list = postings.get(term);
+                if (list != null && list.remove(ordinal) && list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Call under the write lock
+    private int allocateOrdinal(String documentId) {
+        Integer free = freeOrdinals.poll();
+        if (free != null) {
+            documentIds.set(free, documentId);
+            return free;
+        }
+        documentIds.add(documentId);
+        return documentIds.size() - 1;
+    }
+
+    private void releaseOrdinal(String documentId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.remove(documentId);
+            if (ordinal != null) {
+                documentIds.set(ordinal, null);
+                freeOrdinals.add(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.collab.backend.service;
+
+import com.collab.backend.models.DocumentModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Degrades this node gracefully when it is saturated, instead of letting every edit slow down.
+ * Pressure is the highest of these signals relative to its limit:
+ * <ul>
+ *   <li>timer lag: how late the periodic check runs on its own thread, which nothing else uses, so
+ *       it grows with CPU saturation and GC pauses but not with a slow task or a slow peer;</li>
+ *   <li>heap occupancy after the last collection;</li>
+ *   <li>queue depths registered with {@link #watchQueue}.</li>
+ * </ul>
+ * The level rises at once and steps back down one at a time after {@code admission.recovery-ms}
+ * of lower pressure. Each level keeps the cheaper measures of the ones below it:
+ * <ol>
+ *   <li>{@code SHED_PRESENCE}: cursor moves and user lists go out once per presence interval;</li>
+ *   <li>{@code DEGRADE_VIEWERS}: viewers get a snapshot per snapshot interval instead of batches;</li>
+ *   <li>{@code REFUSE_SESSIONS}: new sessions on documents with many users are refused.</li>
+ * </ol>
+ * Edits are never shed. The level is published as {@code collab.admission.level}.
+ */
+@Component
+public class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    public enum Level { NORMAL, SHED_PRESENCE, DEGRADE_VIEWERS, REFUSE_SESSIONS }
+
+    public record Status(Level level, double pressure, long lagMs, double heapRatio, Map<String, Long> queues) {}
+
+    private record Queue(LongSupplier depth, long limit) {}
+
+    // Pressure at which each level above NORMAL starts
+    private static final double[] THRESHOLDS = { 0.5, 0.75, 1.0 };
+
+    private final long intervalNanos;
+    private final long maxLagNanos;
+    private final double maxHeapRatio;
+    private final long recoveryNanos;
+    private final int hotDocumentUsers;
+    private final List<MemoryPoolMXBean> heapPools;
+    private final Map<String, Queue> queues = new ConcurrentHashMap<>();
+    private final Counter refusedSessions;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "admission-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Level level = Level.NORMAL;
+    private volatile double pressure;
+    private volatile long lagNanos;
+    private volatile double heapRatio;
+    private long lastCheck;
+    private long calmSince;
+
+    public AdmissionController(@Value("${admission.check-interval-ms:500}") long checkIntervalMs,
+                               @Value("${admission.max-lag-ms:200}") long maxLagMs,
+                               @Value("${admission.max-heap-ratio:0.9}") double maxHeapRatio,
+                               @Value("${admission.recovery-ms:5000}") long recoveryMs,
+                               @Value("${admission.hot-document-users:20}") int hotDocumentUsers,
+                               MeterRegistry meterRegistry) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMs);
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        this.maxHeapRatio = maxHeapRatio;
+        this.recoveryNanos = TimeUnit.MILLISECONDS.toNanos(recoveryMs);
+        this.hotDocumentUsers = hotDocumentUsers;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+                .toList();
+        Gauge.builder("collab.admission.level", this, a -> a.level.ordinal())
+                .description("Degradation level: 0 normal, 1 presence shed, 2 viewers on snapshots, 3 refusing sessions")
+                .register(meterRegistry);
+        Gauge.builder("collab.admission.pressure", this, a -> a.pressure)
+                .description("Highest load signal relative to its limit")
+                .register(meterRegistry);
+        this.refusedSessions = Counter.builder("collab.admission.refused")
+                .description("Sessions refused on hot documents while overloaded")
+                .register(meterRegistry);
+    }
+
+    /** Adds a queue whose depth counts towards the pressure; a limit of 0 or less ignores it. */
+    public void watchQueue(String name, LongSupplier depth, long limit) {
+        queues.put(name, new Queue(depth, limit));
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public boolean isAtLeast(Level threshold) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    // Call when a session opens; true if it should be turned away
+    public boolean shouldRefuse(DocumentModel doc) {
+        if (level != Level.REFUSE_SESSIONS || doc.getUsers().size() < hotDocumentUsers) return false;
+        refusedSessions.increment();
+        return true;
+    }
+
+    public Status getStatus() {
+        Map<String, Long> depths = new LinkedHashMap<>();
+        queues.forEach((name, queue) -> depths.put(name, queue.depth().getAsLong()));
+        return new Status(level, pressure, TimeUnit.NANOSECONDS.toMillis(lagNanos), heapRatio, depths);
+    }
+
+    @PostConstruct
+    public void start() {
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                check();
+            } catch (RuntimeException e) {
+                // A failed run would cancel every later one
+                logger.error("Admission check failed", e);
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    // Only ever runs on the timer thread
+    void check() {
+        long now = System.nanoTime();
+        lagNanos = lastCheck == 0 ? 0 : Math.max(0, now - lastCheck - intervalNanos);
+        lastCheck = now;
+        heapRatio = heapAfterCollection();
+
+        double current = maxLagNanos > 0 ? (double) lagNanos / maxLagNanos : 0;
+        if (maxHeapRatio > 0) {
+            current = Math.max(current, heapRatio / maxHeapRatio);
+        }
+        for (Queue queue : queues.values()) {
+            if (queue.limit() > 0) {
+                current = Math.max(current, (double) queue.depth().getAsLong() / queue.limit());
+            }
+        }
+        pressure = current;
+        adjust(levelFor(current), now);
+    }
+
+    private static Level levelFor(double pressure) {
+        int level = 0;
+        while (level < THRESHOLDS.length && pressure >= THRESHOLDS[level]) {
+            level++;
+        }
+        return Level.values()[level];
+    }
+
+    private void adjust(Level target, long now) {
+        Level previous = level;
+        if (target.compareTo(previous) >= 0) {
+            calmSince = now;
+            if (target == previous) return;
+            level = target;
+        } else if (now - calmSince >= recoveryNanos) {
+            calmSince = now;
+            level = Level.values()[previous.ordinal() - 1];
+        } else {
+            return;
+        }
+        logger.warn("Admission level {} -> {} (pressure {}, lag {} ms, heap {})", previous, level,
+                String.format("%.2f", pressure), TimeUnit.NANOSECONDS.toMillis(lagNanos),
+                String.format("%.2f", heapRatio));
+    }
+
+    // Live heap as of the last collection, so garbage waiting to be collected does not count
+    private double heapAfterCollection() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                used += usage.getUsed();
+            }
+        }
+        long max = Runtime.getRuntime().maxMemory();
+        return max > 0 && max != Long.MAX_VALUE ? (double) used / max : 0;
+    }
+}
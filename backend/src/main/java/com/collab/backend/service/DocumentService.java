@@ -1,51 +1,132 @@
 package com.collab.backend.service;
 
+import com.collab.backend.bus.DocumentEventBus;
+import com.collab.backend.cluster.ClusterMembership;
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.jfr.DocumentLifecycleEvent;
 import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.DocumentSnapshot;
 import com.collab.backend.models.UserModel;
+import com.collab.backend.search.SearchIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class DocumentService {
+    private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
+
+    private static final int IMPORT_BUFFER_CHARS = 8192;
+    private static final long IMPORT_PROGRESS_INTERVAL_CHARS = 1 << 20;
+
+    // Documents and both share codes start with the same shard key, so any of them routes to the owner
+    private static final int SHARD_KEY_LENGTH = 4;
+    private static final int MAX_SHARD_KEY_ATTEMPTS = 256;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private DocumentEventBus documentEventBus;
+
+    @Value("${quota.evict-dir:evicted}")
+    private String evictDirectory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     private final Map<String, DocumentModel> documents = new ConcurrentHashMap<>();
 
     private final Map<String, DocumentModel> documentsById = new ConcurrentHashMap<>();
 
-    private final AtomicInteger userIdCounter = new AtomicInteger(1);
+    // Documents spilled to disk, by share code and by id; they are reloaded on first access
+    private final Map<String, String> evictedCodes = new ConcurrentHashMap<>();
+    private final Map<String, Path> evictedFiles = new ConcurrentHashMap<>();
 
-    public Map<String, String> createDocument(String initialContent) {
-        String documentId = generateDocumentId();
-        String viewCode = generateCode();
-        String editCode = generateCode();
+    public Map<String, String> createDocument(String initialContent, String shardKey) {
+        DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+        event.begin();
+        shardKey = resolveShardKey(shardKey);
+        String documentId = generateDocumentId(shardKey);
+        String viewCode = generateCode(shardKey);
+        String editCode = generateCode(shardKey);
 
         DocumentModel doc = new DocumentModel(documentId, viewCode, editCode);
         if (initialContent != null && !initialContent.isEmpty()) {
             doc.setContent(initialContent);
         }
 
-        documents.put(viewCode, doc);
-        documents.put(editCode, doc);
-        documentsById.put(documentId, doc);
+        Map<String, String> codes = registerDocument(doc);
+        event.record(doc, "CREATE");
+        return codes;
+    }
+
+    // Decodes the upload incrementally and appends it straight into the CRDT; only one buffer is held at a time
+    public Map<String, String> importDocument(InputStream content, String shardKey) throws IOException {
+        DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+        event.begin();
+        shardKey = resolveShardKey(shardKey);
+        String documentId = generateDocumentId(shardKey);
+        DocumentModel doc = new DocumentModel(documentId, generateCode(shardKey), generateCode(shardKey));
+        CrdtTree.BulkAppender appender = doc.getCrdtTree().bulkAppender("initUser", System.currentTimeMillis());
+
+        char[] buffer = new char[IMPORT_BUFFER_CHARS];
+        long nextProgressReport = IMPORT_PROGRESS_INTERVAL_CHARS;
+        try (Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                appender.append(buffer, 0, read);
+                if (appender.getCount() >= nextProgressReport) {
+                    logger.info("Importing {}: {} characters so far", documentId, appender.getCount());
+                    nextProgressReport += IMPORT_PROGRESS_INTERVAL_CHARS;
+                }
+            }
+        }
+
+        logger.info("Imported {} with {} characters", documentId, appender.getCount());
+        Map<String, String> codes = registerDocument(doc);
+        event.record(doc, "IMPORT");
+        return codes;
+    }
+
+    private Map<String, String> registerDocument(DocumentModel doc) {
+        installDocument(doc);
 
         return Map.of(
-                "documentId", documentId,
-                "viewCode", viewCode,
-                "editCode", editCode
+                "documentId", doc.getId(),
+                "viewCode", doc.getViewCode(),
+                "editCode", doc.getEditCode()
         );
     }
 
     public Map<String, String> joinDocument(String code) {
         DocumentModel doc = documents.get(code);
+        if (doc == null && evictedCodes.containsKey(code)) {
+            doc = restore(evictedCodes.get(code));
+        }
         if (doc == null) {
             throw new IllegalArgumentException("Invalid document code: " + code);
         }
 
-        String userId = "user-" + userIdCounter.getAndIncrement();
+        // Unique across nodes: documents move between them, and node ids are built from user ids
+        String userId = "user-" + UUID.randomUUID();
         String role = code.equals(doc.getEditCode()) ? "editor" : "viewer";
 
         UserModel user = new UserModel(userId, role);
@@ -66,14 +147,125 @@ public class DocumentService {
     }
 
     public DocumentModel getDocumentById(String documentId) {
-        return documentsById.get(documentId);
+        DocumentModel doc = documentsById.get(documentId);
+        return doc != null || !evictedFiles.containsKey(documentId) ? doc : restore(documentId);
+    }
+
+    // Documents in memory; evicted ones are not listed until they are loaded again
+    public Collection<DocumentModel> getDocuments() {
+        return documentsById.values();
+    }
+
+    public int getEvictedCount() {
+        return evictedFiles.size();
+    }
+
+    /**
+     * Writes an idle document to the eviction directory and drops it from memory. Lookups that
+     * arrive meanwhile wait for the eviction and then reload it; a connection that raced in keeps
+     * the document in place. Returns false if it was not evicted.
+     */
+    public synchronized boolean evict(DocumentModel doc) {
+        if (doc.isReplica() || doc.getConnections() > 0) {
+            return false;
+        }
+        DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+        event.begin();
+        Path file = Path.of(evictDirectory, doc.getId() + ".json");
+        evictedFiles.put(doc.getId(), file);
+        evictedCodes.put(doc.getViewCode(), doc.getId());
+        evictedCodes.put(doc.getEditCode(), doc.getId());
+        removeDocument(doc);
+        try {
+            synchronized (doc.getCrdtTree()) {
+                if (doc.getConnections() == 0) {
+                    Files.createDirectories(file.getParent());
+                    objectMapper.writeValue(file.toFile(), DocumentSnapshot.of(doc));
+                    event.record(doc, "EVICT");
+                    searchIndex.evict(doc);
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Evicting {} failed: {}", doc.getId(), e.getMessage());
+        }
+        evictedFiles.remove(doc.getId());
+        evictedCodes.remove(doc.getViewCode());
+        evictedCodes.remove(doc.getEditCode());
+        installDocument(doc);
+        return false;
+    }
+
+    private synchronized DocumentModel restore(String documentId) {
+        DocumentModel loaded = documentsById.get(documentId);
+        Path file = evictedFiles.get(documentId);
+        if (loaded != null || file == null) {
+            return loaded;
+        }
+        try {
+            DocumentLifecycleEvent event = new DocumentLifecycleEvent();
+            event.begin();
+            DocumentModel doc = objectMapper.readValue(file.toFile(), DocumentSnapshot.class).toDocument();
+            installDocument(doc);
+            event.record(doc, "RESTORE");
+            evictedFiles.remove(documentId);
+            evictedCodes.remove(doc.getViewCode());
+            evictedCodes.remove(doc.getEditCode());
+            Files.deleteIfExists(file);
+            logger.info("Reloaded evicted document {}", documentId);
+            return doc;
+        } catch (IOException e) {
+            logger.warn("Reloading {} from {} failed: {}", documentId, file, e.getMessage());
+            return null;
+        }
+    }
+
+    public void installDocument(DocumentModel doc) {
+        documents.put(doc.getViewCode(), doc);
+        documents.put(doc.getEditCode(), doc);
+        documentsById.put(doc.getId(), doc);
+        searchIndex.add(doc);
+    }
+
+    public void removeDocument(DocumentModel doc) {
+        documents.remove(doc.getViewCode(), doc);
+        documents.remove(doc.getEditCode(), doc);
+        documentsById.remove(doc.getId(), doc);
+        searchIndex.remove(doc);
+        documentEventBus.forgetDocument(doc.getId());
+    }
+
+    public static String shardKeyOf(String codeOrDocumentId) {
+        String key = codeOrDocumentId.startsWith("doc-") ? codeOrDocumentId.substring(4) : codeOrDocumentId;
+        return key.length() >= SHARD_KEY_LENGTH ? key.substring(0, SHARD_KEY_LENGTH) : key;
+    }
+
+    public static String randomShardKey() {
+        return UUID.randomUUID().toString().substring(0, SHARD_KEY_LENGTH);
+    }
+
+    // Without an explicit key (clients that skip /route/allocate) pick one this node owns
+    private String resolveShardKey(String shardKey) {
+        if (shardKey != null && !shardKey.isEmpty()) {
+            if (!clusterMembership.isOwner(shardKey)) {
+                throw new WrongShardException(shardKey, clusterMembership.ownerOf(shardKey));
+            }
+            return shardKey;
+        }
+        for (int i = 0; i < MAX_SHARD_KEY_ATTEMPTS; i++) {
+            String candidate = randomShardKey();
+            if (clusterMembership.isOwner(candidate)) {
+                return candidate;
+            }
+        }
+        return randomShardKey();
     }
 
-    private String generateCode() {
-        return UUID.randomUUID().toString().substring(0, 8);
+    private String generateCode(String shardKey) {
+        return shardKey + UUID.randomUUID().toString().substring(0, 6);
     }
 
-    private String generateDocumentId() {
-        return "doc-" + UUID.randomUUID().toString();
+    private String generateDocumentId(String shardKey) {
+        return "doc-" + shardKey + "-" + UUID.randomUUID().toString();
     }
 }
\ No newline at end of file
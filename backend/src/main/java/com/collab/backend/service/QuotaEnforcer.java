@@ -0,0 +1,130 @@
+package com.collab.backend.service;
+
+import com.collab.backend.cluster.ReplicationManager;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.MemoryFootprint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps owned documents within {@code quota.document-bytes} of estimated heap. Each sweep takes
+ * the configured actions in order on every document over budget, stopping as soon as it fits:
+ * <ul>
+ *   <li>{@code compact}: trim the operation log and drop cached comment JSON, and tombstones too
+ *       while nobody is connected and the follower has caught up;</li>
+ *   <li>{@code evict}: write a document nobody is connected to to disk until it is opened again;</li>
+ *   <li>{@code reject}: refuse new inserts until the document is back under budget; deletes,
+ *       which shrink it, are still accepted.</li>
+ * </ul>
+ * Publishes the total estimate as {@code collab.documents.retained} and the number of documents
+ * refusing inserts as {@code collab.documents.over-quota}.
+ */
+@Component
+public class QuotaEnforcer {
+    private static final Logger logger = LoggerFactory.getLogger(QuotaEnforcer.class);
+
+    public enum Action { COMPACT, EVICT, REJECT }
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private ReplicationManager replicationManager;
+
+    private final long documentBytes;
+    private final List<Action> actions = new ArrayList<>();
+
+    private volatile long retainedBytes;
+    private volatile long overQuotaDocuments;
+
+    public QuotaEnforcer(@Value("${quota.document-bytes:0}") long documentBytes,
+                         @Value("${quota.actions:compact,evict,reject}") String actions,
+                         MeterRegistry meterRegistry) {
+        this.documentBytes = documentBytes;
+        for (String action : actions.split(",")) {
+            if (!action.isBlank()) {
+                this.actions.add(Action.valueOf(action.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        Gauge.builder("collab.documents.retained", this, e -> e.retainedBytes)
+                .description("Estimated heap held by the documents on this node")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("collab.documents.over-quota", this, e -> e.overQuotaDocuments)
+                .description("Documents refusing inserts because they exceed their memory quota")
+                .baseUnit("documents")
+                .register(meterRegistry);
+    }
+
+    public long getDocumentBytes() {
+        return documentBytes;
+    }
+
+    @Scheduled(fixedDelayString = "${quota.check-interval-ms:5000}")
+    public void enforce() {
+        long retained = 0;
+        long overQuota = 0;
+        for (DocumentModel doc : List.copyOf(documentService.getDocuments())) {
+            MemoryFootprint footprint = doc.getFootprint();
+            if (!doc.isReplica() && documentBytes > 0 && footprint.total() > documentBytes) {
+                footprint = shrink(doc, footprint);
+            } else {
+                doc.setOverQuota(false);
+            }
+            if (footprint == null) continue;
+            retained += footprint.total();
+            if (doc.isOverQuota()) {
+                overQuota++;
+            }
+        }
+        retainedBytes = retained;
+        overQuotaDocuments = overQuota;
+    }
+
+    // Applies the actions in order until the document fits; returns null if it was evicted
+    private MemoryFootprint shrink(DocumentModel doc, MemoryFootprint footprint) {
+        for (Action action : actions) {
+            switch (action) {
+                case COMPACT -> {
+                    int purged;
+                    synchronized (doc.getCrdtTree()) {
+                        purged = doc.compact(doc.getConnections() == 0
+                                && replicationManager.isReplicatedThrough(doc, doc.getSequence()));
+                    }
+                    logger.debug("Compacted {} ({} bytes over quota), dropped {} tombstones",
+                            doc.getId(), footprint.total() - documentBytes, purged);
+                }
+                case EVICT -> {
+                    if (documentService.evict(doc)) {
+                        logger.info("Evicted {} ({} bytes)", doc.getId(), footprint.total());
+                        return null;
+                    }
+                }
+                case REJECT -> {
+                    if (!doc.isOverQuota()) {
+                        logger.warn("{} is over quota ({} of {} bytes), refusing inserts",
+                                doc.getId(), footprint.total(), documentBytes);
+                    }
+                    doc.setOverQuota(true);
+                    return footprint;
+                }
+            }
+            footprint = doc.getFootprint();
+            if (footprint.total() <= documentBytes) {
+                doc.setOverQuota(false);
+                return footprint;
+            }
+        }
+        return footprint;
+    }
+}
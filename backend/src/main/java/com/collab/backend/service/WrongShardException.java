@@ -0,0 +1,11 @@
+package com.collab.backend.service;
+
+/**
+ * A document was created on a node that does not own its shard key; the client should ask
+ * /route/allocate again and send the request to the owner.
+ */
+public class WrongShardException extends RuntimeException {
+    public WrongShardException(String shardKey, String owner) {
+        super("Shard " + shardKey + " is owned by " + owner);
+    }
+}
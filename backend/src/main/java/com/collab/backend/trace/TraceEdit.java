@@ -0,0 +1,70 @@
+package com.collab.backend.trace;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One step of an editing trace: at {@code position} in the text as it was at that point,
+ * {@code replica} deleted {@code deleteCount} characters and then inserted {@code text}.
+ * Traces are stored as JSON lines, one edit per line, which is what {@link TraceRecorder}
+ * appends; a file holding a single JSON array of edits is read as well.
+ */
+public record TraceEdit(String replica, int position, int deleteCount, String text) {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static List<TraceEdit> read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            reader.mark(1);
+            int first = reader.read();
+            while (first == ' ' || first == '\n' || first == '\r' || first == '\t') {
+                reader.mark(1);
+                first = reader.read();
+            }
+            reader.reset();
+            if (first == '[') {
+                return objectMapper.readValue(reader, new TypeReference<List<TraceEdit>>() {});
+            }
+
+            List<TraceEdit> edits = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    edits.add(objectMapper.readValue(line, TraceEdit.class));
+                }
+            }
+            return edits;
+        }
+    }
+
+    // Adds the edit, merging it into the previous one when it continues a typing or deleting run
+    public static void append(List<TraceEdit> edits, TraceEdit edit) {
+        int last = edits.size() - 1;
+        if (last >= 0) {
+            TraceEdit previous = edits.get(last);
+            if (previous.replica.equals(edit.replica) && edit.deleteCount == 0
+                    && edit.position == previous.position + previous.text.length()) {
+                edits.set(last, new TraceEdit(edit.replica, previous.position, previous.deleteCount, previous.text + edit.text));
+                return;
+            }
+            if (previous.replica.equals(edit.replica) && edit.text.isEmpty() && previous.text.isEmpty()) {
+                if (edit.position == previous.position) {
+                    edits.set(last, new TraceEdit(edit.replica, previous.position, previous.deleteCount + edit.deleteCount, ""));
+                    return;
+                }
+                if (edit.position + edit.deleteCount == previous.position) {
+                    edits.set(last, new TraceEdit(edit.replica, edit.position, previous.deleteCount + edit.deleteCount, ""));
+                    return;
+                }
+            }
+        }
+        edits.add(edit);
+    }
+}
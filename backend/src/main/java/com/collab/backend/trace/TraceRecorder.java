@@ -0,0 +1,87 @@
+package com.collab.backend.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures editing traces from live sessions when {@code trace.enabled} is set: every batch
+ * the WebSocket handler applies is turned into positional {@link TraceEdit}s and appended to
+ * {@code <trace.dir>/<documentId>.jsonl}. Edits are handed over under the tree lock, so the
+ * file follows the document's apply order; a single writer thread does the I/O.
+ */
+@Component
+public class TraceRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final Path directory;
+    private final Map<String, Writer> writers = new HashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("trace-writer").daemon().factory());
+
+    public TraceRecorder(@Value("${trace.enabled:false}") boolean enabled,
+                         @Value("${trace.dir:traces}") String directory) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        if (enabled) {
+            logger.info("Recording editing traces to {}", this.directory.toAbsolutePath());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(String documentId, List<TraceEdit> edits) {
+        if (edits.isEmpty()) return;
+        writer.execute(() -> {
+            try {
+                Writer out = writers.get(documentId);
+                if (out == null) {
+                    Files.createDirectories(directory);
+                    out = Files.newBufferedWriter(directory.resolve(documentId + ".jsonl"), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    writers.put(documentId, out);
+                }
+                for (TraceEdit edit : edits) {
+                    out.write(objectMapper.writeValueAsString(edit));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                logger.warn("Could not write trace for {}: {}", documentId, e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        for (Writer out : writers.values()) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Could not close trace file: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package com.collab.backend.websocket;
 
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.models.UserCursor;
+
+import java.util.List;
+
 public class ClientEditRequest {
-    public enum Type { INSERT, DELETE, ADD_COMMENT, DELETE_COMMENT, CURSOR }
+    public enum Type { INSERT, DELETE, ADD_COMMENT, DELETE_COMMENT, CURSOR, OPERATIONS, ATTACH, DETACH, LOAD_COMMENTS, REPLACE }
     public Type type;         // "INSERT" or "DELETE" or "ADD_COMMENT" or "DELETE_COMMENT"
-    public String value;      // for INSERT
+    public String value;      // for INSERT; for REPLACE -> the text or pattern to find
     public int position;      // for INSERT -> start position
     public int endPosition;   // for INSERT -> end position
     public long timestamp;    // for INSERT and DELETE
@@ -11,6 +16,12 @@ public class ClientEditRequest {
     public String userId;     // for "INSERT" and "DELETE"
     public String documentId; // for "INSERT" and "DELETE"
     public String commentId;  // for "addComment"
+    public List<CrdtOperation> operations; // for "OPERATIONS", built against the client's replica
+    public UserCursor cursor; // for "CURSOR"
+    public UserCursor range;  // for "ADD_COMMENT" -> the commented range as anchors (position/endPosition otherwise)
+    public String replacement; // for "REPLACE"
+    public boolean regex;     // for "REPLACE" -> value is a regular expression
+    public long batch;        // for "OPERATIONS" -> the client's number for it, echoed in the acknowledgement
 
     public Type getType() {
         return type;
@@ -47,4 +58,28 @@ public class ClientEditRequest {
     public String getCommentId() {
         return commentId;
     }
+
+    public List<CrdtOperation> getOperations() {
+        return operations;
+    }
+
+    public UserCursor getCursor() {
+        return cursor;
+    }
+
+    public UserCursor getRange() {
+        return range;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    public boolean isRegex() {
+        return regex;
+    }
+
+    public long getBatch() {
+        return batch;
+    }
 }
\ No newline at end of file
@@ -1,15 +1,36 @@
 package com.collab.backend.websocket;
 
+import com.collab.backend.bus.DocumentEvent;
+import com.collab.backend.bus.DocumentEventBus;
+import com.collab.backend.cluster.ClusterMembership;
+import com.collab.backend.cluster.DocumentSubscribers;
+import com.collab.backend.cluster.ReplicaManager;
 import com.collab.backend.crdt.*;
+import com.collab.backend.jfr.BroadcastEvent;
+import com.collab.backend.jfr.CrdtApplyEvent;
+import com.collab.backend.jfr.MessageDecodeEvent;
+import com.collab.backend.jfr.PresenceEvent;
 import com.collab.backend.models.CommentModel;
+import com.collab.backend.models.CursorAnchor;
 import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.OperationLog;
+import com.collab.backend.models.UserCursor;
 import com.collab.backend.models.UserModel;
+import com.collab.backend.ratelimit.RateLimiter;
+import com.collab.backend.service.AdmissionController;
 import com.collab.backend.service.DocumentService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.collab.backend.trace.TraceEdit;
+import com.collab.backend.trace.TraceRecorder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
@@ -18,64 +39,192 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class CrdtWebSocketHandler extends TextWebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(CrdtWebSocketHandler.class);
+
+    // Tells clients to ask /route/{documentId} for the current owner and reconnect there
+    public static final CloseStatus DOCUMENT_MOVED = new CloseStatus(4001, "Document moved");
+
+    // Flood protection gave up on the connection; clients do not reconnect on their own
+    public static final CloseStatus RATE_LIMITED = new CloseStatus(4029, "Rate limit exceeded");
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Autowired
     private DocumentService documentService;
 
+    @Autowired
+    private DocumentEventBus documentEventBus;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private DocumentSubscribers documentSubscribers;
+
+    @Autowired
+    private ViewerFanout viewerFanout;
+
+    @Autowired
+    private ReplicaManager replicaManager;
+
+    @Autowired
+    private TraceRecorder traceRecorder;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Value("${admission.max-held-messages:10000}")
+    private long maxHeldMessages;
+
+    @Value("${replace.max-matches:100000}")
+    private int maxReplaceMatches;
+
+    @Value("${replace.timeout-ms:1000}")
+    private long replaceTimeoutMs;
+
+    @Value("${editor.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${editor.buffer-size-limit-bytes:16777216}")
+    private int bufferSizeLimitBytes;
+
+    // Broadcasts, held messages and presence flushes write from different threads, so every
+    // session is used through a decorator that serializes its sends; keyed by session id
+    private final Map<String, WebSocketSession> editorSessions = new ConcurrentHashMap<>();
+
     private final Map<String, Set<WebSocketSession>> documentSessions = new ConcurrentHashMap<>();
 
-    private final Map<WebSocketSession, String> sessionToUserId = new ConcurrentHashMap<>();
+    // A connection may carry several users (one upstream per document on each Vaadin node)
+    private final Map<WebSocketSession, Set<String>> sessionUsers = new ConcurrentHashMap<>();
 
     private final Map<WebSocketSession, String> sessionToDocumentId = new ConcurrentHashMap<>();
 
-    private final Map<String, Integer> trackCursors = new ConcurrentHashMap<>();
+    // Documents being handed to another node; new sessions are sent there instead
+    private final Set<String> movingDocuments = ConcurrentHashMap.newKeySet();
+
+    // Presence not broadcast while shedding, by document: users whose cursor changed, and user lists
+    private final Map<String, Set<String>> pendingCursors = new ConcurrentHashMap<>();
+    private final Set<String> pendingUserLists = ConcurrentHashMap.newKeySet();
 
 
+    @PostConstruct
+    public void subscribeToDocumentEvents() {
+        documentEventBus.subscribe(this::onDocumentEvent);
+        admissionController.watchQueue("held-messages", rateLimiter::getHeldCount, maxHeldMessages);
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        System.out.println("WebSocket connection established: " + session.getId());
+        logger.debug("WebSocket connection established: {}", session.getId());
 
         String query = session.getUri() != null ? session.getUri().getQuery() : null;
         String documentId = extractQueryParam(query, "documentId");
         String userId = extractQueryParam(query, "userId");
+        String lastSeq = extractQueryParam(query, "lastSeq");
 
-        if (documentId == null || userId == null) {
-            System.err.println("Missing documentId or userId in query.");
+        if (documentId == null) {
+            logger.warn("Missing documentId in query");
             return;
         }
 
         DocumentModel doc = documentService.getDocumentById(documentId);
         if (doc == null) {
-            System.err.println("Invalid documentId: " + documentId);
+            logger.warn("Invalid documentId: {}", documentId);
+            closeQuietly(session, DOCUMENT_MOVED);
             return;
         }
 
-        if (!doc.getUsers().containsKey(userId)) {
-            System.err.println("UserId not part of document: " + userId);
+        // Single-user connections name their user in the query; shared ones send ATTACH per user
+        if (userId != null && isViewer(doc, userId)) {
+            closeQuietly(session, CloseStatus.POLICY_VIOLATION.withReason("Viewers connect to /view/{documentId}"));
+            return;
+        }
+        if (movingDocuments.contains(documentId)) {
+            closeQuietly(session, DOCUMENT_MOVED);
+            return;
+        }
+        if (admissionController.shouldRefuse(doc)) {
+            closeQuietly(session, CloseStatus.SERVICE_OVERLOAD);
             return;
         }
 
-        documentSessions.computeIfAbsent(documentId, _ -> ConcurrentHashMap.newKeySet()).add(session);
-        sessionToUserId.put(session, userId);
-        sessionToDocumentId.put(session, documentId);
+        WebSocketSession editor = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimitBytes);
+        editorSessions.put(session.getId(), editor);
+        documentSessions.computeIfAbsent(documentId, _ -> ConcurrentHashMap.newKeySet()).add(editor);
+        sessionUsers.put(editor, ConcurrentHashMap.newKeySet());
+        sessionToDocumentId.put(editor, documentId);
+        doc.connectionOpened();
+        // A handover that started meanwhile closed only the sessions it saw
+        if (movingDocuments.contains(documentId)) {
+            closeQuietly(editor, DOCUMENT_MOVED);
+            return;
+        }
 
         try {
-            sendUserList(doc, documentSessions.get(documentId));
-            session.sendMessage(new TextMessage(doc.getCrdtTree().getText()));
-
+            String initialMessage;
+            synchronized (doc.getCrdtTree()) {
+                initialMessage = initialContentMessage(doc, documentId, lastSeq);
+            }
+            editor.sendMessage(new TextMessage(initialMessage));
+            if (userId != null) {
+                attachUser(editor, doc, userId);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warn("Failed to send initial content to session: {}", session.getId(), e);
+        }
+    }
+
+    private boolean isViewer(DocumentModel doc, String userId) {
+        UserModel user = doc.getUsers().get(userId);
+        return user != null && "viewer".equals(user.getRole());
+    }
+
+    private void attachUser(WebSocketSession session, DocumentModel doc, String userId) throws IOException {
+        if (!doc.getUsers().containsKey(userId)) {
+            logger.warn("UserId not part of document: {}", userId);
+            return;
+        }
+        if (isViewer(doc, userId)) {
+            logger.warn("Viewer {} cannot attach to the editing connection", userId);
+            return;
+        }
+        sessionUsers.get(session).add(userId);
+        sendUserList(doc, documentSessions.get(doc.getId()));
+        if (!doc.getUserCursors().isEmpty()) {
+            session.sendMessage(new TextMessage(DocumentMessages.cursors(doc.getUserCursors())));
+        }
+        // Comments arrive a page at a time from the top; clients ask for the rest with LOAD_COMMENTS
+        if (doc.getComments().size() > 0) {
+            String page;
+            synchronized (doc.getCrdtTree()) {
+                page = DocumentMessages.commentsPage(doc, 0, Integer.MAX_VALUE, null);
+            }
+            session.sendMessage(new TextMessage(page));
+        }
+    }
+
+    private void detachUser(WebSocketSession session, DocumentModel doc, String userId) throws IOException {
+        if (sessionUsers.get(session).remove(userId)) {
+            rateLimiter.forgetUser(userId);
+            doc.getUsers().remove(userId);
+            sendUserList(doc, documentSessions.get(doc.getId()));
+            removeCursors(doc, Set.of(userId));
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        System.out.println("WebSocket closed: " + session.getId());
+        logger.debug("WebSocket closed: {} ({})", session.getId(), status);
+        WebSocketSession editor = editorSessions.remove(session.getId());
+        if (editor != null) {
+            session = editor;
+        }
 
         String documentId = sessionToDocumentId.remove(session);
-        String userId = sessionToUserId.remove(session);
+        Set<String> userIds = sessionUsers.remove(session);
 
         if (documentId != null) {
             Set<WebSocketSession> sessions = documentSessions.get(documentId);
@@ -83,16 +232,24 @@ public class CrdtWebSocketHandler extends TextWebSocketHandler {
                 sessions.remove(session);
                 if (sessions.isEmpty()) {
                     documentSessions.remove(documentId);
+                    rateLimiter.forgetDocument(documentId);
                 }
             }
+            if (userIds != null) {
+                userIds.forEach(rateLimiter::forgetUser);
+            }
 
             DocumentModel doc = documentService.getDocumentById(documentId);
-            if (doc != null && userId != null) {
-                doc.getUsers().remove(userId); 
+            if (doc != null) {
+                doc.connectionClosed();
+            }
+            if (doc != null && userIds != null && !userIds.isEmpty()) {
+                userIds.forEach(doc.getUsers()::remove);
                 try {
                     sendUserList(doc, documentSessions.get(documentId));
+                    removeCursors(doc, userIds);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    logger.warn("Failed to announce users leaving document: {}", documentId, e);
                 }
             }
         }
@@ -101,143 +258,556 @@ public class CrdtWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
-        System.out.println("Received message: " + message.getPayload());
+        session = editorSessions.getOrDefault(session.getId(), session);
+        MessageDecodeEvent decode = new MessageDecodeEvent();
+        decode.begin();
         ClientEditRequest req = objectMapper.readValue(message.getPayload(), ClientEditRequest.class);
+        if (decode.shouldCommit()) {
+            decode.documentId = sessionToDocumentId.get(session);
+            decode.operationType = String.valueOf(req.getType());
+            decode.endpoint = "edit";
+            decode.bytes = message.getPayloadLength();
+            decode.commit();
+        }
         if (req.getType() == null) {
-            System.err.println("Invalid message type: " + req.getType());
+            logger.warn("Message without a type from session: {}", session.getId());
             return;
         }
-        else if (req.getType() == ClientEditRequest.Type.CURSOR) {
-            updateCursor(session, req);
+        Set<String> attachedUsers = sessionUsers.get(session);
+        if (attachedUsers == null) {
             return;
+        }
+        if (req.getType() == ClientEditRequest.Type.ATTACH || req.getType() == ClientEditRequest.Type.DETACH) {
+            DocumentModel doc = documentService.getDocumentById(sessionToDocumentId.get(session));
+            if (doc == null) return;
+            if (req.getType() == ClientEditRequest.Type.ATTACH) {
+                attachUser(session, doc, req.getUserId());
+            } else {
+                detachUser(session, doc, req.getUserId());
+            }
+            return;
+        }
+        if (!attachedUsers.contains(req.getUserId())) {
+            logger.warn("User {} is not attached to session {}", req.getUserId(), session.getId());
+            return;
+        }
 
+        switch (rateLimiter.admit(session, req, message.getPayloadLength())) {
+            case ADMIT -> handleEdit(session, req, false);
+            case HELD -> {
+                // Released by releaseHeldMessages, merged with whatever the user sends meanwhile
+            }
+            case REJECT -> {
+                if (req.getType() == ClientEditRequest.Type.OPERATIONS || req.getType() == ClientEditRequest.Type.INSERT) {
+                    // The sender applied the batch already: its deletes still go through, its inserts are undone
+                    handleEdit(session, req, true);
+                } else if (rateLimiter.shouldNotify(req.getUserId())) {
+                    session.sendMessage(new TextMessage(DocumentMessages.rateLimited(0)));
+                }
+            }
+            case DISCONNECT -> closeQuietly(session, RATE_LIMITED);
+        }
+    }
+
+    // Coalesced messages go out from here once their senders have tokens again
+    @Scheduled(fixedDelayString = "${ratelimit.coalesce-interval-ms:50}")
+    public void releaseHeldMessages() {
+        rateLimiter.releaseHeld((session, req) -> {
+            try {
+                handleEdit(session, req, false);
+            } catch (IOException e) {
+                logger.warn("Failed to handle held message from session: {}", session.getId(), e);
+            }
+        });
+    }
+
+    // Requests from attached users that the rate limiter let through; throttled ones lose their inserts
+    private void handleEdit(WebSocketSession session, ClientEditRequest req, boolean throttled) throws IOException {
+        if (req.getType() == ClientEditRequest.Type.CURSOR) {
+            updateCursor(req);
+            return;
         }
         String docId = req.getDocumentId();
 
         String userId = req.getUserId();
         DocumentModel doc = documentService.getDocumentById(docId);
         if (doc == null) {
-            System.err.println("Received edit for non-existent document: " + docId);
+            logger.warn("Received edit for non-existent document: {}", docId);
             return;
         }
 
         // ✅ Handle new comment addition
         if (req.getType() == ClientEditRequest.Type.ADD_COMMENT) {
-            CommentModel comment = new CommentModel(
-                req.getUserId(),
-                req.getCommentId(),
-                req.getValue(),
-                req.getPosition(),
-                req.getEndPosition()
-            );
+            addComment(doc, req);
+            return;
+        }
 
-            doc.addComment(comment);
+        // ✅ Handle comment deletion 
+        if (req.getType() == ClientEditRequest.Type.DELETE_COMMENT) {
+            CommentModel removed;
+            synchronized (doc.getCrdtTree()) {
+                removed = doc.removeCommentById(req.getCommentId());
+            }
+            if (removed != null) {
+                broadcastToDocument(docId, DocumentMessages.commentDeleted(req.getCommentId()));
+            }
+            return;
+        }
 
-            String responseJson = String.format(
-                "{\"type\":\"commentAdded\",\"commentId\":\"%s\",\"userId\":\"%s\",\"text\":\"%s\",\"startIndex\":%d,\"endIndex\":%d}",
-                req.getCommentId(), req.getUserId(), req.getValue(), req.getPosition(), req.getEndPosition()
-            );
-            TextMessage broadcastMsg = new TextMessage(responseJson);
+        if (req.getType() == ClientEditRequest.Type.LOAD_COMMENTS) {
+            String page;
+            synchronized (doc.getCrdtTree()) {
+                page = DocumentMessages.commentsPage(doc, req.getPosition(), req.getEndPosition(), req.getCommentId());
+            }
+            session.sendMessage(new TextMessage(page));
+            return;
+        }
+
+        // ✅ Standard CRDT operation
+        CrdtTree tree = doc.getCrdtTree();
+        List<CrdtOperation> applied = new ArrayList<>();
+        // Inserts refused over the memory quota or the rate limit, or under a refused node; deletes still go through
+        List<CrdtOperation> rejected = new ArrayList<>();
+        int refused = 0;
+        boolean refuseInserts = throttled || doc.isOverQuota();
+        FindReplace.Plan replace = null;
+        String replaceFailure = null;
+        long sequence;
+        synchronized (tree) {
+            CrdtApplyEvent applyEvent = new CrdtApplyEvent();
+            applyEvent.begin();
+            List<TraceEdit> traced = traceRecorder.isEnabled() ? new ArrayList<>() : null;
+            if (req.getType() == ClientEditRequest.Type.OPERATIONS) {
+                // Already applied on the sender's replica; ids and parents come from there
+                for (CrdtOperation op : req.getOperations() != null ? req.getOperations() : List.<CrdtOperation>of()) {
+                    if (!isValid(op)) continue;
+                    if (refuse(doc, op, refuseInserts, rejected)) continue;
+                    op.documentId = docId;
+                    if (traced != null) {
+                        traceApply(tree, op, traced);
+                    } else {
+                        tree.applyOperation(op);
+                    }
+                    applied.add(op);
+                }
+            } else if (req.getType() == ClientEditRequest.Type.REPLACE) {
+                // Planned whole before anything is applied, so it goes through entirely or not at all
+                try {
+                    replace = planReplace(tree, req, refuseInserts);
+                } catch (IllegalArgumentException e) {
+                    replaceFailure = e.getMessage();
+                }
+                if (replace != null) {
+                    for (CrdtOperation op : replace.operations()) {
+                        if (traced != null) {
+                            traceApply(tree, op, traced);
+                        } else {
+                            tree.applyOperation(op);
+                        }
+                    }
+                    applied.addAll(replace.operations());
+                }
+            } else if (req.getType() == ClientEditRequest.Type.INSERT && refuseInserts) {
+                refused++;
+            } else {
+                CrdtOperation op = tree.apply(req);
+                if (op != null) {
+                    applied.add(op);
+                    if (traced != null) {
+                        traceApplied(tree, op, req.getPosition(), traced);
+                    }
+                }
+            }
+            applyEvent.record(docId, req.getType().name(), applied, tree.getNodeCount());
+            if (!applied.isEmpty()) {
+                if (traced != null) {
+                    traceRecorder.record(docId, traced);
+                }
 
-            for (WebSocketSession s : documentSessions.get(docId)) {
-                if (s.isOpen()) s.sendMessage(broadcastMsg);
+                doc.getWords().update(applied);
+                // Published under the tree lock so the sequence order matches the apply order
+                sequence = doc.recordOperations(applied);
+                documentEventBus.publish(new DocumentEvent(docId, clusterMembership.getSelf(), doc.getIncarnation(), sequence, applied),
+                        documentSubscribers.targetsOf(docId));
+            } else {
+                sequence = doc.getSequence();
+            }
+        }
+        refused += rejected.size();
+        if (refused > 0) {
+            // Refusals that only follow an earlier one were announced with it
+            String notice = !refuseInserts ? null
+                    : !throttled ? DocumentMessages.quotaExceeded(refused)
+                    : rateLimiter.shouldNotify(userId) ? DocumentMessages.rateLimited(refused) : null;
+            rejectInserts(session, docId, sequence, rejected, notice);
+        }
+        // A replace is answered after its operations, so the sender knows which sequence carried them
+        TextMessage replaceReply = req.getType() != ClientEditRequest.Type.REPLACE ? null
+                : new TextMessage(replace != null ? DocumentMessages.replaced(sequence, replace.matches())
+                        : DocumentMessages.replaceFailed(replaceFailure));
+        // The sender keeps a batch to resend until it is acknowledged, even when nothing in it applied
+        boolean senderHasOperations = req.getType() == ClientEditRequest.Type.OPERATIONS;
+        TextMessage ackMessage = new TextMessage(DocumentMessages.sequence(sequence, req.getBatch()));
+        if (applied.isEmpty()) {
+            if (replaceReply != null) {
+                session.sendMessage(replaceReply);
+            } else if (senderHasOperations) {
+                session.sendMessage(ackMessage);
             }
             return;
         }
+        viewerFanout.markChanged(docId);
+
+        // ✅ Broadcast the operations; the sender's replica has them already and only needs the ack
+        TextMessage operationsMessage = new TextMessage(DocumentMessages.operations(sequence, applied));
+        for (WebSocketSession s : documentSessions.getOrDefault(docId, Set.of())) {
+            if (!s.isOpen()) continue;
+            try {
+                send(s, docId, s.equals(session) && senderHasOperations ? ackMessage : operationsMessage);
+            } catch (IOException e) {
+                logger.warn("Failed to send message to session: {}", s.getId(), e);
+            }
+        }
+        if (replaceReply != null && session.isOpen()) {
+            send(session, docId, replaceReply);
+        }
+    }
 
-        // ✅ Handle comment deletion 
-        if (req.getType() == ClientEditRequest.Type.DELETE_COMMENT) {
-            doc.removeCommentById(req.getCommentId());
+    private FindReplace.Plan planReplace(CrdtTree tree, ClientEditRequest req, boolean refuseInserts) {
+        if (req.getValue() == null || req.getValue().isEmpty()) {
+            throw new IllegalArgumentException("Nothing to find");
+        }
+        String replacement = req.getReplacement() != null ? req.getReplacement() : "";
+        if (refuseInserts && !replacement.isEmpty()) {
+            throw new IllegalArgumentException("Document is over its memory quota");
+        }
+        return FindReplace.plan(tree, req.getValue(), replacement, req.isRegex(), req.getDocumentId(),
+                req.getUserId(), maxReplaceMatches, replaceTimeoutMs);
+    }
 
-            String deleteMsgJson = String.format(
-                "{\"type\":\"commentDeleted\",\"commentId\":\"%s\"}",
-                req.getCommentId()
-            );
-            TextMessage deleteMsg = new TextMessage(deleteMsgJson);
+    private void addComment(DocumentModel doc, ClientEditRequest req) throws IOException {
+        if (req.getCommentId() == null || req.getValue() == null) return;
+        CommentModel comment;
+        synchronized (doc.getCrdtTree()) {
+            CrdtTree tree = doc.getCrdtTree();
+            UserCursor range = req.getRange();
+            CursorAnchor start = range != null ? range.start() : CursorAnchor.startOf(tree, req.getPosition());
+            CursorAnchor end = range != null ? range.end() : CursorAnchor.endOf(tree, req.getEndPosition());
+            if (start == null || end == null || !start.existsIn(tree) || !end.existsIn(tree)) {
+                logger.warn("Comment {} is anchored to unknown nodes", req.getCommentId());
+                return;
+            }
+            comment = new CommentModel(req.getUserId(), req.getCommentId(), req.getValue(), start, end);
+            if (!doc.addComment(comment)) return;
+        }
+        broadcastToDocument(doc.getId(), DocumentMessages.commentAdded(comment));
+    }
 
-            for (WebSocketSession s : documentSessions.get(docId)) {
-                if (s.isOpen()) s.sendMessage(deleteMsg);
+    private void broadcastToDocument(String documentId, String message) throws IOException {
+        Set<WebSocketSession> sessions = documentSessions.get(documentId);
+        if (sessions != null) {
+            sendToSessions(documentId, sessions, message);
+        }
+        viewerFanout.broadcast(documentId, new TextMessage(message));
+    }
+
+    // Applies the operation and notes where it landed in the text, as the recorder's positional edit
+    private void traceApply(CrdtTree tree, CrdtOperation op, List<TraceEdit> traced) {
+        if (op.type == CrdtOperation.Type.DELETE) {
+            CrdtNode target = tree.getNode(op.targetId);
+            int position = target != null && !target.isDeleted ? tree.positionOf(target) : -1;
+            tree.applyOperation(op);
+            if (position >= 0) {
+                TraceEdit.append(traced, new TraceEdit(op.userId, position, 1, ""));
             }
+        } else {
+            tree.applyOperation(op);
+            traceApplied(tree, op, -1, traced);
+        }
+    }
+
+    private void traceApplied(CrdtTree tree, CrdtOperation op, int requestedPosition, List<TraceEdit> traced) {
+        if (op.type == CrdtOperation.Type.DELETE) {
+            TraceEdit.append(traced, new TraceEdit(op.userId, requestedPosition, 1, ""));
             return;
         }
+        // Inserts still waiting for their parent are not in the text yet and are left out
+        CrdtNode node = tree.getNode(op.id);
+        if (node != null && !node.isDeleted) {
+            TraceEdit.append(traced, new TraceEdit(op.userId, tree.positionOf(node), 0, op.value));
+        }
+    }
 
-        // ✅ Standard CRDT operation
-        CrdtTree tree = doc.getCrdtTree();
-        tree.apply(req);
+    // Refuses inserts, and deletes of nodes refused earlier in the same batch, which never existed here
+    // Inserts are refused while refuseInserts holds, and always under a refused node, whose subtree
+    // would otherwise wait for a parent that never arrives; deletes of refused nodes are dropped
+    private static boolean refuse(DocumentModel doc, CrdtOperation op, boolean refuseInserts, List<CrdtOperation> rejected) {
+        if (op.type == CrdtOperation.Type.INSERT) {
+            if (!refuseInserts && !doc.isRefusedNode(op.parentId)) return false;
+            doc.addRefusedNode(op.id);
+            rejected.add(op);
+            return true;
+        }
+        return doc.isRefusedNode(op.targetId);
+    }
 
-        // ✅ Broadcast updated content
-        String updatedText = tree.getText();
-        System.out.println("Updated text: " + updatedText);
-        Set<WebSocketSession> sessions = documentSessions.get(docId);
+    // The sender's replica already holds the refused nodes; deleting them there keeps it in step
+    private void rejectInserts(WebSocketSession session, String docId, long sequence,
+                               List<CrdtOperation> rejected, String notice) throws IOException {
+        if (!rejected.isEmpty()) {
+            List<CrdtOperation> compensation = new ArrayList<>(rejected.size());
+            for (CrdtOperation insert : rejected) {
+                compensation.add(CrdtOperation.delete(insert.id, insert.timestamp, insert.userId, docId));
+            }
+            session.sendMessage(new TextMessage(DocumentMessages.operations(sequence, compensation)));
+        }
+        if (notice != null) {
+            session.sendMessage(new TextMessage(notice));
+        }
+    }
 
-        TextMessage messageSent = new TextMessage(updatedText);
-        System.out.println("Sending updated text" + messageSent + "to " + sessions.size() + " sessions");
-        for (WebSocketSession s : sessions) {
-            if (s.isOpen() && !s.equals(session)) {
-                try {
-                    s.sendMessage(messageSent);
-                } catch (IOException e) {
-                    System.err.println("Failed to send message to session: " + s.getId());
-                    e.printStackTrace();
+    private boolean isValid(CrdtOperation op) {
+        if (op == null || op.type == null) return false;
+        return switch (op.type) {
+            case INSERT -> op.id != null && op.parentId != null && op.value != null && op.userId != null;
+            case DELETE -> op.targetId != null;
+            default -> false;
+        };
+    }
+
+    // Operations the client missed since lastSeq when the log still has them, otherwise a snapshot
+    private String initialContentMessage(DocumentModel doc, String documentId, String lastSeq) throws IOException {
+        Long resumeFrom = parseSequence(lastSeq);
+        if (resumeFrom != null) {
+            if (resumeFrom > doc.getSequence()) {
+                // The client saw operations this node never received (lost with a failed owner)
+                logger.warn("Connection resumed {} at {} but it is at {}", documentId, resumeFrom, doc.getSequence());
+            } else {
+                List<OperationLog.Entry> missed = doc.getOperationLog().since(resumeFrom);
+                if (missed != null) {
+                    List<CrdtOperation> operations = new ArrayList<>();
+                    missed.forEach(entry -> operations.addAll(entry.operations()));
+                    return DocumentMessages.operations(doc.getSequence(), operations);
                 }
             }
         }
+        return DocumentMessages.snapshot(doc);
     }
 
-    private void sendUserList(DocumentModel doc, Set<WebSocketSession> sessions) throws IOException {
+    // The lastSeq a reconnecting client sent; one that does not parse gets a full snapshot
+    private static Long parseSequence(String value) {
+        if (value == null) return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Operations applied on another node: integrate them and refresh this node's sessions
+    private void onDocumentEvent(DocumentEvent event) {
+        if (clusterMembership.getSelf().equals(event.originNode())) return;
+
+        DocumentModel doc = documentService.getDocumentById(event.documentId());
+        if (doc == null) return;
+
+        CrdtTree tree = doc.getCrdtTree();
+        long sequence;
+        synchronized (tree) {
+            CrdtApplyEvent applyEvent = new CrdtApplyEvent();
+            applyEvent.begin();
+            if (doc.isReplica()) {
+                // Replicas follow the owner's sequence: skip what the snapshot already had, reload on a gap
+                if (event.sequence() <= doc.getSequence()) return;
+                if (event.sequence() > doc.getSequence() + 1) {
+                    Thread.startVirtualThread(() -> replicaManager.catchUp(event.documentId()));
+                    return;
+                }
+                doc.recordReplicated(event.sequence(), event.operations());
+            } else {
+                // Edits another node made to its copy while ownership moves; numbered and logged here
+                // so resuming clients and the handover snapshot include them
+                doc.recordOperations(event.operations());
+            }
+            event.operations().forEach(tree::applyOperation);
+            doc.getWords().update(event.operations());
+            applyEvent.record(event.documentId(), "REMOTE", event.operations(), tree.getNodeCount());
+            sequence = doc.getSequence();
+        }
+        viewerFanout.markChanged(event.documentId());
+
+        Set<WebSocketSession> sessions = documentSessions.get(event.documentId());
         if (sessions == null) return;
+        try {
+            sendToSessions(event.documentId(), sessions, DocumentMessages.operations(sequence, event.operations()));
+        } catch (IOException e) {
+            logger.warn("Failed to relay operations for document: {}", event.documentId(), e);
+        }
+    }
 
+    public void broadcastUserList(DocumentModel doc) {
+        try {
+            sendUserList(doc, documentSessions.get(doc.getId()));
+        } catch (IOException e) {
+            logger.warn("Failed to send user list for document: {}", doc.getId(), e);
+        }
+    }
+
+    private void sendUserList(DocumentModel doc, Set<WebSocketSession> sessions) throws IOException {
+        if (admissionController.isAtLeast(AdmissionController.Level.SHED_PRESENCE)) {
+            pendingUserLists.add(doc.getId());
+            return;
+        }
+        publishUserList(doc, sessions);
+    }
+
+    private void publishUserList(DocumentModel doc, Set<WebSocketSession> sessions) throws IOException {
+        PresenceEvent presence = new PresenceEvent();
+        presence.begin();
         List<String> usernames = doc.getUsers().values().stream()
                 .map(UserModel::getUsername)
                 .toList();
 
-        Map<String, Object> msg = new HashMap<>();
+        Map<String, Object> msg = new LinkedHashMap<>();
         msg.put("type", "ACTIVE_USERS");
         msg.put("usernames", usernames);
 
         String json = objectMapper.writeValueAsString(msg);
+        viewerFanout.broadcast(doc.getId(), new TextMessage(json));
+        int recipients = sessions != null ? sendToSessions(doc.getId(), sessions, json) : 0;
+        commitPresence(presence, doc.getId(), "USERS", usernames.size(), recipients, json);
+    }
+
+    // Anchors stay valid while the text changes, so only the user who moved is broadcast
+    private void updateCursor(ClientEditRequest req) throws IOException {
+        String documentId = req.getDocumentId();
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        UserCursor cursor = req.getCursor();
+        if (doc == null || cursor == null || cursor.start() == null || cursor.end() == null) return;
+
+        doc.updateUserCursor(req.getUserId(), cursor);
+        broadcastCursors(documentId, Map.of(req.getUserId(), cursor));
+    }
 
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(json));
+    private void removeCursors(DocumentModel doc, Set<String> userIds) throws IOException {
+        Map<String, UserCursor> removed = new HashMap<>();
+        for (String userId : userIds) {
+            if (doc.removeUserCursor(userId)) {
+                removed.put(userId, null);
             }
         }
+        if (!removed.isEmpty()) {
+            broadcastCursors(doc.getId(), removed);
+        }
     }
 
-    private void updateCursor(WebSocketSession session, ClientEditRequest req) throws IOException {
-        String userId = req.getUserId();
-        int position =req.getPosition();
-        String documentId = req.getDocumentId();
-        trackCursors.put(userId, position);
+    private void broadcastCursors(String documentId, Map<String, UserCursor> cursors) throws IOException {
+        if (admissionController.isAtLeast(AdmissionController.Level.SHED_PRESENCE)) {
+            pendingCursors.computeIfAbsent(documentId, _ -> ConcurrentHashMap.newKeySet()).addAll(cursors.keySet());
+            return;
+        }
+        publishCursors(documentId, cursors);
+    }
 
-        Set<WebSocketSession> sessions = documentSessions.get(documentId);
-        if (sessions == null) return;
+    private void publishCursors(String documentId, Map<String, UserCursor> cursors) throws IOException {
+        PresenceEvent presence = new PresenceEvent();
+        presence.begin();
+        String json = DocumentMessages.cursors(cursors);
+        broadcastToDocument(documentId, json);
+        commitPresence(presence, documentId, "CURSORS", cursors.size(),
+                documentSessions.getOrDefault(documentId, Set.of()).size(), json);
+    }
 
-        String cursorUpdateMessage = createCursorUpdateMessage();
-        
-        sendToSessions(sessions, cursorUpdateMessage);
+    // Presence shed under load goes out here once per interval, latest state only
+    @Scheduled(fixedDelayString = "${admission.presence-interval-ms:1000}")
+    public void flushShedPresence() {
+        for (String documentId : pendingUserLists) {
+            pendingUserLists.remove(documentId);
+            DocumentModel doc = documentService.getDocumentById(documentId);
+            if (doc == null) continue;
+            try {
+                publishUserList(doc, documentSessions.get(documentId));
+            } catch (IOException e) {
+                logger.warn("Failed to send user list for document: {}", documentId, e);
+            }
+        }
+        for (String documentId : pendingCursors.keySet()) {
+            Set<String> userIds = pendingCursors.remove(documentId);
+            DocumentModel doc = documentService.getDocumentById(documentId);
+            if (doc == null || userIds == null) continue;
+            Map<String, UserCursor> cursors = new HashMap<>();
+            userIds.forEach(userId -> cursors.put(userId, doc.getUserCursors().get(userId)));
+            try {
+                publishCursors(documentId, cursors);
+            } catch (IOException e) {
+                logger.warn("Failed to send cursors for document: {}", documentId, e);
+            }
+        }
     }
 
-    private String createCursorUpdateMessage() throws JsonProcessingException {
-        System.out.println(trackCursors);
-    
-        Map<String, Object> cursorMsg = new HashMap<>();
-        cursorMsg.put("type", "CURSOR_UPDATE");
-        cursorMsg.put("cursors", trackCursors);
-        System.out.println(cursorMsg);
-    
-        return objectMapper.writeValueAsString(cursorMsg);
+    private static void commitPresence(PresenceEvent presence, String documentId, String type,
+                                       int users, int recipients, String json) {
+        if (!presence.shouldCommit()) return;
+        presence.documentId = documentId;
+        presence.operationType = type;
+        presence.users = users;
+        presence.recipients = recipients;
+        presence.bytes = json.length();
+        presence.commit();
     }
-    
-    private void sendToSessions(Set<WebSocketSession> sessions, String message) throws IOException {
+
+    // Returns the number of open sessions the message was handed to
+    private int sendToSessions(String documentId, Set<WebSocketSession> sessions, String message) throws IOException {
+        TextMessage textMessage = new TextMessage(message);
+        int sent = 0;
         for (WebSocketSession s : sessions) {
             if (s.isOpen()) {
-                s.sendMessage(new TextMessage(message));
+                send(s, documentId, textMessage);
+                sent++;
             }
         }
+        return sent;
+    }
+
+    private void send(WebSocketSession session, String documentId, TextMessage message) throws IOException {
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        session.sendMessage(message);
+        if (event.shouldCommit()) {
+            event.documentId = documentId;
+            event.operationType = DocumentMessages.typeOf(message.getPayload());
+            event.sessionId = session.getId();
+            event.endpoint = "edit";
+            event.bytes = message.getPayloadLength();
+            event.commit();
+        }
+    }
+
+    // Refuses new sessions on the document until endHandover; call before closing its sessions
+    public void beginHandover(String documentId) {
+        movingDocuments.add(documentId);
+    }
+
+    public void endHandover(String documentId) {
+        movingDocuments.remove(documentId);
+    }
+
+    public void closeDocumentSessions(String documentId, CloseStatus status) {
+        Set<WebSocketSession> sessions = documentSessions.get(documentId);
+        if (sessions == null) return;
+        for (WebSocketSession s : List.copyOf(sessions)) {
+            closeQuietly(s, status);
+        }
+    }
+
+    private void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            logger.warn("Failed to close session: {}", session.getId(), e);
+        }
     }
 
-    
     private String extractQueryParam(String query, String key) {
         if (query == null || !query.contains("=")) return null;
         for (String param : query.split("&")) {
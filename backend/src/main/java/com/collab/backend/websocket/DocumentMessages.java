@@ -0,0 +1,153 @@
+package com.collab.backend.websocket;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.jfr.TextMaterializeEvent;
+import com.collab.backend.models.CommentIndex;
+import com.collab.backend.models.CommentModel;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.DocumentSnapshot;
+import com.collab.backend.models.UserCursor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Document content messages sent to clients, which keep a CRDT replica of their own:
+ * a SNAPSHOT with every node (tombstones included) when they connect, OPERATIONS batches as
+ * the document changes, and SEQUENCE acknowledgements for their own batches. Cursor and
+ * comment messages carry CRDT anchors, which clients resolve against the same replica.
+ */
+public final class DocumentMessages {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int COMMENT_PAGE_SIZE = 100;
+
+    private DocumentMessages() {
+    }
+
+    // Call under the tree lock so nodes and sequence match
+    public static String snapshot(DocumentModel doc) throws JsonProcessingException {
+        TextMaterializeEvent event = new TextMaterializeEvent();
+        event.begin();
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "SNAPSHOT");
+        msg.put("seq", doc.getSequence());
+        msg.put("nodes", DocumentSnapshot.nodesOf(doc.getCrdtTree()));
+        String json = objectMapper.writeValueAsString(msg);
+        if (event.shouldCommit()) {
+            event.documentId = doc.getId();
+            event.operationType = "SNAPSHOT";
+            event.nodes = doc.getCrdtTree().getNodeCount();
+            event.characters = json.length();
+            event.commit();
+        }
+        return json;
+    }
+
+    // Type of a message built here, which always leads with it; for diagnostics only
+    public static String typeOf(String json) {
+        String prefix = "{\"type\":\"";
+        if (!json.startsWith(prefix)) return "UNKNOWN";
+        int end = json.indexOf('"', prefix.length());
+        return end > 0 ? json.substring(prefix.length(), end) : "UNKNOWN";
+    }
+
+    public static String operations(long sequence, List<CrdtOperation> operations) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "OPERATIONS");
+        msg.put("seq", sequence);
+        msg.put("operations", operations);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // Inserts the sender's last batch lost because the document is over its memory quota
+    public static String quotaExceeded(int refused) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "QUOTA_EXCEEDED");
+        msg.put("refused", refused);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // The sender is over its rate limit; refused counts inserts undone, 0 for other messages dropped
+    public static String rateLimited(int refused) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "RATE_LIMITED");
+        msg.put("refused", refused);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // Answers the sender of a replace once its operations went out at seq
+    public static String replaced(long sequence, int matches) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "REPLACED");
+        msg.put("seq", sequence);
+        msg.put("matches", matches);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // Nothing was replaced: a bad pattern, too many matches, a timeout or a full document
+    public static String replaceFailed(String reason) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "REPLACE_FAILED");
+        msg.put("reason", reason);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // Cursors of the given users; a null cursor means the user left
+    public static String cursors(Map<String, UserCursor> cursors) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "CURSOR_UPDATE");
+        msg.put("cursors", new HashMap<>(cursors));
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    public static String commentAdded(CommentModel comment) throws JsonProcessingException {
+        return "{\"type\":\"commentAdded\",\"comment\":" + commentJson(comment) + "}";
+    }
+
+    public static String commentDeleted(String commentId) throws JsonProcessingException {
+        Map<String, Object> msg = new LinkedHashMap<>();
+        msg.put("type", "commentDeleted");
+        msg.put("commentId", commentId);
+        return objectMapper.writeValueAsString(msg);
+    }
+
+    // Comments overlapping the viewport [from, to), a page after the given comment; call under the tree lock
+    public static String commentsPage(DocumentModel doc, int from, int to, String afterCommentId) throws JsonProcessingException {
+        CommentIndex comments = doc.getComments();
+        CommentModel after = afterCommentId != null ? comments.get(afterCommentId) : null;
+        List<CommentModel> page = comments.overlapping(from, to, after, COMMENT_PAGE_SIZE + 1);
+        boolean more = page.size() > COMMENT_PAGE_SIZE;
+        return comments(more ? page.subList(0, COMMENT_PAGE_SIZE) : page, more);
+    }
+
+    // More means the client can ask for the page after the last comment
+    private static String comments(List<CommentModel> page, boolean more) throws JsonProcessingException {
+        StringBuilder json = new StringBuilder("{\"type\":\"COMMENTS\",\"more\":").append(more).append(",\"comments\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) json.append(',');
+            json.append(commentJson(page.get(i)));
+        }
+        return json.append("]}").toString();
+    }
+
+    // Comments never change once made, so each is serialized once and the JSON reused in every message
+    private static String commentJson(CommentModel comment) throws JsonProcessingException {
+        String json = comment.getCachedJson();
+        if (json == null) {
+            json = objectMapper.writeValueAsString(DocumentSnapshot.CommentEntry.of(comment));
+            comment.setCachedJson(json);
+        }
+        return json;
+    }
+
+    // Acknowledges a client's operation batch, and every earlier one of the same user
+    public static String sequence(long sequence, long batch) {
+        return String.format("{\"type\":\"SEQUENCE\",\"seq\":%d,\"batch\":%d}", sequence, batch);
+    }
+}
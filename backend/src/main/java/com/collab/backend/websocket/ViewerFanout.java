@@ -0,0 +1,195 @@
+package com.collab.backend.websocket;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.jfr.BroadcastEvent;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.OperationLog;
+import com.collab.backend.service.AdmissionController;
+import com.collab.backend.service.DocumentService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery path for read-only viewers. Edits only mark a document as changed; once per batch
+ * interval the operations since the previous flush are read from the document's operation log
+ * and encoded a single time, and that same message is queued on every viewer session. Viewers
+ * that joined in between may see a few operations twice, which their replica ignores. Sessions are wrapped so a slow viewer buffers (and is
+ * eventually dropped) on its own instead of stalling the others. While the node is degrading
+ * viewers, each changed document sends a full snapshot at most once per snapshot interval.
+ */
+@Component
+public class ViewerFanout {
+    private static final Logger logger = LoggerFactory.getLogger(ViewerFanout.class);
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Value("${viewer.send-time-limit-ms:2000}")
+    private int sendTimeLimitMs;
+
+    @Value("${viewer.buffer-size-limit-bytes:8388608}")
+    private int bufferSizeLimitBytes;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Value("${admission.max-buffered-bytes:268435456}")
+    private long maxBufferedBytes;
+
+    @Value("${admission.viewer-snapshot-interval-ms:2000}")
+    private long snapshotIntervalMs;
+
+    private final Map<String, Map<String, WebSocketSession>> viewersByDocument = new ConcurrentHashMap<>();
+    private final Set<String> changedDocuments = ConcurrentHashMap.newKeySet();
+    // Sequence each document's viewer stream has been flushed up to
+    private final Map<String, Long> flushedSequences = new ConcurrentHashMap<>();
+    // When each document last sent its viewers a degraded-mode snapshot
+    private final Map<String, Long> snapshotTimes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void watchBuffers() {
+        admissionController.watchQueue("viewer-buffered-bytes", this::getBufferedBytes, maxBufferedBytes);
+    }
+
+    // Call with the sequence of the snapshot the viewer was sent
+    public WebSocketSession register(String documentId, WebSocketSession session, long snapshotSequence) {
+        flushedSequences.merge(documentId, snapshotSequence, Math::min);
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimitBytes);
+        viewersByDocument.computeIfAbsent(documentId, _ -> new ConcurrentHashMap<>()).put(session.getId(), decorated);
+        return decorated;
+    }
+
+    // Returns true when the document has no viewers left
+    public boolean unregister(String documentId, WebSocketSession session) {
+        Map<String, WebSocketSession> viewers = viewersByDocument.get(documentId);
+        if (viewers == null) return true;
+        viewers.remove(session.getId());
+        if (viewers.isEmpty()) {
+            viewersByDocument.remove(documentId, viewers);
+            flushedSequences.remove(documentId);
+            snapshotTimes.remove(documentId);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean hasViewers(String documentId) {
+        Map<String, WebSocketSession> viewers = viewersByDocument.get(documentId);
+        return viewers != null && !viewers.isEmpty();
+    }
+
+    // Bytes queued on viewer sessions that have not kept up
+    public long getBufferedBytes() {
+        long buffered = 0;
+        for (Map<String, WebSocketSession> viewers : viewersByDocument.values()) {
+            for (WebSocketSession viewer : viewers.values()) {
+                buffered += ((ConcurrentWebSocketSessionDecorator) viewer).getBufferSize();
+            }
+        }
+        return buffered;
+    }
+
+    public void markChanged(String documentId) {
+        if (hasViewers(documentId)) {
+            changedDocuments.add(documentId);
+        }
+    }
+
+    public void broadcast(String documentId, TextMessage message) {
+        Map<String, WebSocketSession> viewers = viewersByDocument.get(documentId);
+        if (viewers == null) return;
+        for (WebSocketSession viewer : viewers.values()) {
+            send(documentId, viewer, message);
+        }
+    }
+
+    // Reply to one viewer, through the same decorated session the stream uses
+    public void sendTo(String documentId, WebSocketSession session, TextMessage message) {
+        Map<String, WebSocketSession> viewers = viewersByDocument.get(documentId);
+        WebSocketSession viewer = viewers != null ? viewers.get(session.getId()) : null;
+        if (viewer != null) {
+            send(documentId, viewer, message);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${viewer.batch-interval-ms:100}")
+    public void flushChangedDocuments() {
+        boolean degraded = admissionController.isAtLeast(AdmissionController.Level.DEGRADE_VIEWERS);
+        long now = System.nanoTime();
+        for (String documentId : changedDocuments) {
+            if (degraded) {
+                // Left marked until the document's snapshot interval is up
+                Long sentAt = snapshotTimes.get(documentId);
+                if (sentAt != null && now - sentAt < TimeUnit.MILLISECONDS.toNanos(snapshotIntervalMs)) continue;
+                snapshotTimes.put(documentId, now);
+            }
+            changedDocuments.remove(documentId);
+            DocumentModel doc = documentService.getDocumentById(documentId);
+            if (doc == null) continue;
+
+            try {
+                String message = changesSinceLastFlush(doc, degraded);
+                if (message != null) {
+                    broadcast(documentId, new TextMessage(message));
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to encode viewer update for document: {}", documentId, e);
+            }
+        }
+    }
+
+    private String changesSinceLastFlush(DocumentModel doc, boolean snapshot) throws IOException {
+        synchronized (doc.getCrdtTree()) {
+            long flushed = flushedSequences.getOrDefault(doc.getId(), 0L);
+            long current = doc.getSequence();
+            if (current == flushed) return null;
+            flushedSequences.put(doc.getId(), current);
+            if (snapshot) {
+                return DocumentMessages.snapshot(doc);
+            }
+
+            List<OperationLog.Entry> entries = doc.getOperationLog().since(flushed);
+            if (entries == null) {
+                return DocumentMessages.snapshot(doc);
+            }
+            List<CrdtOperation> operations = new ArrayList<>();
+            entries.forEach(entry -> operations.addAll(entry.operations()));
+            return DocumentMessages.operations(current, operations);
+        }
+    }
+
+    private void send(String documentId, WebSocketSession viewer, TextMessage message) {
+        if (!viewer.isOpen()) return;
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        try {
+            viewer.sendMessage(message);
+            if (event.shouldCommit()) {
+                event.documentId = documentId;
+                event.operationType = DocumentMessages.typeOf(message.getPayload());
+                event.sessionId = viewer.getId();
+                event.endpoint = "view";
+                event.bytes = message.getPayloadLength();
+                event.commit();
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Failed to send to viewer session: {}", viewer.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.collab.backend.websocket;
+
+import com.collab.backend.cluster.ReplicaManager;
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.jfr.MessageDecodeEvent;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.service.AdmissionController;
+import com.collab.backend.service.DocumentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only endpoint for viewers. Incoming frames only attach and detach users (a Vaadin node
+ * shares one connection per document between its viewers) and never reach the CRDT; outgoing
+ * content comes from the shared {@link ViewerFanout} batches. If this node does not own the
+ * document, it serves the viewer from a replica loaded from the owner.
+ */
+@Component
+public class ViewerWebSocketHandler extends TextWebSocketHandler {
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private ViewerFanout viewerFanout;
+
+    @Autowired
+    private ReplicaManager replicaManager;
+
+    @Autowired
+    private CrdtWebSocketHandler crdtWebSocketHandler;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<WebSocketSession, Set<String>> sessionUsers = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        String documentId = (String) session.getAttributes().get("documentId");
+        if (documentId == null) {
+            session.close(CloseStatus.BAD_DATA);
+            return;
+        }
+
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) {
+            doc = replicaManager.loadReplica(documentId);
+        }
+        if (doc == null) {
+            session.close(CrdtWebSocketHandler.DOCUMENT_MOVED);
+            return;
+        }
+        if (admissionController.shouldRefuse(doc)) {
+            session.close(CloseStatus.SERVICE_OVERLOAD);
+            return;
+        }
+
+        CrdtTree tree = doc.getCrdtTree();
+        String snapshot;
+        String comments = null;
+        WebSocketSession viewer;
+        synchronized (tree) {
+            snapshot = DocumentMessages.snapshot(doc);
+            if (doc.getComments().size() > 0) {
+                comments = DocumentMessages.commentsPage(doc, 0, Integer.MAX_VALUE, null);
+            }
+            viewer = viewerFanout.register(documentId, session, doc.getSequence());
+        }
+        viewer.sendMessage(new TextMessage(snapshot));
+        if (!doc.getUserCursors().isEmpty()) {
+            viewer.sendMessage(new TextMessage(DocumentMessages.cursors(doc.getUserCursors())));
+        }
+        if (comments != null) {
+            viewer.sendMessage(new TextMessage(comments));
+        }
+
+        sessionUsers.put(session, ConcurrentHashMap.newKeySet());
+        doc.connectionOpened();
+        String userId = (String) session.getAttributes().get("userId");
+        if (userId != null) {
+            sessionUsers.get(session).add(userId);
+        }
+        crdtWebSocketHandler.broadcastUserList(doc);
+    }
+
+    // Viewers are read-only; anything other than ATTACH, DETACH and LOAD_COMMENTS is dropped
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        Set<String> users = sessionUsers.get(session);
+        String documentId = (String) session.getAttributes().get("documentId");
+        if (users == null || documentId == null) return;
+
+        MessageDecodeEvent decode = new MessageDecodeEvent();
+        decode.begin();
+        ClientEditRequest req = objectMapper.readValue(message.getPayload(), ClientEditRequest.class);
+        if (decode.shouldCommit()) {
+            decode.documentId = documentId;
+            decode.operationType = String.valueOf(req.getType());
+            decode.endpoint = "view";
+            decode.bytes = message.getPayloadLength();
+            decode.commit();
+        }
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null || req.getUserId() == null) return;
+
+        if (req.getType() == ClientEditRequest.Type.ATTACH && doc.getUsers().containsKey(req.getUserId())) {
+            users.add(req.getUserId());
+            crdtWebSocketHandler.broadcastUserList(doc);
+        } else if (req.getType() == ClientEditRequest.Type.DETACH && users.remove(req.getUserId())) {
+            if (!doc.isReplica()) {
+                doc.getUsers().remove(req.getUserId());
+            }
+            crdtWebSocketHandler.broadcastUserList(doc);
+        } else if (req.getType() == ClientEditRequest.Type.LOAD_COMMENTS) {
+            String page;
+            synchronized (doc.getCrdtTree()) {
+                page = DocumentMessages.commentsPage(doc, req.getPosition(), req.getEndPosition(), req.getCommentId());
+            }
+            viewerFanout.sendTo(documentId, session, new TextMessage(page));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        String documentId = (String) session.getAttributes().get("documentId");
+        Set<String> users = sessionUsers.remove(session);
+        if (documentId == null) return;
+
+        boolean lastViewer = viewerFanout.unregister(documentId, session);
+        DocumentModel doc = documentService.getDocumentById(documentId);
+        if (doc == null) return;
+        if (users != null) {
+            doc.connectionClosed();
+        }
+
+        if (doc.isReplica()) {
+            if (lastViewer) {
+                replicaManager.releaseReplica(doc);
+            }
+            return;
+        }
+        if (users != null && !users.isEmpty()) {
+            users.forEach(doc.getUsers()::remove);
+            crdtWebSocketHandler.broadcastUserList(doc);
+        }
+    }
+}
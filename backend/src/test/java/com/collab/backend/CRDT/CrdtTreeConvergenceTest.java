@@ -0,0 +1,71 @@
+package com.collab.backend.crdt;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrdtTreeConvergenceTest {
+
+    private static ReplicaSimulator.Config config(long seed) {
+        return new ReplicaSimulator.Config(seed, 4, 2_000, 20, 0.3, 0.1, 0.05);
+    }
+
+    private static void assertConverged(ReplicaSimulator.Result result) {
+        assertTrue(result.converged(), () -> "Replicas diverged: " + result.texts());
+    }
+
+    @Test
+    void concurrentInsertsAtTheSamePositionConverge() {
+        assertConverged(ReplicaSimulator.run(new ReplicaSimulator.Config(1, 5, 2_000, 30, 0.0, 1.0, 0.0)));
+    }
+
+    @Test
+    void deletesRacingInsertsConverge() {
+        assertConverged(ReplicaSimulator.run(new ReplicaSimulator.Config(2, 4, 4_000, 200, 0.5, 0.2, 0.0)));
+    }
+
+    @Test
+    void duplicatedDeliveriesAreIgnored() {
+        assertConverged(ReplicaSimulator.run(new ReplicaSimulator.Config(3, 3, 2_000, 20, 0.3, 0.1, 0.5)));
+    }
+
+    @Test
+    void childBeforeParentWaitsForTheParent() {
+        CrdtTree tree = new CrdtTree();
+        CrdtOperation parent = CrdtOperation.insert("doc", "a-1", "a", "root", 1, "a");
+        CrdtOperation child = CrdtOperation.insert("doc", "a-2", "b", "a-1", 2, "a");
+        CrdtOperation grandchild = CrdtOperation.insert("doc", "a-3", "c", "a-2", 3, "a");
+
+        tree.applyInsertOperation(grandchild);
+        tree.applyInsertOperation(child);
+        assertEquals("", tree.getText());
+
+        assertEquals(3, tree.applyInsertOperation(parent).size());
+        assertEquals("abc", tree.getText());
+    }
+
+    @Test
+    void deleteBeforeInsertTakesEffectOnArrival() {
+        CrdtTree tree = new CrdtTree();
+        tree.applyDeleteOperation("a-1");
+        tree.applyInsertOperation(CrdtOperation.insert("doc", "a-1", "a", "root", 1, "a"));
+        tree.applyInsertOperation(CrdtOperation.insert("doc", "a-2", "b", "a-1", 2, "a"));
+        assertEquals("b", tree.getText());
+    }
+
+    @Test
+    void sameSeedGivesTheSameRun() {
+        ReplicaSimulator.Result first = ReplicaSimulator.run(config(42));
+        ReplicaSimulator.Result second = ReplicaSimulator.run(config(42));
+        assertEquals(first.texts(), second.texts());
+        assertEquals(first.nodeCounts(), second.nodeCounts());
+    }
+
+    @Test
+    void manySeedsConverge() {
+        for (long seed = 100; seed < 150; seed++) {
+            assertConverged(ReplicaSimulator.run(config(seed)));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.collab.backend.crdt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrdtTreeTest {
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    // Offsets and ranks from the index agree with a walk over the linked list
+    private static void assertIndexConsistent(CrdtTree tree) {
+        List<CrdtNode> nodes = new ArrayList<>();
+        tree.forEachNode(nodes::add);
+        int position = 0;
+        for (int rank = 0; rank < nodes.size(); rank++) {
+            CrdtNode node = nodes.get(rank);
+            assertEquals(rank, tree.rankOf(node));
+            assertEquals(position, tree.positionOf(node));
+            if (!node.isDeleted) {
+                assertEquals(node.id, tree.idAt(position));
+                position++;
+            }
+        }
+        assertEquals(position, tree.getVisibleLength());
+        assertNull(tree.idAt(position));
+    }
+
+    @Test
+    void indexFollowsEditsAcrossBlockSplits() {
+        String seed = text(3 * CrdtTree.BLOCK_SIZE);
+        CrdtTree tree = TestEditor.seeded(seed);
+        TestEditor editor = new TestEditor(tree);
+        StringBuilder expected = new StringBuilder(seed);
+        Random random = new Random(7);
+        for (int i = 0; i < 2_000; i++) {
+            int position = random.nextInt(expected.length() + 1);
+            if (random.nextInt(3) > 0 || position == expected.length()) {
+                editor.insert(position, "xyz");
+                expected.insert(position, "xyz");
+            } else {
+                int length = Math.min(1 + random.nextInt(5), expected.length() - position);
+                editor.delete(position, length);
+                expected.delete(position, position + length);
+            }
+        }
+        assertEquals(expected.toString(), tree.getText());
+        assertIndexConsistent(tree);
+    }
+
+    @Test
+    void parkedInsertsTakeDeletesThatArrivedFirst() {
+        CrdtTree tree = TestEditor.seeded("ab");
+        String parentId = "u-10";
+        CrdtOperation child = CrdtOperation.insert("doc", "u-11", "y", parentId, 11, "u");
+        tree.applyDeleteOperation(child.id);
+        assertTrue(tree.applyInsertOperation(child).isEmpty());
+        assertNull(tree.getNode(child.id));
+
+        List<CrdtNode> integrated = tree.applyInsertOperation(
+                CrdtOperation.insert("doc", parentId, "x", tree.idAt(0), 10, "u"));
+        assertEquals(List.of(parentId, child.id), integrated.stream().map(node -> node.id).toList());
+        assertTrue(tree.getNode(child.id).isDeleted);
+        assertEquals("axb", tree.getText());
+        assertIndexConsistent(tree);
+    }
+
+    @Test
+    void deletesAwaitingTargetAreBounded() {
+        CrdtTree tree = new CrdtTree();
+        for (int i = 0; i <= CrdtTree.MAX_DELETES_AWAITING_TARGET; i++) {
+            assertFalse(tree.applyDeleteOperation("gone-" + i));
+        }
+        // The oldest was forgotten, the latest still applies on arrival
+        tree.applyInsertOperation(CrdtOperation.insert("doc", "gone-0", "a", "root", 1, "u"));
+        tree.applyInsertOperation(CrdtOperation.insert("doc", "gone-" + CrdtTree.MAX_DELETES_AWAITING_TARGET, "b", "root", 2, "u"));
+        assertEquals("a", tree.getText());
+    }
+
+    @Test
+    void purgeDropsTombstonesAndKeepsTheRest() {
+        CrdtTree tree = TestEditor.seeded(text(3 * CrdtTree.BLOCK_SIZE));
+        TestEditor editor = new TestEditor(tree);
+        String kept = tree.idAt(10);
+        String dropped = tree.idAt(11);
+        editor.delete(10, 200);
+        editor.delete(CrdtTree.BLOCK_SIZE, 2 * CrdtTree.BLOCK_SIZE);
+        String text = tree.getText();
+        int nodes = tree.getNodeCount();
+
+        assertEquals(nodes - tree.getVisibleLength() - 1, tree.purgeTombstones(Set.of(kept)));
+        assertEquals(text, tree.getText());
+        assertEquals(tree.getVisibleLength() + 1, tree.getNodeCount());
+        assertTrue(tree.getNode(kept).isDeleted);
+        assertNull(tree.getNode(dropped));
+        assertIndexConsistent(tree);
+
+        // Nothing left to drop, and edits go on as before
+        assertEquals(0, tree.purgeTombstones(Set.of(kept)));
+        editor.insert(10, "new");
+        assertEquals(text.substring(0, 10) + "new" + text.substring(10), tree.getText());
+        assertIndexConsistent(tree);
+    }
+
+    @Test
+    void ranksCountTombstonesWherePositionsTie() {
+        CrdtTree tree = TestEditor.seeded("abcd");
+        CrdtNode b = tree.getNode(tree.idAt(1));
+        CrdtNode c = tree.getNode(tree.idAt(2));
+        new TestEditor(tree).delete(1);
+
+        assertEquals(1, tree.positionOf(b));
+        assertEquals(1, tree.positionOf(c));
+        assertEquals(1, tree.rankOf(b));
+        assertEquals(2, tree.rankOf(c));
+    }
+
+    @Test
+    void positionsOfMatchesPositionOfInSequenceOrder() {
+        CrdtTree tree = TestEditor.seeded(text(4 * CrdtTree.BLOCK_SIZE));
+        new TestEditor(tree).delete(100, CrdtTree.BLOCK_SIZE);
+        List<CrdtNode> all = new ArrayList<>();
+        tree.forEachNode(all::add);
+        List<CrdtNode> sample = new ArrayList<>();
+        for (int i = all.size() - 1; i >= 0; i -= 97) {
+            sample.add(all.get(i));
+        }
+
+        Map<CrdtNode, Integer> positions = tree.positionsOf(sample);
+        assertEquals(sample.size(), positions.size());
+        int lastRank = -1;
+        for (Map.Entry<CrdtNode, Integer> entry : positions.entrySet()) {
+            assertEquals(tree.positionOf(entry.getKey()), (int) entry.getValue());
+            assertTrue(tree.rankOf(entry.getKey()) > lastRank);
+            lastRank = tree.rankOf(entry.getKey());
+        }
+    }
+}
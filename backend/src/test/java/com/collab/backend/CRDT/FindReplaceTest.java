@@ -0,0 +1,153 @@
+package com.collab.backend.crdt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FindReplaceTest {
+
+    private static final int MAX_MATCHES = 1_000;
+    private static final long TIMEOUT_MS = 1_000;
+
+    private static FindReplace.Plan plan(CrdtTree tree, String find, String replacement, boolean regex) {
+        return FindReplace.plan(tree, find, replacement, regex, "doc", "u", MAX_MATCHES, TIMEOUT_MS);
+    }
+
+    private static String replace(String text, String find, String replacement, boolean regex) {
+        CrdtTree tree = TestEditor.seeded(text);
+        plan(tree, find, replacement, regex).operations().forEach(tree::applyOperation);
+        return tree.getText();
+    }
+
+    @Test
+    void literalMatchesIgnoreRegexSyntax() {
+        assertEquals("abc x", replace("abc a.c", "a.c", "x", false));
+        assertEquals("$1 b", replace("a b", "a", "$1", false));
+    }
+
+    @Test
+    void regexMatchesExpandGroups() {
+        assertEquals("x x", replace("abc a.c", "a.c", "x", true));
+        assertEquals("Hey World, hey world", replace("Hello World, hello world", "(?i)(h)ello", "$1ey", true));
+    }
+
+    @Test
+    void overlappingMatchesAreTakenLeftToRight() {
+        assertEquals("Xa", replace("aaa", "aa", "X", false));
+        assertEquals("XX", replace("aaaa", "aa", "X", false));
+        assertEquals("Xa", replace("aaaa", "aaa", "X", false));
+    }
+
+    @Test
+    void adjacentMatchesAreAllReplaced() {
+        assertEquals("xyxyxy", replace("ababab", "ab", "xy", false));
+        assertEquals("bcbcbcbc", replace("aaaa", "a", "bc", false));
+        assertEquals("", replace("abab", "ab", "", false));
+    }
+
+    @Test
+    void emptyMatchesAreSkipped() {
+        CrdtTree tree = TestEditor.seeded("abc");
+        assertEquals(0, plan(tree, "x*", "y", true).matches());
+        assertEquals(0, plan(tree, "^", "y", true).operations().size());
+    }
+
+    @Test
+    void tooManyMatchesAreRefusedBeforeAnythingChanges() {
+        CrdtTree tree = TestEditor.seeded("a".repeat(11));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> FindReplace.plan(tree, "a", "b", false, "doc", "u", 10, TIMEOUT_MS));
+        assertEquals("More than 10 matches", e.getMessage());
+        assertEquals("a".repeat(11), tree.getText());
+
+        assertEquals(10, FindReplace.plan(TestEditor.seeded("a".repeat(10)), "a", "b", false, "doc", "u", 10, TIMEOUT_MS).matches());
+    }
+
+    @Test
+    void invalidPatternsAndReplacementsAreRefused() {
+        CrdtTree tree = TestEditor.seeded("abc");
+        assertThrows(IllegalArgumentException.class, () -> plan(tree, "(", "x", true));
+        assertThrows(IllegalArgumentException.class, () -> plan(tree, "b", "$2", true));
+        assertEquals("abc", tree.getText());
+    }
+
+    @Test
+    void replacementIsOneUndoableBatch() {
+        String original = "one foo two foo three foo";
+        CrdtTree tree = TestEditor.seeded(original);
+        FindReplace.Plan plan = plan(tree, "foo", "barbaz", false);
+        assertEquals(3, plan.matches());
+
+        // The inserts are one run of timestamps from one user, so the sender's undo drops them as a single range
+        List<CrdtOperation> inserts = plan.operations().stream()
+                .filter(op -> op.type == CrdtOperation.Type.INSERT)
+                .toList();
+        assertEquals(3 * "barbaz".length(), inserts.size());
+        for (int i = 1; i < inserts.size(); i++) {
+            assertEquals(inserts.get(0).timestamp + i, inserts.get(i).timestamp);
+            assertEquals("u", inserts.get(i).userId);
+        }
+
+        // Inverse as clients build it: drop the inserts, then put each deleted run back after its last tombstone
+        List<CrdtOperation> undo = new ArrayList<>();
+        List<CrdtOperation> restores = new ArrayList<>();
+        long timestamp = tree.nextTimestamp(inserts.get(inserts.size() - 1).timestamp + 1);
+        String anchor = null;
+        StringBuilder run = new StringBuilder();
+        for (CrdtOperation op : plan.operations()) {
+            if (op.type == CrdtOperation.Type.DELETE) {
+                run.append(tree.getNode(op.targetId).value);
+                anchor = op.targetId;
+                continue;
+            }
+            undo.add(CrdtOperation.delete(op.id, timestamp, "u", "doc"));
+            if (run.length() > 0) {
+                String parentId = anchor;
+                for (int i = 0; i < run.length(); i++, timestamp++) {
+                    CrdtOperation restore = CrdtOperation.insert("doc", "u-" + timestamp,
+                            String.valueOf(run.charAt(i)), parentId, timestamp, "u");
+                    restores.add(restore);
+                    parentId = restore.id;
+                }
+                run.setLength(0);
+            }
+        }
+        undo.addAll(restores);
+
+        plan.operations().forEach(tree::applyOperation);
+        assertEquals("one barbaz two barbaz three barbaz", tree.getText());
+        undo.forEach(tree::applyOperation);
+        assertEquals(original, tree.getText());
+    }
+
+    @Test
+    void replicasApplyingTheBatchInAnyOrderConverge() {
+        String original = "the cat sat on the mat";
+        CrdtTree local = TestEditor.seeded(original);
+        CrdtTree remote = TestEditor.seeded(original);
+        FindReplace.Plan plan = plan(local, "(c|m)at", "$1ow", true);
+
+        plan.operations().forEach(local::applyOperation);
+        List<CrdtOperation> shuffled = new ArrayList<>(plan.operations());
+        Collections.shuffle(shuffled, new Random(7));
+        shuffled.forEach(remote::applyOperation);
+
+        assertEquals("the cow sat on the mow", local.getText());
+        assertEquals(local.getText(), remote.getText());
+    }
+
+    @Test
+    void catastrophicPatternsGiveUp() {
+        CrdtTree tree = TestEditor.seeded("x".repeat(2_000));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> FindReplace.plan(tree, "(.*x){12}z", "", true, "doc", "u", MAX_MATCHES, 50));
+        assertTrue(e.getMessage().contains("too long"));
+    }
+}
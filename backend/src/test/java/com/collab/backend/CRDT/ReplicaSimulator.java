@@ -0,0 +1,109 @@
+package com.collab.backend.crdt;
+
+import com.collab.backend.websocket.ClientEditRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic network of {@link CrdtTree} replicas. Every step one replica makes a local
+ * edit, and each resulting operation is sent to every other replica with its own random delay,
+ * so deliveries reorder freely: children can arrive before their parents and deletes before
+ * the inserts they target. Some deliveries are duplicated. Time is a step counter, and edits are
+ * stamped with a clock several steps coarse, so replicas that have not heard from each other
+ * produce equal timestamps as they do with millisecond wall clocks. A seed always produces the
+ * same run.
+ */
+class ReplicaSimulator {
+
+    record Config(long seed, int replicas, int steps, int maxDelay, double deleteRatio,
+                  double hotspotRatio, double duplicateRatio) {}
+
+    record Result(List<String> texts, List<Integer> nodeCounts) {
+
+        boolean converged() {
+            return texts.stream().distinct().count() == 1 && nodeCounts.stream().distinct().count() == 1;
+        }
+    }
+
+    private record Delivery(long at, long order, int to, CrdtOperation op) {}
+
+    private static final int STEPS_PER_CLOCK_TICK = 8;
+
+    private final Config config;
+    private final SplittableRandom random;
+    private final List<CrdtTree> replicas = new ArrayList<>();
+    private final PriorityQueue<Delivery> network = new PriorityQueue<>((a, b) ->
+            a.at != b.at ? Long.compare(a.at, b.at) : Long.compare(a.order, b.order));
+    private long sent;
+
+    ReplicaSimulator(Config config) {
+        this.config = config;
+        this.random = new SplittableRandom(config.seed());
+        for (int i = 0; i < config.replicas(); i++) {
+            replicas.add(new CrdtTree());
+        }
+    }
+
+    static Result run(Config config) {
+        return new ReplicaSimulator(config).run();
+    }
+
+    Result run() {
+        for (long step = 1; step <= config.steps(); step++) {
+            deliverUntil(step);
+            int author = random.nextInt(replicas.size());
+            CrdtOperation op = edit(author, step);
+            if (op != null) {
+                broadcast(author, op, step);
+            }
+        }
+        deliverUntil(Long.MAX_VALUE);
+
+        List<String> texts = replicas.stream().map(CrdtTree::getText).toList();
+        List<Integer> nodeCounts = replicas.stream().map(CrdtTree::getNodeCount).toList();
+        return new Result(texts, nodeCounts);
+    }
+
+    private CrdtOperation edit(int author, long step) {
+        CrdtTree tree = replicas.get(author);
+        int length = tree.getVisibleLength();
+        ClientEditRequest req = new ClientEditRequest();
+        req.userId = "r" + author;
+        req.timestamp = step / STEPS_PER_CLOCK_TICK;
+        if (length > 0 && random.nextDouble() < config.deleteRatio()) {
+            req.type = ClientEditRequest.Type.DELETE;
+            req.position = random.nextInt(length);
+        } else {
+            req.type = ClientEditRequest.Type.INSERT;
+            // Hotspot edits all land at the start, so replicas keep inserting after the same parent
+            req.position = random.nextDouble() < config.hotspotRatio() ? 0 : random.nextInt(length + 1);
+            req.value = String.valueOf((char) ('a' + random.nextInt(26)));
+        }
+        return tree.apply(req);
+    }
+
+    private void broadcast(int author, CrdtOperation op, long step) {
+        for (int to = 0; to < replicas.size(); to++) {
+            if (to == author) continue;
+            send(to, op, step);
+            if (random.nextDouble() < config.duplicateRatio()) {
+                send(to, op, step);
+            }
+        }
+    }
+
+    private void send(int to, CrdtOperation op, long step) {
+        long delay = config.maxDelay() == 0 ? 0 : random.nextInt(config.maxDelay() + 1);
+        network.add(new Delivery(step + delay, sent++, to, op));
+    }
+
+    private void deliverUntil(long step) {
+        while (!network.isEmpty() && network.peek().at() <= step) {
+            Delivery delivery = network.poll();
+            replicas.get(delivery.to()).applyOperation(delivery.op());
+        }
+    }
+}
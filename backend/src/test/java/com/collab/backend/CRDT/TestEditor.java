@@ -0,0 +1,65 @@
+package com.collab.backend.crdt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Edits a {@link CrdtTree} the way a single client does: one node per character, each insert
+ * after the character to its left, with timestamps that follow the seeded text. Every edit is
+ * applied to the tree and returned, so tests can hand the operations on.
+ */
+public class TestEditor {
+    private final CrdtTree tree;
+    private final String userId;
+    private long timestamp = 2_000_000_000_000L;
+
+    public TestEditor(CrdtTree tree) {
+        this(tree, "u");
+    }
+
+    public TestEditor(CrdtTree tree, String userId) {
+        this.tree = tree;
+        this.userId = userId;
+    }
+
+    // Tree holding the text as one node per character, as clients insert them
+    public static CrdtTree seeded(String text) {
+        CrdtTree tree = new CrdtTree();
+        seed(tree, text);
+        return tree;
+    }
+
+    public static void seed(CrdtTree tree, String text) {
+        tree.bulkAppender("seed", 1).append(text.toCharArray(), 0, text.length());
+    }
+
+    public CrdtOperation insert(int position, char c) {
+        return insert(position, String.valueOf(c)).get(0);
+    }
+
+    // Characters chained one after the other, as typed
+    public List<CrdtOperation> insert(int position, String text) {
+        String parentId = position == 0 ? "root" : tree.idAt(position - 1);
+        List<CrdtOperation> operations = new ArrayList<>();
+        for (char c : text.toCharArray()) {
+            CrdtOperation op = CrdtOperation.insert("doc", userId + "-" + timestamp, String.valueOf(c), parentId, timestamp++, userId);
+            tree.applyOperation(op);
+            operations.add(op);
+            parentId = op.id;
+        }
+        return operations;
+    }
+
+    public CrdtOperation delete(int position) {
+        return delete(position, 1).get(0);
+    }
+
+    public List<CrdtOperation> delete(int position, int length) {
+        List<CrdtOperation> operations = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            operations.add(CrdtOperation.delete(tree.idAt(position + i), timestamp++, userId, "doc"));
+        }
+        operations.forEach(tree::applyOperation);
+        return operations;
+    }
+}
@@ -0,0 +1,72 @@
+package com.collab.backend.bus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SequenceGateTest {
+
+    private final List<Long> delivered = new ArrayList<>();
+    private final SequenceGate gate = new SequenceGate(4, event -> delivered.add(event.sequence()));
+
+    private void offer(long... sequences) {
+        offerFrom(1, sequences);
+    }
+
+    private void offerFrom(long incarnation, long... sequences) {
+        for (long sequence : sequences) {
+            gate.offer(new DocumentEvent("doc", "http://localhost:8081", incarnation, sequence, List.of()));
+        }
+    }
+
+    @Test
+    void inOrderEventsAreDeliveredAtOnce() {
+        offer(1, 2, 3);
+        assertEquals(List.of(1L, 2L, 3L), delivered);
+    }
+
+    @Test
+    void earlyEventsWaitForTheGap() {
+        offer(1, 3, 5, 4);
+        assertEquals(List.of(1L), delivered);
+        offer(2);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), delivered);
+    }
+
+    @Test
+    void duplicatesAreDropped() {
+        offer(1, 2, 2, 1, 4, 4, 3, 3, 4);
+        assertEquals(List.of(1L, 2L, 3L, 4L), delivered);
+        // A batch sent again after a reconnect
+        offer(1, 2, 3, 4, 5);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), delivered);
+    }
+
+    @Test
+    void streamStartsAtTheFirstEventSeen() {
+        // Joined mid-stream: earlier events come from the owner's log, not the bus
+        offer(7, 8, 6);
+        assertEquals(List.of(7L, 8L), delivered);
+    }
+
+    @Test
+    void newIncarnationStartsTheStreamOver() {
+        offer(1, 2, 3, 5);
+        offerFrom(2, 1, 2);
+        assertEquals(List.of(1L, 2L, 3L, 1L, 2L), delivered);
+    }
+
+    @Test
+    void gapThatNeverFillsIsSkippedOnceTheBacklogIsTooLarge() {
+        offer(1, 3, 4, 5, 6);
+        assertEquals(List.of(1L), delivered);
+        offer(7);
+        assertEquals(List.of(1L, 3L, 4L, 5L, 6L, 7L), delivered);
+        // The late event is now a duplicate
+        offer(2, 8);
+        assertEquals(List.of(1L, 3L, 4L, 5L, 6L, 7L, 8L), delivered);
+    }
+}
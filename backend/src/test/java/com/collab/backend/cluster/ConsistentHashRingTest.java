@@ -0,0 +1,94 @@
+package com.collab.backend.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTest {
+
+    private static final String A = "http://localhost:8081";
+    private static final String B = "http://localhost:8082";
+    private static final String C = "http://localhost:8083";
+    private static final String D = "http://localhost:8084";
+    private static final int VIRTUAL_NODES = 64;
+    private static final int KEYS = 20_000;
+
+    private static ConsistentHashRing ring(String... nodes) {
+        return new ConsistentHashRing(List.of(nodes), VIRTUAL_NODES);
+    }
+
+    private static String key(int i) {
+        return "doc-" + i;
+    }
+
+    // The preference list without the given node, as the ring without it should give
+    private static List<String> without(List<String> preference, String node, int count) {
+        List<String> result = new ArrayList<>(preference);
+        result.remove(node);
+        return result.subList(0, Math.min(count, result.size()));
+    }
+
+    @Test
+    void ownershipDependsOnlyOnTheNodes() {
+        ConsistentHashRing first = ring(A, B, C);
+        ConsistentHashRing second = ring(C, A, B);
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(first.ownerOf(key(i)), second.ownerOf(key(i)));
+            assertEquals(first.preferenceList(key(i), 2), second.preferenceList(key(i), 2));
+        }
+    }
+
+    @Test
+    void removingANodeMovesOnlyItsKeysToTheirSuccessor() {
+        ConsistentHashRing before = ring(A, B, C);
+        ConsistentHashRing after = ring(A, B);
+        for (int i = 0; i < KEYS; i++) {
+            List<String> preference = before.preferenceList(key(i), 3);
+            // The owner's successor takes over, which is where its replica already is
+            assertEquals(without(preference, C, 1).get(0), after.ownerOf(key(i)));
+            assertEquals(without(preference, C, 2), after.preferenceList(key(i), 2));
+        }
+    }
+
+    @Test
+    void addingANodeTakesKeysOnlyForItself() {
+        ConsistentHashRing before = ring(A, B, C);
+        ConsistentHashRing after = ring(A, B, C, D);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String owner = after.ownerOf(key(i));
+            if (!owner.equals(before.ownerOf(key(i)))) {
+                assertEquals(D, owner);
+                moved++;
+            }
+            assertEquals(before.preferenceList(key(i), 2), without(after.preferenceList(key(i), 3), D, 2));
+        }
+        assertTrue(moved > KEYS / 8 && moved < KEYS / 2, "moved " + moved);
+    }
+
+    @Test
+    void keysSpreadOverTheNodes() {
+        ConsistentHashRing ring = ring(A, B, C);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.ownerOf(key(i)), 1, Integer::sum);
+        }
+        assertEquals(3, owned.size());
+        owned.forEach((node, count) -> assertTrue(count > KEYS / 5 && count < KEYS / 2, () -> node + " owns " + count));
+    }
+
+    @Test
+    void smallRings() {
+        assertNull(ring().ownerOf("abcd"));
+        assertEquals(List.of(), ring().preferenceList("abcd", 2));
+        assertEquals(A, ring(A).ownerOf("abcd"));
+        assertEquals(List.of(A), ring(A).preferenceList("abcd", 2));
+    }
+}
@@ -0,0 +1,101 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.crdt.TestEditor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CommentIndexTest {
+
+    private final CrdtTree tree = new CrdtTree();
+    private final CommentIndex index = new CommentIndex(tree);
+    private final TestEditor editor = new TestEditor(tree);
+    private final List<CommentModel> comments = new ArrayList<>();
+    private final Random random = new Random(11);
+    private int nextId;
+
+    CommentIndexTest() {
+        TestEditor.seed(tree, "a".repeat(400));
+    }
+
+    private CommentModel addComment(int start, int end) {
+        CommentModel comment = new CommentModel("u", "c" + nextId++, "note",
+                CursorAnchor.startOf(tree, start), CursorAnchor.endOf(tree, end));
+        index.add(comment);
+        comments.add(comment);
+        return comment;
+    }
+
+    private List<CommentModel> bruteForce(int from, int to) {
+        return comments.stream()
+                .filter(c -> c.getStart().resolve(tree) < to && c.getEnd().resolve(tree) > from)
+                .sorted(Comparator.comparingInt((CommentModel c) -> c.getStart().resolve(tree))
+                        .thenComparing(CommentModel::getCommentId))
+                .toList();
+    }
+
+    private void assertMatchesBruteForce(int from, int to) {
+        assertEquals(bruteForce(from, to), index.overlapping(from, to, null, Integer.MAX_VALUE),
+                () -> "overlapping " + from + ".." + to);
+    }
+
+    @Test
+    void randomAddsAndRemovesMatchABruteForceScan() {
+        for (int step = 0; step < 3_000; step++) {
+            int length = tree.getVisibleLength();
+            int action = random.nextInt(10);
+            if (action < 5 || comments.isEmpty()) {
+                int start = random.nextInt(length);
+                addComment(start, start + 1 + random.nextInt(Math.min(40, length - start)));
+            } else if (action < 8) {
+                CommentModel removed = comments.remove(random.nextInt(comments.size()));
+                assertSame(removed, index.remove(removed.getCommentId()));
+            } else {
+                // Typing moves every offset after it but no anchor key
+                editor.insert(random.nextInt(length + 1), 'b');
+            }
+
+            int from = random.nextInt(tree.getVisibleLength() + 1);
+            assertMatchesBruteForce(from, from + random.nextInt(60));
+            assertEquals(comments.size(), index.size());
+        }
+        assertEquals(bruteForce(0, Integer.MAX_VALUE), index.all());
+        assertMatchesBruteForce(0, tree.getVisibleLength());
+        assertMatchesBruteForce(tree.getVisibleLength(), tree.getVisibleLength() + 10);
+    }
+
+    @Test
+    void pagesTogetherGiveTheWholeRange() {
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(390);
+            addComment(start, start + 1 + random.nextInt(10));
+        }
+        List<CommentModel> pages = new ArrayList<>();
+        CommentModel after = null;
+        List<CommentModel> page;
+        do {
+            page = index.overlapping(100, 250, after, 7);
+            pages.addAll(page);
+            after = page.isEmpty() ? null : page.get(page.size() - 1);
+        } while (page.size() == 7);
+        assertEquals(bruteForce(100, 250), pages);
+    }
+
+    @Test
+    void duplicateIdsAndUnknownRemovalsAreIgnored() {
+        CommentModel comment = addComment(0, 5);
+        assertFalse(index.add(new CommentModel("u", comment.getCommentId(), "again",
+                CursorAnchor.startOf(tree, 10), CursorAnchor.endOf(tree, 12))));
+        assertNull(index.remove("missing"));
+        assertEquals(List.of(comment), index.all());
+    }
+}
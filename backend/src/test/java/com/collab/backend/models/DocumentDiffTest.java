@@ -0,0 +1,132 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.crdt.TestEditor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DocumentDiffTest {
+
+    private final DocumentModel doc = new DocumentModel("doc", "view", "edit");
+    private final TestEditor editor = new TestEditor(doc.getCrdtTree());
+
+    DocumentDiffTest() {
+        doc.setContent("The quick brown fox");
+    }
+
+    // Each edit is one recorded batch
+    private long insert(int position, String text) {
+        return doc.recordOperations(editor.insert(position, text));
+    }
+
+    private long delete(int position, int length) {
+        return doc.recordOperations(editor.delete(position, length));
+    }
+
+    @Test
+    void insertsAndDeletesAreLocatedInTheCurrentText() {
+        long from = doc.getSequence();
+        insert(4, "very ");
+        delete(15, 6);
+
+        DocumentDiff diff = DocumentDiff.between(doc, from, doc.getSequence());
+        assertEquals("The very quick fox", doc.getContent());
+        assertEquals(List.of(new DocumentDiff.Inserted(4, 5)), diff.inserted());
+        assertEquals(List.of(new DocumentDiff.Deleted(15, "brown ")), diff.deleted());
+    }
+
+    @Test
+    void insertedThenDeletedWithinTheRangeIsLeftOut() {
+        long from = doc.getSequence();
+        insert(4, "XY");
+        delete(4, 1);
+        insert(0, "Z");
+        delete(0, 1);
+
+        DocumentDiff diff = DocumentDiff.between(doc, from, doc.getSequence());
+        assertEquals(List.of(new DocumentDiff.Inserted(4, 1)), diff.inserted());
+        assertEquals(List.of(), diff.deleted());
+    }
+
+    @Test
+    void deletesOfAnInsertAfterToAreLeftOut() {
+        long from = doc.getSequence();
+        long to = insert(4, "XY");
+        delete(4, 2);
+
+        DocumentDiff diff = DocumentDiff.between(doc, from, to);
+        assertEquals(List.of(), diff.inserted());
+        assertEquals(List.of(), diff.deleted());
+    }
+
+    @Test
+    void deletedRunSharesOneOffset() {
+        long from = doc.getSequence();
+        delete(4, 1);
+        delete(4, 2);
+        delete(4, 3);
+        delete(9, 1);
+
+        DocumentDiff diff = DocumentDiff.between(doc, from, doc.getSequence());
+        assertEquals("The brownfox", doc.getContent());
+        assertEquals(List.of(new DocumentDiff.Deleted(4, "quick "), new DocumentDiff.Deleted(9, " ")), diff.deleted());
+        assertEquals(List.of(), diff.inserted());
+    }
+
+    @Test
+    void trimmedLogGivesNull() {
+        long from = doc.getSequence();
+        insert(0, "a");
+        long second = insert(0, "b");
+        insert(0, "c");
+        doc.getOperationLog().trim(1);
+
+        assertNull(DocumentDiff.between(doc, from, doc.getSequence()));
+        assertNotNull(DocumentDiff.between(doc, second, doc.getSequence()));
+    }
+
+    @Test
+    void undoingTheDiffGivesTheOlderText() {
+        Random random = new Random(5);
+        CrdtTree tree = doc.getCrdtTree();
+        long base = doc.getSequence();
+        List<String> texts = new ArrayList<>(List.of(doc.getContent()));
+        for (int batch = 0; batch < 40; batch++) {
+            int length = tree.getVisibleLength();
+            if (length > 0 && random.nextBoolean()) {
+                int position = random.nextInt(length);
+                delete(position, 1 + random.nextInt(Math.min(4, length - position)));
+            } else {
+                insert(random.nextInt(length + 1), "xyz".substring(random.nextInt(3)));
+            }
+            texts.add(doc.getContent());
+        }
+
+        String now = doc.getContent();
+        for (int from = 0; from < texts.size(); from++) {
+            DocumentDiff diff = DocumentDiff.between(doc, base + from, doc.getSequence());
+            TreeMap<Integer, String> deleted = new TreeMap<>();
+            diff.deleted().forEach(d -> deleted.merge(d.position(), d.text(), String::concat));
+            boolean[] inserted = new boolean[now.length()];
+            diff.inserted().forEach(i -> Arrays.fill(inserted, i.position(), i.position() + i.length(), true));
+
+            StringBuilder older = new StringBuilder();
+            for (int p = 0; p <= now.length(); p++) {
+                older.append(deleted.getOrDefault(p, ""));
+                if (p < now.length() && !inserted[p]) {
+                    older.append(now.charAt(p));
+                }
+            }
+            assertEquals(texts.get(from), older.toString(), "from " + (base + from));
+        }
+    }
+}
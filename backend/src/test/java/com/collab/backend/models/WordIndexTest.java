@@ -0,0 +1,97 @@
+package com.collab.backend.models;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.crdt.TestEditor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WordIndexTest {
+
+    private final CrdtTree tree = new CrdtTree();
+    private final WordIndex words = new WordIndex(tree);
+    private final TestEditor editor = new TestEditor(tree);
+
+    private void load(String text) {
+        TestEditor.seed(tree, text);
+        words.rebuild();
+    }
+
+    // Node order within a term does not matter
+    private static Map<String, Set<String>> normalized(Map<String, List<String>> entries) {
+        Map<String, Set<String>> result = new TreeMap<>();
+        entries.forEach((term, nodeIds) -> result.put(term, new HashSet<>(nodeIds)));
+        return result;
+    }
+
+    private void assertMatchesRebuild() {
+        WordIndex fresh = new WordIndex(tree);
+        fresh.rebuild();
+        assertEquals(normalized(fresh.entries()), normalized(words.entries()), () -> "text: " + tree.getText());
+    }
+
+    @Test
+    void separatorInsertSplitsAWordAndItsDeleteJoinsIt() {
+        load("hello world");
+        words.update(List.of(editor.insert(3, ' ')));
+        assertEquals(Set.of("hel", "lo", "world"), words.terms());
+        assertMatchesRebuild();
+
+        words.update(List.of(editor.delete(3)));
+        assertEquals(Set.of("hello", "world"), words.terms());
+        assertMatchesRebuild();
+
+        words.update(List.of(editor.delete(5)));
+        assertEquals(Set.of("helloworld"), words.terms());
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void randomEditsMatchAFreshRebuild() {
+        Random random = new Random(7);
+        String alphabet = "abc de  f.,\n";
+        load("The quick brown fox jumps over the lazy dog. Quickly, quick foxes!");
+        for (int round = 0; round < 2_000; round++) {
+            List<CrdtOperation> batch = new ArrayList<>();
+            int size = 1 + random.nextInt(random.nextInt(10) == 0 ? 200 : 5);
+            for (int i = 0; i < size; i++) {
+                int length = tree.getVisibleLength();
+                if (length > 0 && random.nextInt(3) == 0) {
+                    batch.add(editor.delete(random.nextInt(length)));
+                } else {
+                    batch.add(editor.insert(random.nextInt(length + 1), alphabet.charAt(random.nextInt(alphabet.length()))));
+                }
+            }
+            words.update(batch);
+            if (round % 50 == 0) {
+                assertMatchesRebuild();
+            }
+        }
+        assertMatchesRebuild();
+    }
+
+    @Test
+    void queriesAreFoldedLikeTheText() {
+        load("İstanbul QUICK " + "x".repeat(100));
+        assertTrue(words.terms().contains(WordIndex.parse("İSTANBUL").get(0).text()));
+        assertEquals(1, words.find(WordIndex.parse("İstanbul")).size());
+        assertEquals(1, words.find(WordIndex.parse("quick")).size());
+        assertEquals(1, words.find(WordIndex.parse("x".repeat(200))).size());
+    }
+
+    @Test
+    void parseSplitsWordsAndMarksPrefixes() {
+        assertEquals(List.of(new WordIndex.Word("edit", true), new WordIndex.Word("shared", false),
+                new WordIndex.Word("cursor", false)), WordIndex.parse("Edit* \"shared cursor\""));
+    }
+}
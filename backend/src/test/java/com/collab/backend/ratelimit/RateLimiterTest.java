@@ -0,0 +1,137 @@
+package com.collab.backend.ratelimit;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.websocket.ClientEditRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RateLimiterTest {
+
+    private static final long T0 = 1_000_000_000_000L;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final List<ClientEditRequest> processed = new ArrayList<>();
+    private long timestamp = 1;
+    private long batch;
+
+    RateLimiterTest() {
+        when(session.isOpen()).thenReturn(true);
+    }
+
+    // Messages per second for each user and for each document, bursts of one second
+    private static RateLimiter limiter(long userMessages, long documentMessages, String action) {
+        return new RateLimiter(userMessages, 0, documentMessages, 0, 1, action, 250, 256, new SimpleMeterRegistry());
+    }
+
+    private ClientEditRequest operations(String userId, String... values) {
+        ClientEditRequest request = new ClientEditRequest();
+        request.type = ClientEditRequest.Type.OPERATIONS;
+        request.userId = userId;
+        request.documentId = "doc";
+        request.batch = ++batch;
+        request.operations = new ArrayList<>();
+        for (String value : values) {
+            request.operations.add(CrdtOperation.insert("doc", userId + "-" + timestamp, value, "root", timestamp++, userId));
+        }
+        return request;
+    }
+
+    private ClientEditRequest cursor(String userId) {
+        ClientEditRequest request = new ClientEditRequest();
+        request.type = ClientEditRequest.Type.CURSOR;
+        request.userId = userId;
+        request.documentId = "doc";
+        request.timestamp = timestamp++;
+        return request;
+    }
+
+    private static List<String> values(ClientEditRequest request) {
+        return request.getOperations().stream().map(op -> op.value).toList();
+    }
+
+    @Test
+    void burstIsAdmittedThenMessagesAreHeld() {
+        RateLimiter limiter = limiter(3, 0, "coalesce");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("a", "x"), 10, T0));
+        }
+        assertEquals(RateLimiter.Verdict.HELD, limiter.admit(session, operations("a", "x"), 10, T0));
+        // Other users have buckets of their own
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("b", "x"), 10, T0));
+        assertEquals(1, limiter.getHeldCount());
+    }
+
+    @Test
+    void heldMessagesAreMergedAndReleasedInOrder() {
+        RateLimiter limiter = limiter(1, 0, "coalesce");
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("a", "1"), 10, T0));
+
+        ClientEditRequest lastCursor = cursor("a");
+        limiter.admit(session, operations("a", "2", "3"), 10, T0);
+        limiter.admit(session, operations("a", "4"), 10, T0);
+        limiter.admit(session, cursor("a"), 10, T0);
+        limiter.admit(session, lastCursor, 10, T0);
+        limiter.admit(session, operations("a", "5"), 10, T0);
+        assertEquals(5, limiter.getHeldCount());
+
+        // No tokens yet: nothing is released
+        limiter.releaseHeld((s, request) -> processed.add(request), T0);
+        assertEquals(List.of(), processed);
+
+        // One merged message per second: the joined batches, the latest cursor, then the last batch
+        limiter.releaseHeld((s, request) -> processed.add(request), T0 + SECOND);
+        assertEquals(1, processed.size());
+        assertEquals(List.of("2", "3", "4"), values(processed.get(0)));
+        // Acknowledged as the last batch merged into it
+        assertEquals(3, processed.get(0).getBatch());
+        assertEquals(3, limiter.getHeldCount());
+
+        limiter.releaseHeld((s, request) -> processed.add(request), T0 + 2 * SECOND);
+        assertEquals(lastCursor, processed.get(1));
+        limiter.releaseHeld((s, request) -> processed.add(request), T0 + 3 * SECOND);
+        assertEquals(List.of("5"), values(processed.get(2)));
+        assertEquals(0, limiter.getHeldCount());
+    }
+
+    @Test
+    void messagesQueueBehindHeldOnes() {
+        RateLimiter limiter = limiter(1, 0, "coalesce");
+        limiter.admit(session, operations("a", "1"), 10, T0);
+        assertEquals(RateLimiter.Verdict.HELD, limiter.admit(session, operations("a", "2"), 10, T0));
+        // Tokens are back, but the held batch has to go out first
+        assertEquals(RateLimiter.Verdict.HELD, limiter.admit(session, operations("a", "3"), 10, T0 + SECOND));
+
+        limiter.releaseHeld((s, request) -> processed.add(request), T0 + SECOND);
+        assertEquals(List.of("2", "3"), values(processed.get(0)));
+    }
+
+    @Test
+    void documentLimitRefundsTheUsersTokens() {
+        RateLimiter limiter = limiter(1, 2, "reject");
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("a", "1"), 10, T0));
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("c", "1"), 10, T0));
+        assertEquals(RateLimiter.Verdict.REJECT, limiter.admit(session, operations("b", "1"), 10, T0));
+
+        // The document has a token again after half a second; b's own, taken before the document refused, was given back
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("b", "2"), 10, T0 + SECOND / 2));
+        assertEquals(List.of(new RateLimiter.Throttled("document", "doc", 1, 1)), limiter.throttled(10));
+    }
+
+    @Test
+    void oversizedMessagesAreSlowedDownNotRefused() {
+        RateLimiter limiter = new RateLimiter(0, 100, 0, 0, 1, "reject", 250, 256, new SimpleMeterRegistry());
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("a", "x"), 500, T0));
+        assertEquals(RateLimiter.Verdict.REJECT, limiter.admit(session, operations("a", "x"), 500, T0 + SECOND));
+        assertEquals(RateLimiter.Verdict.ADMIT, limiter.admit(session, operations("a", "x"), 500, T0 + 5 * SECOND));
+    }
+}
@@ -0,0 +1,63 @@
+package com.collab.backend.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    private static final long T0 = 1_000_000_000_000L;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 10 tokens a second (one per 100 ms), bursts of 5
+    private final TokenBucket bucket = new TokenBucket(10, 5, T0);
+
+    @Test
+    void burstIsAdmittedThenOneTokenPerInterval() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire(1, T0));
+        }
+        assertEquals(100 * MS, bucket.tryAcquire(1, T0));
+        assertEquals(50 * MS, bucket.tryAcquire(1, T0 + 50 * MS));
+        assertEquals(0, bucket.tryAcquire(1, T0 + 100 * MS));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T0 + 100 * MS));
+    }
+
+    @Test
+    void refusedRequestsTakeNothing() {
+        assertEquals(0, bucket.tryAcquire(5, T0));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(300 * MS, bucket.tryAcquire(3, T0));
+        }
+        assertEquals(0, bucket.tryAcquire(3, T0 + 300 * MS));
+    }
+
+    @Test
+    void idleTimeDoesNotBuildUpMoreThanOneBurst() {
+        long later = T0 + TimeUnit.MINUTES.toNanos(1);
+        assertEquals(0, bucket.tryAcquire(5, later));
+        assertEquals(100 * MS, bucket.tryAcquire(1, later));
+    }
+
+    @Test
+    void oversizedRequestGoesThroughWhenFullAndLeavesDebt() {
+        assertEquals(0, bucket.tryAcquire(20, T0));
+        // 2 s of debt: a single token waits until the bucket is back within one burst
+        assertEquals(1_600 * MS, bucket.tryAcquire(1, T0));
+        // Another oversized request waits until the bucket is full again
+        assertEquals(2_000 * MS, bucket.tryAcquire(20, T0));
+        assertEquals(1_000 * MS, bucket.tryAcquire(20, T0 + 1_000 * MS));
+        assertEquals(0, bucket.tryAcquire(20, T0 + 2_000 * MS));
+    }
+
+    @Test
+    void refundGivesTokensBack() {
+        assertEquals(0, bucket.tryAcquire(5, T0));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T0));
+        bucket.refund(2);
+        assertEquals(0, bucket.tryAcquire(2, T0));
+        assertEquals(100 * MS, bucket.tryAcquire(1, T0));
+    }
+}
@@ -0,0 +1,129 @@
+package com.collab.backend.websocket;
+
+import com.collab.backend.bus.DocumentEventBus;
+import com.collab.backend.cluster.ClusterMembership;
+import com.collab.backend.cluster.DocumentSubscribers;
+import com.collab.backend.cluster.ReplicaManager;
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.models.UserModel;
+import com.collab.backend.ratelimit.RateLimiter;
+import com.collab.backend.service.AdmissionController;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.trace.TraceRecorder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CrdtWebSocketHandlerTest {
+
+    private static final String DOCUMENT = "doc-abcd1234";
+    private static final String USER = "user-1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DocumentModel doc = new DocumentModel(DOCUMENT, "view", "edit");
+    private final DocumentEventBus documentEventBus = mock(DocumentEventBus.class);
+    private final RateLimiter rateLimiter = mock(RateLimiter.class);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private final List<JsonNode> sent = new ArrayList<>();
+    private final CrdtWebSocketHandler handler = new CrdtWebSocketHandler();
+    private long batch;
+
+    CrdtWebSocketHandlerTest() throws Exception {
+        doc.addUser(USER, new UserModel(USER, "editor"));
+        DocumentService documentService = mock(DocumentService.class);
+        when(documentService.getDocumentById(DOCUMENT)).thenReturn(doc);
+
+        ReflectionTestUtils.setField(handler, "documentService", documentService);
+        ReflectionTestUtils.setField(handler, "documentEventBus", documentEventBus);
+        ReflectionTestUtils.setField(handler, "clusterMembership", mock(ClusterMembership.class));
+        ReflectionTestUtils.setField(handler, "documentSubscribers", mock(DocumentSubscribers.class));
+        ReflectionTestUtils.setField(handler, "viewerFanout", mock(ViewerFanout.class));
+        ReflectionTestUtils.setField(handler, "replicaManager", mock(ReplicaManager.class));
+        ReflectionTestUtils.setField(handler, "traceRecorder", mock(TraceRecorder.class));
+        ReflectionTestUtils.setField(handler, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(handler, "admissionController", mock(AdmissionController.class));
+        ReflectionTestUtils.setField(handler, "sendTimeLimitMs", 5000);
+        ReflectionTestUtils.setField(handler, "bufferSizeLimitBytes", 1 << 20);
+
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/crdt/" + DOCUMENT + "?documentId=" + DOCUMENT + "&userId=" + USER));
+        doAnswer(invocation -> {
+            sent.add(objectMapper.readTree(((TextMessage) invocation.getArgument(0)).getPayload()));
+            return null;
+        }).when(session).sendMessage(any());
+        handler.afterConnectionEstablished(session);
+        sent.clear();
+    }
+
+    private void send(CrdtOperation... operations) throws Exception {
+        ClientEditRequest req = new ClientEditRequest();
+        req.type = ClientEditRequest.Type.OPERATIONS;
+        req.userId = USER;
+        req.documentId = DOCUMENT;
+        req.batch = ++batch;
+        req.operations = List.of(operations);
+        handler.handleTextMessage(session, new TextMessage(objectMapper.writeValueAsString(req)));
+    }
+
+    private static CrdtOperation insert(String id, String value, String parentId, long timestamp) {
+        return CrdtOperation.insert(DOCUMENT, id, value, parentId, timestamp, USER);
+    }
+
+    // Targets of the deletes sent back to undo refused inserts on the sender's replica
+    private List<String> compensated() {
+        List<String> targets = new ArrayList<>();
+        for (JsonNode message : sent) {
+            if (message.path("type").asText().equals("OPERATIONS")) {
+                message.path("operations").forEach(op -> targets.add(op.path("targetId").asText()));
+            }
+        }
+        return targets;
+    }
+
+    @Test
+    void insertsUnderARefusedNodeAreRefusedInLaterBatches() throws Exception {
+        when(rateLimiter.admit(any(), any(), anyInt()))
+                .thenReturn(RateLimiter.Verdict.REJECT)
+                .thenReturn(RateLimiter.Verdict.ADMIT);
+
+        // A throttled 'a', then an admitted 'b' the sender typed after it
+        send(insert("user-1-100", "a", "root", 100));
+        send(insert("user-1-101", "b", "user-1-100", 101));
+
+        assertEquals(0, doc.getCrdtTree().getNodeCount());
+        assertEquals(List.of("user-1-100", "user-1-101"), compensated());
+        verify(documentEventBus, never()).publish(any(), any());
+    }
+
+    @Test
+    void deletesOfRefusedNodesAreDroppedAndOtherEditsApply() throws Exception {
+        when(rateLimiter.admit(any(), any(), anyInt()))
+                .thenReturn(RateLimiter.Verdict.REJECT)
+                .thenReturn(RateLimiter.Verdict.ADMIT);
+
+        send(insert("user-1-100", "a", "root", 100));
+        send(CrdtOperation.delete("user-1-100", 101, USER, DOCUMENT), insert("user-1-102", "c", "root", 102));
+
+        assertEquals("c", doc.getCrdtTree().getText());
+        assertEquals(1, doc.getCrdtTree().getNodeCount());
+        assertEquals(List.of("user-1-100"), compensated());
+    }
+}
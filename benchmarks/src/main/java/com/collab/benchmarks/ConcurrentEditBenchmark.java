@@ -0,0 +1,68 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several replicas typing at the same spot at the same time. Each round, every replica types a
+ * short run after the same parent with the same timestamps, and the runs arrive interleaved, so
+ * integration has to order concurrent siblings by (timestamp, userId). With {@code reversed}
+ * delivery each run arrives last character first and is parked until its parent shows up.
+ * Scores are per round, i.e. {@code replicas * 8} inserts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class ConcurrentEditBenchmark {
+
+    private static final int RUN_LENGTH = 8;
+
+    @Param({"1000", "100000", "10000000"})
+    public int length;
+
+    @Param({"2", "4", "8"})
+    public int replicas;
+
+    @Param({"interleaved", "reversed"})
+    public String delivery;
+
+    private CrdtTree tree;
+    private SplittableRandom random;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tree = Documents.withLength(length);
+        random = new SplittableRandom(42);
+        clock = tree.nextTimestamp(0);
+    }
+
+    @Benchmark
+    public int round() {
+        String parentId = Documents.parentAt(tree, random.nextInt(tree.getVisibleLength() + 1));
+        List<List<CrdtOperation>> runs = new ArrayList<>(replicas);
+        for (int r = 0; r < replicas; r++) {
+            runs.add(Documents.run("replica" + r, parentId, clock, RUN_LENGTH));
+        }
+        clock += RUN_LENGTH;
+
+        boolean reversed = "reversed".equals(delivery);
+        int integrated = 0;
+        for (int i = 0; i < RUN_LENGTH; i++) {
+            int index = reversed ? RUN_LENGTH - 1 - i : i;
+            for (List<CrdtOperation> run : runs) {
+                integrated += tree.applyInsertOperation(run.get(index)).size();
+            }
+        }
+        return integrated;
+    }
+}
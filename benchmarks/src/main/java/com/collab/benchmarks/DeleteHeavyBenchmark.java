@@ -0,0 +1,66 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selecting a block of text and typing over it with a single character, in a document that
+ * may already carry tombstones from earlier edits. When the text has shrunk to half its
+ * starting length it is topped up at the end, so long iterations do not run it empty.
+ * Scores are per selection, i.e. 32 deletes and one insert.
+ *
+ * Nodes cost about 200 bytes each, so 10M characters with tombstones do not fit the default
+ * heap; run that size with {@code -p length=10000000 -p tombstonesPerChar=0}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class DeleteHeavyBenchmark {
+
+    private static final String USER = "deleter";
+    private static final int SELECTION = 32;
+
+    @Param({"1000", "100000", "1000000"})
+    public int length;
+
+    // Deleted nodes per visible character before the benchmark starts
+    @Param({"0", "3"})
+    public int tombstonesPerChar;
+
+    private CrdtTree tree;
+    private SplittableRandom random;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tree = Documents.withTombstones(length, tombstonesPerChar);
+        random = new SplittableRandom(42);
+        clock = tree.nextTimestamp(0);
+    }
+
+    @Benchmark
+    public int overtypeSelection() {
+        if (tree.getVisibleLength() < length / 2 + SELECTION) {
+            CrdtTree.BulkAppender appender = tree.bulkAppender(USER, clock);
+            char[] chars = Documents.text(length / 2).toCharArray();
+            appender.append(chars, 0, chars.length);
+            clock = tree.nextTimestamp(0);
+        }
+
+        int start = random.nextInt(tree.getVisibleLength() - SELECTION + 1);
+        for (int i = 0; i < SELECTION; i++) {
+            tree.applyDeleteOperation(tree.idAt(start));
+        }
+        long timestamp = clock++;
+        tree.applyInsertOperation(CrdtOperation.insert(Documents.DOCUMENT_ID, USER + "-" + timestamp, "a",
+                Documents.parentAt(tree, start), timestamp, USER));
+        return tree.getVisibleLength();
+    }
+}
@@ -0,0 +1,51 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.models.DocumentModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-document passes: rendering the text, listing visible ids for snapshots, and replacing
+ * the content on import. Scores are per pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class DocumentReadBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int length;
+
+    private CrdtTree tree;
+    private DocumentModel document;
+    private String content;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = Documents.withLength(length);
+        document = new DocumentModel(Documents.DOCUMENT_ID, "view", "edit");
+        content = Documents.text(length);
+    }
+
+    @Benchmark
+    public String getText() {
+        return tree.getText();
+    }
+
+    @Benchmark
+    public List<String> getVisibleIds() {
+        return tree.getVisibleIds();
+    }
+
+    @Benchmark
+    public CrdtTree setContent() {
+        document.setContent(content);
+        return document.getCrdtTree();
+    }
+}
@@ -0,0 +1,71 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the documents the benchmarks run against. Seeded content goes through the bulk
+ * appender, like an import, so setup stays linear even at 10M characters.
+ */
+final class Documents {
+
+    static final String DOCUMENT_ID = "bench";
+    static final String SEED_USER = "seed";
+
+    private static final String WORDS = "the quick brown fox jumps over the lazy dog\n";
+
+    private Documents() {
+    }
+
+    static String text(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(WORDS, 0, Math.min(WORDS.length(), length - sb.length()));
+        }
+        return sb.toString();
+    }
+
+    static CrdtTree withLength(int length) {
+        return withTombstones(length, 0);
+    }
+
+    // A long-lived document: every visible character is preceded by tombstonesPerChar deleted ones
+    static CrdtTree withTombstones(int length, int tombstonesPerChar) {
+        CrdtTree tree = new CrdtTree();
+        CrdtTree.BulkAppender appender = tree.bulkAppender(SEED_USER, 1);
+        String text = text(length);
+        String parentId = "root";
+        long timestamp = 1;
+        for (int i = 0; i < length; i++) {
+            for (int t = 0; t <= tombstonesPerChar; t++) {
+                String id = SEED_USER + "-" + timestamp;
+                String value = t < tombstonesPerChar ? "x" : String.valueOf(text.charAt(i));
+                appender.appendNode(id, value, parentId, timestamp, SEED_USER, t < tombstonesPerChar);
+                parentId = id;
+                timestamp++;
+            }
+        }
+        return tree;
+    }
+
+    // A run typed or pasted by one user after parentId, each character chained to the previous one
+    static List<CrdtOperation> run(String userId, String parentId, long firstTimestamp, int length) {
+        List<CrdtOperation> ops = new ArrayList<>(length);
+        String parent = parentId;
+        for (int i = 0; i < length; i++) {
+            long timestamp = firstTimestamp + i;
+            String id = userId + "-" + timestamp;
+            ops.add(CrdtOperation.insert(DOCUMENT_ID, id, String.valueOf(WORDS.charAt(i % WORDS.length())), parent, timestamp, userId));
+            parent = id;
+        }
+        return ops;
+    }
+
+    // Parent for an insert at the given offset, as the server resolves it
+    static String parentAt(CrdtTree tree, int position) {
+        return position <= 0 ? "root" : tree.idAt(Math.min(position, tree.getVisibleLength()) - 1);
+    }
+}
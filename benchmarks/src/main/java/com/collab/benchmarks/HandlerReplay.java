@@ -0,0 +1,211 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.BackendApplication;
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.models.DocumentModel;
+import com.collab.backend.service.DocumentService;
+import com.collab.backend.trace.TraceEdit;
+import com.collab.backend.websocket.ClientEditRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a trace through the whole server path: a backend started in this JVM, one
+ * {@code /crdt/{documentId}} socket per replica, and {@code CrdtWebSocketHandler} applying and
+ * broadcasting every batch. Each replica keeps its own tree, builds OPERATIONS against it like
+ * the Vaadin client does, and applies what the server broadcasts. Edits are sent back to back
+ * without waiting for acks, so replicas edit concurrently as far as the server lets them.
+ */
+final class HandlerReplay {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final long SETTLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private static final class Replica implements WebSocket.Listener {
+        final String userId;
+        final CrdtTree tree = new CrdtTree();
+        final CountDownLatch ready = new CountDownLatch(1);
+        final AtomicLong acked = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final StringBuilder partial = new StringBuilder();
+        long sentMessages;
+        long sentOperations;
+        WebSocket socket;
+
+        Replica(String userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                try {
+                    handle(mapper.readTree(partial.toString()));
+                } catch (IOException e) {
+                    System.err.println(userId + " could not parse a message: " + e.getMessage());
+                }
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        private void handle(JsonNode message) throws IOException {
+            switch (message.path("type").asText()) {
+                case "SNAPSHOT" -> {
+                    synchronized (tree) {
+                        CrdtTree.BulkAppender appender = tree.bulkAppender(userId, 0);
+                        for (JsonNode node : message.path("nodes")) {
+                            appender.appendNode(node.path("id").asText(), node.path("value").asText(),
+                                    node.path("parentId").asText(), node.path("timestamp").asLong(),
+                                    node.path("userId").asText(), node.path("deleted").asBoolean());
+                        }
+                    }
+                    ready.countDown();
+                }
+                case "OPERATIONS" -> {
+                    List<CrdtOperation> operations = mapper.convertValue(message.path("operations"),
+                            mapper.getTypeFactory().constructCollectionType(List.class, CrdtOperation.class));
+                    synchronized (tree) {
+                        operations.forEach(tree::applyOperation);
+                    }
+                    received.addAndGet(operations.size());
+                }
+                case "SEQUENCE" -> acked.incrementAndGet();
+                default -> { }
+            }
+        }
+    }
+
+    static ReplayResult run(List<TraceEdit> edits) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        // The handler logs every message to stdout; keep that out of the report and the timing
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class)
+                .properties(Map.of("server.port", port, "logging.level.root", "WARN", "trace.enabled", false))
+                .run();
+             HttpClient http = HttpClient.newHttpClient()) {
+            return replay(edits, context.getBean(DocumentService.class), http, port);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static ReplayResult replay(List<TraceEdit> edits, DocumentService documents, HttpClient http, int port) throws Exception {
+        Map<String, String> codes = documents.createDocument("", null);
+        String documentId = codes.get("documentId");
+
+        Map<String, Replica> replicas = new LinkedHashMap<>();
+        for (TraceEdit edit : edits) {
+            if (!replicas.containsKey(edit.replica())) {
+                String userId = documents.joinDocument(codes.get("editCode")).get("userId");
+                Replica replica = new Replica(userId);
+                URI uri = URI.create("ws://localhost:" + port + "/crdt/" + documentId + "?documentId=" + documentId + "&userId=" + userId);
+                replica.socket = http.newWebSocketBuilder().buildAsync(uri, replica).join();
+                if (!replica.ready.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException(userId + " got no snapshot");
+                }
+                replicas.put(edit.replica(), replica);
+            }
+        }
+
+        TraceReplay.resetPeakHeap();
+        long start = System.nanoTime();
+        long totalOperations = 0;
+        for (TraceEdit edit : edits) {
+            Replica replica = replicas.get(edit.replica());
+            List<CrdtOperation> operations = apply(replica, edit, documentId);
+            if (operations.isEmpty()) continue;
+
+            ClientEditRequest req = new ClientEditRequest();
+            req.type = ClientEditRequest.Type.OPERATIONS;
+            req.userId = replica.userId;
+            req.documentId = documentId;
+            req.operations = operations;
+            replica.socket.sendText(mapper.writeValueAsString(req), true).join();
+            replica.sentMessages++;
+            replica.sentOperations += operations.size();
+            totalOperations += operations.size();
+        }
+        awaitSettled(replicas.values(), totalOperations);
+        long nanos = System.nanoTime() - start;
+        long peakHeap = TraceReplay.peakHeap();
+
+        DocumentModel doc = documents.getDocumentById(documentId);
+        String text;
+        int nodeCount;
+        int visibleLength;
+        synchronized (doc.getCrdtTree()) {
+            text = doc.getCrdtTree().getText();
+            nodeCount = doc.getCrdtTree().getNodeCount();
+            visibleLength = doc.getCrdtTree().getVisibleLength();
+        }
+        boolean converged = true;
+        for (Replica replica : replicas.values()) {
+            synchronized (replica.tree) {
+                converged &= replica.tree.getText().equals(text);
+            }
+            replica.socket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+        return new ReplayResult("handler", edits.size(), replicas.size(), nanos, peakHeap,
+                nodeCount, visibleLength, converged, replicas.size() == 1 ? text.equals(TraceReplay.applySequentially(edits)) : null);
+    }
+
+    // Positional edit on the replica's own tree, as the operations its client would send
+    private static List<CrdtOperation> apply(Replica replica, TraceEdit edit, String documentId) {
+        List<CrdtOperation> operations = new ArrayList<>(edit.deleteCount() + edit.text().length());
+        synchronized (replica.tree) {
+            CrdtTree tree = replica.tree;
+            int position = Math.clamp(edit.position(), 0, tree.getVisibleLength());
+            for (int i = 0; i < edit.deleteCount() && position < tree.getVisibleLength(); i++) {
+                operations.add(tree.apply(TreeReplay.request(ClientEditRequest.Type.DELETE, replica.userId, position, null)));
+            }
+            for (int i = 0; i < edit.text().length(); i++) {
+                String value = String.valueOf(edit.text().charAt(i));
+                operations.add(tree.apply(TreeReplay.request(ClientEditRequest.Type.INSERT, replica.userId, position + i, value)));
+            }
+        }
+        operations.forEach(op -> op.documentId = documentId);
+        return operations;
+    }
+
+    // Every batch acked and every replica holding everyone else's operations
+    private static void awaitSettled(Iterable<Replica> replicas, long totalOperations) throws InterruptedException {
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT_NANOS;
+        for (Replica replica : replicas) {
+            while (replica.acked.get() < replica.sentMessages
+                    || replica.received.get() < totalOperations - replica.sentOperations) {
+                if (System.nanoTime() > deadline) {
+                    System.err.printf("%s settled at %d/%d acks, %d/%d operations%n", replica.userId,
+                            replica.acked.get(), replica.sentMessages,
+                            replica.received.get(), totalOperations - replica.sentOperations);
+                    return;
+                }
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+        }
+    }
+}
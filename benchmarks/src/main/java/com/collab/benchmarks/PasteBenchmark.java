@@ -0,0 +1,52 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A large paste at a random offset, arriving as one batch of chained inserts like a client's
+ * OPERATIONS message. Scores are per paste.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class PasteBenchmark {
+
+    private static final String USER = "paster";
+
+    @Param({"1000", "100000", "10000000"})
+    public int length;
+
+    @Param({"1000", "64000"})
+    public int pasteLength;
+
+    private CrdtTree tree;
+    private SplittableRandom random;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tree = Documents.withLength(length);
+        random = new SplittableRandom(42);
+        clock = tree.nextTimestamp(0);
+    }
+
+    @Benchmark
+    public int paste() {
+        String parentId = Documents.parentAt(tree, random.nextInt(tree.getVisibleLength() + 1));
+        List<CrdtOperation> ops = Documents.run(USER, parentId, clock, pasteLength);
+        clock += pasteLength;
+        for (CrdtOperation op : ops) {
+            tree.applyInsertOperation(op);
+        }
+        return tree.getVisibleLength();
+    }
+}
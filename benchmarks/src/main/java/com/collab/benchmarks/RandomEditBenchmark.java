@@ -0,0 +1,50 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-character inserts and deletes at uniformly random offsets, half each, so the length
+ * stays around its starting point. Each edit resolves its offset to a node id first, as the
+ * server does for positional requests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class RandomEditBenchmark {
+
+    private static final String USER = "editor";
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int length;
+
+    private CrdtTree tree;
+    private SplittableRandom random;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tree = Documents.withLength(length);
+        random = new SplittableRandom(42);
+        clock = tree.nextTimestamp(0);
+    }
+
+    @Benchmark
+    public boolean edit() {
+        int visible = tree.getVisibleLength();
+        if (visible == 0 || random.nextBoolean()) {
+            long timestamp = clock++;
+            String parentId = Documents.parentAt(tree, random.nextInt(visible + 1));
+            return !tree.applyInsertOperation(
+                    CrdtOperation.insert(Documents.DOCUMENT_ID, USER + "-" + timestamp, "a", parentId, timestamp, USER)).isEmpty();
+        }
+        return tree.applyDeleteOperation(tree.idAt(random.nextInt(visible)));
+    }
+}
@@ -0,0 +1,13 @@
+package com.collab.benchmarks;
+
+/**
+ * Outcome of one trace replay. {@code matchesTrace} is null when the replay could not be
+ * compared against a sequential application of the trace (replicas saw edits out of order).
+ */
+record ReplayResult(String mode, int edits, int replicas, long nanos, long peakHeapBytes,
+                    int nodeCount, int visibleLength, boolean converged, Boolean matchesTrace) {
+
+    double tombstoneRatio() {
+        return nodeCount == 0 ? 0 : (double) (nodeCount - visibleLength) / nodeCount;
+    }
+}
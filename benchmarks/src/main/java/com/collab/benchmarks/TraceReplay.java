@@ -0,0 +1,98 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.trace.TraceEdit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Replays a recorded editing trace ({@link TraceEdit} JSON lines, e.g. written by the backend's
+ * trace recorder) and reports time, peak heap, final node count, tombstone ratio and whether
+ * the replicas converged.
+ *
+ * <pre>
+ * TraceReplay &lt;trace&gt; [--mode=tree|handler|both] [--lag=N] [--runs=N]
+ * </pre>
+ *
+ * {@code tree} replays through in-process CrdtTree replicas, whose operations reach each other
+ * N edits late; {@code handler} runs the backend in this JVM and replays over its WebSocket
+ * path. Run with {@code mvn exec:java -Dexec.args="..."} from benchmarks/.
+ */
+public class TraceReplay {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplay <trace> [--mode=tree|handler|both] [--lag=N] [--runs=N]");
+            System.exit(2);
+        }
+        String mode = "both";
+        int lag = 0;
+        int runs = 1;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            switch (option[0]) {
+                case "--mode" -> mode = option[1];
+                case "--lag" -> lag = Integer.parseInt(option[1]);
+                case "--runs" -> runs = Integer.parseInt(option[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<TraceEdit> edits = TraceEdit.read(Path.of(args[0]));
+        System.out.printf("%s: %d edits%n", args[0], edits.size());
+        boolean failed = false;
+        // Later runs show the warmed-up JIT; the first one includes class loading and compilation
+        for (int run = 1; run <= runs; run++) {
+            if (!mode.equals("handler")) {
+                failed |= report(run, TreeReplay.run(edits, lag));
+            }
+            if (!mode.equals("tree")) {
+                failed |= report(run, HandlerReplay.run(edits));
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static boolean report(int run, ReplayResult result) {
+        System.out.printf("%n[%s, run %d] %d edits from %d replicas%n", result.mode(), run, result.edits(), result.replicas());
+        System.out.printf("  total time     %10.1f ms%n", result.nanos() / 1e6);
+        System.out.printf("  peak heap      %10.1f MB%n", result.peakHeapBytes() / (1024.0 * 1024.0));
+        System.out.printf("  nodes          %10d  (%d visible, %.1f%% tombstones)%n",
+                result.nodeCount(), result.visibleLength(), 100 * result.tombstoneRatio());
+        System.out.printf("  converged      %10s%n", result.converged() ? "yes" : "NO");
+        if (result.matchesTrace() != null) {
+            System.out.printf("  matches trace  %10s%n", result.matchesTrace() ? "yes" : "NO");
+        }
+        return !result.converged() || Boolean.FALSE.equals(result.matchesTrace());
+    }
+
+    // The text the trace describes when its edits are applied one after another
+    static String applySequentially(List<TraceEdit> edits) {
+        StringBuilder text = new StringBuilder();
+        for (TraceEdit edit : edits) {
+            int position = Math.clamp(edit.position(), 0, text.length());
+            text.delete(position, Math.min(position + edit.deleteCount(), text.length()));
+            text.insert(position, edit.text());
+        }
+        return text.toString();
+    }
+
+    static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Sum of the heap pools' peaks: an upper bound, since the pools need not peak together
+    static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
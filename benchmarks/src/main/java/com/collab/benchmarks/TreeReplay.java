@@ -0,0 +1,92 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import com.collab.backend.trace.TraceEdit;
+import com.collab.backend.websocket.ClientEditRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a trace through one {@link CrdtTree} per replica, in process. Each edit is applied
+ * positionally on its author's tree, and the resulting operations reach the other replicas
+ * {@code lag} edits later, so with a lag the replicas edit concurrently and have to merge.
+ */
+final class TreeReplay {
+
+    private record Flight(String author, int deliverAt, List<CrdtOperation> operations) {}
+
+    private final Map<String, CrdtTree> replicas = new LinkedHashMap<>();
+    private final Deque<Flight> inFlight = new ArrayDeque<>();
+    // Operations every replica has received, for replicas that show up late in the trace
+    private final List<CrdtOperation> delivered = new ArrayList<>();
+
+    static ReplayResult run(List<TraceEdit> edits, int lag) {
+        TraceReplay.resetPeakHeap();
+        long start = System.nanoTime();
+        TreeReplay replay = new TreeReplay();
+        for (int i = 0; i < edits.size(); i++) {
+            replay.deliver(i);
+            TraceEdit edit = edits.get(i);
+            replay.inFlight.add(new Flight(edit.replica(), i + lag, replay.apply(edit)));
+        }
+        replay.deliver(Integer.MAX_VALUE);
+        long nanos = System.nanoTime() - start;
+        long peakHeap = TraceReplay.peakHeap();
+
+        CrdtTree reference = replay.replicas.values().iterator().next();
+        String text = reference.getText();
+        boolean converged = replay.replicas.values().stream().allMatch(tree -> tree.getText().equals(text));
+        Boolean matchesTrace = lag == 0 ? text.equals(TraceReplay.applySequentially(edits)) : null;
+        return new ReplayResult("tree", edits.size(), replay.replicas.size(), nanos, peakHeap,
+                reference.getNodeCount(), reference.getVisibleLength(), converged, matchesTrace);
+    }
+
+    private CrdtTree replica(String name) {
+        return replicas.computeIfAbsent(name, _ -> {
+            CrdtTree tree = new CrdtTree();
+            delivered.forEach(tree::applyOperation);
+            return tree;
+        });
+    }
+
+    private List<CrdtOperation> apply(TraceEdit edit) {
+        CrdtTree tree = replica(edit.replica());
+        List<CrdtOperation> operations = new ArrayList<>(edit.deleteCount() + edit.text().length());
+        int position = Math.clamp(edit.position(), 0, tree.getVisibleLength());
+        for (int i = 0; i < edit.deleteCount() && position < tree.getVisibleLength(); i++) {
+            operations.add(tree.apply(request(ClientEditRequest.Type.DELETE, edit.replica(), position, null)));
+        }
+        for (int i = 0; i < edit.text().length(); i++) {
+            String value = String.valueOf(edit.text().charAt(i));
+            operations.add(tree.apply(request(ClientEditRequest.Type.INSERT, edit.replica(), position + i, value)));
+        }
+        return operations;
+    }
+
+    private void deliver(int upTo) {
+        while (!inFlight.isEmpty() && inFlight.peek().deliverAt() <= upTo) {
+            Flight flight = inFlight.poll();
+            replicas.forEach((name, tree) -> {
+                if (!name.equals(flight.author())) {
+                    flight.operations().forEach(tree::applyOperation);
+                }
+            });
+            delivered.addAll(flight.operations());
+        }
+    }
+
+    static ClientEditRequest request(ClientEditRequest.Type type, String userId, int position, String value) {
+        ClientEditRequest req = new ClientEditRequest();
+        req.type = type;
+        req.userId = userId;
+        req.position = position;
+        req.value = value;
+        return req;
+    }
+}
@@ -0,0 +1,57 @@
+package com.collab.benchmarks;
+
+import com.collab.backend.crdt.CrdtNode;
+import com.collab.backend.crdt.CrdtOperation;
+import com.collab.backend.crdt.CrdtTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One user typing: every insert goes right after the previous one, in the middle of the document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class TypingBenchmark {
+
+    private static final String USER = "typist";
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int length;
+
+    private CrdtTree tree;
+    private String caretId;
+    private long clock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tree = Documents.withLength(length);
+        caretId = Documents.parentAt(tree, length / 2);
+        clock = tree.nextTimestamp(0);
+    }
+
+    @Benchmark
+    public List<CrdtNode> typeCharacter() {
+        long timestamp = clock++;
+        String id = USER + "-" + timestamp;
+        List<CrdtNode> integrated = tree.applyInsertOperation(
+                CrdtOperation.insert(Documents.DOCUMENT_ID, id, "a", caretId, timestamp, USER));
+        caretId = id;
+        return integrated;
+    }
+
+    // Server-side path for a positional insert: resolve the offset, then integrate
+    @Benchmark
+    public CrdtOperation typeAtOffset() {
+        long timestamp = clock++;
+        CrdtOperation op = CrdtOperation.insert(Documents.DOCUMENT_ID, USER + "-" + timestamp, "a",
+                Documents.parentAt(tree, tree.getVisibleLength() / 2), timestamp, USER);
+        tree.applyInsertOperation(op);
+        return op;
+    }
+}
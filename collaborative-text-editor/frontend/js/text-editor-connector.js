@@ -12,36 +12,132 @@ window.initEditorConnector = function (element, userId) {
     window.suppressInputStart = () => suppressInput = true;
     window.suppressInputEnd = () => suppressInput = false;
 
-    textarea.addEventListener("input", function (event) {
+    // Local edits are coalesced into [position, deleteCount, text] splices and sent in one RPC
+    // once typing pauses, at the latest FLUSH_MAX_DELAY_MS after the first pending edit, or as
+    // soon as MAX_PENDING_CHARS characters are pending.
+    const FLUSH_IDLE_MS = 40;
+    const FLUSH_MAX_DELAY_MS = 150;
+    const MAX_PENDING_CHARS = 512;
+
+    let pendingEdits = [];
+    let pendingChars = 0;
+    let idleTimer = 0;
+    let maxDelayTimer = 0;
+
+    function queueEdit(position, deleteCount, text) {
+        const last = pendingEdits[pendingEdits.length - 1];
+        const lastIsInsert = last && last[1] === 0;
+        const lastIsDelete = last && last[2] === '';
+        if (lastIsInsert && deleteCount === 0 && position === last[0] + last[2].length) {
+            // Typing on
+            last[2] += text;
+        } else if (lastIsInsert && text === '' && position + deleteCount === last[0] + last[2].length
+                && deleteCount <= last[2].length) {
+            // Backspacing over characters that were never sent
+            last[2] = last[2].slice(0, last[2].length - deleteCount);
+            if (last[2] === '') pendingEdits.pop();
+        } else if (lastIsDelete && text === '' && position + deleteCount === last[0]) {
+            // Backspace
+            last[0] = position;
+            last[1] += deleteCount;
+        } else if (lastIsDelete && text === '' && position === last[0]) {
+            // Forward delete
+            last[1] += deleteCount;
+        } else {
+            pendingEdits.push([position, deleteCount, text]);
+        }
+
+        pendingChars += deleteCount + text.length;
+        if (pendingChars >= MAX_PENDING_CHARS) {
+            flushEdits();
+            return;
+        }
+        clearTimeout(idleTimer);
+        idleTimer = setTimeout(flushEdits, FLUSH_IDLE_MS);
+        if (!maxDelayTimer) {
+            maxDelayTimer = setTimeout(flushEdits, FLUSH_MAX_DELAY_MS);
+        }
+    }
+
+    function flushEdits() {
+        clearTimeout(idleTimer);
+        clearTimeout(maxDelayTimer);
+        idleTimer = 0;
+        maxDelayTimer = 0;
+        if (pendingEdits.length === 0) return;
+
+        const batch = pendingEdits;
+        pendingEdits = [];
+        pendingChars = 0;
+        element.$server.onEditBatch(JSON.stringify(batch));
+    }
+
+    // Remote splices [position, deleteCount, text] from the server. They are queued and applied
+    // in place once per animation frame; setRangeText keeps the local selection where it
+    // belongs and fires no input event, so nothing has to be suppressed or re-diffed.
+    let pendingPatches = [];
+    let patchFrame = 0;
+
+    element.applyRemotePatches = function (patches) {
+        pendingPatches.push(...patches);
+        if (!patchFrame) {
+            patchFrame = requestAnimationFrame(flushRemotePatches);
+        }
+    };
+
+    function flushRemotePatches() {
+        patchFrame = 0;
+        // Local edits go out first so the server sees them before anything typed after the patch
+        flushEdits();
+        const patches = pendingPatches;
+        pendingPatches = [];
+        for (const [position, deleteCount, text] of patches) {
+            const length = textarea.value.length;
+            const start = Math.min(position, length);
+            const end = Math.min(start + deleteCount, length);
+            textarea.setRangeText(text, start, end, 'preserve');
+        }
+        lastValue = textarea.value;
+    }
+
+    textarea.addEventListener("input", function () {
         if (suppressInput) {
             console.log("🔇 Suppressed input event due to backend update");
             lastValue = textarea.value; // keep local value in sync
             return;
         }
 
-        const newValue = textarea.value;
-        const cursorPos = textarea.selectionStart;
+        // The changed range is what lies between the common prefix and suffix of the old and
+        // new value; the caret bounds the suffix so repeated characters resolve to where the
+        // user actually typed. Covers typing, deleting, pasting over a selection, cut and drop.
         const oldValue = lastValue;
+        const newValue = textarea.value;
+        const caret = textarea.selectionEnd;
+        let suffix = 0;
+        const maxSuffix = Math.min(oldValue.length, newValue.length - caret);
+        while (suffix < maxSuffix
+                && oldValue[oldValue.length - 1 - suffix] === newValue[newValue.length - 1 - suffix]) {
+            suffix++;
+        }
+        let prefix = 0;
+        const maxPrefix = Math.min(oldValue.length, newValue.length) - suffix;
+        while (prefix < maxPrefix && oldValue[prefix] === newValue[prefix]) {
+            prefix++;
+        }
 
-        if (event.inputType === 'insertText' || event.inputType === 'insertFromPaste') {
-            const insertedLength = newValue.length - oldValue.length;
-            const inserted = newValue.slice(cursorPos - insertedLength, cursorPos);
-
-            if (inserted && inserted.length > 0) {
-                console.log(`[Insert] '${inserted}' at pos ${cursorPos - insertedLength}`);
-                element.$server.onCharacterBatchInserted(inserted, cursorPos - insertedLength);
-            }
-        } else if (event.inputType.startsWith('delete')) {
-            const deletedLength = oldValue.length - newValue.length;
-            const deletePos = cursorPos;
-            if (deletedLength > 0) {
-                console.log(`[Delete] ${deletedLength} character(s) at pos ${deletePos}`);
-                element.$server.onCharacterBatchDeleted(deletePos, deletedLength);
-            }
+        const deleteCount = oldValue.length - prefix - suffix;
+        const inserted = newValue.slice(prefix, newValue.length - suffix);
+        if (deleteCount > 0 && inserted) {
+            queueEdit(prefix, deleteCount, '');
+            queueEdit(prefix, 0, inserted);
+        } else if (deleteCount > 0 || inserted) {
+            queueEdit(prefix, deleteCount, inserted);
         }
 
         lastValue = newValue;
     });
 
+    textarea.addEventListener("blur", flushEdits);
+
     console.log("✅ Text editor connector initialized for user:", userId);
 };
@@ -1,7 +1,10 @@
 package com.example.application.connections.CRDT;
+
+import java.util.List;
+
 public class ClientEditRequest {
 
-    public enum Type { INSERT, DELETE, ADD_COMMENT, DELETE_COMMENT , CURSOR}
+    public enum Type { INSERT, DELETE, ADD_COMMENT, DELETE_COMMENT , CURSOR, OPERATIONS, ATTACH, DETACH, LOAD_COMMENTS}
 
 
     public Type type;       // "INSERT" or "DELETE"
@@ -12,4 +15,8 @@ public class ClientEditRequest {
     public String userId;     // for "INSERT" and "DELETE"
     public String documentId; // for "INSERT" and "DELETE"
     public String commentId;  // for "addComment"
+    public List<CrdtOperation> operations; // for OPERATIONS -> already applied to the local replica
+    public UserCursor cursor; // for CURSOR
+    public UserCursor range;  // for ADD_COMMENT -> anchored start and end
+    public long batch;        // for OPERATIONS -> numbered per channel, acknowledged by SEQUENCE
 }
\ No newline at end of file
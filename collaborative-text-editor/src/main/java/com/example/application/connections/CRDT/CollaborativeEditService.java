@@ -1,28 +1,97 @@
 package com.example.application.connections.CRDT;
 
+import com.example.application.data.StartPageData;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.websocket.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @ClientEndpoint
 public class CollaborativeEditService {
+    private static final Logger logger = LoggerFactory.getLogger(CollaborativeEditService.class);
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
-    private final Map<String, Session> sessionMap = new ConcurrentHashMap<>();
+    // Close code the backend uses when the document was handed to another node
+    private static final int DOCUMENT_MOVED = 4001;
+    private static final int MAX_REROUTE_ATTEMPTS = 10;
+    private static final long REROUTE_BACKOFF_MS = 200;
+
+    // One upstream connection per document and endpoint on this node, shared by every local user of it
+    private final Map<String, DocumentChannel> channels = new ConcurrentHashMap<>();
+    // Channel each user-document session is attached to
+    private final Map<String, DocumentChannel> userChannels = new ConcurrentHashMap<>();
     private final Map<String, CollaborativeEditUiListener> listenerMap = new ConcurrentHashMap<>();
+    // Undo history per user-document session
+    private final Map<String, UndoManager> undoManagers = new ConcurrentHashMap<>();
+
+    @Value("${editor.undo.max-depth:200}")
+    private int undoMaxDepth;
+
+    @Value("${editor.undo.max-bytes:262144}")
+    private long undoMaxBytes;
+
+    // Edits closer together than this are undone as one step
+    @Value("${editor.undo.group-pause-ms:600}")
+    private long undoGroupPauseMs;
+
+    /**
+     * Shared upstream for one document: the socket, the CRDT replica every local user edits, and
+     * the listeners of the users attached to it. Users join and leave with ATTACH and DETACH
+     * messages; the socket is closed once the last one has left.
+     */
+    private static class DocumentChannel {
+        final String documentId;
+        final boolean viewer;
+        final CrdtTree replica = new CrdtTree();
+        final Map<String, CollaborativeEditUiListener> listeners = new ConcurrentHashMap<>();
+        volatile Session session;
+        // Every UI on this node writes to the one socket, which takes a single message at a time
+        final Object sendLock = new Object();
+        // Operation batches not acknowledged yet, oldest first, sent again on the next connection;
+        // both guarded by sendLock
+        final Deque<ClientEditRequest> unacknowledged = new ArrayDeque<>();
+        long lastBatch;
+        boolean opened;
+        // Last document sequence seen, sent back on reconnect so the new node can resume from it
+        volatile Long lastSequence;
+        volatile boolean closed;
+        // Every user's cursor as last broadcast, resolved to offsets against the replica on demand
+        final Map<String, UserCursor> cursors = new ConcurrentHashMap<>();
+        // Last cursor each local user sent; a move that resolves to the same offsets is not sent again
+        final Map<String, UserCursor> sentCursors = new ConcurrentHashMap<>();
+
+        DocumentChannel(String documentId, boolean viewer) {
+            this.documentId = documentId;
+            this.viewer = viewer;
+        }
+    }
 
     // Generate a unique key for each user-document session
     private String sessionKey(String documentId, String userId) {
         return userId + "_" + documentId;
     }
 
+    private static String channelKey(String documentId, boolean viewer) {
+        return (viewer ? "view:" : "crdt:") + documentId;
+    }
+
     public void registerListener(String documentId, String userId, CollaborativeEditUiListener listener) {
         listenerMap.put(sessionKey(documentId, userId), listener);
     }
@@ -30,74 +99,551 @@ public class CollaborativeEditService {
     public void unregisterListener(String documentId, String userId) {
         String key = sessionKey(documentId, userId);
         listenerMap.remove(key);
-        Session session = sessionMap.remove(key);
-        if (session != null && session.isOpen()) {
-            try {
-                session.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        undoManagers.remove(key);
+        DocumentChannel channel = userChannels.remove(key);
+        if (channel == null) return;
+
+        synchronized (channel) {
+            channel.listeners.remove(userId);
+            if (!channel.listeners.isEmpty()) {
+                sendControl(channel, ClientEditRequest.Type.DETACH, userId);
+                return;
+            }
+            channel.closed = true;
+            channels.remove(channelKey(channel.documentId, channel.viewer), channel);
+            Session session = channel.session;
+            if (session != null && session.isOpen()) {
+                try {
+                    session.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close WebSocket for {}", channelKey(channel.documentId, channel.viewer), e);
+                }
+            }
+        }
+    }
+
+    public void connectWebSocket(String node, String documentId, String userId) {
+        connectWebSocket(node, documentId, userId, false);
+    }
+
+    // Viewers use the read-only /view endpoint, which may be served by a replica node
+    public void connectWebSocket(String node, String documentId, String userId, boolean viewer) {
+        String key = sessionKey(documentId, userId);
+        CollaborativeEditUiListener listener = listenerMap.get(key);
+        if (listener == null) {
+            throw new IllegalStateException("No listener registered for " + key);
+        }
+
+        while (true) {
+            DocumentChannel channel = channels.computeIfAbsent(channelKey(documentId, viewer),
+                    _ -> new DocumentChannel(documentId, viewer));
+            synchronized (channel) {
+                // Lost a race with the last user leaving; start a fresh channel
+                if (channel.closed) continue;
+
+                channel.listeners.put(userId, listener);
+                userChannels.put(key, channel);
+                if (!channel.opened) {
+                    // The first user opens the socket; every listener is attached once it is open
+                    open(channel, node);
+                    channel.opened = true;
+                } else {
+                    sendControl(channel, ClientEditRequest.Type.ATTACH, userId);
+                    if (channel.lastSequence != null) {
+                        listener.onSnapshot(replicaText(channel));
+                    }
+                }
+                return;
             }
         }
     }
 
-    public void connectWebSocket(String documentId, String userId) {
+    private void open(DocumentChannel channel, String node) {
         try {
-            String key = sessionKey(documentId, userId);
-            String wsUrl = String.format("ws://localhost:8081/crdt/%s?documentId=%s&userId=%s", documentId, documentId, userId);
+            String wsBase = node.replaceFirst("^http", "ws");
+            String path = channel.viewer ? "view" : "crdt";
+            String wsUrl = String.format("%s/%s/%s?documentId=%s", wsBase, path, channel.documentId, channel.documentId);
+            Long lastSequence = channel.lastSequence;
+            if (lastSequence != null) {
+                wsUrl += "&lastSeq=" + lastSequence;
+            }
             WebSocketContainer container = ContainerProvider.getWebSocketContainer();
-            container.connectToServer(new CollaborativeEditClientEndpoint(documentId, userId), new URI(wsUrl));
-            System.out.println("WebSocket connection initialized for " + key);
+            container.connectToServer(new CollaborativeEditClientEndpoint(channel), new URI(wsUrl));
+            logger.info("WebSocket connection initialized for {} on {}", channelKey(channel.documentId, channel.viewer), node);
         } catch (Exception e) {
             throw new RuntimeException("WebSocket connection failed", e);
         }
     }
 
-    public void sendEditRequest(ClientEditRequest req) {
-        String key = sessionKey(req.documentId, req.userId);
-        Session session = sessionMap.get(key);
-        if (session != null && session.isOpen()) {
-            try {
-                String json = mapper.writeValueAsString(req);
-                session.getAsyncRemote().sendText(json);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to send WebSocket message", e);
+    // The owner changed (rebalancing or failover): look it up again and reconnect, backing off while the handover completes
+    private void reroute(DocumentChannel channel) {
+        Thread.startVirtualThread(() -> {
+            for (int attempt = 1; attempt <= MAX_REROUTE_ATTEMPTS; attempt++) {
+                if (channel.closed) return;
+                try {
+                    Thread.sleep(REROUTE_BACKOFF_MS * attempt);
+                    String node = channel.viewer
+                            ? StartPageData.routeViewer(channel.documentId)
+                            : StartPageData.routeDocument(channel.documentId);
+                    synchronized (channel) {
+                        if (channel.closed) return;
+                        open(channel, node);
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    logger.warn("Reconnect attempt {} failed for {}: {}", attempt,
+                            channelKey(channel.documentId, channel.viewer), e.getMessage());
+                }
             }
-        } else {
-            System.err.println("Cannot send. WebSocket session is closed or null for " + key);
-        }
+        });
     }
 
-    public static ClientEditRequest updateUserCursorLine(int position, String userId, String documentId) {
+    private void sendControl(DocumentChannel channel, ClientEditRequest.Type type, String userId) {
         ClientEditRequest req = new ClientEditRequest();
-        req.type = ClientEditRequest.Type.CURSOR;
-        req.position = position;
+        req.type = type;
         req.userId = userId;
-        req.documentId = documentId;
-        return req;
+        req.documentId = channel.documentId;
+        req.timestamp = System.currentTimeMillis();
+        send(channel, req);
+    }
+
+    private static String replicaText(DocumentChannel channel) {
+        synchronized (channel.replica) {
+            return channel.replica.getText();
+        }
+    }
+
+    public String getText(String documentId, String userId) {
+        DocumentChannel channel = userChannels.get(sessionKey(documentId, userId));
+        return channel == null ? "" : replicaText(channel);
+    }
+
+    public void insertText(String documentId, String userId, int position, String text) {
+        applyLocalChanges(documentId, userId, List.of(new TextChange(position, 0, text)));
+    }
+
+    // Deletes the characters in [position, position + count) of the replica's visible text
+    public void deleteText(String documentId, String userId, int position, int count) {
+        applyLocalChanges(documentId, userId, List.of(new TextChange(position, count, "")));
+    }
+
+    // Applies a batch of local splices to the replica and sends all resulting operations as one message
+    public void applyLocalChanges(String documentId, String userId, List<TextChange> changes) {
+        DocumentChannel channel = userChannels.get(sessionKey(documentId, userId));
+        if (channel == null || changes.isEmpty()) return;
+
+        CrdtTree replica = channel.replica;
+        List<CrdtOperation> operations = new ArrayList<>();
+        List<TextChange> applied = new ArrayList<>(changes.size());
+        List<UndoManager.Inverse> inverses = new ArrayList<>();
+        synchronized (replica) {
+            for (TextChange change : changes) {
+                int at = Math.min(Math.max(change.position(), 0), replica.getVisibleLength());
+                int deleted = deleteRange(replica, documentId, userId, at, change.deleteCount(), operations, inverses);
+                String parentId = at == 0 ? "root" : replica.idAt(at - 1);
+                insertRun(replica, documentId, userId, parentId, change.text(), operations, inverses);
+                if (deleted > 0 || !change.text().isEmpty()) {
+                    applied.add(new TextChange(at, deleted, change.text()));
+                }
+            }
+        }
+        sendOperations(documentId, userId, operations);
+        undoManager(documentId, userId).record(inverses, System.currentTimeMillis());
+        if (!applied.isEmpty()) {
+            notifyLocalUsers(channel, userId, applied);
+            if (!channel.cursors.isEmpty()) publishCursors(channel);
+        }
+    }
+
+    public boolean undo(String documentId, String userId) {
+        UndoManager history = undoManager(documentId, userId);
+        List<UndoManager.Inverse> step = history.popUndo();
+        if (step.isEmpty()) return false;
+        history.pushRedo(applyInverses(documentId, userId, step));
+        return true;
+    }
+
+    public boolean redo(String documentId, String userId) {
+        UndoManager history = undoManager(documentId, userId);
+        List<UndoManager.Inverse> step = history.popRedo();
+        if (step.isEmpty()) return false;
+        history.pushUndo(applyInverses(documentId, userId, step));
+        return true;
+    }
+
+    private UndoManager undoManager(String documentId, String userId) {
+        return undoManagers.computeIfAbsent(sessionKey(documentId, userId),
+                _ -> new UndoManager(undoMaxDepth, undoMaxBytes, undoGroupPauseMs));
+    }
+
+    // Applies a step last action first and returns the step that reverts it. Every local user,
+    // the author included, gets the resulting splices, since the author's textarea has not seen them.
+    private List<UndoManager.Inverse> applyInverses(String documentId, String userId, List<UndoManager.Inverse> step) {
+        DocumentChannel channel = userChannels.get(sessionKey(documentId, userId));
+        if (channel == null) return List.of();
+
+        CrdtTree replica = channel.replica;
+        List<CrdtOperation> operations = new ArrayList<>();
+        List<TextChange> applied = new ArrayList<>();
+        List<UndoManager.Inverse> reverts = new ArrayList<>();
+        synchronized (replica) {
+            for (int i = step.size() - 1; i >= 0; i--) {
+                switch (step.get(i)) {
+                    case UndoManager.RemoveNodes remove ->
+                            removeNodes(replica, documentId, userId, remove, operations, applied, reverts);
+                    case UndoManager.RestoreText restore -> {
+                        for (UndoManager.Segment segment : restore.segments()) {
+                            if (replica.getNode(segment.anchorId()) == null) continue;
+                            int first = operations.size();
+                            insertRun(replica, documentId, userId, segment.anchorId(), segment.text(), operations, reverts);
+                            CrdtNode head = replica.getNode(operations.get(first).id);
+                            applied.add(new TextChange(replica.positionOf(head), 0, segment.text()));
+                        }
+                    }
+                }
+            }
+        }
+        sendOperations(documentId, userId, operations);
+        if (!applied.isEmpty()) {
+            channel.listeners.values().forEach(listener -> listener.onRemoteChanges(applied));
+            if (!channel.cursors.isEmpty()) publishCursors(channel);
+        }
+        return reverts;
+    }
+
+    // Deletes whichever of the nodes are still visible, one splice per contiguous run, back to front
+    private static void removeNodes(CrdtTree replica, String documentId, String userId, UndoManager.RemoveNodes remove,
+                                    List<CrdtOperation> operations, List<TextChange> applied,
+                                    List<UndoManager.Inverse> reverts) {
+        List<CrdtNode> visible = new ArrayList<>();
+        for (UndoManager.IdRange range : remove.ranges()) {
+            for (int i = 0; i < range.count(); i++) {
+                CrdtNode node = replica.getNode(range.idAt(i));
+                if (node != null && !node.isDeleted) visible.add(node);
+            }
+        }
+        if (visible.isEmpty()) return;
+
+        int[] positions = new int[visible.size()];
+        Integer[] order = new Integer[visible.size()];
+        for (int i = 0; i < visible.size(); i++) {
+            positions[i] = replica.positionOf(visible.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> positions[i]));
+
+        List<UndoManager.Segment> segments = new ArrayList<>();
+        int end = order.length;
+        while (end > 0) {
+            int start = end - 1;
+            while (start > 0 && positions[order[start - 1]] == positions[order[start]] - 1) {
+                start--;
+            }
+            StringBuilder text = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                CrdtNode node = visible.get(order[i]);
+                text.append(node.value);
+                replica.applyDeleteOperation(node.id);
+                operations.add(CrdtOperation.delete(node.id, System.currentTimeMillis(), userId, documentId));
+            }
+            applied.add(new TextChange(positions[order[start]], end - start, ""));
+            segments.add(new UndoManager.Segment(visible.get(order[end - 1]).id, text.toString()));
+            end = start;
+        }
+        reverts.add(new UndoManager.RestoreText(segments));
+    }
+
+    // Characters chain onto each other, so a run stays contiguous whatever is inserted concurrently
+    private static void insertRun(CrdtTree replica, String documentId, String userId, String parentId, String text,
+                                  List<CrdtOperation> operations, List<UndoManager.Inverse> inverses) {
+        if (text.isEmpty()) return;
+        List<CrdtOperation> run = new ArrayList<>(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            long timestamp = replica.nextTimestamp(System.currentTimeMillis());
+            CrdtOperation op = CrdtOperation.insert(documentId, userId + "-" + timestamp,
+                    String.valueOf(text.charAt(i)), parentId, timestamp, userId);
+            replica.applyInsertOperation(op);
+            run.add(op);
+            parentId = op.id;
+        }
+        operations.addAll(run);
+        inverses.add(UndoManager.RemoveNodes.of(run));
+    }
+
+    // The deleted text comes back after the last tombstone, which stays where the text was
+    private static int deleteRange(CrdtTree replica, String documentId, String userId, int at, int count,
+                                   List<CrdtOperation> operations, List<UndoManager.Inverse> inverses) {
+        List<String> targets = new ArrayList<>(Math.max(count, 0));
+        StringBuilder text = new StringBuilder(Math.max(count, 0));
+        for (int i = at; i < at + count; i++) {
+            String id = replica.idAt(i);
+            if (id == null) break;
+            targets.add(id);
+            text.append(replica.getNode(id).value);
+        }
+        if (targets.isEmpty()) return 0;
+
+        for (String id : targets) {
+            replica.applyDeleteOperation(id);
+            operations.add(CrdtOperation.delete(id, System.currentTimeMillis(), userId, documentId));
+        }
+        inverses.add(new UndoManager.RestoreText(
+                List.of(new UndoManager.Segment(targets.get(targets.size() - 1), text.toString()))));
+        return targets.size();
     }
 
-    public static ClientEditRequest createInsertRequest(String value, int position, String userId, String documentId) {
+    // The backend only acknowledges the sender's connection, so co-located users hear about the edit here
+    private static void notifyLocalUsers(DocumentChannel channel, String authorId, List<TextChange> changes) {
+        channel.listeners.forEach((userId, listener) -> {
+            if (!userId.equals(authorId)) {
+                listener.onRemoteChanges(changes);
+            }
+        });
+    }
+
+    private void sendOperations(String documentId, String userId, List<CrdtOperation> operations) {
+        if (operations.isEmpty()) return;
         ClientEditRequest req = new ClientEditRequest();
-        req.type = ClientEditRequest.Type.INSERT;
-        req.value = value;
-        req.position = position;
-        req.timestamp = System.currentTimeMillis();
+        req.type = ClientEditRequest.Type.OPERATIONS;
+        req.operations = operations;
         req.userId = userId;
         req.documentId = documentId;
-        return req;
+        req.timestamp = System.currentTimeMillis();
+        sendEditRequest(req);
+    }
+
+    private void rebuildReplica(CrdtTree replica, List<ServerMessage.NodeEntry> nodes) {
+        replica.clear();
+        CrdtTree.BulkAppender appender = replica.bulkAppender("snapshot", 0);
+        for (ServerMessage.NodeEntry node : nodes) {
+            appender.appendNode(node.id(), node.value(), node.parentId(), node.timestamp(), node.userId(), node.deleted());
+        }
+    }
+
+    // Integrates remote operations and returns the resulting splices, merging adjacent ones
+    private List<TextChange> integrate(CrdtTree replica, List<CrdtOperation> operations) {
+        List<TextChange> changes = new ArrayList<>();
+        for (CrdtOperation op : operations) {
+            if (op.type == CrdtOperation.Type.INSERT) {
+                for (CrdtNode node : replica.applyInsertOperation(op)) {
+                    if (!node.isDeleted) {
+                        addChange(changes, new TextChange(replica.positionOf(node), 0, node.value));
+                    }
+                }
+            } else if (op.type == CrdtOperation.Type.DELETE) {
+                CrdtNode target = replica.getNode(op.targetId);
+                int position = target != null ? replica.positionOf(target) : -1;
+                if (replica.applyDeleteOperation(op.targetId)) {
+                    addChange(changes, new TextChange(position, 1, ""));
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static void addChange(List<TextChange> changes, TextChange change) {
+        if (!changes.isEmpty()) {
+            TextChange last = changes.get(changes.size() - 1);
+            boolean lastIsInsert = last.deleteCount() == 0;
+            boolean lastIsDelete = last.text().isEmpty();
+            if (change.deleteCount() == 0 && lastIsInsert && change.position() == last.position() + last.text().length()) {
+                changes.set(changes.size() - 1, new TextChange(last.position(), 0, last.text() + change.text()));
+                return;
+            }
+            if (change.text().isEmpty() && lastIsDelete && change.position() == last.position()) {
+                changes.set(changes.size() - 1, new TextChange(last.position(), last.deleteCount() + change.deleteCount(), ""));
+                return;
+            }
+            if (change.text().isEmpty() && lastIsDelete && change.position() + change.deleteCount() == last.position()) {
+                changes.set(changes.size() - 1, new TextChange(change.position(), last.deleteCount() + change.deleteCount(), ""));
+                return;
+            }
+        }
+        changes.add(change);
+    }
+
+    // Decodes a backend message and routes it by type; the replica is updated before listeners hear about it
+    private void dispatch(DocumentChannel channel, String message) {
+        ServerMessage decoded;
+        try {
+            decoded = mapper.readValue(message, ServerMessage.class);
+        } catch (IOException e) {
+            logger.warn("Invalid message for {}: {}", channelKey(channel.documentId, channel.viewer), e.getMessage());
+            return;
+        }
+
+        Collection<CollaborativeEditUiListener> listeners = channel.listeners.values();
+        switch (decoded) {
+            case ServerMessage.Sequence sequence -> {
+                acknowledge(channel, sequence.batch());
+                advanceSequence(channel, sequence.seq());
+            }
+            case ServerMessage.Snapshot snapshot -> {
+                String text;
+                synchronized (channel.replica) {
+                    rebuildReplica(channel.replica, snapshot.nodes());
+                    // Local edits the node has not confirmed are on their way to it again
+                    reapplyUnacknowledged(channel);
+                    text = channel.replica.getText();
+                }
+                channel.lastSequence = snapshot.seq();
+                listeners.forEach(listener -> listener.onSnapshot(text));
+                if (!channel.cursors.isEmpty()) publishCursors(channel);
+            }
+            case ServerMessage.Operations operations -> {
+                List<TextChange> changes;
+                synchronized (channel.replica) {
+                    changes = integrate(channel.replica, operations.operations());
+                }
+                advanceSequence(channel, operations.seq());
+                if (!changes.isEmpty()) {
+                    listeners.forEach(listener -> listener.onRemoteChanges(changes));
+                    if (!channel.cursors.isEmpty()) publishCursors(channel);
+                }
+            }
+            case ServerMessage.ActiveUsers users -> listeners.forEach(listener -> listener.onActiveUsers(users.usernames()));
+            case ServerMessage.CursorUpdate update -> {
+                update.cursors().forEach((user, cursor) -> {
+                    if (cursor == null) {
+                        channel.cursors.remove(user);
+                    } else {
+                        channel.cursors.put(user, cursor);
+                    }
+                });
+                publishCursors(channel);
+            }
+            case ServerMessage.Other _ -> listeners.forEach(listener -> listener.onServerMessage(message));
+        }
+    }
+
+    // Sends the user's selection as node anchors, unless the anchors last sent still resolve to it
+    public void moveCursor(String documentId, String userId, int start, int end) {
+        DocumentChannel channel = userChannels.get(sessionKey(documentId, userId));
+        if (channel == null) return;
+
+        UserCursor cursor;
+        synchronized (channel.replica) {
+            UserCursor sent = channel.sentCursors.get(userId);
+            if (sent != null && sent.start().resolve(channel.replica) == start
+                    && sent.end().resolve(channel.replica) == end) {
+                return;
+            }
+            CursorAnchor startAnchor = CursorAnchor.at(channel.replica, start);
+            cursor = new UserCursor(startAnchor, end == start ? startAnchor : CursorAnchor.at(channel.replica, end));
+        }
+        channel.sentCursors.put(userId, cursor);
+        sendEditRequest(createCursorRequest(documentId, userId, cursor));
+    }
+
+    // Comments are pinned to the characters they cover, so they stay put as the text around them changes
+    public void addComment(String documentId, String userId, String commentId, int start, int end, String text) {
+        DocumentChannel channel = userChannels.get(sessionKey(documentId, userId));
+        if (channel == null) return;
+
+        ClientEditRequest req = createAddCommentRequest(documentId, userId, commentId, start, end, text);
+        synchronized (channel.replica) {
+            req.range = new UserCursor(CursorAnchor.at(channel.replica, start), CursorAnchor.endOf(channel.replica, end));
+        }
+        send(channel, req);
+    }
+
+    // Resolves every known cursor against the replica; offsets shift with edits, anchors do not
+    private static void publishCursors(DocumentChannel channel) {
+        Map<String, Integer> offsets = new HashMap<>();
+        synchronized (channel.replica) {
+            channel.cursors.forEach((user, cursor) -> {
+                int offset = cursor.start().resolve(channel.replica);
+                if (offset >= 0) offsets.put(user, offset);
+            });
+        }
+        channel.listeners.values().forEach(listener -> listener.onCursors(offsets));
+    }
+
+    private static void advanceSequence(DocumentChannel channel, long seq) {
+        Long current = channel.lastSequence;
+        if (current == null || seq > current) {
+            channel.lastSequence = seq;
+        }
+    }
+
+    public void sendEditRequest(ClientEditRequest req) {
+        String key = sessionKey(req.documentId, req.userId);
+        DocumentChannel channel = userChannels.get(key);
+        if (channel == null) {
+            logger.warn("Cannot send. No connection for {}", key);
+            return;
+        }
+        send(channel, req);
+    }
+
+    // Requests carry their userId, which the backend checks against the users attached to the socket.
+    // Operation batches are kept until acknowledged, so a failover in between does not lose them.
+    private void send(DocumentChannel channel, ClientEditRequest req) {
+        boolean operations = req.type == ClientEditRequest.Type.OPERATIONS;
+        synchronized (channel.sendLock) {
+            if (operations) {
+                req.batch = ++channel.lastBatch;
+                channel.unacknowledged.add(req);
+            }
+            Session session = channel.session;
+            if (session != null && session.isOpen()) {
+                try {
+                    session.getBasicRemote().sendText(mapper.writeValueAsString(req));
+                } catch (IOException e) {
+                    if (!operations) {
+                        throw new RuntimeException("Failed to send WebSocket message", e);
+                    }
+                    logger.warn("Failed to send operations for {}, resending after reconnect: {}",
+                            sessionKey(req.documentId, req.userId), e.getMessage());
+                }
+            } else if (operations) {
+                logger.info("Holding operations for {} until the connection is back", sessionKey(req.documentId, req.userId));
+            } else {
+                logger.warn("Cannot send. WebSocket session is closed or null for {}", sessionKey(req.documentId, req.userId));
+            }
+        }
     }
 
-    public static ClientEditRequest createDeleteRequest(int position, String userId, String documentId) {
+    // The backend processes each user's batches in order and may merge held ones, so a batch is
+    // acknowledged together with the same user's earlier ones
+    private static void acknowledge(DocumentChannel channel, long batch) {
+        synchronized (channel.sendLock) {
+            String userId = null;
+            for (ClientEditRequest req : channel.unacknowledged) {
+                if (req.batch == batch) {
+                    userId = req.userId;
+                    break;
+                }
+            }
+            if (userId == null) return;
+            String acknowledgedUser = userId;
+            channel.unacknowledged.removeIf(req -> req.batch <= batch && req.userId.equals(acknowledgedUser));
+        }
+    }
+
+    // Runs with the replica locked; inserts and deletes it already has are no-ops
+    private static void reapplyUnacknowledged(DocumentChannel channel) {
+        List<ClientEditRequest> pending;
+        synchronized (channel.sendLock) {
+            pending = new ArrayList<>(channel.unacknowledged);
+        }
+        for (ClientEditRequest req : pending) {
+            req.operations.forEach(channel.replica::applyOperation);
+        }
+    }
+
+    public static ClientEditRequest createCursorRequest(String documentId, String userId, UserCursor cursor) {
         ClientEditRequest req = new ClientEditRequest();
-        req.type = ClientEditRequest.Type.DELETE;
-        req.position = position;
-        req.timestamp = System.currentTimeMillis();
+        req.type = ClientEditRequest.Type.CURSOR;
+        req.cursor = cursor;
         req.userId = userId;
         req.documentId = documentId;
         return req;
     }
 
-
     public static ClientEditRequest createAddCommentRequest(String documentId, String userId, String commentId, int position, int endPosition, String value) {
         ClientEditRequest req = new ClientEditRequest();
         req.type = ClientEditRequest.Type.ADD_COMMENT;
@@ -121,47 +667,75 @@ public class CollaborativeEditService {
         return req;
     }
 
+    // Comments overlapping [from, to), continuing after afterCommentId when the last page had more
+    public static ClientEditRequest createLoadCommentsRequest(String documentId, String userId, int from, int to, String afterCommentId) {
+        ClientEditRequest req = new ClientEditRequest();
+        req.type = ClientEditRequest.Type.LOAD_COMMENTS;
+        req.position = from;
+        req.endPosition = to;
+        req.commentId = afterCommentId;
+        req.userId = userId;
+        req.documentId = documentId;
+        return req;
+    }
+
     /**
-     * Internal WebSocket ClientEndpoint that manages a single document-user session.
+     * Internal WebSocket ClientEndpoint that carries one document channel.
      */
 
     @ClientEndpoint
     public class CollaborativeEditClientEndpoint {
 
-        private final String documentId;
-        private final String userId;
+        private final DocumentChannel channel;
 
-        public CollaborativeEditClientEndpoint(String documentId, String userId) {
-            this.documentId = documentId;
-            this.userId = userId;
+        public CollaborativeEditClientEndpoint(DocumentChannel channel) {
+            this.channel = channel;
         }
 
         @OnOpen
         public void onOpen(Session session) {
-            String key = sessionKey(documentId, userId);
-            sessionMap.put(key, session);
+            // Held until the resend is done, so new edits queue up behind the unacknowledged ones
+            synchronized (channel.sendLock) {
+                channel.session = session;
+                // A new node has no cursors from this channel yet
+                channel.sentCursors.clear();
+                // Also re-attaches everyone after a reconnect
+                channel.listeners.keySet().forEach(userId -> sendControl(channel, ClientEditRequest.Type.ATTACH, userId));
+                // Then the batches the last connection did not confirm; what the node already has is a no-op
+                for (ClientEditRequest req : channel.unacknowledged) {
+                    try {
+                        session.getBasicRemote().sendText(mapper.writeValueAsString(req));
+                    } catch (IOException e) {
+                        logger.warn("Failed to resend operations for {}: {}",
+                                channelKey(channel.documentId, channel.viewer), e.getMessage());
+                        return;
+                    }
+                }
+            }
         }
 
         @OnMessage
         public void onMessage(String message) {
-            String key = sessionKey(documentId, userId);
-            CollaborativeEditUiListener listener = listenerMap.get(key);
-            if (listener != null) {
-                listener.onServerMessage(message);
-            } 
+            dispatch(channel, message);
         }
 
         @OnClose
         public void onClose(Session session, CloseReason reason) {
-            String key = sessionKey(documentId, userId);
-            sessionMap.remove(key);
+            if (channel.session == session) {
+                channel.session = null;
+            }
+            int code = reason.getCloseCode().getCode();
+            // Moved by the cluster, or the node went away (failover to its follower)
+            if (!channel.closed && (code == DOCUMENT_MOVED
+                    || code == CloseReason.CloseCodes.CLOSED_ABNORMALLY.getCode()
+                    || code == CloseReason.CloseCodes.GOING_AWAY.getCode())) {
+                reroute(channel);
+            }
         }
 
         @OnError
         public void onError(Session session, Throwable throwable) {
-            String key = sessionKey(documentId, userId);
-            System.err.println("WebSocket error for " + key + ": " + throwable.getMessage());
-            sessionMap.remove(key);
+            logger.warn("WebSocket error for {}: {}", channelKey(channel.documentId, channel.viewer), throwable.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,20 @@
 package com.example.application.connections.CRDT;
 
+import java.util.List;
+import java.util.Map;
+
 public interface CollaborativeEditUiListener {
+    // Messages without a typed callback, as received
     void onServerMessage(String message);
-}
\ No newline at end of file
+
+    void onActiveUsers(List<String> usernames);
+
+    // Cursor offset per user
+    void onCursors(Map<String, Integer> cursors);
+
+    // The replica was rebuilt from a server snapshot
+    void onSnapshot(String text);
+
+    // Remote operations were integrated into the replica
+    void onRemoteChanges(List<TextChange> changes);
+}
@@ -0,0 +1,39 @@
+package com.example.application.connections.CRDT;
+
+import java.util.Objects;
+
+public class CrdtNode {
+    public final String id;
+    public final String value;
+    public final String parentId;
+    public final long timestamp;
+    public final String userId;
+    public boolean isDeleted = false;
+
+    public CrdtNode left;
+    public CrdtNode right;
+
+    // Position index block holding this node
+    CrdtTree.Block block;
+
+    public CrdtNode(String id, String value, String parentId, long timestamp, String userId) {
+        this.id = id;
+        this.value = value;
+        this.parentId = parentId;
+        this.timestamp = timestamp;
+        this.userId = userId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        CrdtNode other = (CrdtNode) obj;
+        return id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
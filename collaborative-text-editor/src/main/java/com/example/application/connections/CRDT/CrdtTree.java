@@ -0,0 +1,332 @@
+package com.example.application.connections.CRDT;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Client-side replica of the backend's CrdtTree; the integration rules must stay identical for
+ * both sides to converge.
+ *
+ * RGA sequence: every character is a node inserted after a parent node, kept in a doubly
+ * linked list with tombstones for deleted characters. Concurrent inserts after the same parent
+ * are ordered by descending (timestamp, userId); timestamps are hybrid clocks that exceed every
+ * timestamp the inserting replica had seen, so descendants of a node always sort after it.
+ *
+ * Positions are resolved through an index that splits the list into blocks of nodes with a
+ * visible count each, so mapping between node ids and text offsets costs O(blocks + block size)
+ * instead of a pass over the whole document.
+ */
+public class CrdtTree {
+    private static final int BLOCK_SIZE = 512;
+
+    private final Map<String, CrdtNode> nodeMap = new HashMap<>();
+    private final List<Block> blocks = new ArrayList<>();
+    private int visibleLength = 0;
+    private long maxTimestamp = 0;
+
+    private final Map<String, List<CrdtOperation>> insertsAwaitingParent = new HashMap<>();
+    private final Set<String> deletesAwaitingTarget = new HashSet<>();
+
+    // Linked-list entry point
+    private CrdtNode firstNode = null;
+
+    // Consecutive run of the linked list; a node knows its block so its offset can be summed up
+    static final class Block {
+        final ArrayList<CrdtNode> nodes = new ArrayList<>();
+        int visible = 0;
+    }
+
+    public CrdtTree() {
+    }
+
+    // Applies an operation produced by another replica
+    public void applyOperation(CrdtOperation op) {
+        if (op.type == CrdtOperation.Type.INSERT) {
+            applyInsertOperation(op);
+        } else if (op.type == CrdtOperation.Type.DELETE) {
+            applyDeleteOperation(op.targetId);
+        }
+    }
+
+    // Inserts whose parent has not arrived yet are parked until it does, so replicas that
+    // receive operations out of causal order still converge. Returns the nodes integrated.
+    public List<CrdtNode> applyInsertOperation(CrdtOperation op) {
+        List<CrdtNode> integrated = new ArrayList<>();
+        Deque<CrdtOperation> ready = new ArrayDeque<>();
+        ready.add(op);
+        while (!ready.isEmpty()) {
+            CrdtOperation next = ready.poll();
+            if (nodeMap.containsKey(next.id))
+                continue;
+
+            if (!next.parentId.equals("root") && !nodeMap.containsKey(next.parentId)) {
+                insertsAwaitingParent.computeIfAbsent(next.parentId, _ -> new ArrayList<>()).add(next);
+                continue;
+            }
+
+            integrated.add(integrate(next));
+            List<CrdtOperation> children = insertsAwaitingParent.remove(next.id);
+            if (children != null) {
+                ready.addAll(children);
+            }
+        }
+        return integrated;
+    }
+
+    private CrdtNode integrate(CrdtOperation op) {
+        CrdtNode item = new CrdtNode(op.id, op.value, op.parentId, op.timestamp, op.userId);
+        nodeMap.put(item.id, item);
+        item.isDeleted = deletesAwaitingTarget.remove(item.id);
+        maxTimestamp = Math.max(maxTimestamp, item.timestamp);
+
+        // Skip the concurrent siblings (and their descendants) that sort before the new node
+        CrdtNode left = op.parentId.equals("root") ? null : nodeMap.get(op.parentId);
+        CrdtNode right = left == null ? firstNode : left.right;
+        while (right != null && compare(right, item) > 0) {
+            left = right;
+            right = right.right;
+        }
+
+        item.left = left;
+        item.right = right;
+        if (left == null) {
+            firstNode = item;
+        } else {
+            left.right = item;
+        }
+        if (right != null) {
+            right.left = item;
+        }
+        indexInsertAfter(left, item);
+        return item;
+    }
+
+    // Returns true if the target was visible and is now deleted
+    public boolean applyDeleteOperation(String targetId) {
+        CrdtNode target = nodeMap.get(targetId);
+        if (target == null) {
+            if (targetId != null && !targetId.isEmpty()) {
+                deletesAwaitingTarget.add(targetId);
+            }
+            return false;
+        }
+        if (target.isDeleted) {
+            return false;
+        }
+        target.isDeleted = true;
+        target.block.visible--;
+        visibleLength--;
+        return true;
+    }
+
+    public String getText() {
+        StringBuilder sb = new StringBuilder(visibleLength);
+        CrdtNode current = firstNode;
+        while (current != null) {
+            if (!current.isDeleted) {
+                sb.append(current.value);
+            }
+            current = current.right;
+        }
+        return sb.toString();
+    }
+
+    // Visits every node, tombstones included, in sequence order
+    public void forEachNode(Consumer<CrdtNode> visitor) {
+        CrdtNode current = firstNode;
+        while (current != null) {
+            visitor.accept(current);
+            current = current.right;
+        }
+    }
+
+    public CrdtNode getNode(String id) {
+        return nodeMap.get(id);
+    }
+
+    public int getVisibleLength() {
+        return visibleLength;
+    }
+
+    // Id of the visible node at the given text offset, or null if out of range
+    public String idAt(int position) {
+        if (position < 0 || position >= visibleLength) {
+            return null;
+        }
+        int remaining = position;
+        for (Block block : blocks) {
+            if (remaining >= block.visible) {
+                remaining -= block.visible;
+                continue;
+            }
+            for (CrdtNode node : block.nodes) {
+                if (!node.isDeleted && remaining-- == 0) {
+                    return node.id;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Offset of the node in the visible text; for a tombstone, the offset it would have
+    public int positionOf(CrdtNode node) {
+        int position = 0;
+        for (Block block : blocks) {
+            if (block == node.block) {
+                break;
+            }
+            position += block.visible;
+        }
+        for (CrdtNode other : node.block.nodes) {
+            if (other == node) {
+                break;
+            }
+            if (!other.isDeleted) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    public List<String> getVisibleIds() {
+        List<String> result = new ArrayList<>(visibleLength);
+        CrdtNode current = firstNode;
+        while (current != null) {
+            if (!current.isDeleted) {
+                result.add(current.id);
+            }
+            current = current.right;
+        }
+        return result;
+    }
+
+    // Hybrid clock: never behind wall time, always ahead of every timestamp this replica has seen
+    public long nextTimestamp(long proposed) {
+        return Math.max(proposed, maxTimestamp + 1);
+    }
+
+    public BulkAppender bulkAppender(String userId, long baseTimestamp) {
+        return new BulkAppender(userId, baseTimestamp);
+    }
+
+    /**
+     * Appends nodes to the end of the sequence in O(1) each. Used to rebuild the replica from a
+     * server snapshot, which lists nodes in sequence order.
+     */
+    public class BulkAppender {
+        private final String userId;
+        private final long baseTimestamp;
+        private CrdtNode tail;
+        private long count = 0;
+
+        private BulkAppender(String userId, long baseTimestamp) {
+            this.userId = userId;
+            this.baseTimestamp = nextTimestamp(baseTimestamp);
+            this.tail = firstNode;
+            while (tail != null && tail.right != null) {
+                tail = tail.right;
+            }
+        }
+
+        public void append(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                append(String.valueOf(chars[i]));
+            }
+        }
+
+        public void append(String value) {
+            long timestamp = baseTimestamp + count;
+            appendNode(userId + "-" + timestamp, value, tail != null ? tail.id : "root", timestamp, userId, false);
+        }
+
+        // Appends a node exactly as it appeared in another replica; used to restore snapshots in order
+        public void appendNode(String id, String value, String parentId, long timestamp, String nodeUserId, boolean deleted) {
+            count++;
+            if (nodeMap.containsKey(id)) {
+                return;
+            }
+
+            CrdtNode item = new CrdtNode(id, value, parentId, timestamp, nodeUserId);
+            item.isDeleted = deleted;
+            nodeMap.put(id, item);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            if (tail == null) {
+                firstNode = item;
+            } else {
+                tail.right = item;
+                item.left = tail;
+            }
+            indexInsertAfter(tail, item);
+            tail = item;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private void indexInsertAfter(CrdtNode left, CrdtNode item) {
+        Block block;
+        int index;
+        if (left == null) {
+            if (blocks.isEmpty()) {
+                blocks.add(new Block());
+            }
+            block = blocks.get(0);
+            index = 0;
+        } else {
+            block = left.block;
+            int last = block.nodes.size() - 1;
+            // Appends hit the end of a block; only mid-block inserts need the scan
+            index = block.nodes.get(last) == left ? last + 1 : indexInBlock(block, left) + 1;
+        }
+
+        block.nodes.add(index, item);
+        item.block = block;
+        if (!item.isDeleted) {
+            block.visible++;
+            visibleLength++;
+        }
+        if (block.nodes.size() > 2 * BLOCK_SIZE) {
+            split(block);
+        }
+    }
+
+    private void split(Block block) {
+        Block upper = new Block();
+        List<CrdtNode> moved = block.nodes.subList(BLOCK_SIZE, block.nodes.size());
+        for (CrdtNode node : moved) {
+            node.block = upper;
+            if (!node.isDeleted) {
+                upper.visible++;
+            }
+        }
+        upper.nodes.addAll(moved);
+        moved.clear();
+        block.visible -= upper.visible;
+        blocks.add(blocks.indexOf(block) + 1, upper);
+    }
+
+    private static int indexInBlock(Block block, CrdtNode node) {
+        for (int i = 0; i < block.nodes.size(); i++) {
+            if (block.nodes.get(i) == node) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Node " + node.id + " missing from its index block");
+    }
+
+    private int compare(CrdtNode a, CrdtNode b) {
+        int tsCompare = Long.compare(a.timestamp, b.timestamp);
+        return tsCompare != 0 ? tsCompare : a.userId.compareTo(b.userId);
+    }
+
+    public void clear() {
+        firstNode = null;
+        nodeMap.clear();
+        blocks.clear();
+        visibleLength = 0;
+        insertsAwaitingParent.clear();
+        deletesAwaitingTarget.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.application.connections.CRDT;
+
+/**
+ * A caret pinned to a character rather than an offset: just before or just after the node with
+ * the given id. {@code "root"} with {@link Side#AFTER} is the start of the document.
+ */
+public record CursorAnchor(String nodeId, Side side) {
+    public enum Side { BEFORE, AFTER }
+
+    public static final CursorAnchor START = new CursorAnchor("root", Side.AFTER);
+
+    // Prefers the character to the right, so typing at the caret leaves the anchor where it is
+    public static CursorAnchor at(CrdtTree replica, int offset) {
+        int length = replica.getVisibleLength();
+        if (offset < length) {
+            return new CursorAnchor(replica.idAt(Math.max(offset, 0)), Side.BEFORE);
+        }
+        return length == 0 ? START : new CursorAnchor(replica.idAt(length - 1), Side.AFTER);
+    }
+
+    // End of a range: just after its last character, so text typed at the end stays outside it
+    public static CursorAnchor endOf(CrdtTree replica, int offset) {
+        int end = Math.min(offset, replica.getVisibleLength());
+        return end <= 0 ? START : new CursorAnchor(replica.idAt(end - 1), Side.AFTER);
+    }
+
+    // Offset in the replica's visible text, or -1 if the node is not known here yet
+    public int resolve(CrdtTree replica) {
+        if ("root".equals(nodeId)) return 0;
+        CrdtNode node = replica.getNode(nodeId);
+        if (node == null) return -1;
+        int position = replica.positionOf(node);
+        return side == Side.AFTER && !node.isDeleted ? position + 1 : position;
+    }
+}
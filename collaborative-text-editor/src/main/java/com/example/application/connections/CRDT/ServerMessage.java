@@ -0,0 +1,46 @@
+package com.example.application.connections.CRDT;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages the backend sends over a document socket, decoded by their {@code type} field.
+ * Types without a record here (comments, for instance) decode to {@link Other} and are handed
+ * to the listeners as raw text.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", defaultImpl = ServerMessage.Other.class)
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = ServerMessage.Sequence.class, name = "SEQUENCE"),
+        @JsonSubTypes.Type(value = ServerMessage.Snapshot.class, name = "SNAPSHOT"),
+        @JsonSubTypes.Type(value = ServerMessage.Operations.class, name = "OPERATIONS"),
+        @JsonSubTypes.Type(value = ServerMessage.ActiveUsers.class, name = "ACTIVE_USERS"),
+        @JsonSubTypes.Type(value = ServerMessage.CursorUpdate.class, name = "CURSOR_UPDATE")
+})
+public sealed interface ServerMessage {
+
+    // Acknowledges the sender's own operations, up to batch for the user who sent it
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Sequence(long seq, long batch) implements ServerMessage {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Snapshot(long seq, List<NodeEntry> nodes) implements ServerMessage {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Operations(long seq, List<CrdtOperation> operations) implements ServerMessage {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record ActiveUsers(List<String> usernames) implements ServerMessage {}
+
+    // Cursors of the users that moved; null for users who left
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record CursorUpdate(Map<String, UserCursor> cursors) implements ServerMessage {}
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Other() implements ServerMessage {}
+
+    record NodeEntry(String id, String value, String parentId, long timestamp, String userId, boolean deleted) {}
+}
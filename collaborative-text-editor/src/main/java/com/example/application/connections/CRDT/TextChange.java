@@ -0,0 +1,8 @@
+package com.example.application.connections.CRDT;
+
+/**
+ * A splice of the visible text produced by integrating remote operations: remove
+ * {@code deleteCount} characters at {@code position}, then insert {@code text} there.
+ * Changes in a list apply one after the other, each against the result of the previous one.
+ */
+public record TextChange(int position, int deleteCount, String text) {}
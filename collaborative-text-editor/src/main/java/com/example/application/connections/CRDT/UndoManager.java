@@ -0,0 +1,174 @@
+package com.example.application.connections.CRDT;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo history of one user in one document. Each step holds the inverse of a group of
+ * local edits, expressed against CRDT node ids rather than text offsets, so it still applies
+ * correctly after other users have edited around it. Edits separated by less than the typing
+ * pause join the current step. The history is bounded both by step count and by an estimate of
+ * the bytes it retains; the oldest steps are dropped first.
+ */
+public class UndoManager {
+
+    /** One inverse action; a step is a list of them, applied last to first. */
+    public sealed interface Inverse permits RemoveNodes, RestoreText {
+        long estimatedBytes();
+    }
+
+    /** Nodes {@code userId-firstTimestamp} .. {@code userId-(firstTimestamp + count - 1)}. */
+    public record IdRange(String userId, long firstTimestamp, int count) {
+        public String idAt(int index) {
+            return userId + "-" + (firstTimestamp + index);
+        }
+    }
+
+    /** Delete these nodes again: the inverse of an insert. A pasted run is a single range. */
+    public record RemoveNodes(List<IdRange> ranges) implements Inverse {
+        public static RemoveNodes of(List<CrdtOperation> inserts) {
+            List<IdRange> ranges = new ArrayList<>();
+            for (CrdtOperation op : inserts) {
+                int last = ranges.size() - 1;
+                if (last >= 0) {
+                    IdRange range = ranges.get(last);
+                    if (range.userId().equals(op.userId) && range.firstTimestamp() + range.count() == op.timestamp) {
+                        ranges.set(last, new IdRange(range.userId(), range.firstTimestamp(), range.count() + 1));
+                        continue;
+                    }
+                }
+                ranges.add(new IdRange(op.userId, op.timestamp, 1));
+            }
+            return new RemoveNodes(ranges);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return 32L + 48L * ranges.size();
+        }
+    }
+
+    /** Text to insert right after the tombstone {@code anchorId}, which is where it was deleted. */
+    public record Segment(String anchorId, String text) {}
+
+    /** Bring deleted text back: the inverse of a delete. */
+    public record RestoreText(List<Segment> segments) implements Inverse {
+        @Override
+        public long estimatedBytes() {
+            long bytes = 32;
+            for (Segment segment : segments) {
+                bytes += 48L + 2L * (segment.anchorId().length() + segment.text().length());
+            }
+            return bytes;
+        }
+    }
+
+    private record Step(List<Inverse> inverses, long bytes) {}
+
+    private final int maxDepth;
+    private final long maxBytes;
+    private final long groupPauseMs;
+
+    private final Deque<Step> undoStack = new ArrayDeque<>();
+    private final Deque<Step> redoStack = new ArrayDeque<>();
+    private long retainedBytes;
+    private long lastRecordedAt;
+    private boolean groupOpen;
+
+    public UndoManager(int maxDepth, long maxBytes, long groupPauseMs) {
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+        this.groupPauseMs = groupPauseMs;
+    }
+
+    // A new local edit: joins the current step if typing has not paused, and invalidates redo
+    public synchronized void record(List<Inverse> inverses, long now) {
+        if (inverses.isEmpty()) return;
+        clear(redoStack);
+
+        long bytes = bytesOf(inverses);
+        if (groupOpen && !undoStack.isEmpty() && now - lastRecordedAt < groupPauseMs) {
+            Step current = undoStack.pop();
+            List<Inverse> merged = new ArrayList<>(current.inverses());
+            merged.addAll(inverses);
+            retainedBytes -= current.bytes();
+            push(undoStack, new Step(merged, current.bytes() + bytes));
+        } else {
+            push(undoStack, new Step(new ArrayList<>(inverses), bytes));
+        }
+        groupOpen = true;
+        lastRecordedAt = now;
+        trim();
+    }
+
+    public synchronized List<Inverse> popUndo() {
+        groupOpen = false;
+        return pop(undoStack);
+    }
+
+    public synchronized List<Inverse> popRedo() {
+        groupOpen = false;
+        return pop(redoStack);
+    }
+
+    // Inverse of an undone step, so it can be redone
+    public synchronized void pushRedo(List<Inverse> inverses) {
+        if (inverses.isEmpty()) return;
+        push(redoStack, new Step(inverses, bytesOf(inverses)));
+        trim();
+    }
+
+    // Inverse of a redone step, so it can be undone again without clearing the redo history
+    public synchronized void pushUndo(List<Inverse> inverses) {
+        if (inverses.isEmpty()) return;
+        push(undoStack, new Step(inverses, bytesOf(inverses)));
+        trim();
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    private List<Inverse> pop(Deque<Step> stack) {
+        Step step = stack.poll();
+        if (step == null) return List.of();
+        retainedBytes -= step.bytes();
+        return step.inverses();
+    }
+
+    private void push(Deque<Step> stack, Step step) {
+        stack.push(step);
+        retainedBytes += step.bytes();
+    }
+
+    private void clear(Deque<Step> stack) {
+        for (Step step : stack) {
+            retainedBytes -= step.bytes();
+        }
+        stack.clear();
+    }
+
+    // Drops the oldest steps until both bounds hold again
+    private void trim() {
+        while (undoStack.size() > maxDepth) {
+            retainedBytes -= undoStack.removeLast().bytes();
+        }
+        while (redoStack.size() > maxDepth) {
+            retainedBytes -= redoStack.removeLast().bytes();
+        }
+        while (retainedBytes > maxBytes && undoStack.size() + redoStack.size() > 1) {
+            Deque<Step> stack = undoStack.size() >= redoStack.size() ? undoStack : redoStack;
+            retainedBytes -= stack.removeLast().bytes();
+        }
+    }
+
+    private static long bytesOf(List<Inverse> inverses) {
+        long bytes = 0;
+        for (Inverse inverse : inverses) {
+            bytes += inverse.estimatedBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.application.connections.CRDT;
+
+/** A user's selection as two anchors; a plain caret has {@code start} equal to {@code end}. */
+public record UserCursor(CursorAnchor start, CursorAnchor end) {
+}
@@ -0,0 +1,149 @@
+package com.example.application.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off between the upload request thread (writer) and the HTTP client
+ * thread streaming the body to the backend (reader). At most {@code maxChunks} chunks
+ * are buffered, so a slow backend applies back-pressure to the upload instead of
+ * letting the file pile up in memory.
+ */
+public class ImportPipe {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private final int chunkSize;
+    private volatile IOException failure;
+
+    private final OutputStream sink = new PipeOutputStream();
+    private final InputStream source = new PipeInputStream();
+
+    public ImportPipe(int chunkSize, int maxChunks) {
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayBlockingQueue<>(maxChunks);
+    }
+
+    public OutputStream getSink() {
+        return sink;
+    }
+
+    public InputStream getSource() {
+        return source;
+    }
+
+    public void abort(Throwable cause) {
+        failure = cause instanceof IOException io ? io : new IOException(cause);
+        chunks.clear();
+        chunks.offer(END_OF_STREAM);
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        private byte[] buffer = new byte[chunkSize];
+        private int count = 0;
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (count > 0) {
+                flushChunk();
+            }
+            enqueue(END_OF_STREAM);
+        }
+
+        private void flushChunk() throws IOException {
+            byte[] chunk = count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+            enqueue(chunk);
+            buffer = new byte[chunkSize];
+            count = 0;
+        }
+
+        private void enqueue(byte[] chunk) throws IOException {
+            try {
+                while (!chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+                    checkFailure();
+                }
+                checkFailure();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            }
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        private byte[] current;
+        private int position;
+        private boolean finished = false;
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) return -1;
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!nextChunk()) return -1;
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (!finished && (current == null || position == current.length)) {
+                try {
+                    current = chunks.take();
+                    position = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Import interrupted");
+                }
+                if (current == END_OF_STREAM) {
+                    finished = true;
+                }
+            }
+            checkFailure();
+            return !finished;
+        }
+    }
+}
@@ -1,19 +1,41 @@
 package com.example.application.data;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.example.application.views.components.helpers;
 
 public class StartPageData {
 
-    private static final String BASE_URL = "http://localhost:8081";
+    // Any backend node works as the entry point; documents are then routed to the node that owns them.
+    // Several comma-separated nodes may be given so routing survives the loss of one.
+    private static final List<String> BASE_URLS = Arrays.stream(System.getProperty("backend.url",
+            System.getenv().getOrDefault("BACKEND_URL", "http://localhost:8081")).split(","))
+            .map(String::trim)
+            .filter(url -> !url.isEmpty())
+            .toList();
     private static final HttpClient client = HttpClient.newHttpClient();
 
+    private static final int IMPORT_CHUNK_BYTES = 64 * 1024;
+    private static final int IMPORT_MAX_BUFFERED_CHUNKS = 16;
+
     public static String createNewDocument(String initialString) {
         try {
+            String[] allocation = allocateDocument();
+            String shardKey = allocation[0];
+            String node = allocation[1];
             HttpRequest request = HttpRequest.newBuilder()
-                .uri(new URI(BASE_URL + "/create"))
+                .uri(new URI(node + "/create?shardKey=" + shardKey))
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(initialString != null ? initialString : ""))
                 .build();
@@ -21,7 +43,7 @@ public class StartPageData {
             HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
 
             if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                return response.body();
+                return response.body() + ", node: " + node;
             } else {
                 return "Error: " + response.statusCode() + " - " + response.body();
             }
@@ -30,9 +52,68 @@ public class StartPageData {
         }
     }
 
+    // Opens the request before the upload starts; bytes written to the returned sink are streamed to /import
+    public static ImportUpload startImport() throws IOException {
+        String[] allocation = allocateDocument();
+        String node = allocation[1];
+        ImportPipe pipe = new ImportPipe(IMPORT_CHUNK_BYTES, IMPORT_MAX_BUFFERED_CHUNKS);
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(node + "/import?shardKey=" + allocation[0]))
+            .version(HttpClient.Version.HTTP_1_1)
+            .header("Content-Type", "text/plain; charset=UTF-8")
+            .POST(HttpRequest.BodyPublishers.ofInputStream(pipe::getSource))
+            .build();
+
+        CompletableFuture<HttpResponse<String>> response = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        response.whenComplete((_, error) -> {
+            if (error != null) {
+                pipe.abort(error);
+            }
+        });
+        return new ImportUpload(node, pipe, response);
+    }
+
+    public static class ImportUpload {
+        private final String node;
+        private final ImportPipe pipe;
+        private final CompletableFuture<HttpResponse<String>> response;
+
+        private ImportUpload(String node, ImportPipe pipe, CompletableFuture<HttpResponse<String>> response) {
+            this.node = node;
+            this.pipe = pipe;
+            this.response = response;
+        }
+
+        public OutputStream getOutputStream() {
+            return pipe.getSink();
+        }
+
+        public void abort(Throwable cause) {
+            pipe.abort(cause);
+            response.cancel(true);
+        }
+
+        public String awaitResult() {
+            try {
+                HttpResponse<String> result = response.get();
+                if (result.statusCode() >= 200 && result.statusCode() < 300) {
+                    return result.body() + ", node: " + node;
+                } else {
+                    return "Error: " + result.statusCode() + " - " + result.body();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "Unexpected error: " + e.getMessage();
+            } catch (ExecutionException e) {
+                return "Unexpected error: " + e.getCause().getMessage();
+            }
+        }
+    }
+
     public static String joinDocument(String code, String username) {
         try {
-            String url = BASE_URL + "/join/" + code + "?username=" + username;
+            String node = routeDocument(code);
+            String url = node + "/join/" + code + "?username=" + username;
             HttpRequest request = HttpRequest.newBuilder()
                 .uri(new URI(url))
                 .GET()
@@ -40,7 +121,7 @@ public class StartPageData {
 
             HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
             if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                return response.body();
+                return response.body() + ", node: " + node;
             } else {
                 return "Error: " + response.statusCode() + " - " + response.body();
             }
@@ -48,4 +129,60 @@ public class StartPageData {
             return "Unexpected error: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+
+    public static InputStream openExportStream(String documentId, String userId) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(new URI(routeDocument(documentId) + "/export/" + documentId + "?userId=" + userId))
+                .GET()
+                .build();
+
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                return response.body();
+            }
+            response.body().close();
+            throw new IOException("Export failed: " + response.statusCode());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unexpected error: " + e.getMessage(), e);
+        }
+    }
+
+    // Asks the cluster which backend node owns a document id or share code
+    public static String routeDocument(String key) throws IOException {
+        return helpers.extractData(getFromEntryNode("/route/" + key), "node");
+    }
+
+    // Node that serves read-only viewers; the owner unless the cluster serves them from a replica
+    public static String routeViewer(String key) throws IOException {
+        return helpers.extractData(getFromEntryNode("/route/viewer/" + key), "node");
+    }
+
+    // Returns {shardKey, node} for a document that is about to be created
+    private static String[] allocateDocument() throws IOException {
+        String body = getFromEntryNode("/route/allocate");
+        return new String[] { helpers.extractData(body, "shardKey"), helpers.extractData(body, "node") };
+    }
+
+    private static String getFromEntryNode(String path) throws IOException {
+        IOException failure = null;
+        for (String baseUrl : BASE_URLS) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    return response.body();
+                }
+                throw new IOException("Routing failed: " + response.statusCode() + " - " + response.body());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Routing interrupted", e);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        throw failure != null ? failure : new IOException("No backend entry node configured");
+    }
+}
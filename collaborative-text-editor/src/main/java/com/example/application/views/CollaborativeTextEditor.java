@@ -1,10 +1,11 @@
 package com.example.application.views;
 
 import com.example.application.connections.CRDT.*;
+import com.example.application.data.StartPageData;
+import com.example.application.views.components.PresencePanel;
 import com.example.application.views.components.SidebarUtil;
 import com.example.application.views.components.helpers;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.vaadin.flow.component.ClientCallable;
 import com.vaadin.flow.component.UI;
@@ -25,29 +26,18 @@ import com.vaadin.flow.router.Route;
 import com.vaadin.flow.server.StreamResource;
 import com.vaadin.flow.server.VaadinSession;
 
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Route("/editor")
 @JsModule("./js/text-editor-connector.js")
 public class CollaborativeTextEditor extends VerticalLayout implements CollaborativeEditUiListener, HasUrlParameter<String> {
-
-    private enum OperationType {
-        INSERT, DELETE, BATCH_INSERT, BATCH_DELETE
-    }
-
-    private record EditorState(
-        OperationType type,
-        String text,
-        int position,
-        String userId,
-        String fullContent,
-        int cursorPosition
-    ) {}
+    private static final Logger logger = LoggerFactory.getLogger(CollaborativeTextEditor.class);
 
     private UI ui;
     private TextArea editor;
@@ -57,15 +47,12 @@ public class CollaborativeTextEditor extends VerticalLayout implements Collabora
     private String viewCode;
     private String editCode;
     private String role;
+    private String node;
     private Anchor hiddenDownloadLink;
-    private Div activeUserListSection = SidebarUtil.createActiveUserListSection();
+    private PresencePanel presencePanel;
 
     private static final Map<String, UI> activeUsers = new ConcurrentHashMap<>();
-    private final Deque<EditorState> undoStack = new ArrayDeque<>();
-    private final Deque<EditorState> redoStack = new ArrayDeque<>();
-    private boolean isUndoRedoOperation = false;
     private int currentCursorPosition = 0;
-    private List<String> active_users;
 
     @Autowired
     private CollaborativeEditService collaborativeEditService;
@@ -81,17 +68,37 @@ public class CollaborativeTextEditor extends VerticalLayout implements Collabora
         documentId = helpers.extractData(parameter, "documentId");
         viewCode = helpers.extractData(parameter, "viewCode");
         editCode = helpers.extractData(parameter, "editCode");
+        node = helpers.extractData(parameter, "node");
         this.ui = UI.getCurrent();
 
         collaborativeEditService.registerListener(documentId, userId, this);
-        collaborativeEditService.connectWebSocket(documentId, userId);
+        if (isViewer()) {
+            collaborativeEditService.connectWebSocket(viewerNode(), documentId, userId, true);
+        } else {
+            collaborativeEditService.connectWebSocket(node, documentId, userId);
+        }
         ui.addDetachListener(_ -> collaborativeEditService.unregisterListener(documentId, userId));
 
         initializeEditorUi();
     }
 
+    private boolean isViewer() {
+        return "viewer".equals(role) || (!viewCode.isEmpty() && editCode.isEmpty());
+    }
+
+    // Falls back to the owner the start page resolved if the viewer route is unavailable
+    private String viewerNode() {
+        try {
+            return StartPageData.routeViewer(documentId);
+        } catch (IOException e) {
+            logger.warn("Viewer routing failed, using {}: {}", node, e.getMessage());
+            return node;
+        }
+    }
+
     private void initializeEditorUi() {
         String content = (String) VaadinSession.getCurrent().getAttribute("importedText");
+        presencePanel = new PresencePanel(userId);
         activeUsers.put(userId, ui);
         ui.addDetachListener(_ -> activeUsers.remove(userId));
 
@@ -107,20 +114,13 @@ public class CollaborativeTextEditor extends VerticalLayout implements Collabora
         editor = new TextArea();
         if (content != null) {
             editor.setValue(content);
-            saveInitialState(content);
         }
-        if ("viewer".equals(role) || (!viewCode.isEmpty() && editCode.isEmpty()))
+        if (isViewer())
             editor.setReadOnly(true);
         editor.setWidthFull();
         editor.setHeight("100%");
         editor.setLabel("Edit text below - changes are shared with all users");
 
-        editor.addValueChangeListener(event -> {
-            if (!suppressInput && !isUndoRedoOperation) {
-                updateExportResource(event.getValue());
-            }
-        });
-
         editor.getElement().addEventListener("keyup", _ -> updateCursorPosition());
         editor.getElement().addEventListener("click", _ -> updateCursorPosition());
 
@@ -154,8 +154,9 @@ public class CollaborativeTextEditor extends VerticalLayout implements Collabora
         hiddenDownloadLink.setId("hiddenDownloadLink");
         hiddenDownloadLink.getStyle().set("display", "none");
         hiddenDownloadLink.getElement().setAttribute("download", true);
+        updateExportResource();
 
-        Section sidebar = SidebarUtil.createSidebar(viewCode, editCode, userId, hiddenDownloadLink, activeUserListSection);
+        Section sidebar = SidebarUtil.createSidebar(viewCode, editCode, userId, hiddenDownloadLink, presencePanel);
 
         HorizontalLayout mainLayout = new HorizontalLayout(editorContainer, sidebar);
         mainLayout.setSizeFull();
@@ -166,469 +167,110 @@ public class CollaborativeTextEditor extends VerticalLayout implements Collabora
         initializeConnector();
     }
 
-    private void saveInitialState(String content) {
-        undoStack.push(new EditorState(
-            OperationType.INSERT,
-            content,
-            0,
-            userId,
-            content,
-            0
-        ));
-    }
-
+    // The selection goes out as node anchors, and only when it no longer resolves to what was last sent
     private void updateCursorPosition() {
-        editor.getElement().executeJs("return this.inputElement.selectionStart")
-                .then(Integer.class, (SerializableConsumer<Integer>) pos -> currentCursorPosition = pos);
-        onCursorLineChanged(currentCursorPosition);
+        editor.getElement().executeJs("const el = this.inputElement; return el.selectionStart + ':' + el.selectionEnd;")
+                .then(String.class, (SerializableConsumer<String>) selection -> {
+                    String[] bounds = selection.split(":");
+                    currentCursorPosition = Integer.parseInt(bounds[0]);
+                    if (!isViewer()) {
+                        collaborativeEditService.moveCursor(documentId, userId, currentCursorPosition, Integer.parseInt(bounds[1]));
+                    }
+                });
     }
 
     private void initializeConnector() {
         getElement().executeJs("window.initEditorConnector($0, $1)", getElement(), userId);
     }
 
+    // Coalesced [position, deleteCount, text] splices from the connector, forwarded as one message
     @ClientCallable
-    public void onCharacterInserted(String character, int position) {
-        System.out.println("onCharacterInserted called with character: " + character + ", position: " + position);
+    public void onEditBatch(String batchJson) {
         if (suppressInput) return;
-        if (!isUndoRedoOperation) {
-            saveStateToUndoStack(
-                OperationType.INSERT,
-                character,
-                position,
-                editor.getValue()
-            );
-        }
-        ClientEditRequest req = CollaborativeEditService.createInsertRequest(
-            character, position, userId, documentId
-        );
-        collaborativeEditService.sendEditRequest(req);
-    }
 
-    @ClientCallable
-    public void onCharacterDeleted(int position) {
-        System.out.println("onCharacterDeleted called with position: " + position);
-        if (suppressInput) return;
-        System.out.println("Deleting character at position: " + position);
-        String currentText = editor.getValue();
-        
-        if (position >= 0 && position < currentText.length()) {
-            String deletedChar = currentText.substring(position, position + 1);
-
-            // Save full state BEFORE the deletion
-            if (!isUndoRedoOperation)
-            {
-                saveStateToUndoStack(
-                    OperationType.DELETE,
-                    deletedChar,
-                    position,
-                    currentText
-                );
-            }
-
-            ClientEditRequest req = CollaborativeEditService.createDeleteRequest(
-                position, userId, documentId
-            );
-            collaborativeEditService.sendEditRequest(req);
+        List<TextChange> changes = new ArrayList<>();
+        for (var element : JsonParser.parseString(batchJson).getAsJsonArray()) {
+            JsonArray edit = element.getAsJsonArray();
+            changes.add(new TextChange(edit.get(0).getAsInt(), edit.get(1).getAsInt(), edit.get(2).getAsString()));
         }
+        collaborativeEditService.applyLocalChanges(documentId, userId, changes);
     }
 
+    // Undo and redo apply inverse CRDT operations; the textarea is patched through onRemoteChanges
+    private void undo() {
+        collaborativeEditService.undo(documentId, userId);
+    }
 
-    @ClientCallable
-    public void onCharacterBatchInserted(String text, int position) {
-        System.out.println("onCharacterBatchInserted called with text: " + text + ", position: " + position);
-        if (suppressInput || text.isEmpty()) return;
-        
-        if(!isUndoRedoOperation) {
-            saveStateToUndoStack(
-                OperationType.BATCH_INSERT,
-                text,
-                position,
-                editor.getValue()
-            );
-        }
-        
-        for (int i = 0; i < text.length(); i++) {
-            ClientEditRequest req = CollaborativeEditService.createInsertRequest(
-                String.valueOf(text.charAt(i)), 
-                position, 
-                userId, 
-                documentId
-            );
-            collaborativeEditService.sendEditRequest(req);
-        }
+    private void redo() {
+        collaborativeEditService.redo(documentId, userId);
     }
 
-    @ClientCallable
-    public void onCharacterBatchDeleted(int startPosition, int count) {
-        System.out.println("onCharacterBatchDeleted called with startPosition: " + startPosition + ", count: " + count);
-        if (suppressInput || count <= 0) return;
-
-        String currentText = editor.getValue();
-        System.out.println("Current text: " + currentText.length() + ", startPosition: " + startPosition + ", count: " + count);
-        if (startPosition >= 0) {
-            System.out.println("Deleting characters from position: " + startPosition + " to " + (startPosition + count));
-            String deletedText = currentText.substring(startPosition-count+1, startPosition+1);
-
-            if(!isUndoRedoOperation) {
-                saveStateToUndoStack(
-                    OperationType.BATCH_DELETE,
-                    deletedText,
-                    startPosition,
-                    currentText
-                );
-            }
-            for (int i = 0; i < count; i++) {
-                ClientEditRequest req = CollaborativeEditService.createDeleteRequest(
-                    startPosition, userId, documentId
-                );
-                System.out.println("Sending delete request for position: " + req);
-                collaborativeEditService.sendEditRequest(req);
-            }
-        }
+    @Override
+    public void onServerMessage(String text) {
+        // Comment events are not rendered by this view
     }
 
-    private void saveStateToUndoStack(OperationType type, String text, int position, String fullContent) {
-        EditorState state = new EditorState(
-            type,
-            text,
-            position,
-            userId,
-            fullContent,
-            currentCursorPosition
-        );
-        undoStack.push(state);
-        redoStack.clear();
+    @Override
+    public void onActiveUsers(List<String> usernames) {
+        presencePanel.setActiveUsers(usernames);
     }
 
-    private void undo() {
-        System.out.println("Undoing last operation...");
-        if (undoStack.isEmpty()) return;
-        
-        EditorState lastState = undoStack.pop();
-        System.out.println("Last state: " + lastState);
-        if (!userId.equals(lastState.userId())) {
-            undo();
-            return;
-        }
-        isUndoRedoOperation = true;
-        System.out.println("Undoing operation of type: " + lastState.type());
-        try {
-            String current = editor.getValue();
-            switch (lastState.type()) {
-                case INSERT -> {
-                    System.out.println("Undoing INSERT operation");
-                    int pos = lastState.position();
-                    onCharacterDeleted(pos);
-                    if (pos >= 0 && pos < current.length() && 
-                        current.startsWith(lastState.text(), pos)) {
-                        suppressInput = true;
-                        editor.setValue(
-                            current.substring(0, pos) + 
-                            current.substring(pos + lastState.text().length())
-                        );
-                        suppressInput = false;
-
-                        currentCursorPosition = pos;
-                    }
-                    lastState = new EditorState(
-                        OperationType.INSERT,
-                        lastState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case DELETE -> {
-                    int pos = lastState.position();
-                    onCharacterInserted(lastState.text(), pos);
-                    suppressInput = true;
-
-                    editor.setValue(
-                        current.substring(0, pos) +
-                        lastState.text() +
-                        current.substring(pos)
-                    );
-                    suppressInput = false;
-
-                    currentCursorPosition = pos + lastState.text().length();
-                    lastState = new EditorState(
-                        OperationType.DELETE,
-                        lastState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case BATCH_INSERT -> {
-                    int pos = lastState.position();
-                    String inserted = lastState.text();
-                    System.out.println("Undoing INSERT operation");
-                    onCharacterBatchDeleted(pos, inserted.length());
-                    if (pos >= 0 && pos + inserted.length() <= current.length() && 
-                        current.startsWith(inserted, pos)) {
-                        suppressInput = true;
-                        editor.setValue(
-                            current.substring(0, pos) + 
-                            current.substring(pos + inserted.length())
-                        );
-                        suppressInput = false;
-                        currentCursorPosition = pos;
-                    }
-                    lastState = new EditorState(
-                        OperationType.BATCH_INSERT,
-                        lastState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case BATCH_DELETE -> {
-                    int pos = lastState.position();
-                    onCharacterBatchInserted(lastState.text(), pos);
-                    System.out.println("length" + lastState.text().length() + " current: " + current.length() + " pos: " + pos);
-                    suppressInput = true;
-                    editor.setValue(
-                        current.substring(0, pos) +
-                        lastState.text() +
-                        current.substring(pos)
-                    );
-                    suppressInput = false;
-                    System.out.println("Inserting text: " + lastState.text() + " at position: " + pos);
-                    currentCursorPosition = pos + lastState.text().length();
-                    lastState = new EditorState(
-                        OperationType.BATCH_DELETE,
-                        lastState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-            }
-            
-            ui.getPage().executeJs(
-                "setTimeout(() => { const el = $0.inputElement; el.selectionStart = $1; el.selectionEnd = $1; }, 10)",
-                editor.getElement(), currentCursorPosition
-            );
-            
-            redoStack.push(lastState);
-            isUndoRedoOperation = false;
-        } finally {
-            isUndoRedoOperation = false;
-        }
+    @Override
+    public void onCursors(Map<String, Integer> cursors) {
+        presencePanel.setCursors(cursors);
     }
 
-    private void redo() {
-        if (redoStack.isEmpty()) return;
-        
-        EditorState nextState = redoStack.pop();
-        isUndoRedoOperation = true;
-        try {
-            String current = editor.getValue();
-            System.out.println("Redoing operation of type: " + nextState.type());
-            switch (nextState.type()) {
-                case INSERT -> {
-                    int pos = nextState.position();
-                    onCharacterInserted(nextState.text(), pos);
-                    suppressInput = true;
-                    editor.setValue(
-                        current.substring(0, pos) +
-                        nextState.text() +
-                        current.substring(pos)
-                    );
-                    suppressInput = false;
-                    currentCursorPosition = pos + nextState.text().length();
-                    nextState = new EditorState(
-                        OperationType.DELETE,
-                        nextState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case DELETE -> {
-                    int pos = nextState.position();
-                    onCharacterDeleted(pos);
-                    if (pos >= 0 && pos < current.length() && 
-                        current.startsWith(nextState.text(), pos)) {
-                        suppressInput = true;
-                        editor.setValue(
-                            current.substring(0, pos) + 
-                            current.substring(pos + nextState.text().length())
-                        );
-                        suppressInput = false;
-                        currentCursorPosition = pos;
-                    }
-                    nextState = new EditorState(
-                        OperationType.INSERT,
-                        nextState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case BATCH_DELETE -> {
-                    int pos = nextState.position();
-                    onCharacterBatchDeleted(pos, nextState.text().length());
-                    suppressInput = true;
-                    editor.setValue(
-                        current.substring(0, pos) +
-                        nextState.text() +
-                        current.substring(pos)
-                    );
-                    suppressInput = false;
-                    currentCursorPosition = pos + nextState.text().length();
-                    nextState = new EditorState(
-                        OperationType.BATCH_DELETE,
-                        nextState.text(),
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-                case BATCH_INSERT -> {
-                    int pos = nextState.position();
-                    String toInsert = nextState.text();
-                    onCharacterBatchInserted(toInsert, pos);
-                    System.out.println("length" + toInsert.length() + " current: " + current.length() + " pos: " + pos);
-                    if (pos >= 0 ) {
-                        System.out.println("Deleting text: " + toInsert + " at position: " + pos);
-                        suppressInput = true;
-                        editor.setValue(
-                            current.substring(0, pos) + toInsert
-                        );
-                        suppressInput = false;
-                        currentCursorPosition = pos;
-                    }
-                    nextState = new EditorState(
-                        OperationType.BATCH_INSERT,
-                        toInsert,
-                        pos,
-                        userId,
-                        current,
-                        currentCursorPosition
-                    );
-                }
-            }
-            
-            ui.getPage().executeJs(
-                "setTimeout(() => { const el = $0.inputElement; el.selectionStart = $1; el.selectionEnd = $1; }, 10)",
-                editor.getElement(), currentCursorPosition
-            );
-            
-            undoStack.push(nextState);
-        } finally {
-            isUndoRedoOperation = false;
-        }
+    @Override
+    public void onSnapshot(String text) {
+        ui.access(() -> replaceEditorValue(text, Math.min(currentCursorPosition, text.length())));
     }
 
+    // Splices are patched into the textarea in place, so the payload scales with the edit, not the document
     @Override
-    public void onServerMessage(String text) {
-        if (text.trim().startsWith("{") && text.contains("\"type\":\"ACTIVE_USERS\"")) {
-            try {
-                JsonObject json = JsonParser.parseString(text).getAsJsonObject();
-                JsonArray users = json.getAsJsonArray("usernames");
-                List<String> usernames = new ArrayList<>();
-                for (int i = 0; i < users.size(); i++) {
-                    usernames.add(users.get(i).getAsString());
-                }
-                active_users=usernames;
-                updateActiveUserListUI(usernames);
-            } catch (Exception e) {
-                System.err.println("Failed to parse ACTIVE_USERS: " + e.getMessage());
-            }
-            
-            return;
+    public void onRemoteChanges(List<TextChange> changes) {
+        JsonArray patches = new JsonArray();
+        for (TextChange change : changes) {
+            JsonArray patch = new JsonArray();
+            patch.add(change.position());
+            patch.add(change.deleteCount());
+            patch.add(change.text());
+            patches.add(patch);
         }
-        else if (text.trim().startsWith("{") && text.contains("\"type\":\"CURSOR_UPDATE\"")) {
-            System.out.println(text);
-            try {
-                JsonObject json = JsonParser.parseString(text).getAsJsonObject();
-                JsonObject cursors = json.getAsJsonObject("cursors");
-                Map<String, Integer> cursorMap = new HashMap<>();
-        
-                for (String key : cursors.keySet()) {
-                    int pos = cursors.get(key).getAsInt();
-                    cursorMap.put(key, pos);
+        ui.access(() -> {
+            for (TextChange change : changes) {
+                if (change.position() < currentCursorPosition) {
+                    currentCursorPosition += change.text().length()
+                            - Math.min(change.deleteCount(), currentCursorPosition - change.position());
                 }
-        
-                updateActiveUserCursorUI(cursorMap);
-            } catch (Exception e) {
-                System.err.println("Failed to parse CURSOR_UPDATE: " + e.getMessage());
             }
-            return;
-        }
-    
-
-        ui.access(() -> {
-            ui.getPage().executeJs("window.suppressInputStart()");
-            suppressInput = true;
-            editor.setValue(text);
-            suppressInput = false;
-            ui.getPage().executeJs("window.suppressInputEnd()");
+            getElement().executeJs("this.applyRemotePatches(JSON.parse($0))", patches.toString());
         });
     }
 
-    private void updateActiveUserListUI(List<String> usernames) {
-        active_users = usernames;
-        ui.access(() -> {
-            activeUserListSection.removeAll();
-            Div header = new Div("\uD83D\uDFE2 Active Users (" + usernames.size() + "):");
-            header.getStyle().set("margin-bottom", "0.5rem").set("font-weight", "bold");
-            activeUserListSection.add(header);
-            for (String user : usernames) {
-                Div userDiv = new Div("\u2022 " + user);
-                userDiv.getStyle().set("margin-left", "1rem").set("color", "green");
-                activeUserListSection.add(userDiv);
-            }
-        });
+    // The TextArea's server-side value is not kept current by patches; the replica is the source of truth
+    private String currentText() {
+        return collaborativeEditService.getText(documentId, userId);
     }
 
-    private void updateActiveUserCursorUI(Map<String, Integer> userCursors) {
-        ui.access(() -> {
-            activeUserListSection.getChildren()
-                .filter(component -> "cursor".equals(component.getElement().getProperty("data-type")))
-                .forEach(activeUserListSection::remove);
-    
-            Div header = new Div("📍 Cursors:");
-            header.getElement().setProperty("data-type", "cursor");
-            header.getStyle().set("margin-top", "1rem")
-                                .set("margin-bottom", "0.5rem")
-                                .set("font-weight", "bold");
-            activeUserListSection.add(header);
-    
-            userCursors.forEach((user, pos) -> {
-                if (active_users.contains(user)) {
-                    String label = user.equals(userId) ? user + " (you)" : user;
-                    Div userDiv = new Div("• " + label + " → Pos: " + pos);
-                    userDiv.getElement().setProperty("data-type", "cursor");
-                    userDiv.getStyle().set("margin-left", "1rem").set("color", "blue");
-                    activeUserListSection.add(userDiv);
-                }
-            });
-        });
+    private void replaceEditorValue(String text, int caret) {
+        ui.getPage().executeJs("window.suppressInputStart()");
+        suppressInput = true;
+        editor.setValue(text);
+        suppressInput = false;
+        ui.getPage().executeJs("window.suppressInputEnd()");
+        currentCursorPosition = caret;
+        ui.getPage().executeJs(
+            "const el = $0.inputElement; el.selectionStart = $1; el.selectionEnd = $1;",
+            editor.getElement(), caret
+        );
     }
-    
 
-    private void updateExportResource(String htmlContent) {
-        String plainText = helpers.htmlToPlainText(htmlContent);
+    // The export is proxied from the backend stream, so it always reflects the latest CRDT state
+    private void updateExportResource() {
         StreamResource resource = new StreamResource("document.txt",
-                () -> new ByteArrayInputStream(plainText.getBytes(StandardCharsets.UTF_8)));
+                () -> StartPageData.openExportStream(documentId, userId));
+        resource.setContentType("text/plain;charset=UTF-8");
         hiddenDownloadLink.setHref(resource);
     }
 
-    @ClientCallable
-    public void onCursorLineChanged(int lineNumber) {
-        System.out.printf("user ", userId , "doc " , documentId , "position", lineNumber);
-        ClientEditRequest req = CollaborativeEditService.updateUserCursorLine(lineNumber, userId, documentId);
-        collaborativeEditService.sendEditRequest(req);
-    }
-
 }
\ No newline at end of file
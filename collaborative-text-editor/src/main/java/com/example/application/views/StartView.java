@@ -6,16 +6,15 @@ import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.component.upload.Upload;
-import com.vaadin.flow.component.upload.receivers.MemoryBuffer;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
 import com.vaadin.flow.server.VaadinSession;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 
 import com.example.application.views.components.helpers;
 
@@ -24,6 +23,8 @@ import com.example.application.views.components.helpers;
 @Route("")
 public class StartView extends VerticalLayout {
 
+    private StartPageData.ImportUpload currentImport;
+
     public StartView() {
         setSizeFull();
         setAlignItems(Alignment.CENTER);
@@ -52,28 +53,57 @@ public class StartView extends VerticalLayout {
         importLayout.setAlignItems(Alignment.CENTER);
         Image importIcon = new Image("icons/file-import.png", "Import");
         importIcon.setWidth("60px");
-        MemoryBuffer buffer = new MemoryBuffer();
-        Upload upload = new Upload(buffer);
+        // Upload bytes are piped straight into the backend import request instead of a MemoryBuffer
+        Upload upload = new Upload((_, _) -> {
+            try {
+                currentImport = StartPageData.startImport();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return currentImport.getOutputStream();
+        });
         upload.addClassName("custom-upload");
         upload.setUploadButton(new Button("Import files"));
         upload.setAcceptedFileTypes(".txt");
+
+        ProgressBar importProgress = new ProgressBar();
+        importProgress.setWidth("200px");
+        importProgress.setVisible(false);
+
         importLayout.setSpacing(true);
-        importLayout.add(importIcon, upload);
+        importLayout.add(importIcon, upload, importProgress);
 
-        upload.addSucceededListener(_ -> {
-            try (InputStream inputStream = buffer.getInputStream()) {
-                String content = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        upload.addStartedListener(_ -> {
+            importProgress.setValue(0);
+            importProgress.setVisible(true);
+        });
 
-                String result = StartPageData.createNewDocument(content);
+        upload.addProgressListener(event -> {
+            if (event.getContentLength() > 0) {
+                importProgress.setValue((double) event.getReadBytes() / event.getContentLength());
+            }
+        });
 
-                if (result.startsWith("userId:")) {
-                    VaadinSession.getCurrent().setAttribute("importedText", content);
-                    getUI().ifPresent(ui -> ui.navigate(CollaborativeTextEditor.class, result));
-                } else {
-                    Notification.show("Failed to create document: " + result, 5000, Notification.Position.MIDDLE);
-                }
-            } catch (IOException e) {
-                Notification.show("Error reading file: " + e.getMessage(), 5000, Notification.Position.MIDDLE);
+        upload.addFailedListener(event -> {
+            importProgress.setVisible(false);
+            if (currentImport != null) {
+                currentImport.abort(event.getReason() != null ? event.getReason() : new IOException("Upload failed"));
+                currentImport = null;
+            }
+            Notification.show("Error reading file: " + event.getReason(), 5000, Notification.Position.MIDDLE);
+        });
+
+        upload.addSucceededListener(_ -> {
+            importProgress.setVisible(false);
+            String result = currentImport.awaitResult();
+            currentImport = null;
+
+            if (result.startsWith("userId:")) {
+                // The editor receives the imported content from the backend once its socket opens
+                VaadinSession.getCurrent().setAttribute("importedText", null);
+                getUI().ifPresent(ui -> ui.navigate(CollaborativeTextEditor.class, result));
+            } else {
+                Notification.show("Failed to create document: " + result, 5000, Notification.Position.MIDDLE);
             }
         });
 
@@ -95,6 +125,7 @@ public class StartView extends VerticalLayout {
                     String documentId = helpers.extractData(response, "documentId");
                     String role = helpers.extractData(response, "role");
                     String viewCode = helpers.extractData(response, "viewCode");
+                    String node = helpers.extractData(response, "node");
 
                     String editCode = "Hidden";
                     if ("viewer".equals(role))
@@ -105,7 +136,8 @@ public class StartView extends VerticalLayout {
                         ", documentId: " + documentId +
                             ", role: " + role + 
                         ", viewCode: " + viewCode +
-                        ", editCode: " + editCode;
+                        ", editCode: " + editCode +
+                        ", node: " + node;
 
                     getUI().ifPresent(ui -> ui.navigate(CollaborativeTextEditor.class, params));
                 } else {
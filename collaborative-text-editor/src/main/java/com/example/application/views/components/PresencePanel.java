@@ -0,0 +1,123 @@
+package com.example.application.views.components;
+
+import com.vaadin.flow.component.html.Div;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sidebar list of active users and their cursor positions. Updates may arrive from any thread
+ * and at any rate; only the latest state is kept and it is rendered at most once per frame.
+ * Rows are keyed by user, so a render touches only the rows whose text changed and adds or
+ * removes rows for users who joined or left.
+ */
+public class PresencePanel extends Div {
+
+    private static final long FRAME_MS = 100;
+
+    // Shared by every panel; a render only schedules a UI access, so one thread is enough
+    private static final ScheduledExecutorService RENDER_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("presence-render").daemon().factory());
+
+    private final String self;
+    private final Div usersHeader = new Div();
+    private final Div usersList = new Div();
+    private final Div cursorsHeader = new Div("📍 Cursors:");
+    private final Div cursorsList = new Div();
+    private final Map<String, Div> userRows = new LinkedHashMap<>();
+    private final Map<String, Div> cursorRows = new LinkedHashMap<>();
+
+    private volatile List<String> pendingUsers = List.of();
+    private volatile Map<String, Integer> pendingCursors = Map.of();
+    private final AtomicBoolean renderScheduled = new AtomicBoolean();
+    private volatile long lastRenderAt;
+
+    public PresencePanel(String self) {
+        this.self = self;
+        setId("active-users-list");
+        getStyle()
+                .set("margin-top", "1rem")
+                .set("font-weight", "bold")
+                .set("color", "var(--lumo-body-text-color)")
+                .set("font-size", "14px");
+
+        usersHeader.setText("🟢 Active Users:");
+        usersHeader.getStyle().set("margin-bottom", "0.5rem");
+        cursorsHeader.getStyle().set("margin-top", "1rem").set("margin-bottom", "0.5rem");
+        cursorsHeader.setVisible(false);
+        add(usersHeader, usersList, cursorsHeader, cursorsList);
+    }
+
+    public void setActiveUsers(List<String> usernames) {
+        pendingUsers = List.copyOf(usernames);
+        scheduleRender();
+    }
+
+    public void setCursors(Map<String, Integer> cursors) {
+        pendingCursors = Map.copyOf(cursors);
+        scheduleRender();
+    }
+
+    private void scheduleRender() {
+        if (!renderScheduled.compareAndSet(false, true)) return;
+        long delay = Math.max(0, lastRenderAt + FRAME_MS - System.currentTimeMillis());
+        RENDER_SCHEDULER.schedule(
+                () -> getUI().ifPresentOrElse(ui -> ui.access(this::render), () -> renderScheduled.set(false)),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void render() {
+        // Cleared first, so an update that arrives during the render schedules the next frame
+        renderScheduled.set(false);
+        lastRenderAt = System.currentTimeMillis();
+        List<String> users = pendingUsers;
+        Map<String, Integer> cursors = pendingCursors;
+
+        usersHeader.setText("🟢 Active Users (" + users.size() + "):");
+        Map<String, String> userLabels = new LinkedHashMap<>();
+        for (String user : users) {
+            userLabels.put(user, "• " + user);
+        }
+        syncRows(usersList, userRows, userLabels, "green");
+
+        Map<String, String> cursorLabels = new LinkedHashMap<>();
+        for (String user : users) {
+            Integer position = cursors.get(user);
+            if (position != null) {
+                String label = user.equals(self) ? user + " (you)" : user;
+                cursorLabels.put(user, "• " + label + " → Pos: " + position);
+            }
+        }
+        cursorsHeader.setVisible(!cursorLabels.isEmpty());
+        syncRows(cursorsList, cursorRows, cursorLabels, "blue");
+    }
+
+    // Removes rows of users who are gone, updates changed labels and appends rows for new users
+    private static void syncRows(Div list, Map<String, Div> rows, Map<String, String> labels, String color) {
+        Iterator<Map.Entry<String, Div>> existing = rows.entrySet().iterator();
+        while (existing.hasNext()) {
+            Map.Entry<String, Div> entry = existing.next();
+            if (!labels.containsKey(entry.getKey())) {
+                list.remove(entry.getValue());
+                existing.remove();
+            }
+        }
+        labels.forEach((user, label) -> {
+            Div row = rows.get(user);
+            if (row == null) {
+                row = new Div(label);
+                row.getStyle().set("margin-left", "1rem").set("color", color);
+                rows.put(user, row);
+                list.add(row);
+            } else if (!label.equals(row.getText())) {
+                row.setText(label);
+            }
+        });
+    }
+}
@@ -15,7 +15,7 @@ import com.vaadin.flow.component.html.DescriptionList.Term;
 public class SidebarUtil {
 
     public static Section createSidebar(String viewCode, String editCode, String userId,
-                                        Anchor hiddenDownloadLink, Div activeUserListSection) {
+                                        Anchor hiddenDownloadLink, Div presencePanel) {
         Section sidebar = new Section();
         sidebar.addClassNames(Background.CONTRAST_5, BoxSizing.BORDER, Display.FLEX, FlexDirection.COLUMN,
                 Flex.SHRINK_NONE, Overflow.AUTO, Padding.LARGE);
@@ -45,7 +45,7 @@ public class SidebarUtil {
             );
         });
 
-        sidebar.add(title, exportButton, dl, hiddenDownloadLink, activeUserListSection);
+        sidebar.add(title, exportButton, dl, hiddenDownloadLink, presencePanel);
         return sidebar;
     }
 
@@ -72,20 +72,4 @@ public class SidebarUtil {
         return desc;
     }
 
-    public static Div createActiveUserListSection() {
-        Div container = new Div();
-        container.setId("active-users-list");
-        container.getStyle()
-                .set("margin-top", "1rem")
-                .set("font-weight", "bold")
-                .set("color", "var(--lumo-body-text-color)")
-                .set("font-size", "14px");
-
-        Div header = new Div();
-        header.setText("🟢 Active Users:");
-        header.getStyle().set("margin-bottom", "0.5rem");
-        container.add(header);
-
-        return container;
-    }
 }
\ No newline at end of file
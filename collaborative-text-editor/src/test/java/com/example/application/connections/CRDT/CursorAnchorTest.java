@@ -0,0 +1,68 @@
+package com.example.application.connections.CRDT;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CursorAnchorTest {
+
+    private final CrdtTree replica = new CrdtTree();
+    private long timestamp = 2_000_000_000_000L;
+
+    CursorAnchorTest() {
+        replica.bulkAppender("seed", 1).append("hello world".toCharArray(), 0, 11);
+    }
+
+    private void insert(int position, String value) {
+        String parentId = position == 0 ? "root" : replica.idAt(position - 1);
+        replica.applyOperation(CrdtOperation.insert("doc", "u-" + timestamp, value, parentId, timestamp++, "u"));
+    }
+
+    private void delete(int position) {
+        replica.applyOperation(CrdtOperation.delete(replica.idAt(position), timestamp++, "u", "doc"));
+    }
+
+    @Test
+    void caretPrefersTheCharacterToItsRight() {
+        assertEquals(new CursorAnchor(replica.idAt(0), CursorAnchor.Side.BEFORE), CursorAnchor.at(replica, 0));
+        assertEquals(new CursorAnchor(replica.idAt(6), CursorAnchor.Side.BEFORE), CursorAnchor.at(replica, 6));
+        assertEquals(new CursorAnchor(replica.idAt(10), CursorAnchor.Side.AFTER), CursorAnchor.at(replica, 11));
+        assertEquals(CursorAnchor.START, CursorAnchor.at(new CrdtTree(), 3));
+    }
+
+    @Test
+    void everyOffsetResolvesBackToItself() {
+        for (int offset = 0; offset <= replica.getVisibleLength(); offset++) {
+            assertEquals(offset, CursorAnchor.at(replica, offset).resolve(replica));
+        }
+    }
+
+    @Test
+    void anchorKeepsItsPlaceWhileOthersEdit() {
+        CursorAnchor caret = CursorAnchor.at(replica, 6);
+        insert(0, ">");
+        delete(3);
+        assertEquals(6, caret.resolve(replica));
+        assertEquals(">helo world", replica.getText());
+
+        // Typing at the caret inserts before the anchored character and pushes the caret along
+        insert(6, "W");
+        assertEquals(7, caret.resolve(replica));
+    }
+
+    @Test
+    void deletedCharacterLeavesTheCaretWhereItWas() {
+        CursorAnchor before = CursorAnchor.at(replica, 6);
+        CursorAnchor after = CursorAnchor.at(replica, 11);
+        delete(6);
+        delete(9);
+        assertEquals(6, before.resolve(replica));
+        assertEquals(9, after.resolve(replica));
+    }
+
+    @Test
+    void unknownNodesDoNotResolve() {
+        assertEquals(-1, new CursorAnchor("other-5", CursorAnchor.Side.BEFORE).resolve(replica));
+        assertEquals(0, CursorAnchor.START.resolve(replica));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.application.connections.CRDT;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndoManagerTest {
+
+    private static final long PAUSE_MS = 500;
+
+    private final UndoManager history = new UndoManager(3, 10_000, PAUSE_MS);
+
+    private static CrdtOperation insert(String userId, long timestamp) {
+        return CrdtOperation.insert("doc", userId + "-" + timestamp, "x", "root", timestamp, userId);
+    }
+
+    private static UndoManager.Inverse restore(String text) {
+        return new UndoManager.RestoreText(List.of(new UndoManager.Segment("u-1", text)));
+    }
+
+    @Test
+    void consecutiveInsertsBecomeOneRange() {
+        UndoManager.RemoveNodes remove = UndoManager.RemoveNodes.of(List.of(
+                insert("u", 10), insert("u", 11), insert("u", 12), insert("v", 13), insert("u", 20), insert("u", 21)));
+        assertEquals(List.of(new UndoManager.IdRange("u", 10, 3), new UndoManager.IdRange("v", 13, 1),
+                new UndoManager.IdRange("u", 20, 2)), remove.ranges());
+        assertEquals("u-12", remove.ranges().get(0).idAt(2));
+    }
+
+    @Test
+    void editsWithinThePauseJoinOneStep() {
+        history.record(List.of(restore("a")), 1_000);
+        history.record(List.of(restore("b")), 1_000 + PAUSE_MS - 1);
+        history.record(List.of(restore("c")), 1_000 + 2 * PAUSE_MS);
+
+        assertEquals(List.of(restore("c")), history.popUndo());
+        assertEquals(List.of(restore("a"), restore("b")), history.popUndo());
+        assertEquals(List.of(), history.popUndo());
+    }
+
+    @Test
+    void undoClosesTheCurrentStep() {
+        history.record(List.of(restore("a")), 1_000);
+        history.pushRedo(history.popUndo());
+        history.record(List.of(restore("b")), 1_001);
+        history.record(List.of(restore("c")), 1_002);
+
+        assertEquals(List.of(restore("b"), restore("c")), history.popUndo());
+        assertEquals(List.of(), history.popUndo());
+    }
+
+    @Test
+    void newEditsClearRedoButRedoneStepsDoNot() {
+        history.record(List.of(restore("a")), 1_000);
+        history.record(List.of(restore("b")), 1_000 + PAUSE_MS);
+        history.pushRedo(history.popUndo());
+        history.pushRedo(history.popUndo());
+
+        // Redoing puts the inverse back on the undo stack and keeps the rest of the redo history
+        history.pushUndo(history.popRedo());
+        assertEquals(List.of(restore("b")), history.popRedo());
+
+        history.pushRedo(List.of(restore("b")));
+        history.record(List.of(restore("c")), 5_000);
+        assertEquals(List.of(), history.popRedo());
+    }
+
+    @Test
+    void depthIsBoundedByDroppingTheOldestSteps() {
+        for (int i = 0; i < 5; i++) {
+            history.record(List.of(restore(String.valueOf(i))), 1_000 + i * PAUSE_MS);
+        }
+        assertEquals(List.of(restore("4")), history.popUndo());
+        assertEquals(List.of(restore("3")), history.popUndo());
+        assertEquals(List.of(restore("2")), history.popUndo());
+        assertEquals(List.of(), history.popUndo());
+        assertEquals(0, history.getRetainedBytes());
+    }
+
+    @Test
+    void retainedBytesAreBoundedButTheLatestStepIsKept() {
+        UndoManager small = new UndoManager(100, 1_000, PAUSE_MS);
+        for (int i = 0; i < 10; i++) {
+            small.record(List.of(restore("x".repeat(100))), 1_000 + i * PAUSE_MS);
+        }
+        assertTrue(small.getRetainedBytes() <= 1_000, () -> "retained " + small.getRetainedBytes());
+
+        small.record(List.of(restore("x".repeat(1_000))), 100_000);
+        assertEquals(restore("x".repeat(1_000)).estimatedBytes(), small.getRetainedBytes());
+        assertEquals(1, small.popUndo().size());
+        assertEquals(0, small.getRetainedBytes());
+    }
+}
@@ -0,0 +1,63 @@
+package com.collab.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The REST calls a real session makes before it opens its socket: {@code /create} for the first
+ * editor of a document and {@code /join/{code}} for everyone else.
+ */
+public class BackendApi {
+
+    private final HttpClient http;
+    private final URI backend;
+
+    public BackendApi(HttpClient http, URI backend) {
+        this.http = http;
+        this.backend = backend;
+    }
+
+    // Fields of the creator's session: userId, documentId, viewCode, editCode
+    public Map<String, String> create(String initialContent) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(backend.resolve("/create"))
+                .POST(HttpRequest.BodyPublishers.ofString(initialContent))
+                .build();
+        return parse(send(request));
+    }
+
+    public Map<String, String> join(String code) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(backend.resolve("/join/" + code)).GET().build();
+        return parse(send(request));
+    }
+
+    public URI socketUri(String documentId, String userId) {
+        String scheme = "https".equals(backend.getScheme()) ? "wss" : "ws";
+        return URI.create(scheme + "://" + backend.getAuthority()
+                + "/crdt/" + documentId + "?documentId=" + documentId + "&userId=" + userId);
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException(request.uri() + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    // Responses look like "userId: user-1, role: editor, documentId: ..."
+    private static Map<String, String> parse(String body) {
+        Map<String, String> fields = new HashMap<>();
+        for (String part : body.split(",")) {
+            int split = part.indexOf(':');
+            if (split > 0) {
+                fields.put(part.substring(0, split).trim(), part.substring(split + 1).trim());
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,146 @@
+package com.collab.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared by every simulated client. An edit is stamped when its author sends it and sampled
+ * once per other client of the document when that client sees it, so the histogram holds
+ * edit-to-remote-visibility times as users experience them. Acks (SEQUENCE) are measured
+ * separately from the author's side. Values are recorded in microseconds.
+ */
+public class LatencyTracker {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    // Sends nobody has seen after this long are counted as lost (e.g. a peer disconnected)
+    private static final long EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private record Pending(long sentAt, AtomicInteger remaining) {}
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Recorder remoteRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Recorder ackRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram remoteTotal = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram ackTotal = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private Histogram remoteInterval;
+    private Histogram ackInterval;
+
+    private final LongAdder sentOperations = new LongAdder();
+    private final LongAdder deliveredOperations = new LongAdder();
+    private final LongAdder cursorMessages = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    private final HistogramLogWriter logWriter;
+    private volatile boolean measuring;
+    private long measuringSince;
+
+    public LatencyTracker(String histogramLog) throws FileNotFoundException {
+        if (histogramLog == null || histogramLog.isEmpty()) {
+            logWriter = null;
+        } else {
+            logWriter = new HistogramLogWriter(new PrintStream(histogramLog));
+            logWriter.outputLogFormatVersion();
+            logWriter.outputLegend();
+        }
+    }
+
+    public void sent(String key, int recipients, int operations, long now) {
+        if (recipients > 0) {
+            pending.put(key, new Pending(now, new AtomicInteger(recipients)));
+        }
+        if (measuring) sentOperations.add(operations);
+    }
+
+    public void received(String key, int operations, long now) {
+        Pending sent = pending.get(key);
+        if (sent == null) return;
+        if (sent.remaining().decrementAndGet() == 0) {
+            pending.remove(key);
+        }
+        if (measuring) {
+            remoteRecorder.recordValue(Math.min(micros(now - sent.sentAt()), HIGHEST_TRACKABLE_MICROS));
+            deliveredOperations.add(operations);
+        }
+    }
+
+    public void acked(long sentAt, long now) {
+        if (measuring) {
+            ackRecorder.recordValue(Math.min(micros(now - sentAt), HIGHEST_TRACKABLE_MICROS));
+        }
+    }
+
+    public void cursorReceived() {
+        if (measuring) cursorMessages.increment();
+    }
+
+    public synchronized void startMeasuring() {
+        remoteInterval = remoteRecorder.getIntervalHistogram(remoteInterval);
+        ackInterval = ackRecorder.getIntervalHistogram(ackInterval);
+        measuringSince = System.nanoTime();
+        if (logWriter != null) {
+            logWriter.outputStartTime(System.currentTimeMillis());
+            logWriter.setBaseTime(System.currentTimeMillis());
+        }
+        measuring = true;
+    }
+
+    // Called once a second: folds the interval into the totals, logs it and prints a progress line
+    public synchronized void tick(PrintStream out) {
+        long now = System.nanoTime();
+        pending.values().removeIf(sent -> {
+            boolean expired = now - sent.sentAt() > EXPIRY_NANOS;
+            if (expired && measuring) lost.add(sent.remaining().get());
+            return expired;
+        });
+        if (!measuring) return;
+
+        remoteInterval = remoteRecorder.getIntervalHistogram(remoteInterval);
+        ackInterval = ackRecorder.getIntervalHistogram(ackInterval);
+        remoteTotal.add(remoteInterval);
+        ackTotal.add(ackInterval);
+        if (logWriter != null) {
+            logWriter.outputIntervalHistogram(remoteInterval);
+        }
+        out.printf("%4ds  remote p50 %7.2f ms  p99 %7.2f ms  (%d samples)  ack p99 %7.2f ms%n",
+                TimeUnit.NANOSECONDS.toSeconds(now - measuringSince),
+                millis(remoteInterval, 50), millis(remoteInterval, 99), remoteInterval.getTotalCount(),
+                millis(ackInterval, 99));
+    }
+
+    public synchronized void report(PrintStream out) {
+        double seconds = (System.nanoTime() - measuringSince) / 1e9;
+        out.println();
+        out.printf("Operations sent:      %,12.0f /s%n", sentOperations.sum() / seconds);
+        out.printf("Operations delivered: %,12.0f /s  (to other clients)%n", deliveredOperations.sum() / seconds);
+        out.printf("Cursor updates:       %,12.0f /s%n", cursorMessages.sum() / seconds);
+        out.printf("Deliveries lost:      %,12d%n", lost.sum());
+        out.println();
+        out.printf("Edit to remote visibility  p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  max %8.2f ms%n",
+                millis(remoteTotal, 50), millis(remoteTotal, 99), millis(remoteTotal, 99.9), remoteTotal.getMaxValue() / 1000.0);
+        out.printf("Edit to ack                p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  max %8.2f ms%n",
+                millis(ackTotal, 50), millis(ackTotal, 99), millis(ackTotal, 99.9), ackTotal.getMaxValue() / 1000.0);
+        out.println();
+        out.println("Edit to remote visibility (ms):");
+        remoteTotal.outputPercentileDistribution(out, 1000.0);
+        if (logWriter != null) {
+            logWriter.close();
+        }
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
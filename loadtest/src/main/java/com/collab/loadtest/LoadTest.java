@@ -0,0 +1,98 @@
+package com.collab.loadtest;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the configured number of editors against a running backend, lets them type, paste
+ * and move their cursors for the warmup and measured periods, and prints throughput and
+ * latency percentiles. Each client runs on its own virtual thread, so thousands of them cost
+ * little more than their sockets.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+            System.out.print(LoadTestConfig.USAGE);
+            return;
+        }
+        LoadTestConfig config = LoadTestConfig.parse(args);
+
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder().executor(threads).build()) {
+            BackendApi api = new BackendApi(http, config.backend());
+            LatencyTracker tracker = new LatencyTracker(config.histogramLog());
+
+            List<SimulatedClient> clients = createClients(config, api, tracker);
+            System.out.printf("Connecting %d clients to %d documents on %s%n", clients.size(), config.documents(), config.backend());
+            awaitAll(clients.stream()
+                    .map(client -> threads.submit(() -> {
+                        client.connect(http);
+                        return null;
+                    }))
+                    .toList());
+
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+            long deadline = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+            List<Future<?>> running = clients.stream()
+                    .<Future<?>>map(client -> threads.submit(() -> {
+                        client.run(deadline);
+                        return null;
+                    }))
+                    .toList();
+
+            System.out.printf("Warming up for %ds%n", config.warmupSeconds());
+            TimeUnit.NANOSECONDS.sleep(measureFrom - System.nanoTime());
+            tracker.startMeasuring();
+            System.out.printf("Measuring for %ds%n", config.durationSeconds());
+            while (System.nanoTime() < deadline) {
+                TimeUnit.SECONDS.sleep(1);
+                tracker.tick(System.out);
+            }
+            awaitAll(running);
+            // Lets the last deliveries arrive before the sockets close
+            TimeUnit.SECONDS.sleep(1);
+            tracker.tick(System.out);
+            clients.forEach(SimulatedClient::close);
+            tracker.report(System.out);
+        }
+    }
+
+    // The first client of each document creates it; the others join with its edit code
+    private static List<SimulatedClient> createClients(LoadTestConfig config, BackendApi api, LatencyTracker tracker) throws Exception {
+        List<SimulatedClient> clients = new ArrayList<>();
+        String initialContent = initialContent(config.initialLength());
+        for (int d = 0; d < config.documents(); d++) {
+            Map<String, String> creator = api.create(initialContent);
+            String documentId = creator.get("documentId");
+            int members = config.clientsPerDocument(d);
+            for (int c = 0; c < members; c++) {
+                String userId = c == 0 ? creator.get("userId") : api.join(creator.get("editCode")).get("userId");
+                clients.add(new SimulatedClient(config, tracker, documentId, userId, members - 1,
+                        api.socketUri(documentId, userId), 31L * d + c));
+            }
+        }
+        return clients;
+    }
+
+    private static String initialContent(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append("lorem ipsum dolor sit amet\n");
+        }
+        return sb.substring(0, length);
+    }
+
+    private static void awaitAll(List<? extends Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.collab.loadtest;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line settings, given as {@code --name=value}. Rates are per simulated client; a rate
+ * or interval of 0 turns that kind of traffic off.
+ */
+public record LoadTestConfig(
+        URI backend,
+        int documents,
+        int clients,
+        int initialLength,
+        int durationSeconds,
+        int warmupSeconds,
+        double typingRate,
+        double deleteRatio,
+        double pasteIntervalSeconds,
+        int pasteLength,
+        double cursorRate,
+        String histogramLog) {
+
+    static final String USAGE = """
+            Usage: java -jar loadtest.jar [--name=value ...]
+              --backend=http://localhost:8081   backend node to create, join and connect to
+              --documents=10                    documents created for the run
+              --clients=100                     simulated editors, spread evenly over the documents
+              --initial-length=1000             characters of initial content per document
+              --duration=60                     seconds measured
+              --warmup=10                       seconds run before measuring
+              --typing-rate=5                   characters typed per second
+              --delete-ratio=0.2                share of keystrokes that are backspaces
+              --paste-interval=30               seconds between pastes (0 = none)
+              --paste-length=2000               characters per paste
+              --cursor-rate=2                   cursor moves per second
+              --histogram-log=latency.hlog      interval histograms, one per second (empty = none)
+            """;
+
+    public static LoadTestConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int split = arg.indexOf('=');
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+
+        LoadTestConfig config = new LoadTestConfig(
+                URI.create(values.getOrDefault("backend", "http://localhost:8081")),
+                Integer.parseInt(values.getOrDefault("documents", "10")),
+                Integer.parseInt(values.getOrDefault("clients", "100")),
+                Integer.parseInt(values.getOrDefault("initial-length", "1000")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Integer.parseInt(values.getOrDefault("warmup", "10")),
+                Double.parseDouble(values.getOrDefault("typing-rate", "5")),
+                Double.parseDouble(values.getOrDefault("delete-ratio", "0.2")),
+                Double.parseDouble(values.getOrDefault("paste-interval", "30")),
+                Integer.parseInt(values.getOrDefault("paste-length", "2000")),
+                Double.parseDouble(values.getOrDefault("cursor-rate", "2")),
+                values.getOrDefault("histogram-log", "latency.hlog"));
+        if (config.documents < 1 || config.clients < config.documents) {
+            throw new IllegalArgumentException("Need at least one document and one client per document");
+        }
+        return config;
+    }
+
+    public int clientsPerDocument(int document) {
+        return clients / documents + (document < clients % documents ? 1 : 0);
+    }
+}
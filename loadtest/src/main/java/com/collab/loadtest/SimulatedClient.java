@@ -0,0 +1,256 @@
+package com.collab.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One editor on its own socket, behaving like the Vaadin client: edits are built against node
+ * ids and sent as OPERATIONS, the caret is a node it types after, and cursor moves are sent as
+ * anchors. Keystrokes, pastes and cursor moves arrive as independent Poisson processes at the
+ * configured rates. The editing loop runs on one virtual thread; socket callbacks run on the
+ * HTTP client's executor.
+ */
+public class SimulatedClient implements WebSocket.Listener {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // Node ids kept as cursor jump targets
+    private static final int KNOWN_IDS_LIMIT = 10_000;
+    private static final String TEXT = "the quick brown fox jumps over the lazy dog ";
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Operation(String type, String id, String value, String parentId, String targetId, long timestamp, String userId) {}
+
+    record Anchor(String nodeId, String side) {}
+
+    record Cursor(Anchor start, Anchor end) {}
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Request(String type, String userId, String documentId, List<Operation> operations, Cursor cursor) {}
+
+    private final LoadTestConfig config;
+    private final LatencyTracker tracker;
+    private final String documentId;
+    private final String userId;
+    private final int peers;
+    private final URI uri;
+    private final SplittableRandom random;
+
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final StringBuilder partial = new StringBuilder();
+    private final List<String> knownIds = new ArrayList<>();
+    // Send times of OPERATIONS still waiting for their SEQUENCE ack, in send order
+    private final Queue<Long> unacked = new ConcurrentLinkedQueue<>();
+    private WebSocket socket;
+
+    // Editing state, only touched by the editing loop
+    private String runParent = "root";
+    private final Deque<String> typed = new ArrayDeque<>();
+    private long clock;
+
+    public SimulatedClient(LoadTestConfig config, LatencyTracker tracker, String documentId, String userId, int peers, URI uri, long seed) {
+        this.config = config;
+        this.tracker = tracker;
+        this.documentId = documentId;
+        this.userId = userId;
+        this.peers = peers;
+        this.uri = uri;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public void connect(HttpClient http) throws InterruptedException {
+        socket = http.newWebSocketBuilder().buildAsync(uri, this).join();
+        if (!ready.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(userId + " got no snapshot for " + documentId);
+        }
+    }
+
+    public void run(long deadline) throws InterruptedException {
+        long now = System.nanoTime();
+        long nextKey = next(now, config.typingRate());
+        long nextPaste = config.pasteIntervalSeconds() > 0 ? next(now, 1 / config.pasteIntervalSeconds()) : Long.MAX_VALUE;
+        long nextCursor = next(now, config.cursorRate());
+
+        while (true) {
+            long due = Math.min(nextKey, Math.min(nextPaste, nextCursor));
+            if (due >= deadline) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (due == nextKey) {
+                keystroke();
+                nextKey = next(due, config.typingRate());
+            } else if (due == nextPaste) {
+                paste();
+                nextPaste = next(due, 1 / config.pasteIntervalSeconds());
+            } else {
+                moveCursor();
+                nextCursor = next(due, config.cursorRate());
+            }
+        }
+    }
+
+    public void close() {
+        if (socket != null) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+    }
+
+    private void keystroke() {
+        if (!typed.isEmpty() && random.nextDouble() < config.deleteRatio()) {
+            String targetId = typed.pop();
+            sendOperations(List.of(new Operation("DELETE", null, null, null, targetId, nextTimestamp(), userId)));
+            return;
+        }
+        sendOperations(List.of(insert()));
+    }
+
+    private void paste() {
+        List<Operation> operations = new ArrayList<>(config.pasteLength());
+        for (int i = 0; i < config.pasteLength(); i++) {
+            operations.add(insert());
+        }
+        sendOperations(operations);
+    }
+
+    // The caret sits after the last character typed in this run, or after the node it moved to
+    private Operation insert() {
+        long timestamp = nextTimestamp();
+        String id = userId + "-" + timestamp;
+        String parentId = typed.isEmpty() ? runParent : typed.peek();
+        typed.push(id);
+        return new Operation("INSERT", id, String.valueOf(TEXT.charAt((int) (timestamp % TEXT.length()))), parentId, null, timestamp, userId);
+    }
+
+    private void moveCursor() {
+        String target;
+        synchronized (knownIds) {
+            target = knownIds.isEmpty() ? "root" : knownIds.get(random.nextInt(knownIds.size()));
+        }
+        runParent = target;
+        typed.clear();
+        Anchor anchor = new Anchor(target, "AFTER");
+        send(new Request("CURSOR", userId, documentId, null, new Cursor(anchor, anchor)));
+    }
+
+    private void sendOperations(List<Operation> operations) {
+        long now = System.nanoTime();
+        Operation first = operations.getFirst();
+        tracker.sent(keyOf(first.type(), first.id(), first.targetId()), peers, operations.size(), now);
+        unacked.add(now);
+        send(new Request("OPERATIONS", userId, documentId, operations, null));
+    }
+
+    // A socket takes one send at a time; the loop waits for each before building the next
+    private void send(Request request) {
+        try {
+            socket.sendText(mapper.writeValueAsString(request), true).join();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode request", e);
+        }
+    }
+
+    // Hybrid clock, so ids stay unique even when several edits fall into the same millisecond
+    private long nextTimestamp() {
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return clock;
+    }
+
+    // Exponential gap for a Poisson process of the given rate per second
+    private long next(long from, double ratePerSecond) {
+        if (ratePerSecond <= 0) return Long.MAX_VALUE;
+        double seconds = -Math.log(1 - random.nextDouble()) / ratePerSecond;
+        return from + (long) (seconds * 1e9);
+    }
+
+    private static String keyOf(String type, String id, String targetId) {
+        return "INSERT".equals(type) ? id : "-" + targetId;
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String message = partial.toString();
+            partial.setLength(0);
+            try {
+                handle(mapper.readTree(message), System.nanoTime());
+            } catch (IOException e) {
+                System.err.println(userId + " could not parse " + message + ": " + e.getMessage());
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    private void handle(JsonNode message, long now) {
+        switch (message.path("type").asText()) {
+            case "SNAPSHOT" -> {
+                for (JsonNode node : message.path("nodes")) {
+                    if (!node.path("deleted").asBoolean()) remember(node.path("id").asText());
+                }
+                ready.countDown();
+            }
+            case "OPERATIONS" -> {
+                JsonNode operations = message.path("operations");
+                if (operations.isEmpty()) return;
+                for (JsonNode op : operations) {
+                    if ("INSERT".equals(op.path("type").asText())) remember(op.path("id").asText());
+                }
+                JsonNode first = operations.get(0);
+                tracker.received(keyOf(first.path("type").asText(), first.path("id").asText(null),
+                        first.path("targetId").asText(null)), operations.size(), now);
+            }
+            case "SEQUENCE" -> {
+                Long sentAt = unacked.poll();
+                if (sentAt != null) tracker.acked(sentAt, now);
+            }
+            case "CURSOR_UPDATE" -> tracker.cursorReceived();
+            default -> { }
+        }
+    }
+
+    // Keeps a bounded sample of the document's node ids; called on socket threads, so not the loop's random
+    private void remember(String id) {
+        synchronized (knownIds) {
+            if (knownIds.size() < KNOWN_IDS_LIMIT) {
+                knownIds.add(id);
+            } else {
+                knownIds.set(ThreadLocalRandom.current().nextInt(KNOWN_IDS_LIMIT), id);
+            }
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (statusCode != WebSocket.NORMAL_CLOSURE) {
+            System.err.println(userId + " disconnected: " + statusCode + " " + reason);
+        }
+        ready.countDown();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        System.err.println(userId + " socket error: " + error.getMessage());
+        ready.countDown();
+    }
+}